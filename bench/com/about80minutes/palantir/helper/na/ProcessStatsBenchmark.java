@@ -0,0 +1,243 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.apache.hadoop.thirdparty.guava.common.collect.Maps;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.about80minutes.util.AlignedColumn;
+import com.about80minutes.util.CalendarBuckets;
+import com.about80minutes.util.CoMoments;
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.OrderStatistics;
+import com.about80minutes.util.ParallelStats;
+import com.about80minutes.util.SyntheticData;
+import com.about80minutes.util.TimeBuckets;
+import com.about80minutes.util.TopValues;
+
+/**
+ * Benchmarks the stats pipeline run by
+ * {@link com.about80minutes.palantir.helper.na.NumericAnalysisController}
+ * once the values of a selection have been extracted: staging the values,
+ * merging them into the store, building the
+ * {@link com.about80minutes.palantir.helper.na.StatsUpdate} and computing the
+ * deferred rank stats of every row, as well as the pairwise correlations of
+ * the properties and their daily totals. The controller needs a running
+ * Palantir workspace so the same steps are driven here directly.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+@State(Scope.Benchmark)
+public class ProcessStatsBenchmark {
+
+	//objects are dated across three years from 2011-01-26
+	private static final int FIRST_DAY = 15000;
+	private static final int DAYS = 1096;
+
+	/**
+	 * Total number of values in the selection, split evenly across the
+	 * properties
+	 */
+	@Param({"1000", "100000", "1000000", "10000000"})
+	public int size;
+
+	@Param({SyntheticData.UNIFORM, SyntheticData.DUPLICATES, SyntheticData.UNIQUE})
+	public String distribution;
+
+	@Param({"1", "10", "50"})
+	public int properties;
+
+	private PropertyDictionary dictionary = null;
+	private Map<Long, ObjectValues> cachedValues = null;
+	private PropertyValueStore loaded = null;
+	private long[] selection = null;
+
+	/**
+	 * Generates the selection, as it would be held by the value cache, and a
+	 * store already holding it
+	 */
+	@Setup
+	public void setup() {
+		dictionary = new PropertyDictionary();
+		int objects = Math.max(size / properties, 1);
+		FloatColumn[] values = new FloatColumn[properties];
+		int[] indexes = new int[properties];
+		for(int i = 0;i < properties;i++) {
+			values[i] = SyntheticData.column(objects, distribution, i);
+			indexes[i] = dictionary.indexOf(String.format("Property %d", i));
+		}
+		cachedValues = Maps.newHashMapWithExpectedSize(objects);
+		for(int object = 0;object < objects;object++) {
+			float[] objectValues = new float[properties];
+			for(int i = 0;i < properties;i++) {
+				objectValues[i] = values[i].get(object);
+			}
+			cachedValues.put(Long.valueOf(object), new ObjectValues(ObjectValues.NO_TYPE, indexes, objectValues,
+					new int[]{0}, new int[]{FIRST_DAY + object % DAYS}));
+		}
+		loaded = this.stage();
+		selection = new long[objects];
+		for(int object = 0;object < objects;object++) {
+			selection[object] = object;
+		}
+	}
+
+	/**
+	 * Deletes anything the stores spilled
+	 */
+	@TearDown
+	public void tearDown() {
+		loaded.clear();
+	}
+
+	/**
+	 * The whole pipeline from cached values to every stat of every row
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.RankStats} of
+	 * the last row
+	 */
+	@Benchmark
+	public RankStats processSelection() {
+		PropertyValueStore staged = this.stage();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		store.addAll(staged);
+		staged.clear();
+		this.statsUpdate(store);
+		RankStats last = this.deferredRows(store);
+		store.clear();
+		return last;
+	}
+
+	/**
+	 * Builds the update passed to the table from values already in the store
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 */
+	@Benchmark
+	public StatsUpdate processStats() {
+		return this.statsUpdate(loaded);
+	}
+
+	/**
+	 * Computes the rank stats and modes of every row, as an export does
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.RankStats} of
+	 * the last row
+	 */
+	@Benchmark
+	public RankStats deferredStats() {
+		return this.deferredRows(loaded);
+	}
+
+	/**
+	 * Aligns every property against the selection and accumulates the
+	 * co-moments of every pair, as the correlation view does
+	 *
+	 * @return the {@link com.about80minutes.util.CoMoments} of the properties
+	 */
+	@Benchmark
+	public CoMoments correlations() {
+		List<AlignedColumn> columns = Lists.newArrayList();
+		for(int i = 0;i < loaded.getPropertyCount();i++) {
+			if(!loaded.getColumn(i).isEmpty()) {
+				columns.add(AlignedColumn.align(loaded.getColumn(i), loaded.getObjectIds(i), selection));
+			}
+		}
+		return ParallelStats.getCoMoments(columns, ParallelStats.DEFAULT_SERIAL_THRESHOLD);
+	}
+
+	/**
+	 * Buckets every property by the day of its object, as the time bucket
+	 * view does
+	 *
+	 * @return the {@link com.about80minutes.util.TimeBuckets} of the last
+	 * property
+	 */
+	@Benchmark
+	public TimeBuckets timeBuckets() {
+		int[] rowBuckets = CalendarBuckets.bucketRows(loaded.getDateColumn(0), loaded.getDateObjectIds(0), selection, CalendarBuckets.DAY);
+		TimeBuckets buckets = null;
+		for(int i = 0;i < loaded.getPropertyCount();i++) {
+			if(!loaded.getColumn(i).isEmpty()) {
+				buckets = new TimeBuckets(FIRST_DAY, DAYS);
+				buckets.addAll(loaded.getColumn(i), loaded.getObjectIds(i), selection, rowBuckets);
+			}
+		}
+		return buckets;
+	}
+
+	/**
+	 * Copies the cached values into a new store
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * of the values
+	 */
+	private PropertyValueStore stage() {
+		PropertyValueStore staged = new PropertyValueStore(dictionary);
+		for(Entry<Long, ObjectValues> entry : cachedValues.entrySet()) {
+			staged.addObject(entry.getKey(), entry.getValue());
+		}
+		return staged;
+	}
+
+	/**
+	 * Builds an update with a row per property in name order
+	 *
+	 * @param store the {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * to read
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 */
+	private StatsUpdate statsUpdate(PropertyValueStore store) {
+		List<String> names = Lists.newArrayList();
+		for(int i = 0;i < store.getPropertyCount();i++) {
+			if(!store.getColumn(i).isEmpty()) {
+				names.add(store.getPropertyName(i));
+			}
+		}
+		Collections.sort(names);
+		StatsUpdate update = new StatsUpdate(names.size(), null);
+		for(int row = 0;row < names.size();row++) {
+			update.setRow(row, names.get(row), store.getStats(store.indexOf(names.get(row))));
+		}
+		return update;
+	}
+
+	/**
+	 * Computes the rank stats and modes of every property
+	 *
+	 * @param store the {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * to read
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.RankStats} of
+	 * the last property
+	 */
+	private RankStats deferredRows(PropertyValueStore store) {
+		RankStats last = null;
+		for(int i = 0;i < store.getPropertyCount();i++) {
+			if(!store.getColumn(i).isEmpty()) {
+				last = new RankStats(new OrderStatistics(store.getColumn(i)), store.getTop(i, null, TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT));
+			}
+		}
+		return last;
+	}
+}
@@ -0,0 +1,222 @@
+package com.about80minutes.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmarks each method of {@link com.about80minutes.util.NumericFunctions}
+ * over data sets of different sizes and distributions. Run with the GC
+ * profiler, as the ant bench target does, to see allocation per operation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+public class NumericFunctionsBenchmark {
+
+	/**
+	 * The values as a column
+	 */
+	@State(Scope.Benchmark)
+	public static class ColumnData {
+		@Param({"1000", "100000", "1000000", "10000000"})
+		public int size;
+
+		@Param({SyntheticData.UNIFORM, SyntheticData.DUPLICATES, SyntheticData.UNIQUE})
+		public String distribution;
+
+		public FloatColumn column = null;
+		public FloatIntCounter counter = new FloatIntCounter();
+
+		/**
+		 * Generates the values
+		 */
+		@Setup
+		public void setup() {
+			column = SyntheticData.column(size, distribution, 0);
+		}
+	}
+
+	/**
+	 * The values as a collection, for the methods still taking boxed values
+	 */
+	@State(Scope.Benchmark)
+	public static class CollectionData {
+		@Param({"1000", "100000", "1000000", "10000000"})
+		public int size;
+
+		@Param({SyntheticData.UNIFORM, SyntheticData.DUPLICATES, SyntheticData.UNIQUE})
+		public String distribution;
+
+		public List<Float> values = null;
+
+		/**
+		 * Generates the values
+		 */
+		@Setup
+		public void setup() {
+			FloatColumn column = SyntheticData.column(size, distribution, 0);
+			values = Lists.newArrayListWithCapacity(size);
+			for(int i = 0;i < column.size();i++) {
+				values.add(column.get(i));
+			}
+		}
+	}
+
+	/**
+	 * A list of modes to format
+	 */
+	@State(Scope.Benchmark)
+	public static class FormatData {
+		public Float value = Float.valueOf(123456.78f);
+		public Integer count = Integer.valueOf(1234567);
+		public float[] modes = new float[]{1f, 22.5f, 333.25f, 4444.125f, 55555f};
+	}
+
+	@Benchmark
+	public Float getSum(ColumnData data) {
+		return NumericFunctions.getSum(data.column);
+	}
+
+	@Benchmark
+	public Float getMean(ColumnData data) {
+		return NumericFunctions.getMean(data.column);
+	}
+
+	@Benchmark
+	public Float getMedian(ColumnData data) {
+		return NumericFunctions.getMedian(data.column);
+	}
+
+	@Benchmark
+	public Float getPercentile(ColumnData data) {
+		return NumericFunctions.getPercentile(data.column, 95d);
+	}
+
+	@Benchmark
+	public Float getStdDeviation(ColumnData data) {
+		return NumericFunctions.getStdDeviation(data.column);
+	}
+
+	@Benchmark
+	public Collection<Float> getModes(ColumnData data) {
+		return NumericFunctions.getModes(data.column);
+	}
+
+	@Benchmark
+	public Collection<Float> getModesReusedCounter(ColumnData data) {
+		return NumericFunctions.getModes(data.column, data.counter);
+	}
+
+	@Benchmark
+	public TopValues getTopExact(ColumnData data) {
+		FloatIntCounter counter = new FloatIntCounter();
+		for(int i = 0;i < data.column.size();i++) {
+			counter.add(data.column.get(i));
+		}
+		return counter.getTop(TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT);
+	}
+
+	@Benchmark
+	public TopValues getTopHeavyHitters(ColumnData data) {
+		HeavyHitters heavyHitters = new HeavyHitters();
+		for(int i = 0;i < data.column.size();i++) {
+			heavyHitters.add(data.column.get(i));
+		}
+		return heavyHitters.getTop(TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT);
+	}
+
+	@Benchmark
+	public Float getMin(ColumnData data) {
+		return NumericFunctions.getMin(data.column);
+	}
+
+	@Benchmark
+	public Float getMax(ColumnData data) {
+		return NumericFunctions.getMax(data.column);
+	}
+
+	@Benchmark
+	public Float getRange(ColumnData data) {
+		return NumericFunctions.getRange(data.column);
+	}
+
+	@Benchmark
+	public StatsAccumulator getStats(ColumnData data) {
+		return NumericFunctions.getStats(data.column);
+	}
+
+	@Benchmark
+	public Float getSumCollection(CollectionData data) {
+		return NumericFunctions.getSum(data.values);
+	}
+
+	@Benchmark
+	public Float getMeanCollection(CollectionData data) {
+		return NumericFunctions.getMean(data.values);
+	}
+
+	@Benchmark
+	public Float getMedianCollection(CollectionData data) {
+		return NumericFunctions.getMedian(data.values);
+	}
+
+	@Benchmark
+	public Float getStdDeviationCollection(CollectionData data) {
+		return NumericFunctions.getStdDeviation(data.values);
+	}
+
+	@Benchmark
+	public Collection<Float> getModesCollection(CollectionData data) {
+		return NumericFunctions.getModes(data.values);
+	}
+
+	@Benchmark
+	public Float getRangeCollection(CollectionData data) {
+		return NumericFunctions.getRange(data.values);
+	}
+
+	@Benchmark
+	public StatsAccumulator getStatsCollection(CollectionData data) {
+		return NumericFunctions.getStats(data.values);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String formatNumber(FormatData data) {
+		return NumericFunctions.formatNumber(data.value);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String formatApproximateNumber(FormatData data) {
+		return NumericFunctions.formatApproximateNumber(data.value);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String formatInteger(FormatData data) {
+		return NumericFunctions.formatNumber(data.count);
+	}
+
+	@Benchmark
+	@OutputTimeUnit(TimeUnit.NANOSECONDS)
+	public String formatNumberList(FormatData data) {
+		return NumericFunctions.formatNumberList(data.modes);
+	}
+}
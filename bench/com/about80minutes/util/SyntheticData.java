@@ -0,0 +1,72 @@
+package com.about80minutes.util;
+
+import java.util.Random;
+
+/**
+ * Generates repeatable data sets for the benchmarks
+ */
+public final class SyntheticData {
+
+	/**
+	 * Values spread evenly over a range, most values are distinct
+	 */
+	public static final String UNIFORM = "uniform";
+
+	/**
+	 * Values drawn from a hundred distinct values, as seen with properties
+	 * such as ratings or counts
+	 */
+	public static final String DUPLICATES = "duplicates";
+
+	/**
+	 * Every value distinct, in shuffled order
+	 */
+	public static final String UNIQUE = "unique";
+
+	private static final long SEED = 42L;
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private SyntheticData() {
+	}
+
+	/**
+	 * Creates a column of values with the given distribution
+	 *
+	 * @param size an int containing the number of values
+	 * @param distribution a {@link java.lang.String} containing one of
+	 * {@link #UNIFORM}, {@link #DUPLICATES} or {@link #UNIQUE}
+	 * @param seed a long to vary the values with, the same seed always gives
+	 * the same values
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} of the values
+	 */
+	public static FloatColumn column(int size, String distribution, long seed) {
+		Random random = new Random(SEED + seed);
+		FloatColumn column = new FloatColumn(size);
+		if(UNIFORM.equals(distribution)) {
+			for(int i = 0;i < size;i++) {
+				column.add(random.nextFloat() * 1000f);
+			}
+		} else if(DUPLICATES.equals(distribution)) {
+			for(int i = 0;i < size;i++) {
+				column.add(random.nextInt(100));
+			}
+		} else if(UNIQUE.equals(distribution)) {
+			//integers are exact as floats up to 2^24, beyond the largest size
+			for(int i = 0;i < size;i++) {
+				column.add(i);
+			}
+			for(int i = size - 1;i > 0;i--) {
+				int j = random.nextInt(i + 1);
+				float tmp = column.get(i);
+				column.set(i, column.get(j));
+				column.set(j, tmp);
+			}
+		} else {
+			throw new IllegalArgumentException(String.format("Unknown distribution: %s", distribution));
+		}
+		return column;
+	}
+}
@@ -0,0 +1,480 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.Reader;
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+import org.apache.commons.io.IOUtils;
+
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.HeavyHitters;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.OrderStatistics;
+import com.about80minutes.util.ParallelStats;
+import com.about80minutes.util.QuantileSketch;
+import com.about80minutes.util.QuantileSummary;
+import com.about80minutes.util.StatsAccumulator;
+import com.about80minutes.util.TopValues;
+import com.google.common.collect.Lists;
+
+/**
+ * Headless entry point which computes the stats shown by the helper over the
+ * numeric columns of CSV files, without a Workspace. The first line of each
+ * file names its columns, columns of the same name in different files are
+ * combined. Cells which are empty, not decimal numbers or too large for a
+ * float are skipped, so NaN, Infinity and Java literals such as 2f are never
+ * counted. Records may not span lines.
+ *
+ * Files are read in chunks of lines which are parsed and summarised in
+ * parallel, the summaries are merged in file order. At most a bounded number
+ * of chunks are outstanding and a column keeps its values only until it has
+ * more than the approximate threshold, after which its rank based stats are
+ * estimated with a {@link com.about80minutes.util.QuantileSketch} as they are
+ * in the helper. Memory use therefore does not grow with the size of the
+ * files, apart from the counts of distinct values kept for the modes.
+ *
+ * The summary is written in the layout of
+ * {@link com.about80minutes.palantir.helper.na.NATableModel#toCSV(OutputStream)}.
+ */
+public class BatchAnalysis {
+
+	public static final int DEFAULT_CHUNK_LINES = 65536;
+	public static final int DEFAULT_MAX_IN_FLIGHT = Runtime.getRuntime().availableProcessors() * 2;
+
+	private static final int READ_BUFFER_CHARS = 1024 * 1024;
+
+	private PropertyDictionary dictionary = new PropertyDictionary();
+	private List<ColumnSummary> summaries = Lists.newArrayList();
+	private int chunkLines = DEFAULT_CHUNK_LINES;
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private int approximateThreshold = NumericAnalysisController.DEFAULT_APPROXIMATE_THRESHOLD;
+	private int sketchAccuracy = QuantileSketch.DEFAULT_K;
+
+	/**
+	 * Runs the analysis from the command line
+	 *
+	 * @param args a {@link java.lang.String}[] containing the output file, or
+	 * - for standard output, followed by one or more input files
+	 */
+	public static void main(String[] args) {
+		if(args.length < 2) {
+			System.err.println(String.format("Usage: java %s <output.csv|-> <input.csv>...", BatchAnalysis.class.getName()));
+			System.exit(1);
+		}
+		BatchAnalysis analysis = new BatchAnalysis();
+		OutputStream output = null;
+		try {
+			for(int i = 1;i < args.length;i++) {
+				analysis.addCSV(new File(args[i]));
+			}
+			output = "-".equals(args[0]) ? System.out : new FileOutputStream(args[0]);
+			analysis.writeCSV(output);
+			output.flush();
+		} catch (IOException e) {
+			System.err.println(String.format("Error analysing files: %s", e.getMessage()));
+			System.exit(2);
+		} finally {
+			if(output != System.out) {
+				IOUtils.closeQuietly(output);
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of lines parsed by each parallel task
+	 *
+	 * @param chunkLines an int containing the number of lines
+	 */
+	public void setChunkLines(int chunkLines) {
+		this.chunkLines = Math.max(chunkLines, 1);
+	}
+
+	/**
+	 * Sets the number of chunks which may be read and not yet merged at once,
+	 * this bounds the memory used for lines waiting to be parsed
+	 *
+	 * @param maxInFlight an int containing the number of chunks
+	 */
+	public void setMaxInFlight(int maxInFlight) {
+		this.maxInFlight = Math.max(maxInFlight, 1);
+	}
+
+	/**
+	 * Sets the number of values a column may have before its rank based stats
+	 * are estimated, as {@link NumericAnalysisController#setApproximateThreshold(int)}
+	 *
+	 * @param approximateThreshold an int containing the number of values
+	 */
+	public void setApproximateThreshold(int approximateThreshold) {
+		this.approximateThreshold = approximateThreshold;
+	}
+
+	/**
+	 * Sets the size parameter of the sketches used for estimates
+	 *
+	 * @param sketchAccuracy an int containing the sketch size parameter
+	 */
+	public void setSketchAccuracy(int sketchAccuracy) {
+		this.sketchAccuracy = sketchAccuracy;
+	}
+
+	/**
+	 * Adds the values of a CSV file
+	 *
+	 * @param file a {@link java.io.File} containing the CSV file
+	 *
+	 * @throws IOException if the file cannot be read
+	 */
+	public void addCSV(File file) throws IOException {
+		Reader reader = new InputStreamReader(new FileInputStream(file), "UTF-8");
+		try {
+			this.addCSV(reader);
+		} finally {
+			IOUtils.closeQuietly(reader);
+		}
+	}
+
+	/**
+	 * Adds the values of CSV data, the reader is not closed
+	 *
+	 * @param reader a {@link java.io.Reader} of CSV data with a header line
+	 *
+	 * @throws IOException if the data cannot be read
+	 */
+	public void addCSV(Reader reader) throws IOException {
+		BufferedReader lines = new BufferedReader(reader, READ_BUFFER_CHARS);
+		String header = lines.readLine();
+		if(header == null) {
+			return;
+		}
+		List<String> names = Lists.newArrayList();
+		splitCSV(header, names);
+		final int[] columns = new int[names.size()];
+		for(int i = 0;i < columns.length;i++) {
+			columns[i] = dictionary.indexOf(names.get(i).trim());
+		}
+
+		Deque<Future<ColumnSummary[]>> outstanding = new ArrayDeque<Future<ColumnSummary[]>>();
+		try {
+			List<String> chunk = Lists.newArrayListWithCapacity(chunkLines);
+			for(String line = lines.readLine();line != null;line = lines.readLine()) {
+				chunk.add(line);
+				if(chunk.size() == chunkLines) {
+					this.submit(outstanding, chunk, columns);
+					chunk = Lists.newArrayListWithCapacity(chunkLines);
+				}
+			}
+			if(!chunk.isEmpty()) {
+				this.submit(outstanding, chunk, columns);
+			}
+			while(!outstanding.isEmpty()) {
+				this.merge(outstanding.removeFirst().get());
+			}
+		} catch (ExecutionException e) {
+			throw new IOException("Error parsing CSV data", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IOException("Interrupted parsing CSV data", e);
+		} finally {
+			for(Future<ColumnSummary[]> future : outstanding) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Builds the table of stats of every column holding values, in name order
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * with no deferred stats
+	 */
+	public StatsUpdate getStats() {
+		List<Integer> indexes = this.getSortedIndexes();
+		StatsUpdate update = new StatsUpdate(indexes.size(), null);
+		for(int row = 0;row < indexes.size();row++) {
+			update.setRow(row, dictionary.getName(indexes.get(row)), summaries.get(indexes.get(row)).stats);
+		}
+		return update;
+	}
+
+	/**
+	 * Computes the rank based stats and modes of every column holding values,
+	 * in the order of {@link #getStats()}
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.RankStats}[]
+	 * with an entry per row
+	 */
+	public RankStats[] getRankStats() {
+		List<Integer> indexes = this.getSortedIndexes();
+		RankStats[] rankStats = new RankStats[indexes.size()];
+		for(int row = 0;row < indexes.size();row++) {
+			rankStats[row] = summaries.get(indexes.get(row)).getRankStats();
+		}
+		return rankStats;
+	}
+
+	/**
+	 * Writes the summary table in the layout of the helper's export. This
+	 * method does not close the stream after processing
+	 *
+	 * @param stream a {@link java.io.OutputStream} to write the table to
+	 */
+	public void writeCSV(OutputStream stream) {
+		NATableModel.toCSV(this.getStats(), this.getRankStats(), stream, null);
+	}
+
+	/**
+	 * Starts parsing a chunk, first merging the oldest outstanding chunk if
+	 * there are already too many
+	 *
+	 * @param outstanding a {@link java.util.Deque} of outstanding chunks in
+	 * the order they were read
+	 * @param chunk a {@link java.util.List} of lines to parse
+	 * @param columns an int[] containing the property index of each column
+	 *
+	 * @throws ExecutionException if parsing an earlier chunk failed
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	private void submit(Deque<Future<ColumnSummary[]>> outstanding, final List<String> chunk, final int[] columns)
+			throws ExecutionException, InterruptedException {
+		if(outstanding.size() >= maxInFlight) {
+			this.merge(outstanding.removeFirst().get());
+		}
+		final int threshold = approximateThreshold;
+		final int k = sketchAccuracy;
+		outstanding.addLast(ParallelStats.submit(new Callable<ColumnSummary[]>() {
+			public ColumnSummary[] call() {
+				return parseChunk(chunk, columns, threshold, k);
+			}
+		}));
+	}
+
+	/**
+	 * Merges the summaries of a chunk into the running summaries
+	 *
+	 * @param chunk a {@link ColumnSummary}[] indexed by property
+	 */
+	private void merge(ColumnSummary[] chunk) {
+		while(summaries.size() < chunk.length) {
+			summaries.add(null);
+		}
+		for(int index = 0;index < chunk.length;index++) {
+			if(chunk[index] == null) {
+				continue;
+			}
+			if(summaries.get(index) == null) {
+				summaries.set(index, chunk[index]);
+			} else {
+				summaries.get(index).merge(chunk[index]);
+			}
+		}
+	}
+
+	/**
+	 * Gets the indexes of the columns which hold values, in name order
+	 *
+	 * @return a {@link java.util.List} of property indexes
+	 */
+	private List<Integer> getSortedIndexes() {
+		List<Integer> indexes = Lists.newArrayList();
+		for(int i = 0;i < summaries.size();i++) {
+			if(summaries.get(i) != null && summaries.get(i).stats.getCount() > 0) {
+				indexes.add(i);
+			}
+		}
+		Collections.sort(indexes, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				return dictionary.getName(first).compareTo(dictionary.getName(second));
+			}
+		});
+		return indexes;
+	}
+
+	/**
+	 * Parses a chunk of lines and summarises each column
+	 *
+	 * @param chunk a {@link java.util.List} of lines
+	 * @param columns an int[] containing the property index of each column
+	 * @param threshold an int containing the approximate threshold
+	 * @param k an int containing the sketch size parameter
+	 *
+	 * @return a {@link ColumnSummary}[] indexed by property, null where a
+	 * property had no values
+	 */
+	static ColumnSummary[] parseChunk(List<String> chunk, int[] columns, int threshold, int k) {
+		int size = 0;
+		for(int index : columns) {
+			size = Math.max(size, index + 1);
+		}
+		ColumnSummary[] summaries = new ColumnSummary[size];
+		List<String> fields = Lists.newArrayListWithCapacity(columns.length);
+		for(String line : chunk) {
+			splitCSV(line, fields);
+			for(int i = 0;i < fields.size() && i < columns.length;i++) {
+				String field = fields.get(i).trim();
+				if(field.length() == 0) {
+					continue;
+				}
+				float value = 0f;
+				try {
+					value = NumericFunctions.parseNumber(field);
+				} catch (NumberFormatException e) {
+					continue; //not a number
+				}
+				if(Float.isNaN(value) || Float.isInfinite(value)) {
+					continue; //too large for a float, it would swamp every stat of the column
+				}
+				if(summaries[columns[i]] == null) {
+					summaries[columns[i]] = new ColumnSummary(threshold, k);
+				}
+				summaries[columns[i]].add(value);
+			}
+		}
+		return summaries;
+	}
+
+	/**
+	 * Splits a CSV line into its fields, fields may be quoted with quotes
+	 * inside them doubled
+	 *
+	 * @param line a {@link java.lang.String} containing the line
+	 * @param fields a {@link java.util.List} to fill with the fields, this is
+	 * cleared first
+	 */
+	static void splitCSV(String line, List<String> fields) {
+		fields.clear();
+		StringBuilder field = new StringBuilder();
+		boolean quoted = false;
+		for(int i = 0;i < line.length();i++) {
+			char c = line.charAt(i);
+			if(quoted) {
+				if(c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+					field.append('"');
+					i++;
+				} else if(c == '"') {
+					quoted = false;
+				} else {
+					field.append(c);
+				}
+			} else if(c == '"') {
+				quoted = true;
+			} else if(c == ',') {
+				fields.add(field.toString());
+				field.setLength(0);
+			} else {
+				field.append(c);
+			}
+		}
+		fields.add(field.toString());
+	}
+
+	/**
+	 * Running summary of a single column. Values are kept until there are
+	 * more than the approximate threshold, after which they are replaced by a
+	 * sketch. The most frequent values are always tracked by a bounded
+	 * {@link com.about80minutes.util.HeavyHitters} sketch, as a column of
+	 * mostly unique values would otherwise need a count per value.
+	 */
+	static class ColumnSummary {
+
+		private final int threshold;
+		private final int k;
+		private final StatsAccumulator stats = new StatsAccumulator();
+		private final HeavyHitters heavyHitters = new HeavyHitters();
+		private FloatColumn values = new FloatColumn();
+		private QuantileSketch sketch = null;
+
+		/**
+		 * Constructor for the summary
+		 *
+		 * @param threshold an int containing the number of values kept before
+		 * switching to a sketch
+		 * @param k an int containing the sketch size parameter
+		 */
+		ColumnSummary(int threshold, int k) {
+			this.threshold = threshold;
+			this.k = k;
+		}
+
+		/**
+		 * Adds a value to the summary
+		 *
+		 * @param value a float containing the value
+		 */
+		void add(float value) {
+			stats.add(value);
+			heavyHitters.add(value);
+			if(sketch != null) {
+				sketch.add(value);
+			} else {
+				values.add(value);
+				this.checkThreshold();
+			}
+		}
+
+		/**
+		 * Merges another summary of the same column into this one
+		 *
+		 * @param other the {@link ColumnSummary} to merge
+		 */
+		void merge(ColumnSummary other) {
+			stats.merge(other.stats);
+			heavyHitters.merge(other.heavyHitters);
+			if(sketch == null && other.sketch == null) {
+				values.addAll(other.values);
+				this.checkThreshold();
+			} else {
+				if(sketch == null) {
+					this.toSketch();
+				}
+				if(other.sketch != null) {
+					sketch.merge(other.sketch);
+				} else {
+					for(int i = 0;i < other.values.size();i++) {
+						sketch.add(other.values.get(i));
+					}
+				}
+			}
+		}
+
+		/**
+		 * Computes the rank based stats and modes of the column
+		 *
+		 * @return the {@link com.about80minutes.palantir.helper.na.RankStats}
+		 */
+		RankStats getRankStats() {
+			QuantileSummary order = (sketch != null) ? sketch : new OrderStatistics(values);
+			return new RankStats(order, heavyHitters.getTop(TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT));
+		}
+
+		/**
+		 * Replaces the values with a sketch once there are too many
+		 */
+		private void checkThreshold() {
+			if(values.size() > threshold) {
+				this.toSketch();
+			}
+		}
+
+		/**
+		 * Replaces the values with a sketch of them
+		 */
+		private void toSketch() {
+			sketch = QuantileSketch.valueOf(values, k);
+			values = null;
+		}
+	}
+}
@@ -0,0 +1,141 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+
+import com.google.common.collect.Lists;
+import com.palantir.api.horizon.v1.object.HObject;
+import com.palantir.api.workspace.PalantirWorkspaceContext;
+
+/**
+ * Loads objects from Horizon in fixed size batches, several batches are in
+ * flight on the executor at once and each is handed on as soon as it arrives.
+ * This lets the caller extract values from one batch while the next batches
+ * are still loading, and keeps at most a bounded number of batches of
+ * {@link com.palantir.api.horizon.v1.object.HObject}s in memory.
+ */
+public class BatchedObjectLoader {
+
+	public static final int DEFAULT_BATCH_SIZE = 1000;
+	public static final int DEFAULT_MAX_IN_FLIGHT = 4;
+
+	private PalantirWorkspaceContext palantirContext = null;
+	private Executor executor = null;
+	private int batchSize = DEFAULT_BATCH_SIZE;
+	private int maxInFlight = DEFAULT_MAX_IN_FLIGHT;
+	private NumericAnalysisMetrics metrics = null;
+
+	/**
+	 * Handles each batch of objects as it is loaded
+	 */
+	public interface BatchHandler {
+
+		/**
+		 * Called on the thread running {@link BatchedObjectLoader#load(List, BatchHandler)}
+		 * once for every loaded batch, in order of arrival
+		 *
+		 * @param batch a {@link java.util.Collection} of loaded
+		 * {@link com.palantir.api.horizon.v1.object.HObject}s
+		 */
+		void handle(Collection<HObject> batch);
+	}
+
+	/**
+	 * Constructor for the loader
+	 *
+	 * @param palantirContext a {@link com.palantir.api.workspace.PalantirWorkspaceContext}
+	 * to load objects from
+	 * @param executor an {@link java.util.concurrent.Executor} to run the
+	 * batch loads on
+	 * @param batchSize an int containing the number of objects per batch
+	 * @param maxInFlight an int containing the number of batches that may be
+	 * loading or waiting to be handled at once
+	 */
+	public BatchedObjectLoader(PalantirWorkspaceContext palantirContext, Executor executor, int batchSize, int maxInFlight) {
+		this.palantirContext = palantirContext;
+		this.executor = executor;
+		this.batchSize = Math.max(batchSize, 1);
+		this.maxInFlight = Math.max(maxInFlight, 1);
+	}
+
+	/**
+	 * Sets the metrics each batch load is recorded in
+	 *
+	 * @param metrics the {@link com.about80minutes.palantir.helper.na.NumericAnalysisMetrics}
+	 * to record in, or null to record nothing
+	 */
+	public void setMetrics(NumericAnalysisMetrics metrics) {
+		this.metrics = metrics;
+	}
+
+	/**
+	 * Loads the given objects, passing each batch to the handler as it
+	 * arrives. This blocks until every batch has been handled, if a batch
+	 * fails or the calling thread is interrupted the outstanding batches are
+	 * cancelled.
+	 *
+	 * @param objectIds a {@link java.util.List} of {@link java.lang.Long}
+	 * object IDs to load
+	 * @param handler a {@link com.about80minutes.palantir.helper.na.BatchedObjectLoader.BatchHandler}
+	 * to pass loaded batches to
+	 *
+	 * @throws InterruptedException if interrupted while waiting for a batch
+	 * @throws ExecutionException if loading a batch fails
+	 */
+	public void load(List<Long> objectIds, BatchHandler handler) throws InterruptedException, ExecutionException {
+		List<List<Long>> batches = Lists.partition(objectIds, batchSize);
+		//at most maxInFlight batches are submitted and not yet taken, which
+		//bounds the completion queue
+		CompletionService<Collection<HObject>> completion = new ExecutorCompletionService<Collection<HObject>>(executor);
+		List<Future<Collection<HObject>>> submitted = new ArrayList<Future<Collection<HObject>>>(batches.size());
+
+		try {
+			int next = 0;
+			while(next < batches.size() && next < maxInFlight) {
+				submitted.add(completion.submit(this.newLoadTask(batches.get(next++))));
+			}
+			for(int handled = 0;handled < batches.size();handled++) {
+				Collection<HObject> batch = completion.take().get();
+				//keep the pipeline full while this batch is handled
+				if(next < batches.size()) {
+					submitted.add(completion.submit(this.newLoadTask(batches.get(next++))));
+				}
+				handler.handle(batch);
+			}
+		} finally {
+			for(Future<Collection<HObject>> future : submitted) {
+				future.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Creates a task which loads a single batch
+	 *
+	 * @param batch a {@link java.util.List} of {@link java.lang.Long} object
+	 * IDs to load
+	 *
+	 * @return a {@link java.util.concurrent.Callable} returning the loaded objects
+	 */
+	private Callable<Collection<HObject>> newLoadTask(final List<Long> batch) {
+		return new Callable<Collection<HObject>>() {
+			public Collection<HObject> call() throws Exception {
+				long start = System.nanoTime();
+				//copy the batch, partition returns a view of the whole list
+				Collection<HObject> objects = palantirContext.getHorizonConnection().loadHObjects(new ArrayList<Long>(batch));
+				if(metrics != null) {
+					metrics.record(NumericAnalysisMetrics.LOAD, start);
+					metrics.addObjectsLoaded(objects.size());
+				}
+				return objects;
+			}
+		};
+	}
+}
@@ -0,0 +1,116 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.awt.Component;
+import java.beans.PropertyChangeEvent;
+import java.beans.PropertyChangeListener;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+
+import javax.swing.ProgressMonitor;
+import javax.swing.SwingWorker;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.log4j.Logger;
+
+/**
+ * Writes an export to a file in the background, showing its progress in a
+ * {@link javax.swing.ProgressMonitor} which can be used to cancel it. Output
+ * is written straight to the file's channel by implementations which fill
+ * buffers of their own, a cancelled or failed export deletes the partly
+ * written file. Exports written as a stream should extend
+ * {@link com.about80minutes.palantir.helper.na.ExportWorker} instead.
+ */
+public abstract class ChannelExportWorker extends SwingWorker<Void, Void> implements ExportMonitor {
+	private static final Logger LOGGER = Logger.getLogger(ChannelExportWorker.class);
+
+	private File file = null;
+	private ProgressMonitor progressMonitor = null;
+
+	/**
+	 * Constructor for the worker
+	 *
+	 * @param parent a {@link java.awt.Component} to show progress over
+	 * @param file a {@link java.io.File} to write the export to
+	 */
+	public ChannelExportWorker(Component parent, File file) {
+		this.file = file;
+		this.progressMonitor = new ProgressMonitor(parent, String.format("Exporting to %s", file.getName()), null, 0, 100);
+		this.addPropertyChangeListener(new PropertyChangeListener() {
+			public void propertyChange(PropertyChangeEvent event) {
+				if("progress".equals(event.getPropertyName())) {
+					progressMonitor.setProgress((Integer) event.getNewValue());
+				}
+				if(progressMonitor.isCanceled()) {
+					ChannelExportWorker.this.cancel(false); //checked between items, interrupting would close the channel
+				}
+			}
+		});
+	}
+
+	/**
+	 * Writes the export to the channel of the file, implementations should
+	 * report progress and stop early if cancelled
+	 *
+	 * @param channel a {@link java.nio.channels.FileChannel} to write to,
+	 * this is closed by the worker
+	 *
+	 * @throws IOException if the export cannot be written
+	 */
+	protected abstract void write(FileChannel channel) throws IOException;
+
+	/**
+	 * Opens the file and writes the export
+	 *
+	 * @return null
+	 */
+	@Override
+	protected Void doInBackground() throws Exception {
+		FileOutputStream fileStream = new FileOutputStream(file);
+		boolean written = false;
+		try {
+			this.write(fileStream.getChannel());
+			written = !this.isCancelled();
+		} finally {
+			IOUtils.closeQuietly(fileStream);
+			if(!written) {
+				file.delete();
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reports how much of the export has been written
+	 *
+	 * @param done a long containing the number of items written
+	 * @param total a long containing the number of items to write
+	 */
+	public void progress(long done, long total) {
+		//the monitor is checked for cancellation on the event thread as
+		//progress changes
+		if(total > 0) {
+			this.setProgress((int) Math.min(100L, done * 100L / total));
+		}
+	}
+
+	/**
+	 * Closes the progress monitor once the export is complete
+	 */
+	@Override
+	protected void done() {
+		progressMonitor.close();
+		try {
+			this.get();
+		} catch (CancellationException e) {
+			LOGGER.info(String.format("Export to %s cancelled", file.getName()));
+		} catch (InterruptedException e) {
+			LOGGER.error(String.format("Error exporting to %s", file.getName()), e);
+		} catch (ExecutionException e) {
+			LOGGER.error(String.format("Error exporting to %s", file.getName()), e);
+		}
+	}
+}
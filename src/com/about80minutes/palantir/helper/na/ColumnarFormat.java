@@ -0,0 +1,249 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.Charset;
+import java.util.List;
+
+import org.apache.commons.io.IOUtils;
+
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.LongColumn;
+
+/**
+ * Compact binary export of the property values of a selection. Each property
+ * is written as typed columns rather than text, so values keep their full
+ * precision and can be read back without parsing.
+ *
+ * A file starts with a header holding {@link #MAGIC}, {@link #VERSION} and the
+ * number of properties, then for each property its name, the type of its
+ * values and the number of values. The header is followed by a block per
+ * property of the IDs of the objects the values came from, then a block of
+ * the values. All numbers are little-endian, names are UTF-8 prefixed by
+ * their length in bytes.
+ */
+public final class ColumnarFormat {
+
+	public static final int MAGIC = 0x4E414843; //"NAHC"
+	public static final int VERSION = 1;
+	public static final byte FLOAT_VALUES = 4;
+	public static final byte DOUBLE_VALUES = 8;
+	public static final int BUFFER_BYTES = 1024 * 1024;
+
+	private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+	/**
+	 * Private constructor, only static methods
+	 */
+	private ColumnarFormat() {
+	}
+
+	/**
+	 * Reads an export back into a store, the file is mapped into memory
+	 * rather than read through a stream
+	 *
+	 * @param file a {@link java.io.File} containing the export
+	 * @param dictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index the properties with
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * holding the values and their stats
+	 *
+	 * @throws IOException if the file cannot be read or is not an export
+	 */
+	public static PropertyValueStore read(File file, PropertyDictionary dictionary) throws IOException {
+		RandomAccessFile randomAccessFile = new RandomAccessFile(file, "r");
+		try {
+			FileChannel channel = randomAccessFile.getChannel();
+			if(channel.size() > Integer.MAX_VALUE) {
+				throw new IOException(String.format("Export %s is too large to map", file.getName()));
+			}
+			return read(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()), dictionary);
+		} finally {
+			IOUtils.closeQuietly(randomAccessFile);
+		}
+	}
+
+	/**
+	 * Reads an export held in a buffer back into a store
+	 *
+	 * @param buffer a {@link java.nio.ByteBuffer} containing the export from
+	 * its current position
+	 * @param dictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index the properties with
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * holding the values and their stats
+	 *
+	 * @throws IOException if the buffer does not hold an export
+	 */
+	public static PropertyValueStore read(ByteBuffer buffer, PropertyDictionary dictionary) throws IOException {
+		ByteBuffer input = buffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+		try {
+			if(input.getInt() != MAGIC) {
+				throw new IOException("Not a columnar export");
+			}
+			int version = input.getInt();
+			if(version != VERSION) {
+				throw new IOException(String.format("Unsupported export version %d", version));
+			}
+			int propertyCount = input.getInt();
+			String[] properties = new String[propertyCount];
+			byte[] types = new byte[propertyCount];
+			int[] counts = new int[propertyCount];
+			for(int i = 0;i < propertyCount;i++) {
+				byte[] name = new byte[input.getInt()];
+				input.get(name);
+				properties[i] = new String(name, UTF_8);
+				types[i] = input.get();
+				counts[i] = input.getInt();
+				if(types[i] != FLOAT_VALUES && types[i] != DOUBLE_VALUES) {
+					throw new IOException(String.format("Unknown value type %d for %s", types[i], properties[i]));
+				}
+			}
+
+			PropertyValueStore store = new PropertyValueStore(dictionary);
+			for(int i = 0;i < propertyCount;i++) {
+				int index = store.indexOf(properties[i]);
+				int idsPosition = input.position();
+				int valuesPosition = idsPosition + counts[i] * 8;
+				input.position(valuesPosition + counts[i] * types[i]); //checks the blocks are present
+				for(int j = 0;j < counts[i];j++) {
+					float value = (types[i] == FLOAT_VALUES) ? input.getFloat(valuesPosition + j * 4) : (float) input.getDouble(valuesPosition + j * 8);
+					store.add(index, input.getLong(idsPosition + j * 8), value);
+				}
+			}
+			return store;
+		} catch (BufferUnderflowException e) {
+			throw new IOException("Truncated columnar export", e);
+		} catch (IllegalArgumentException e) {
+			throw new IOException("Truncated columnar export", e);
+		}
+	}
+
+	/**
+	 * Writes an export to a channel. The header is written first, then for
+	 * each property in header order its IDs and then its values, these may
+	 * be written a run at a time. Values are copied in bulk into a direct
+	 * buffer which is handed to the channel as it fills.
+	 */
+	public static class Writer {
+
+		private WritableByteChannel channel = null;
+		private ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_BYTES).order(ByteOrder.LITTLE_ENDIAN);
+
+		/**
+		 * Constructor for the writer
+		 *
+		 * @param channel a {@link java.nio.channels.WritableByteChannel} to
+		 * write the export to, this is not closed by the writer
+		 */
+		public Writer(WritableByteChannel channel) {
+			this.channel = channel;
+		}
+
+		/**
+		 * Writes the header of the export
+		 *
+		 * @param properties a {@link java.util.List} of the property names in
+		 * the order their blocks will be written
+		 * @param counts an int[] containing the number of values of each
+		 * property
+		 *
+		 * @throws IOException if the header cannot be written
+		 */
+		public void writeHeader(List<String> properties, int[] counts) throws IOException {
+			this.ensure(12);
+			buffer.putInt(MAGIC);
+			buffer.putInt(VERSION);
+			buffer.putInt(properties.size());
+			for(int i = 0;i < properties.size();i++) {
+				byte[] name = properties.get(i).getBytes(UTF_8);
+				this.ensure(4);
+				buffer.putInt(name.length);
+				for(int offset = 0;offset < name.length;) {
+					this.ensure(1);
+					int length = Math.min(buffer.remaining(), name.length - offset);
+					buffer.put(name, offset, length);
+					offset += length;
+				}
+				this.ensure(5);
+				buffer.put(FLOAT_VALUES);
+				buffer.putInt(counts[i]);
+			}
+		}
+
+		/**
+		 * Writes a run of object IDs
+		 *
+		 * @param ids a {@link com.about80minutes.util.LongColumn} of IDs
+		 * @param from an int containing the position of the first ID
+		 * @param length an int containing the number of IDs to write
+		 *
+		 * @throws IOException if the IDs cannot be written
+		 */
+		public void writeIds(LongColumn ids, int from, int length) throws IOException {
+			while(length > 0) {
+				this.ensure(8);
+				int run = Math.min(length, buffer.remaining() / 8);
+				ids.get(from, run, buffer.asLongBuffer());
+				buffer.position(buffer.position() + run * 8);
+				from += run;
+				length -= run;
+			}
+		}
+
+		/**
+		 * Writes a run of values
+		 *
+		 * @param values a {@link com.about80minutes.util.FloatColumn} of values
+		 * @param from an int containing the position of the first value
+		 * @param length an int containing the number of values to write
+		 *
+		 * @throws IOException if the values cannot be written
+		 */
+		public void writeValues(FloatColumn values, int from, int length) throws IOException {
+			while(length > 0) {
+				this.ensure(4);
+				int run = Math.min(length, buffer.remaining() / 4);
+				values.get(from, run, buffer.asFloatBuffer());
+				buffer.position(buffer.position() + run * 4);
+				from += run;
+				length -= run;
+			}
+		}
+
+		/**
+		 * Writes anything still buffered to the channel
+		 *
+		 * @throws IOException if the buffer cannot be written
+		 */
+		public void flush() throws IOException {
+			buffer.flip();
+			while(buffer.hasRemaining()) {
+				channel.write(buffer);
+			}
+			buffer.clear();
+		}
+
+		/**
+		 * Makes room in the buffer, writing it to the channel if it has less
+		 * than the given number of bytes free
+		 *
+		 * @param bytes an int containing the number of bytes required
+		 *
+		 * @throws IOException if the buffer cannot be written
+		 */
+		private void ensure(int bytes) throws IOException {
+			if(buffer.remaining() < bytes) {
+				this.flush();
+			}
+		}
+	}
+}
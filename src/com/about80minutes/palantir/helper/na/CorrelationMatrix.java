@@ -0,0 +1,85 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.List;
+
+import com.about80minutes.util.CoMoments;
+
+/**
+ * The pairwise correlations and covariances of the numeric properties of a
+ * selection, passed from the controller to the view. Each pair is computed
+ * from the objects holding a value of both properties.
+ */
+public class CorrelationMatrix {
+
+	private final String[] properties;
+	private final CoMoments moments;
+
+	/**
+	 * Constructor for the matrix
+	 *
+	 * @param properties a {@link java.util.List} containing the property name
+	 * of each variable of the co-moments
+	 * @param moments the {@link com.about80minutes.util.CoMoments} of the
+	 * properties, which must not be changed after this call
+	 */
+	public CorrelationMatrix(List<String> properties, CoMoments moments) {
+		this.properties = properties.toArray(new String[properties.size()]);
+		this.moments = moments;
+	}
+
+	/**
+	 * Gets the number of properties
+	 *
+	 * @return an int containing the number of properties
+	 */
+	public int size() {
+		return properties.length;
+	}
+
+	/**
+	 * Gets the name of a property
+	 *
+	 * @param i an int containing the position of the property
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public String getProperty(int i) {
+		return properties[i];
+	}
+
+	/**
+	 * Gets the number of objects holding a value of both properties
+	 *
+	 * @param i an int containing the position of the first property
+	 * @param j an int containing the position of the second property
+	 *
+	 * @return a long containing the count
+	 */
+	public long getCount(int i, int j) {
+		return moments.getCount(i, j);
+	}
+
+	/**
+	 * Gets the Pearson correlation of two properties
+	 *
+	 * @param i an int containing the position of the first property
+	 * @param j an int containing the position of the second property
+	 *
+	 * @return a double containing the correlation, NaN if it is undefined
+	 */
+	public double getCorrelation(int i, int j) {
+		return moments.getCorrelation(i, j);
+	}
+
+	/**
+	 * Gets the population covariance of two properties
+	 *
+	 * @param i an int containing the position of the first property
+	 * @param j an int containing the position of the second property
+	 *
+	 * @return a double containing the covariance, NaN if no object holds both
+	 */
+	public double getCovariance(int i, int j) {
+		return moments.getCovariance(i, j);
+	}
+}
@@ -0,0 +1,95 @@
+package com.about80minutes.palantir.helper.na;
+
+import javax.swing.table.AbstractTableModel;
+
+import com.about80minutes.util.NumericFunctions;
+
+/**
+ * Model of the correlation table, a row and a column per property with the
+ * correlation or the covariance of the pair in each cell. Pairs which are
+ * undefined, such as those no object holds values for, are left blank.
+ */
+@SuppressWarnings("serial")
+public class CorrelationTableModel extends AbstractTableModel {
+
+	private CorrelationMatrix matrix = null;
+	private boolean showCovariance = false;
+
+	/**
+	 * Constructor for the model
+	 *
+	 * @param matrix the {@link com.about80minutes.palantir.helper.na.CorrelationMatrix}
+	 * to display
+	 */
+	public CorrelationTableModel(CorrelationMatrix matrix) {
+		this.matrix = matrix;
+	}
+
+	/**
+	 * Sets whether the cells show covariances rather than correlations
+	 *
+	 * @param showCovariance a boolean, true to show covariances
+	 */
+	public void setShowCovariance(boolean showCovariance) {
+		this.showCovariance = showCovariance;
+		this.fireTableDataChanged();
+	}
+
+	/**
+	 * Gets the matrix being displayed
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.CorrelationMatrix}
+	 */
+	public CorrelationMatrix getMatrix() {
+		return matrix;
+	}
+
+	/**
+	 * Returns the number of rows, one per property
+	 *
+	 * @return an int containing the number of rows
+	 */
+	public int getRowCount() {
+		return matrix.size();
+	}
+
+	/**
+	 * Returns the number of columns, the property name then one per property
+	 *
+	 * @return an int containing the number of columns
+	 */
+	public int getColumnCount() {
+		return matrix.size() + 1;
+	}
+
+	/**
+	 * Returns the name of a column
+	 *
+	 * @param column an int containing the column
+	 *
+	 * @return a {@link java.lang.String} containing the column name
+	 */
+	@Override
+	public String getColumnName(int column) {
+		return (column == 0) ? NATableModel.PROPERTY_COLUMN : matrix.getProperty(column - 1);
+	}
+
+	/**
+	 * Returns the formatted value of a cell
+	 *
+	 * @param row an int containing the row
+	 * @param column an int containing the column
+	 *
+	 * @return an {@link java.lang.Object} containing the cell text
+	 */
+	public Object getValueAt(int row, int column) {
+		if(column == 0) {
+			return matrix.getProperty(row);
+		}
+		double value = showCovariance ? matrix.getCovariance(row, column - 1) : matrix.getCorrelation(row, column - 1);
+		if(Double.isNaN(value)) {
+			return "";
+		}
+		return NumericFunctions.formatNumber(Float.valueOf((float) value));
+	}
+}
@@ -0,0 +1,22 @@
+package com.about80minutes.palantir.helper.na;
+
+/**
+ * Receives the progress of an export and lets the export be cancelled
+ */
+public interface ExportMonitor {
+
+	/**
+	 * Reports how much of the export has been written
+	 *
+	 * @param done a long containing the number of items written
+	 * @param total a long containing the number of items to write
+	 */
+	void progress(long done, long total);
+
+	/**
+	 * Whether the export should stop, checked between items
+	 *
+	 * @return true if the export has been cancelled
+	 */
+	boolean isCancelled();
+}
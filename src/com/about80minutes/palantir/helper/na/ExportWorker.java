@@ -0,0 +1,57 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.awt.Component;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+
+/**
+ * Writes an export to a file in the background as a stream, which goes
+ * through a large buffer straight to the file's channel. Progress and
+ * cancellation are handled as for a
+ * {@link com.about80minutes.palantir.helper.na.ChannelExportWorker}.
+ */
+public abstract class ExportWorker extends ChannelExportWorker {
+
+	public static final int BUFFER_BYTES = 1024 * 1024;
+
+	/**
+	 * Constructor for the worker
+	 *
+	 * @param parent a {@link java.awt.Component} to show progress over
+	 * @param file a {@link java.io.File} to write the export to
+	 */
+	public ExportWorker(Component parent, File file) {
+		super(parent, file);
+	}
+
+	/**
+	 * Writes the export to the given stream, implementations should report
+	 * progress and stop early if cancelled
+	 *
+	 * @param stream a buffered {@link java.io.OutputStream} to write to, this
+	 * is closed by the worker
+	 *
+	 * @throws IOException if the export cannot be written
+	 */
+	protected abstract void write(OutputStream stream) throws IOException;
+
+	/**
+	 * Passes a buffered stream over the channel of the file to
+	 * {@link #write(OutputStream)}
+	 *
+	 * @param channel a {@link java.nio.channels.FileChannel} to write to,
+	 * this is closed by the worker
+	 *
+	 * @throws IOException if the export cannot be written
+	 */
+	@Override
+	protected final void write(FileChannel channel) throws IOException {
+		OutputStream output = new BufferedOutputStream(Channels.newOutputStream(channel), BUFFER_BYTES);
+		this.write(output);
+		output.flush();
+	}
+}
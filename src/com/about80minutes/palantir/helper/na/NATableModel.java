@@ -1,23 +1,39 @@
 package com.about80minutes.palantir.helper.na;
 
 import java.io.OutputStream;
-import java.util.Collections;
+import java.util.Arrays;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
 
+import javax.swing.SwingWorker;
 import javax.swing.table.AbstractTableModel;
 
 import org.apache.commons.csv.CSVPrinter;
 import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.apache.hadoop.thirdparty.guava.common.collect.Sets;
+import org.apache.log4j.Logger;
 
-import com.google.common.collect.HashBasedTable;
-import com.google.common.collect.Table;
+import com.about80minutes.util.EventThreadGuard;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.TopValues;
 
 /**
- * Customized model used by the results JTable
+ * Customized model used by the results JTable. Stats are held as raw numbers
+ * so that columns sort numerically, they are formatted for display by a
+ * {@link com.about80minutes.palantir.helper.na.NumericCellRenderer}.
+ *
+ * The rank based stats and modes are deferred, these are null until computed
+ * in the background the first time their row is displayed.
+ *
+ * Properties whose values were broken down into groups are collapsed to a
+ * single row until expanded, the group rows then follow the property row.
  */
 @SuppressWarnings("serial")
 public class NATableModel extends AbstractTableModel {
-	
+	private static final Logger LOGGER = Logger.getLogger(NATableModel.class);
+
 	public static final String PROPERTY_COLUMN = "Property";
 	public static final String COUNT_COLUMN = "Count";
 	public static final String MIN_COLUMN = "Min";
@@ -28,38 +44,254 @@ public class NATableModel extends AbstractTableModel {
 	public static final String SUM_COLUMN = "Sum";
 	public static final String RANGE_COLUMN = "Range";
 	public static final String STANDARD_DEVIATION_COLUMN = "Std. Dev.";
-	
-	private static final String[] COLUMN_NAMES = new String[]{PROPERTY_COLUMN,COUNT_COLUMN,MIN_COLUMN,MAX_COLUMN,MEAN_COLUMN,MEDIAN_COLUMN,MODE_COLUMN,SUM_COLUMN,RANGE_COLUMN,STANDARD_DEVIATION_COLUMN};
-	private Table<String, String, String> valueTable = HashBasedTable.create();
-	private List<String> properties = Lists.newArrayList();
-	
+	public static final String LOWER_QUARTILE_COLUMN = "Q1";
+	public static final String UPPER_QUARTILE_COLUMN = "Q3";
+	public static final String INTERQUARTILE_RANGE_COLUMN = "IQR";
+	public static final String PERCENTILE_5_COLUMN = "5th Pct.";
+	public static final String PERCENTILE_95_COLUMN = "95th Pct.";
+
+	public static final String PENDING_VALUE = "...";
+	public static final String GROUP_SEPARATOR = " / ";
+
+	private static final String[] COLUMN_NAMES = new String[]{PROPERTY_COLUMN,COUNT_COLUMN,MIN_COLUMN,MAX_COLUMN,MEAN_COLUMN,MEDIAN_COLUMN,MODE_COLUMN,SUM_COLUMN,RANGE_COLUMN,STANDARD_DEVIATION_COLUMN,LOWER_QUARTILE_COLUMN,UPPER_QUARTILE_COLUMN,INTERQUARTILE_RANGE_COLUMN,PERCENTILE_5_COLUMN,PERCENTILE_95_COLUMN};
+
+	//positions of the columns in COLUMN_NAMES
+	private static final int COUNT = 1;
+	private static final int MIN = 2;
+	private static final int MAX = 3;
+	private static final int MEAN = 4;
+	private static final int MEDIAN = 5;
+	private static final int MODE = 6;
+	private static final int SUM = 7;
+	private static final int RANGE = 8;
+	private static final int STANDARD_DEVIATION = 9;
+	private static final int LOWER_QUARTILE = 10;
+	private static final int UPPER_QUARTILE = 11;
+	private static final int INTERQUARTILE_RANGE = 12;
+	private static final int PERCENTILE_5 = 13;
+	private static final int PERCENTILE_95 = 14;
+
+	/**
+	 * Orders modes by their most frequent value, properties with no mode first
+	 */
+	public static final Comparator<TopValues> MODE_COMPARATOR = new Comparator<TopValues>() {
+		public int compare(TopValues first, TopValues second) {
+			if(first.isEmpty() || second.isEmpty()) {
+				return first.size() - second.size();
+			}
+			return Float.compare(first.getValue(0), second.getValue(0));
+		}
+	};
+
+	private StatsUpdate stats = new StatsUpdate(0, null);
+	private RankStats[] rankStats = new RankStats[0];
+	private boolean[] requestedRows = new boolean[0];
+	//positions in the stats of the rows shown, group rows are only shown
+	//once their property is expanded
+	private int[] visibleRows = new int[0];
+	private boolean showingGroups = false;
+	private Set<String> expanded = Sets.newHashSet();
+
+	/**
+	 * Computes the deferred rank based stats on demand
+	 */
+	public interface DeferredCells {
+
+		/**
+		 * Computes the rank based stats of a property or one of its groups,
+		 * this is called off the event thread
+		 *
+		 * @param property a {@link java.lang.String} containing the property
+		 * @param group a {@link java.lang.String} containing the group, or
+		 * null for all values of the property
+		 *
+		 * @return the {@link com.about80minutes.palantir.helper.na.RankStats}
+		 * of the property, or null if the data has changed since the stats
+		 * were deferred
+		 */
+		RankStats compute(String property, String group);
+
+		/**
+		 * Computes the rank based stats of several rows
+		 *
+		 * @param properties a {@link java.util.List} of the property of each
+		 * row
+		 * @param groups a {@link java.util.List} of the group of each row,
+		 * null entries for all values of the property
+		 *
+		 * @return a {@link com.about80minutes.palantir.helper.na.RankStats}[]
+		 * with an entry per row, or null if the data has changed since the
+		 * stats were deferred
+		 */
+		RankStats[] computeAll(List<String> properties, List<String> groups);
+	}
+
 	/**
 	 * Sets the table data value
-	 * 
-	 * @param data a {@link com.google.common.collect.Table} containing the data
-	 * to set
-	 */
-	public void setTableData(Table<String, String, String> data) {
-		valueTable = data;
-		properties.clear();
-		properties.addAll(valueTable.rowKeySet());
-		Collections.sort(properties);
-		
+	 *
+	 * @param data a {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * containing the data to set, with properties in display order
+	 */
+	public void setTableData(StatsUpdate data) {
+		stats = data;
+		rankStats = new RankStats[data.size()];
+		requestedRows = new boolean[data.size()];
+		this.updateVisibleRows();
+
 		this.fireTableDataChanged();
 	}
-	
+
+	/**
+	 * Works out which rows are shown from the properties which are expanded
+	 */
+	private void updateVisibleRows() {
+		int size = 0;
+		boolean groups = false;
+		int[] rows = new int[stats.size()];
+		for(int row = 0;row < stats.size();row++) {
+			if(stats.getGroup(row) == null) {
+				rows[size++] = row;
+			} else if(expanded.contains(stats.getProperty(row))) {
+				rows[size++] = row;
+				groups = true;
+			}
+		}
+		visibleRows = (size == rows.length) ? rows : Arrays.copyOf(rows, size);
+		showingGroups = groups;
+	}
+
+	/**
+	 * Whether any group rows are shown, they are only in place under their
+	 * property in the order of the model
+	 *
+	 * @return true if an expanded property has group rows
+	 */
+	public boolean isShowingGroups() {
+		return showingGroups;
+	}
+
+	/**
+	 * Whether a row holds the stats of a group of a property
+	 *
+	 * @param row an int containing the row number
+	 *
+	 * @return true if the row is a group row
+	 */
+	public boolean isGroupRow(int row) {
+		return stats.getGroup(visibleRows[row]) != null;
+	}
+
+	/**
+	 * Gets the property of a row
+	 *
+	 * @param row an int containing the row number
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public String getProperty(int row) {
+		return stats.getProperty(visibleRows[row]);
+	}
+
+	/**
+	 * Gets the group of a row
+	 *
+	 * @param row an int containing the row number
+	 *
+	 * @return a {@link java.lang.String} containing the group name, or null
+	 * if the row is a property row
+	 */
+	public String getGroup(int row) {
+		return stats.getGroup(visibleRows[row]);
+	}
+
+	/**
+	 * Whether the values of a property row were broken down into groups
+	 *
+	 * @param row an int containing the row number
+	 *
+	 * @return true if the property has group rows
+	 */
+	public boolean hasGroups(int row) {
+		int dataRow = visibleRows[row];
+		return stats.getGroup(dataRow) == null && dataRow + 1 < stats.size() && stats.getGroup(dataRow + 1) != null;
+	}
+
+	/**
+	 * Whether the group rows of a property are shown
+	 *
+	 * @param row an int containing the row number
+	 *
+	 * @return true if the property of the row is expanded
+	 */
+	public boolean isExpanded(int row) {
+		return expanded.contains(stats.getProperty(visibleRows[row]));
+	}
+
+	/**
+	 * Shows or hides the group rows of the property of a row, properties stay
+	 * expanded when the table data is replaced
+	 *
+	 * @param row an int containing the row number
+	 */
+	public void toggleGroups(int row) {
+		String property = stats.getProperty(visibleRows[row]);
+		if(!expanded.remove(property)) {
+			expanded.add(property);
+		}
+		this.updateVisibleRows();
+		this.fireTableDataChanged();
+	}
+
+	/**
+	 * Gets the label of a row, the property name followed by the group name
+	 * for group rows so that groups sort after their property
+	 *
+	 * @param stats the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * holding the row
+	 * @param row an int containing the position of the row in the stats
+	 *
+	 * @return a {@link java.lang.String} containing the label
+	 */
+	private static String getRowLabel(StatsUpdate stats, int row) {
+		if(stats.getGroup(row) == null) {
+			return stats.getProperty(row);
+		}
+		return stats.getProperty(row) + GROUP_SEPARATOR + stats.getGroup(row);
+	}
+
 	/**
 	 * Returns the name of the given column
-	 * 
+	 *
 	 * @param colNum an int containing the column number
 	 */
 	public String getColumnName(int colNum) {
 	    return COLUMN_NAMES[colNum];
 	}
 
+	/**
+	 * Returns the type of the values in the given column, used to pick a
+	 * renderer and comparator
+	 *
+	 * @param colNum an int containing the column number
+	 *
+	 * @return a {@link java.lang.Class} of the column values
+	 */
+	public Class<?> getColumnClass(int colNum) {
+		switch(colNum) {
+			case 0:
+				return String.class;
+			case COUNT:
+				return Integer.class;
+			case MODE:
+				return TopValues.class;
+			default:
+				return Float.class;
+		}
+	}
+
 	/**
 	 * Gets a count of the number of columns
-	 * 
+	 *
 	 * @return an int containing the number of columns
 	 */
 	public int getColumnCount() {
@@ -68,54 +300,288 @@ public class NATableModel extends AbstractTableModel {
 
 	/**
 	 * Gets a count of the number of rows
-	 * 
+	 *
 	 * @return an int containing the number of rows
 	 */
 	public int getRowCount() {
-		return properties.size();
+		return visibleRows.length;
 	}
 
 	/**
 	 * Gets the cell value at a given co-ordinate
-	 * 
+	 *
+	 * @param viewRow an int containing the row number
+	 * @param column an int containing the column number
+	 *
+	 * @return a {@link java.lang.Object} containing the cell value, null if
+	 * the value is deferred and not yet computed
+	 */
+	public Object getValueAt(int viewRow, int column) {
+		int row = visibleRows[viewRow];
+		switch(column) {
+			case 0:
+				return getRowLabel(stats, row);
+			case COUNT:
+				return Integer.valueOf(stats.getCount(row));
+			case MIN:
+				return Float.valueOf(stats.getMin(row));
+			case MAX:
+				return Float.valueOf(stats.getMax(row));
+			case MEAN:
+				return Float.valueOf(stats.getMean(row));
+			case SUM:
+				return Float.valueOf(stats.getSum(row));
+			case RANGE:
+				return Float.valueOf(stats.getMax(row) - stats.getMin(row));
+			case STANDARD_DEVIATION:
+				return Float.valueOf(stats.getStdDeviation(row));
+			default:
+				RankStats rank = rankStats[row];
+				if(rank == null) {
+					//only rows which are displayed are computed
+					this.requestRow(row);
+					return null;
+				}
+				if(column == MODE) {
+					return rank.getModes();
+				}
+				return Float.valueOf(getRankValue(rank, column));
+		}
+	}
+
+	/**
+	 * Whether cells of the given column are computed on demand
+	 *
+	 * @param column an int containing the column number
+	 *
+	 * @return true if the column is deferred
+	 */
+	public boolean isDeferred(int column) {
+		return isDeferredColumn(column);
+	}
+
+	/**
+	 * Whether cells of the given column are computed on demand
+	 *
+	 * @param column an int containing the column number
+	 *
+	 * @return true if the column is deferred
+	 */
+	private static boolean isDeferredColumn(int column) {
+		return column == MEDIAN || column == MODE || column >= LOWER_QUARTILE;
+	}
+
+	/**
+	 * Whether the value at a given co-ordinate is an estimate
+	 *
+	 * @param row an int containing the row number
+	 * @param column an int containing the column number
+	 *
+	 * @return true if the value was estimated
+	 */
+	public boolean isApproximate(int row, int column) {
+		RankStats rank = rankStats[visibleRows[row]];
+		return column != MODE && this.isDeferred(column) && rank != null && rank.isApproximate();
+	}
+
+	/**
+	 * Reads the value of a rank based column
+	 *
+	 * @param rank the {@link com.about80minutes.palantir.helper.na.RankStats}
+	 * of the row
+	 * @param column an int containing the column number
+	 *
+	 * @return a float containing the value
+	 */
+	private static float getRankValue(RankStats rank, int column) {
+		switch(column) {
+			case MEDIAN:
+				return rank.getMedian();
+			case LOWER_QUARTILE:
+				return rank.getLowerQuartile();
+			case UPPER_QUARTILE:
+				return rank.getUpperQuartile();
+			case INTERQUARTILE_RANGE:
+				return rank.getInterquartileRange();
+			case PERCENTILE_5:
+				return rank.getPercentile5();
+			case PERCENTILE_95:
+				return rank.getPercentile95();
+			default:
+				throw new IllegalArgumentException(String.format("Column %d is not rank based", column));
+		}
+	}
+
+	/**
+	 * Starts computing the deferred stats of a row in the background, unless
+	 * they have already been requested
+	 *
+	 * @param row an int containing the position of the row in the stats
+	 */
+	private void requestRow(final int row) {
+		final DeferredCells source = stats.getDeferredCells();
+		if(source == null || requestedRows[row]) {
+			return;
+		}
+		requestedRows[row] = true;
+		final StatsUpdate requestedStats = stats;
+		final String property = stats.getProperty(row);
+		final String group = stats.getGroup(row);
+		new SwingWorker<RankStats, Void>() {
+
+			@Override
+			protected RankStats doInBackground() throws Exception {
+				return source.compute(property, group);
+			}
+
+			@Override
+			protected void done() {
+				try {
+					RankStats rank = get();
+					if(rank == null || requestedStats != stats) {
+						return; //the table data has been replaced
+					}
+					rankStats[row] = rank;
+					int viewRow = Arrays.binarySearch(visibleRows, row);
+					if(viewRow >= 0) {
+						NATableModel.this.fireTableRowsUpdated(viewRow, viewRow);
+					}
+				} catch (InterruptedException e) {
+					LOGGER.error("Error computing deferred cells", e);
+				} catch (ExecutionException e) {
+					LOGGER.error("Error computing deferred cells", e);
+				}
+			}
+		}.execute();
+	}
+
+	/**
+	 * Gets the table data, the returned update must not be modified
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * shown by the table
+	 */
+	public StatsUpdate getTableData() {
+		return stats;
+	}
+
+	/**
+	 * Gets the deferred stats computed so far, this is a copy so it may be
+	 * read off the event thread
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.RankStats}[]
+	 * with an entry per row of the table data, including collapsed group
+	 * rows, null where not yet computed
+	 */
+	public RankStats[] getRankStats() {
+		return rankStats.clone();
+	}
+
+	/**
+	 * Gets the deferred stats of a row
+	 *
 	 * @param row an int containing the row number
-	 * @param column an int containing the column number 
-	 * 
-	 * @return a {@link java.lang.Object} containing the cell value 
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.RankStats} of
+	 * the row, or null if not yet computed
 	 */
-	public Object getValueAt(int row, int column) {
-		String value = properties.get(row);
-		if(column > 0) { //property column
-			value = valueTable.get(value, COLUMN_NAMES[column]);
-		} 
-		return value;
+	public RankStats getRankStats(int row) {
+		return rankStats[visibleRows[row]];
 	}
 
 	/**
-	 * Prints the table data to the given output stream. This method does not
-	 * close the stream after processing
-	 * 
+	 * Prints the table data to the given output stream, any deferred stats
+	 * not yet computed are computed first. This method does not close the
+	 * stream after processing
+	 *
 	 * @param stream a {@link java.io.OutputStream} to write the data to
 	 */
 	public void toCSV(OutputStream stream) {
+		toCSV(stats, rankStats.clone(), stream, null);
+	}
+
+	/**
+	 * Prints table data to the given output stream, any deferred stats not
+	 * yet computed are computed first. Group rows are printed whether or not
+	 * their property is expanded. This only reads its arguments so it
+	 * may be called off the event thread with data taken from
+	 * {@link #getTableData()} and {@link #getRankStats()}. This method does
+	 * not close the stream after processing
+	 *
+	 * @param stats the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * to print
+	 * @param rankStats a {@link com.about80minutes.palantir.helper.na.RankStats}[]
+	 * of deferred stats already computed
+	 * @param stream a {@link java.io.OutputStream} to write the data to
+	 * @param monitor an {@link com.about80minutes.palantir.helper.na.ExportMonitor}
+	 * to report progress to, or null
+	 */
+	public static void toCSV(StatsUpdate stats, RankStats[] rankStats, OutputStream stream, ExportMonitor monitor) {
+		EventThreadGuard.assertOffEventThread("Exporting the table");
+		RankStats[] computed = null;
+		List<Integer> missing = Lists.newArrayList();
+		if(stats.getDeferredCells() != null) {
+			List<String> properties = Lists.newArrayList();
+			List<String> groups = Lists.newArrayList();
+			for(int row = 0;row < rankStats.length;row++) {
+				if(rankStats[row] == null) {
+					missing.add(row);
+					properties.add(stats.getProperty(row));
+					groups.add(stats.getGroup(row));
+				}
+			}
+			if(!missing.isEmpty()) {
+				computed = stats.getDeferredCells().computeAll(properties, groups);
+			}
+		}
+		if(computed != null) {
+			rankStats = rankStats.clone();
+			for(int i = 0;i < missing.size();i++) {
+				rankStats[missing.get(i)] = computed[i];
+			}
+		}
+
 		CSVPrinter printer = new CSVPrinter(stream);
 		//print header first
 		printer.println(COLUMN_NAMES);
 
 		//then print row data
 		String[] tmpRow = new String[COLUMN_NAMES.length];
-		
-		for(String row : valueTable.rowKeySet()) {
-			tmpRow[0] = row;
+
+		for(int row = 0;row < stats.size();row++) {
+			if(monitor != null) {
+				if(monitor.isCancelled()) {
+					return;
+				}
+				monitor.progress(row, stats.size());
+			}
+			RankStats rank = rankStats[row];
+			tmpRow[0] = getRowLabel(stats, row);
+			tmpRow[COUNT] = NumericFunctions.formatNumber(stats.getCount(row));
+			tmpRow[MIN] = NumericFunctions.formatNumber(stats.getMin(row));
+			tmpRow[MAX] = NumericFunctions.formatNumber(stats.getMax(row));
+			tmpRow[MEAN] = NumericFunctions.formatNumber(stats.getMean(row));
+			tmpRow[SUM] = NumericFunctions.formatNumber(stats.getSum(row));
+			tmpRow[RANGE] = NumericFunctions.formatNumber(stats.getMax(row) - stats.getMin(row));
+			tmpRow[STANDARD_DEVIATION] = NumericFunctions.formatNumber(stats.getStdDeviation(row));
 			for(int i = 1;i < COLUMN_NAMES.length;i++) {
-				String col = COLUMN_NAMES[i];
-				String tmpCellVal = valueTable.get(row, col);
-				if(tmpCellVal == null) {
-					tmpCellVal = "";
+				if(!isDeferredColumn(i)) {
+					continue;
+				}
+				String tmpCellVal = "";
+				if(rank != null && i == MODE) {
+					tmpCellVal = NumericFunctions.formatTopValues(rank.getModes());
+				} else if(rank != null && rank.isApproximate()) {
+					tmpCellVal = NumericFunctions.formatApproximateNumber(getRankValue(rank, i));
+				} else if(rank != null) {
+					tmpCellVal = NumericFunctions.formatNumber(getRankValue(rank, i));
 				}
 				tmpRow[i] = tmpCellVal;
 			}
 			printer.println(tmpRow);
 		}
+		if(monitor != null) {
+			monitor.progress(stats.size(), stats.size());
+		}
 	}
 }
@@ -1,28 +1,54 @@
 package com.about80minutes.palantir.helper.na;
 
-import java.util.ArrayList;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.channels.WritableByteChannel;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Observable;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
 
 import javax.swing.SwingWorker;
 
 import org.apache.log4j.Logger;
 
+import com.about80minutes.util.AlignedColumn;
+import com.about80minutes.util.CalendarBuckets;
+import com.about80minutes.util.CoMoments;
+import com.about80minutes.util.EventThreadGuard;
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.LongColumn;
 import com.about80minutes.util.NumericFunctions;
-import com.google.common.collect.ArrayListMultimap;
-import com.google.common.collect.HashBasedTable;
+import com.about80minutes.util.OrderStatistics;
+import com.about80minutes.util.ParallelStats;
+import com.about80minutes.util.QuantileSketch;
+import com.about80minutes.util.QuantileSummary;
+import com.about80minutes.util.StatsAccumulator;
+import com.about80minutes.util.TimeBuckets;
+import com.about80minutes.util.TopValues;
 import com.google.common.collect.Lists;
-import com.google.common.collect.Multimap;
-import com.google.common.collect.Table;
-import com.palantir.api.horizon.v1.extractor.DisplayableValue;
-import com.palantir.api.horizon.v1.extractor.HValueExtractor;
-import com.palantir.api.horizon.v1.extractor.HValueExtractors;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+import com.google.common.primitives.Longs;
 import com.palantir.api.horizon.v1.object.HObject;
-import com.palantir.api.horizon.v1.object.HPropertyBaseType;
-import com.palantir.api.horizon.v1.object.HPropertyType;
 import com.palantir.api.workspace.PalantirWorkspaceContext;
 import com.palantir.api.workspace.selection.SelectionAgentEvent;
 import com.palantir.api.workspace.selection.SelectionAgentListener;
@@ -31,16 +57,81 @@ import com.palantir.services.interfaces.Identifiables;
 
 /**
  * Controller class, this deals with the events thrown by NumericanalysisView
+ *
+ * Selection events arrive on the event dispatch thread, which only starts a
+ * background job. The job works out the change in selection, extracts the
+ * values of added objects, merges them into the store and computes the stats,
+ * the event thread is then handed the finished
+ * {@link com.about80minutes.palantir.helper.na.StatsUpdate} to display.
  */
 public class NumericAnalysisController extends Observable {
 	private static final Logger LOGGER = Logger.getLogger(NumericAnalysisController.class);
 	
+	public static final int DEFAULT_APPROXIMATE_THRESHOLD = 1000000;
+	public static final long DEFAULT_HEAP_BUDGET_BYTES = 256L * 1024 * 1024;
+	//system property overriding the heap budget of the selected values
+	public static final String HEAP_BUDGET_PROPERTY = "nahelper.heapBudgetBytes";
+	public static final int EXPORT_CHUNK_SIZE = 65536;
+	private static final String LINE_SEPARATOR = "\r\n";
+	public static final String[] VALUE_COLUMN_NAMES = new String[]{"Property","Object ID","Value"};
+	public static final String UNKNOWN_TYPE = "(unknown)";
+	public static final String NO_VALUE = "(none)";
+	public static final String OTHER_VALUES = "(other)";
+	//bounds the groups of a numeric group property, later values are grouped as other
+	public static final int MAX_GROUPS = 1000;
+	//a NaN which Float.floatToIntBits never returns, keys the other group of a type
+	private static final int OTHER_VALUE_BITS = 0x7fc00001;
+	//which objects findObjects selects
+	public static final int SELECT_MIN = 0;
+	public static final int SELECT_MAX = 1;
+	public static final int SELECT_MODE = 2;
+	public static final int SELECT_IQR_OUTLIERS = 3;
+	public static final int SELECT_Z_SCORE_OUTLIERS = 4;
+	public static final float OUTLIER_IQR_FACTOR = 1.5f;
+	public static final double OUTLIER_Z_SCORE = 3d;
+	//bounds the arrays of computeTimeBuckets, about 270 years of days, dates
+	//beyond are folded into the first or last bucket
+	public static final int MAX_TIME_BUCKETS = 100000;
+	
 	private NASelectionAgent selectionAgent = null;
 	private PalantirWorkspaceContext palantirContext = null;
-	private Multimap<String, Float> cachedPropertyMap = null;
+	private ObjectValueCache valueCache = null;
+	private PropertyValueStore propertyStore = null;
+	private PropertyExtractorCache extractors = null;
+	//the store, the selection it holds and the resets it has applied are
+	//guarded by storeLock, the requested objects and count of selection events
+	//are only used on the event thread
+	private long[] appliedSelection = new long[0];
+	private long resetsApplied = 0;
+	private volatile long resetsRequested = 0;
+	private Collection<Locator> requestedObjects = Collections.emptyList();
+	private Collection<Locator> ignoredSelection = null;
+	private long selectionEvents = 0;
+	private final Set<Long> invalidatedIDs = Sets.newHashSet();
+	private SelectionJobScheduler scheduler = null;
+	private NumericAnalysisMetrics metrics = null;
+	//values are added to the groups of the latest group property, the store
+	//holds values of the groups it was last reset with, guarded by storeLock
+	private volatile Grouping grouping = new Grouping(-1);
+	private Grouping storeGrouping = grouping;
+	//guards the store against changes while deferred stats are computed
+	private final ReadWriteLock storeLock = new ReentrantReadWriteLock();
+	private volatile long statsGeneration = 0;
+	private int approximateThreshold = DEFAULT_APPROXIMATE_THRESHOLD;
+	private int sketchAccuracy = QuantileSketch.DEFAULT_K;
+	private int batchSize = BatchedObjectLoader.DEFAULT_BATCH_SIZE;
+	private int maxInFlightBatches = BatchedObjectLoader.DEFAULT_MAX_IN_FLIGHT;
+	//batches are loaded on threads of their own, the selection job blocks
+	//waiting for them so they must not queue behind it on the workspace pool
+	private ThreadPoolExecutor loaderExecutor = null;
+	private long heapBudgetBytes = DEFAULT_HEAP_BUDGET_BYTES;
+	private boolean parallelStats = true;
+	private int parallelThreshold = ParallelStats.DEFAULT_SERIAL_THRESHOLD;
 	
 	/**
-	 * Constructor for the controller
+	 * Constructor for the controller, the heap budget of the selected values
+	 * is taken from the {@link #HEAP_BUDGET_PROPERTY} system property, or
+	 * {@link #DEFAULT_HEAP_BUDGET_BYTES} if that is not set
 	 * 
 	 * @param palantirContext a {@link com.palantir.api.workspace.PalantirWorkspaceContext}
 	 * to use by this controller
@@ -48,6 +139,26 @@ public class NumericAnalysisController extends Observable {
 	public NumericAnalysisController(PalantirWorkspaceContext palantirContext) {
 		this.selectionAgent = new NASelectionAgent();
 		this.palantirContext = palantirContext;
+		this.valueCache = ObjectValueCache.forWorkspace(palantirContext);
+		this.propertyStore = new PropertyValueStore(valueCache.getDictionary());
+		this.setHeapBudgetBytes(Long.getLong(HEAP_BUDGET_PROPERTY, DEFAULT_HEAP_BUDGET_BYTES).longValue());
+		this.extractors = new PropertyExtractorCache(palantirContext, valueCache.getDictionary(),
+				valueCache.getTypeDictionary(), valueCache.getDateDictionary());
+		this.scheduler = new SelectionJobScheduler(palantirContext.getMonitoredExecutorService(),
+				SelectionJobScheduler.DEFAULT_DEBOUNCE_MILLIS);
+		this.loaderExecutor = new ThreadPoolExecutor(maxInFlightBatches, maxInFlightBatches, 60L, TimeUnit.SECONDS,
+				new LinkedBlockingQueue<Runnable>(), new ThreadFactory() {
+					private final AtomicInteger count = new AtomicInteger();
+					public Thread newThread(Runnable task) {
+						Thread thread = new Thread(task, String.format("NAHelper batch loader %d", count.incrementAndGet()));
+						thread.setDaemon(true);
+						return thread;
+					}
+				});
+		this.loaderExecutor.allowCoreThreadTimeOut(true);
+		this.metrics = new NumericAnalysisMetrics();
+		this.metrics.register();
+		this.metrics.startLogging(NumericAnalysisMetrics.DEFAULT_LOG_INTERVAL_MILLIS);
 	}
 	
 	/**
@@ -61,58 +172,1234 @@ public class NumericAnalysisController extends Observable {
 	}
 	
 	/**
-	 * Process the selected objects.
+	 * Gets the timers and counters of each phase of handling a selection
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.NumericAnalysisMetrics}
+	 * of this controller
+	 */
+	public NumericAnalysisMetrics getMetrics() {
+		return this.metrics;
+	}
+	
+	/**
+	 * Sets the number of values a property may have before its rank based
+	 * stats are estimated with a {@link com.about80minutes.util.QuantileSketch}
+	 * rather than computed exactly. Use 0 to always estimate and
+	 * {@link java.lang.Integer#MAX_VALUE} to never estimate.
+	 * 
+	 * @param approximateThreshold an int containing the number of values
+	 */
+	public void setApproximateThreshold(int approximateThreshold) {
+		this.approximateThreshold = approximateThreshold;
+	}
+	
+	/**
+	 * Sets the accuracy of the sketch used for estimated rank based stats,
+	 * larger values are more accurate but use more memory
+	 * 
+	 * @param sketchAccuracy an int containing the sketch size parameter k
+	 */
+	public void setSketchAccuracy(int sketchAccuracy) {
+		this.sketchAccuracy = sketchAccuracy;
+	}
+	
+	/**
+	 * Sets whether stats are computed in parallel, properties are computed
+	 * concurrently and large columns are split into chunks
+	 * 
+	 * @param parallelStats a boolean, true to compute stats in parallel
+	 */
+	public void setParallelStats(boolean parallelStats) {
+		this.parallelStats = parallelStats;
+	}
+	
+	/**
+	 * Sets the number of values below which stats are computed serially, so
+	 * small selections do not pay for task overhead
+	 * 
+	 * @param parallelThreshold an int containing the number of values
+	 */
+	public void setParallelThreshold(int parallelThreshold) {
+		this.parallelThreshold = parallelThreshold;
+	}
+	
+	/**
+	 * Sets the property whose values, along with the object type, break the
+	 * stats of each property down into groups. All values are regrouped, the
+	 * values of the selection are cached so this does not reload objects.
+	 * 
+	 * @param property a {@link java.lang.String} containing the property
+	 * name, or null to group by object type only
+	 */
+	public void setGroupProperty(String property) {
+		int index = (property == null) ? -1 : valueCache.getDictionary().indexOf(property);
+		if(index == grouping.property) {
+			return;
+		}
+		//the names and keys of the old groups are dropped together
+		grouping = new Grouping(index);
+		//the next selection job clears the store and regroups every value
+		resetsRequested++;
+		this.select(requestedObjects, System.nanoTime());
+	}
+	
+	/**
+	 * Gets the property whose values break the stats down into groups
+	 * 
+	 * @return a {@link java.lang.String} containing the property name, or
+	 * null if grouped by object type only
+	 */
+	public String getGroupProperty() {
+		int index = grouping.property;
+		return (index < 0) ? null : valueCache.getDictionary().getName(index);
+	}
+	
+	/**
+	 * Sets the number of objects loaded from Horizon in each batch
+	 * 
+	 * @param batchSize an int containing the number of objects per batch
+	 */
+	public void setBatchSize(int batchSize) {
+		this.batchSize = batchSize;
+	}
+	
+	/**
+	 * Sets the number of batches that may be loading at once, this also bounds
+	 * the number of loaded objects held in memory and the threads loading them
+	 * 
+	 * @param maxInFlightBatches an int containing the number of batches
+	 */
+	public void setMaxInFlightBatches(int maxInFlightBatches) {
+		this.maxInFlightBatches = maxInFlightBatches;
+		int threads = Math.max(maxInFlightBatches, 1);
+		//the maximum may never be below the core size
+		if(threads > loaderExecutor.getMaximumPoolSize()) {
+			loaderExecutor.setMaximumPoolSize(threads);
+			loaderExecutor.setCorePoolSize(threads);
+		} else {
+			loaderExecutor.setCorePoolSize(threads);
+			loaderExecutor.setMaximumPoolSize(threads);
+		}
+	}
+	
+	/**
+	 * Sets the number of bytes of heap the selected values may use before
+	 * they are spilled to memory mapped temporary files
+	 * 
+	 * @param heapBudgetBytes a long containing the budget in bytes
+	 */
+	public void setHeapBudgetBytes(long heapBudgetBytes) {
+		this.heapBudgetBytes = heapBudgetBytes;
+		this.propertyStore.setHeapBudgetBytes(heapBudgetBytes);
+	}
+	
+	/**
+	 * Sets how long to wait after a selection event for further events before
+	 * processing the selection, so that a burst of events is handled once
+	 * 
+	 * @param debounceMillis an int containing the time in milliseconds, 0
+	 * processes every selection immediately
+	 */
+	public void setDebounceMillis(int debounceMillis) {
+		this.scheduler.setDebounceMillis(debounceMillis);
+	}
+	
+	/**
+	 * Stops any pending or running selection job and deletes any spilled
+	 * values, called when the view is closed
+	 */
+	public void dispose() {
+		this.scheduler.cancel();
+		this.loaderExecutor.shutdown();
+		this.metrics.stopLogging();
+		this.metrics.unregister();
+		storeLock.writeLock().lock();
+		try {
+			statsGeneration++;
+			this.propertyStore.clear();
+			appliedSelection = new long[0];
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+	}
+	
+	/**
+	 * Starts a background job to bring the store in line with the given
+	 * selection, any job for an earlier selection is cancelled. This is
+	 * called on the event dispatch thread so everything that grows with the
+	 * size of the selection, even copying and sorting the IDs, is left to the
+	 * job. The job's copy of the objects replaces the given collection as the
+	 * selected objects once it finishes.
 	 *
-	 * @param items a {@link java.util.Collection} of {@link com.palantir.api.horizon.v1.object.HObject}s that are currently selected
-	 */
-	private void processHObjects(Collection<HObject> items) {
-		//always reset the map first
-		cachedPropertyMap = ArrayListMultimap.create();
-		if (items != null) {
-			// The propertyMap is a Mapping of the display string to all Float values which match that key
-			for (HObject item : items) {
-				Iterable<HPropertyType<?>> hobProps = item.getPropertyTypes();
+	 * @param objects a {@link java.util.Collection} of the selected objects'
+	 * {@link com.palantir.services.Locator}s
+	 * @param receivedNanos a long containing the time the selection event was
+	 * received, from {@link java.lang.System#nanoTime()}
+	 */
+	private void select(final Collection<Locator> objects, final long receivedNanos) {
+		//any earlier selection still loading is cancelled and its results discarded
+		final long generation = scheduler.begin();
+		final long resets = resetsRequested;
+		final Grouping jobGrouping = grouping;
+		requestedObjects = objects;
+
+		//anonymous class to deal with selection in the background
+		scheduler.execute(new SwingWorker<StatsUpdate, Void>() {
+			
+			private Collection<Locator> copied = null;
 
-				// Get its Properties
-				for (HPropertyType<?> htype : hobProps ) {
+			/**
+			 * Perform some actions in the background, this copies the
+			 * selection, applies it to the store and computes the stats
+			 * 
+			 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+			 * of the selection, or null if the job was superseded
+			 */
+			@Override
+			protected StatsUpdate doInBackground() throws Exception {
+				//covers the debounce delay and any wait for an executor thread
+				metrics.record(NumericAnalysisMetrics.QUEUE_WAIT, receivedNanos);
+				copied = Lists.newArrayList(objects);
+				long[] selectionIDs = SelectionDelta.toSortedIds(Identifiables.getIdList(copied));
+				return NumericAnalysisController.this.processSelection(generation, resets, jobGrouping, selectionIDs);
+			}
 
-					//Handle Properties of Number Base Type - currently doesn't
-					//handle component properties
-					if(htype.getPropertyBaseType() == HPropertyBaseType.NUMBER) {
+			/**
+			 * Perform some actions when the background execution is
+			 * complete, the finished stats are passed to observers
+			 */
+			protected void done() {
+				if(isCancelled()) {
+					return; //superseded by a later selection
+				}
+				try {
+					StatsUpdate update = get();
+					if(!scheduler.isCurrent(generation)) {
+						return;
+					}
+					requestedObjects = copied;
+					if(update != null) {
+						NumericAnalysisController.this.setChanged();
+						NumericAnalysisController.this.notifyObservers(update);
+					}
+				} catch (InterruptedException e) {									
+					LOGGER.error("Error handling selection",  e);
+				} catch (ExecutionException e) {
+					LOGGER.error("Error handling selection",  e);
+				}
+			}
+		});
+	}
+	
+	/**
+	 * Works out the change between the objects in the store and the given
+	 * selection, then loads any newly selected objects that are not already
+	 * cached before applying the change and computing the stats. This runs
+	 * on a background thread.
+	 *
+	 * @param generation a long containing the scheduler generation of the job
+	 * @param resets a long containing the number of resets requested when
+	 * the job was started
+	 * @param jobGrouping the groups added values are placed in
+	 * @param selectionIDs a long[] containing the selected object IDs in
+	 * ascending order
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * of the selection, or null if the job was superseded
+	 * 
+	 * @throws InterruptedException if the job is cancelled while loading
+	 * @throws ExecutionException if an object cannot be loaded
+	 */
+	private StatsUpdate processSelection(long generation, long resets, final Grouping jobGrouping, long[] selectionIDs) throws InterruptedException, ExecutionException {
+		EventThreadGuard.assertOffEventThread("Processing a selection");
+		long[] invalidated = this.getInvalidated();
+		SelectionDelta delta = null;
+		long stagedBudget = 0;
+		//a job may only merge while it is the latest, so the selection read
+		//here is the one still applied when this job merges
+		storeLock.readLock().lock();
+		try {
+			//values of changed objects, and every value after a reset, are replaced
+			long[] kept = (resets == resetsApplied) ? new SelectionDelta(invalidated, appliedSelection).getAdded() : new long[0];
+			delta = new SelectionDelta(kept, selectionIDs);
+			//added values share the budget with those already in the store
+			stagedBudget = Math.max(heapBudgetBytes - propertyStore.getHeapBytes(), 0);
+		} finally {
+			storeLock.readLock().unlock();
+		}
 
-						HValueExtractor<Float> propEx = HValueExtractors.newPropertyValueExtractor(htype);
-						Iterable<DisplayableValue<Float>> propValues = propEx.getDisplayValues(item);
+		//values already extracted are taken from the cache, only misses are loaded
+		final Map<Long, ObjectValues> cachedValues = Maps.newHashMap();
+		final List<Long> missingIDs = Lists.newArrayList();
+		for(long objectId : delta.getAdded()) {
+			ObjectValues values = valueCache.get(objectId);
+			if(values == null) {
+				missingIDs.add(objectId);
+			} else {
+				cachedValues.put(objectId, values);
+			}
+		}
 
-						for (DisplayableValue<Float> hold : propValues){
-							String propName = palantirContext.getOntology().getPropertyTypeByUri(htype.getUri()).getDisplayName();
-							cachedPropertyMap.put(propName, Float.valueOf(hold.getDisplayValue().replaceAll(",", "")));
+		final PropertyValueStore added = this.stageValues(cachedValues, jobGrouping, stagedBudget);
+		try {
+			if (!missingIDs.isEmpty()) {
+				BatchedObjectLoader loader = new BatchedObjectLoader(palantirContext,
+						loaderExecutor, batchSize, maxInFlightBatches);
+				loader.setMetrics(metrics);
+				final ObjectValues.Builder builder = new ObjectValues.Builder();
+				//values are extracted into the staged store as each batch arrives
+				loader.load(missingIDs, new BatchedObjectLoader.BatchHandler() {
+					public void handle(Collection<HObject> batch) {
+						long start = System.nanoTime();
+						long extracted = 0;
+						for (HObject item : batch) {
+							ObjectValues values = extractors.extractValues(item, builder);
+							valueCache.put(item.getId(), values);
+							added.addObject(item.getId(), values, NumericAnalysisController.this.getGroup(jobGrouping, values));
+							extracted += values.size();
+						}
+						added.enforceHeapBudget();
+						metrics.record(NumericAnalysisMetrics.EXTRACT, start);
+						metrics.addValuesExtracted(extracted);
+					}
+				});
+			}
+			return this.processHObjects(generation, resets, jobGrouping, invalidated, delta, added);
+		} finally {
+			added.clear(); //the values have been copied or are not wanted, delete anything spilled
+		}
+	}
+	
+	/**
+	 * Creates a store holding the given cached values, added objects are
+	 * gathered in a separate store so that they can be built up off the event
+	 * thread and merged in one step
+	 *
+	 * @param cachedValues a {@link java.util.Map} of object ID to cached
+	 * {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * @param jobGrouping the groups the values are placed in
+	 * @param stagedBudget a long containing the bytes of heap the staged
+	 * values may use before they are spilled
+	 * 
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * of the values
+	 */
+	private PropertyValueStore stageValues(Map<Long, ObjectValues> cachedValues, Grouping jobGrouping, long stagedBudget) {
+		EventThreadGuard.assertOffEventThread("Staging cached values");
+		PropertyValueStore staged = new PropertyValueStore(valueCache.getDictionary());
+		staged.setHeapBudgetBytes(stagedBudget);
+		for(Entry<Long, ObjectValues> entry : cachedValues.entrySet()) {
+			staged.addObject(entry.getKey(), entry.getValue(), this.getGroup(jobGrouping, entry.getValue()));
+		}
+		staged.enforceHeapBudget();
+		return staged;
+	}
+	
+	/**
+	 * Gets the group of an object from its type and the value of the group
+	 * property. The name of each group is only built the first time it is
+	 * seen, after that the group is found by a hash lookup. Once there are
+	 * {@link #MAX_GROUPS} groups, values not yet seen fall into an other
+	 * group of their type so a property with many distinct values cannot
+	 * create a group per value.
+	 * 
+	 * @param jobGrouping the groups to place the object in
+	 * @param values the {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * of the object
+	 * 
+	 * @return an int containing the group index
+	 */
+	private int getGroup(Grouping jobGrouping, ObjectValues values) {
+		int property = jobGrouping.property;
+		float value = Float.NaN;
+		if(property >= 0) {
+			int position = values.indexOf(property);
+			if(position >= 0) {
+				value = values.getValue(position);
+			}
+		}
+		Long key = Long.valueOf(((long) values.getType() << 32) | (Float.floatToIntBits(value) & 0xFFFFFFFFL));
+		ConcurrentMap<Long, Integer> keys = jobGrouping.keys;
+		Integer group = keys.get(key);
+		if(group == null) {
+			String valueName = Float.isNaN(value) ? NO_VALUE : NumericFunctions.formatNumber(value);
+			if(property >= 0 && jobGrouping.dictionary.size() >= MAX_GROUPS) {
+				key = Long.valueOf(((long) values.getType() << 32) | (OTHER_VALUE_BITS & 0xFFFFFFFFL));
+				group = keys.get(key);
+				if(group != null) {
+					return group;
+				}
+				valueName = OTHER_VALUES;
+			}
+			String name = (values.getType() == ObjectValues.NO_TYPE) ? UNKNOWN_TYPE : valueCache.getTypeDictionary().getName(values.getType());
+			if(property >= 0) {
+				name = String.format("%s, %s = %s", name, valueCache.getDictionary().getName(property), valueName);
+			}
+			group = jobGrouping.dictionary.indexOf(name);
+			keys.putIfAbsent(key, group);
+		}
+		return group;
+	}
+	
+	/**
+	 * Process a change in the selected objects, values of deselected and
+	 * changed objects are removed from the store and values of newly selected
+	 * objects added. Nothing is changed if a later job has started. The stats
+	 * are computed from the merged values before any later job can change
+	 * them.
+	 *
+	 * @param generation a long containing the scheduler generation of the job
+	 * @param resets a long containing the number of resets requested when
+	 * the job was started
+	 * @param jobGrouping the groups the added values were placed in
+	 * @param invalidated a long[] containing the IDs of changed objects in
+	 * ascending order
+	 * @param delta a {@link com.about80minutes.palantir.helper.na.SelectionDelta}
+	 * describing the change in selection
+	 * @param added a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * holding the values of the added objects
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate}
+	 * of the selection, or null if the job was superseded
+	 */
+	private StatsUpdate processHObjects(long generation, long resets, Grouping jobGrouping, long[] invalidated, SelectionDelta delta, PropertyValueStore added) {
+		long start = System.nanoTime();
+		//waits for any deferred stats being computed from the current values
+		storeLock.writeLock().lock();
+		try {
+			if(!scheduler.isCurrent(generation)) {
+				return null; //a later job will bring the store up to date
+			}
+			statsGeneration++;
+			if(resets != resetsApplied || delta.getAdded().length == delta.getSelected().length) {
+				//nothing is kept so a reset is cheaper than removing each value
+				propertyStore.clear();
+				resetsApplied = resets;
+				storeGrouping = jobGrouping;
+			} else {
+				if(invalidated.length > 0) {
+					propertyStore.removeObjects(invalidated);
+				}
+				propertyStore.removeObjects(delta.getRemoved());
+			}
+			propertyStore.addAll(added);
+			appliedSelection = delta.getSelected();
+			this.clearInvalidated(invalidated);
+			//downgraded so the stats are of exactly the merged values
+			storeLock.readLock().lock();
+		} finally {
+			storeLock.writeLock().unlock();
+		}
+		metrics.record(NumericAnalysisMetrics.MERGE, start);
+		try {
+			return this.processStats();
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Marks objects as changed, cached values of the objects are dropped and
+	 * the selection is reapplied so that any that are selected are reloaded
+	 *
+	 * @param changedIDs a long[] containing the changed object IDs in
+	 * ascending order
+	 */
+	private void invalidate(long[] changedIDs) {
+		valueCache.invalidate(Longs.asList(changedIDs));
+		synchronized(invalidatedIDs) {
+			invalidatedIDs.addAll(Longs.asList(changedIDs));
+		}
+		this.select(requestedObjects, System.nanoTime());
+	}
+	
+	/**
+	 * Gets the objects which have changed since their values were added to
+	 * the store
+	 * 
+	 * @return a long[] containing the object IDs in ascending order
+	 */
+	private long[] getInvalidated() {
+		synchronized(invalidatedIDs) {
+			return SelectionDelta.toSortedIds(invalidatedIDs);
+		}
+	}
+	
+	/**
+	 * Forgets changed objects once their values have been replaced in the
+	 * store
+	 * 
+	 * @param replaced a long[] containing the object IDs
+	 */
+	private void clearInvalidated(long[] replaced) {
+		if(replaced.length == 0) {
+			return;
+		}
+		synchronized(invalidatedIDs) {
+			invalidatedIDs.removeAll(Longs.asList(replaced));
+		}
+	}
+	
+	/**
+	 * Generates the stats which are cheap to compute and passes them to
+	 * observers. The moment stats are maintained by the store so these are
+	 * available at once, the rank based stats and modes are deferred until
+	 * their rows are displayed or exported. Properties whose values fall in
+	 * more than one group are followed by a row per group, the property row
+	 * is merged from the group stats. The caller must hold the store lock.
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.StatsUpdate},
+	 * this is not changed once returned so it may be handed to the event
+	 * thread
+	 */
+	private StatsUpdate processStats() {
+		EventThreadGuard.assertOffEventThread("Computing stats");
+		long start = System.nanoTime();
+		List<Integer> indexes = this.getSortedIndexes();
+		List<List<Integer>> groups = Lists.newArrayList();
+		int size = 0;
+		for(Integer index : indexes) {
+			List<Integer> propertyGroups = this.getSortedGroups(index);
+			groups.add(propertyGroups);
+			size += 1 + propertyGroups.size();
+		}
+		StatsUpdate update = new StatsUpdate(size, new DeferredStats(statsGeneration));
+		int row = 0;
+		for(int i = 0;i < indexes.size();i++) {
+			int index = indexes.get(i);
+			String property = propertyStore.getPropertyName(index);
+			update.setRow(row++, property, propertyStore.getStats(index));
+			for(Integer group : groups.get(i)) {
+				update.setRow(row++, property, storeGrouping.dictionary.getName(group), propertyStore.getStats(index, group));
+			}
+		}
+		metrics.record(NumericAnalysisMetrics.STATS, start);
+		metrics.statsComputed(indexes.size(), propertyStore.getHeapBytes() + valueCache.getUsedBytes());
+		return update;
+	}
+	
+	/**
+	 * Gets the groups of a property in group name order, a property with a
+	 * single group has no group rows
+	 * 
+	 * @param index an int containing the property index
+	 * 
+	 * @return a {@link java.util.List} of group indexes, empty if the
+	 * property has a single group
+	 */
+	private List<Integer> getSortedGroups(int index) {
+		List<Integer> groups = Lists.newArrayList(propertyStore.getGroups(index));
+		if(groups.size() < 2) {
+			return Collections.emptyList();
+		}
+		Collections.sort(groups, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				return storeGrouping.dictionary.getName(first).compareTo(storeGrouping.dictionary.getName(second));
+			}
+		});
+		return groups;
+	}
+	
+	/**
+	 * Computes the deferred stats of a single property or group, this only
+	 * reads from the store so several properties may be computed at once
+	 * 
+	 * @param index an int containing the property index
+	 * @param group an {@link java.lang.Integer} containing the group index,
+	 * or null for all values of the property
+	 * @param parallel a boolean, true if a large column's sketch may be built
+	 * from chunks in parallel
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.RankStats} of
+	 * the property
+	 */
+	private RankStats computeDeferredRow(int index, Integer group, boolean parallel) {
+		EventThreadGuard.assertOffEventThread("Computing rank stats");
+		long start = System.nanoTime();
+		FloatColumn vals = null;
+		if(group == null) {
+			vals = propertyStore.getColumn(index);
+		} else {
+			vals = propertyStore.getGroupColumn(index, group);
+		}
+		//single sort shared by all of the rank based stats, or a bounded
+		//sketch when the property has too many values to sort
+		QuantileSummary order = null;
+		if(vals.size() > approximateThreshold) {
+			order = ParallelStats.getSketch(vals, sketchAccuracy, parallel ? parallelThreshold : Integer.MAX_VALUE);
+		} else {
+			order = new OrderStatistics(vals);
+		}
+		RankStats rank = new RankStats(order, propertyStore.getTop(index, group, TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT));
+		metrics.record(NumericAnalysisMetrics.RANK_STATS, start);
+		return rank;
+	}
+	
+	/**
+	 * Writes every value of the current selection to the given stream as CSV,
+	 * one row per value with the property, the object it was read from and
+	 * the unformatted value. Properties are written in name order. The store
+	 * is read a chunk at a time so the selection is not held up for the
+	 * whole export, if the selection changes part way through the export is
+	 * abandoned. This method does not close the stream after processing
+	 * 
+	 * @param stream a {@link java.io.OutputStream} to write the values to
+	 * @param monitor an {@link com.about80minutes.palantir.helper.na.ExportMonitor}
+	 * to report progress to, or null
+	 * 
+	 * @throws IOException if the values cannot be written or the selection
+	 * changed during the export
+	 */
+	public void exportValues(OutputStream stream, ExportMonitor monitor) throws IOException {
+		EventThreadGuard.assertOffEventThread("Exporting values");
+		List<Integer> indexes = null;
+		long generation = 0;
+		long total = 0;
+		storeLock.readLock().lock();
+		try {
+			generation = statsGeneration;
+			indexes = this.getSortedIndexes();
+			for(Integer index : indexes) {
+				total += propertyStore.getColumn(index).size();
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		
+		//buffered rather than a CSVPrinter, which flushes every line
+		Writer writer = new BufferedWriter(new OutputStreamWriter(stream, "UTF-8"));
+		writeCSVRow(writer, VALUE_COLUMN_NAMES);
+		long done = 0;
+		for(Integer index : indexes) {
+			int start = 0;
+			int size = 0;
+			do {
+				if(monitor != null) {
+					if(monitor.isCancelled()) {
+						writer.flush();
+						return;
+					}
+					monitor.progress(done, total);
+				}
+				storeLock.readLock().lock();
+				try {
+					if(generation != statsGeneration) {
+						throw new IOException("Selection changed during export");
+					}
+					String property = quoteCSV(propertyStore.getPropertyName(index));
+					FloatColumn vals = propertyStore.getColumn(index);
+					LongColumn ids = propertyStore.getObjectIds(index);
+					size = vals.size();
+					int end = (int) Math.min((long) start + EXPORT_CHUNK_SIZE, size);
+					for(int i = start;i < end;i++) {
+						writer.write(property);
+						writer.write(',');
+						writer.write(Long.toString(ids.get(i)));
+						writer.write(',');
+						writer.write(Float.toString(vals.get(i)));
+						writer.write(LINE_SEPARATOR);
+					}
+					done += end - start;
+					start = end;
+				} finally {
+					storeLock.readLock().unlock();
+				}
+			} while(start < size);
+		}
+		writer.flush();
+		if(monitor != null) {
+			monitor.progress(total, total);
+		}
+	}
+	
+	/**
+	 * Writes every value of the current selection to the given channel in
+	 * the {@link com.about80minutes.palantir.helper.na.ColumnarFormat},
+	 * properties are written in name order. As with
+	 * {@link #exportValues(OutputStream, ExportMonitor)} the store is read a
+	 * chunk at a time and the export is abandoned if the selection changes.
+	 * This method does not close the channel after processing
+	 * 
+	 * @param channel a {@link java.nio.channels.WritableByteChannel} to write
+	 * the export to
+	 * @param monitor an {@link com.about80minutes.palantir.helper.na.ExportMonitor}
+	 * to report progress to, or null
+	 * 
+	 * @throws IOException if the export cannot be written or the selection
+	 * changed during the export
+	 */
+	public void exportColumns(WritableByteChannel channel, ExportMonitor monitor) throws IOException {
+		EventThreadGuard.assertOffEventThread("Exporting values");
+		ColumnarFormat.Writer writer = new ColumnarFormat.Writer(channel);
+		List<Integer> indexes = null;
+		int[] counts = null;
+		long generation = 0;
+		long total = 0;
+		storeLock.readLock().lock();
+		try {
+			generation = statsGeneration;
+			indexes = this.getSortedIndexes();
+			List<String> properties = Lists.newArrayList();
+			counts = new int[indexes.size()];
+			for(int i = 0;i < indexes.size();i++) {
+				properties.add(propertyStore.getPropertyName(indexes.get(i)));
+				counts[i] = propertyStore.getColumn(indexes.get(i)).size();
+				total += 2L * counts[i]; //IDs then values
+			}
+			writer.writeHeader(properties, counts);
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		
+		long done = 0;
+		for(int i = 0;i < indexes.size();i++) {
+			int index = indexes.get(i);
+			for(int block = 0;block < 2;block++) {
+				for(int start = 0;start < counts[i];start += EXPORT_CHUNK_SIZE) {
+					if(monitor != null) {
+						if(monitor.isCancelled()) {
+							return;
+						}
+						monitor.progress(done, total);
+					}
+					int length = Math.min(EXPORT_CHUNK_SIZE, counts[i] - start);
+					storeLock.readLock().lock();
+					try {
+						if(generation != statsGeneration) {
+							throw new IOException("Selection changed during export");
+						}
+						if(block == 0) {
+							writer.writeIds(propertyStore.getObjectIds(index), start, length);
+						} else {
+							writer.writeValues(propertyStore.getColumn(index), start, length);
 						}
+					} finally {
+						storeLock.readLock().unlock();
 					}
+					done += length;
+				}
+			}
+		}
+		writer.flush();
+		if(monitor != null) {
+			monitor.progress(total, total);
+		}
+	}
+	
+	/**
+	 * Computes the pairwise correlations and covariances of every property of
+	 * the current selection, in property name order. Only values read from
+	 * the same object are paired, each property is aligned against the
+	 * selected object IDs under the store lock and the co-moments are then
+	 * accumulated from the aligned copies without holding it.
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.CorrelationMatrix}
+	 * of the selection
+	 * 
+	 * @throws ExecutionException if a property cannot be aligned
+	 * @throws InterruptedException if interrupted while aligning properties
+	 */
+	public CorrelationMatrix computeCorrelations() throws ExecutionException, InterruptedException {
+		EventThreadGuard.assertOffEventThread("Computing correlations");
+		List<String> properties = Lists.newArrayList();
+		List<AlignedColumn> columns = Lists.newArrayList();
+		storeLock.readLock().lock();
+		try {
+			final long[] rowIds = appliedSelection;
+			List<Integer> indexes = this.getSortedIndexes();
+			long valueCount = 0;
+			for(Integer index : indexes) {
+				properties.add(propertyStore.getPropertyName(index));
+				valueCount += propertyStore.getColumn(index).size();
+			}
+			if(parallelStats && valueCount > parallelThreshold) {
+				//the read lock held by this thread keeps the store unchanged
+				List<Callable<AlignedColumn>> tasks = Lists.newArrayList();
+				for(Integer index : indexes) {
+					final FloatColumn vals = propertyStore.getColumn(index);
+					final LongColumn ids = propertyStore.getObjectIds(index);
+					tasks.add(new Callable<AlignedColumn>() {
+						public AlignedColumn call() {
+							return AlignedColumn.align(vals, ids, rowIds);
+						}
+					});
 				}
+				columns.addAll(ParallelStats.invokeAll(tasks));
+			} else {
+				for(Integer index : indexes) {
+					columns.add(AlignedColumn.align(propertyStore.getColumn(index), propertyStore.getObjectIds(index), rowIds));
+				}
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		CoMoments moments = ParallelStats.getCoMoments(columns, parallelStats ? parallelThreshold : Integer.MAX_VALUE);
+		return new CorrelationMatrix(properties, moments);
+	}
+	
+	/**
+	 * Gets the date properties held by objects of the current selection, in
+	 * property name order
+	 * 
+	 * @return a {@link java.util.List} of date property names
+	 */
+	public List<String> getDateProperties() {
+		List<String> names = Lists.newArrayList();
+		storeLock.readLock().lock();
+		try {
+			for(int i = 0;i < propertyStore.getDatePropertyCount();i++) {
+				if(!propertyStore.getDateColumn(i).isEmpty()) {
+					names.add(valueCache.getDateDictionary().getName(i));
+				}
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		Collections.sort(names);
+		return names;
+	}
+	
+	/**
+	 * Computes the count, sum and mean of every property of the current
+	 * selection in calendar buckets of a date property, in property name
+	 * order. The bucket of each selected object is worked out once, from the
+	 * first of its dates, and each property is then added to an array of
+	 * buckets in a single pass over its values. Values of objects without a
+	 * date are left out. Dates spanning more than {@link #MAX_TIME_BUCKETS}
+	 * buckets are limited to that many around their median, with dates
+	 * either side counted in the first or last bucket.
+	 * 
+	 * @param dateProperty a {@link java.lang.String} containing the name of
+	 * the date property
+	 * @param unit an int, one of {@link com.about80minutes.util.CalendarBuckets#DAY},
+	 * {@link com.about80minutes.util.CalendarBuckets#WEEK} or
+	 * {@link com.about80minutes.util.CalendarBuckets#MONTH}
+	 * 
+	 * @return the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+	 * of the selection, with no properties if no selected object holds the
+	 * date property
+	 * 
+	 * @throws ExecutionException if a property cannot be bucketed
+	 * @throws InterruptedException if interrupted while bucketing properties
+	 */
+	public TimeBucketReport computeTimeBuckets(String dateProperty, int unit) throws ExecutionException, InterruptedException {
+		EventThreadGuard.assertOffEventThread("Computing time buckets");
+		List<String> properties = Lists.newArrayList();
+		List<TimeBuckets> buckets = Lists.newArrayList();
+		boolean foldedBefore = false;
+		boolean foldedAfter = false;
+		storeLock.readLock().lock();
+		try {
+			final long[] rowIds = appliedSelection;
+			int dateIndex = valueCache.getDateDictionary().find(dateProperty);
+			if(dateIndex < 0 || dateIndex >= propertyStore.getDatePropertyCount()) {
+				return new TimeBucketReport(dateProperty, unit, properties, buckets);
+			}
+			final int[] rowBuckets = CalendarBuckets.bucketRows(propertyStore.getDateColumn(dateIndex),
+					propertyStore.getDateObjectIds(dateIndex), rowIds, unit);
+			int firstBucket = Integer.MAX_VALUE;
+			int lastBucket = Integer.MIN_VALUE;
+			for(int bucket : rowBuckets) {
+				if(bucket != CalendarBuckets.NO_DAY) {
+					firstBucket = Math.min(firstBucket, bucket);
+					lastBucket = Math.max(lastBucket, bucket);
+				}
+			}
+			if(firstBucket > lastBucket) {
+				return new TimeBucketReport(dateProperty, unit, properties, buckets);
+			}
+			if((long) lastBucket - firstBucket >= MAX_TIME_BUCKETS) {
+				int[] range = CalendarBuckets.clampRows(rowBuckets, MAX_TIME_BUCKETS);
+				foldedBefore = range[0] > firstBucket;
+				foldedAfter = range[1] < lastBucket;
+				firstBucket = range[0];
+				lastBucket = range[1];
+			}
+			int bucketCount = lastBucket - firstBucket + 1;
+
+			List<Integer> indexes = this.getSortedIndexes();
+			long valueCount = 0;
+			for(Integer index : indexes) {
+				properties.add(propertyStore.getPropertyName(index));
+				buckets.add(new TimeBuckets(firstBucket, bucketCount));
+				valueCount += propertyStore.getColumn(index).size();
+			}
+			if(parallelStats && valueCount > parallelThreshold) {
+				//the read lock held by this thread keeps the store unchanged
+				List<Callable<Void>> tasks = Lists.newArrayList();
+				for(int i = 0;i < indexes.size();i++) {
+					final FloatColumn vals = propertyStore.getColumn(indexes.get(i));
+					final LongColumn ids = propertyStore.getObjectIds(indexes.get(i));
+					final TimeBuckets propertyBuckets = buckets.get(i);
+					tasks.add(new Callable<Void>() {
+						public Void call() {
+							propertyBuckets.addAll(vals, ids, rowIds, rowBuckets);
+							return null;
+						}
+					});
+				}
+				ParallelStats.invokeAll(tasks);
+			} else {
+				for(int i = 0;i < indexes.size();i++) {
+					buckets.get(i).addAll(propertyStore.getColumn(indexes.get(i)), propertyStore.getObjectIds(indexes.get(i)), rowIds, rowBuckets);
+				}
+			}
+		} finally {
+			storeLock.readLock().unlock();
+		}
+		return new TimeBucketReport(dateProperty, unit, properties, buckets, foldedBefore, foldedAfter);
+	}
+	
+	/**
+	 * Finds the objects of the current selection holding particular values
+	 * of a property or one of its groups: its min, its max, every value
+	 * sharing its highest count, or its outliers beyond the IQR fences or a
+	 * z-score. The quartiles are
+	 * taken from the given rank stats, which were read from the same sorted
+	 * view as the table, and only computed if they are not given.
+	 * 
+	 * @param property a {@link java.lang.String} containing the property
+	 * @param group a {@link java.lang.String} containing the group, or null
+	 * for all values of the property
+	 * @param target an int, one of {@link #SELECT_MIN}, {@link #SELECT_MAX},
+	 * {@link #SELECT_MODE}, {@link #SELECT_IQR_OUTLIERS} or
+	 * {@link #SELECT_Z_SCORE_OUTLIERS}
+	 * @param rankStats the {@link com.about80minutes.palantir.helper.na.RankStats}
+	 * of the row, or null if they have not been computed
+	 * 
+	 * @return a long[] containing the IDs of the objects in ascending order,
+	 * empty if the store no longer holds the property
+	 */
+	public long[] findObjects(String property, String group, int target, RankStats rankStats) {
+		EventThreadGuard.assertOffEventThread("Finding objects by value");
+		storeLock.readLock().lock();
+		try {
+			int index = this.findProperty(property);
+			Integer groupIndex = (group == null || index < 0) ? null : this.findGroup(index, group);
+			if(index < 0 || (group != null && groupIndex == null)) {
+				return new long[0];
+			}
+			StatsAccumulator stats = (groupIndex == null) ? propertyStore.getStats(index) : propertyStore.getStats(index, groupIndex);
+			float[] lowers = null;
+			float[] uppers = null;
+			if(target == SELECT_MIN || target == SELECT_MAX) {
+				float bound = (target == SELECT_MIN) ? stats.getMin() : stats.getMax();
+				lowers = new float[]{bound};
+				uppers = new float[]{bound};
+			} else if(target == SELECT_MODE) {
+				//every tie is taken from the exact counts rather than the
+				//few most frequent values shown in the table
+				lowers = propertyStore.getModes(index, groupIndex, TopValues.DEFAULT_MIN_COUNT);
+				uppers = lowers;
+			} else {
+				float lowerFence = 0f;
+				float upperFence = 0f;
+				if(target == SELECT_IQR_OUTLIERS) {
+					RankStats rank = (rankStats != null) ? rankStats : this.computeDeferredRow(index, groupIndex, parallelStats);
+					float spread = OUTLIER_IQR_FACTOR * rank.getInterquartileRange();
+					lowerFence = rank.getLowerQuartile() - spread;
+					upperFence = rank.getUpperQuartile() + spread;
+				} else {
+					float spread = (float) (OUTLIER_Z_SCORE * stats.getStdDeviation());
+					lowerFence = stats.getMean() - spread;
+					upperFence = stats.getMean() + spread;
+				}
+				//values strictly beyond either fence
+				lowers = new float[]{Float.NEGATIVE_INFINITY, Math.nextUp(upperFence)};
+				uppers = new float[]{Math.nextAfter(lowerFence, Double.NEGATIVE_INFINITY), Float.POSITIVE_INFINITY};
+			}
+			return propertyStore.findObjects(index, groupIndex, lowers, uppers);
+		} finally {
+			storeLock.readLock().unlock();
+		}
+	}
+	
+	/**
+	 * Gets the objects of the latest selection, this must be called on the
+	 * event dispatch thread
+	 * 
+	 * @return a {@link java.util.Collection} of the selected objects'
+	 * {@link com.palantir.services.Locator}s, which must not be modified
+	 */
+	public Collection<Locator> getSelectedObjects() {
+		return requestedObjects;
+	}
+	
+	/**
+	 * Picks the locators of the given objects out of a selection
+	 * 
+	 * @param objects a {@link java.util.Collection} of
+	 * {@link com.palantir.services.Locator}s to pick from
+	 * @param sortedIds a long[] containing the IDs to pick in ascending order
+	 * 
+	 * @return a {@link java.util.List} of the {@link com.palantir.services.Locator}s
+	 * of the objects
+	 */
+	public static List<Locator> getLocators(Collection<Locator> objects, long[] sortedIds) {
+		EventThreadGuard.assertOffEventThread("Finding selected objects");
+		List<Locator> picked = Lists.newArrayListWithCapacity(sortedIds.length);
+		for(Locator locator : objects) {
+			if(Arrays.binarySearch(sortedIds, locator.getId().longValue()) >= 0) {
+				picked.add(locator);
+			}
+		}
+		return picked;
+	}
+	
+	/**
+	 * Ignores the next selection event if it selects exactly the given
+	 * objects, used when the helper selects objects on the graph itself so
+	 * that the stats stay those of the selection being analysed. This must
+	 * be called on the event dispatch thread
+	 * 
+	 * @param objects a {@link java.util.Collection} of the
+	 * {@link com.palantir.services.Locator}s about to be selected
+	 */
+	public void ignoreSelection(Collection<Locator> objects) {
+		ignoredSelection = objects;
+	}
+	
+	/**
+	 * Finds the index of a property which holds values, the caller must
+	 * hold the store lock
+	 * 
+	 * @param property a {@link java.lang.String} containing the property
+	 * 
+	 * @return an int containing the property index, or -1 if the store
+	 * holds no values of the property
+	 */
+	private int findProperty(String property) {
+		int index = valueCache.getDictionary().find(property);
+		if(index < 0 || index >= propertyStore.getPropertyCount() || propertyStore.getColumn(index).isEmpty()) {
+			return -1;
+		}
+		return index;
+	}
+	
+	/**
+	 * Finds the index of a group which holds values of a property, the
+	 * caller must hold the store lock
+	 * 
+	 * @param index an int containing the property index
+	 * @param group a {@link java.lang.String} containing the group
+	 * 
+	 * @return an {@link java.lang.Integer} containing the group index, or
+	 * null if the group holds no values of the property
+	 */
+	private Integer findGroup(int index, String group) {
+		int groupIndex = storeGrouping.dictionary.find(group);
+		if(groupIndex < 0 || propertyStore.getStats(index, groupIndex) == null) {
+			return null;
+		}
+		return Integer.valueOf(groupIndex);
+	}
+	
+	/**
+	 * Gets the indexes of the properties which hold values, in property name
+	 * order. The caller must hold the store lock
+	 * 
+	 * @return a {@link java.util.List} of property indexes
+	 */
+	private List<Integer> getSortedIndexes() {
+		List<Integer> indexes = Lists.newArrayList();
+		for(int i = 0;i < propertyStore.getPropertyCount();i++) {
+			if(!propertyStore.getColumn(i).isEmpty()) { //skip properties whose values were all removed
+				indexes.add(i);
 			}
 		}
-		this.processStats();
+		//rows are displayed in property name order
+		Collections.sort(indexes, new Comparator<Integer>() {
+			public int compare(Integer first, Integer second) {
+				return propertyStore.getPropertyName(first).compareTo(propertyStore.getPropertyName(second));
+			}
+		});
+		return indexes;
 	}
 	
 	/**
-	 * Generates the stats and caches them in a table notifying observers
+	 * Writes a row of CSV values
+	 * 
+	 * @param writer a {@link java.io.Writer} to write the row to
+	 * @param values a {@link java.lang.String}[] containing the row values
+	 * 
+	 * @throws IOException if the row cannot be written
 	 */
-	private void processStats() {
-		Table<String, String, String> valueTable = HashBasedTable.create();
-		for(String key : cachedPropertyMap.keySet()) {
-			Collection<Float> vals = cachedPropertyMap.get(key);
-			valueTable.put(key, NATableModel.COUNT_COLUMN, NumericFunctions.formatNumber(vals.size()));
-			valueTable.put(key, NATableModel.MIN_COLUMN, NumericFunctions.formatNumber(Collections.min(vals)));
-			valueTable.put(key, NATableModel.MAX_COLUMN, NumericFunctions.formatNumber(Collections.max(vals)));
-			valueTable.put(key, NATableModel.MEAN_COLUMN, NumericFunctions.formatNumber(NumericFunctions.getMean(vals)));
-			valueTable.put(key, NATableModel.MEDIAN_COLUMN, NumericFunctions.formatNumber(NumericFunctions.getMedian(vals)));
-			valueTable.put(key, NATableModel.MODE_COLUMN, NumericFunctions.formatNumberList(NumericFunctions.getModes(vals)));
-			valueTable.put(key, NATableModel.SUM_COLUMN, NumericFunctions.formatNumber(NumericFunctions.getSum(vals)));
-			valueTable.put(key, NATableModel.RANGE_COLUMN, NumericFunctions.formatNumber(NumericFunctions.getRange(vals)));
-			valueTable.put(key, NATableModel.STANDARD_DEVIATION_COLUMN, NumericFunctions.formatNumber(NumericFunctions.getStdDeviation(vals))); 
+	private static void writeCSVRow(Writer writer, String[] values) throws IOException {
+		for(int i = 0;i < values.length;i++) {
+			if(i > 0) {
+				writer.write(',');
+			}
+			writer.write(quoteCSV(values[i]));
+		}
+		writer.write(LINE_SEPARATOR);
+	}
+	
+	/**
+	 * Quotes a CSV value if it contains a separator, quote or line break
+	 * 
+	 * @param value a {@link java.lang.String} containing the value
+	 * 
+	 * @return a {@link java.lang.String} containing the value to write
+	 */
+	private static String quoteCSV(String value) {
+		if(value.indexOf(',') < 0 && value.indexOf('"') < 0 && value.indexOf('\n') < 0 && value.indexOf('\r') < 0) {
+			return value;
+		}
+		return "\"" + value.replace("\"", "\"\"") + "\"";
+	}
+	
+	/**
+	 * The groups of a group property, each named from the object type and
+	 * the value of the property and found from a key of the two. A new
+	 * instance is made whenever the group property changes, so the names and
+	 * keys of the old groups are dropped together.
+	 */
+	private static class Grouping {
+		
+		private final int property;
+		private final PropertyDictionary dictionary = new PropertyDictionary();
+		private final ConcurrentMap<Long, Integer> keys = Maps.newConcurrentMap();
+		
+		/**
+		 * Constructor for the groups
+		 * 
+		 * @param property an int containing the index of the group property,
+		 * or -1 to group by object type only
+		 */
+		public Grouping(int property) {
+			this.property = property;
+		}
+	}
+	
+	/**
+	 * Computes the deferred stats of the values held when it was created, once
+	 * the store changes it computes nothing
+	 */
+	private class DeferredStats implements NATableModel.DeferredCells {
+		
+		private long generation = 0;
+		
+		/**
+		 * Constructor for the deferred stats
+		 * 
+		 * @param generation a long containing the generation of the store
+		 * values the stats are for
+		 */
+		public DeferredStats(long generation) {
+			this.generation = generation;
+		}
+		
+		/**
+		 * Computes the deferred stats of a property or one of its groups
+		 * 
+		 * @param property a {@link java.lang.String} containing the property
+		 * @param group a {@link java.lang.String} containing the group, or
+		 * null for all values of the property
+		 * 
+		 * @return the {@link com.about80minutes.palantir.helper.na.RankStats}
+		 * of the property, or null if the store has changed
+		 */
+		public RankStats compute(String property, String group) {
+			storeLock.readLock().lock();
+			try {
+				if(generation != statsGeneration) {
+					return null;
+				}
+				int index = NumericAnalysisController.this.findProperty(property);
+				if(index < 0) {
+					return null; //not a property of this generation
+				}
+				if(group == null) {
+					return NumericAnalysisController.this.computeDeferredRow(index, null, parallelStats);
+				}
+				Integer groupIndex = NumericAnalysisController.this.findGroup(index, group);
+				if(groupIndex == null) {
+					return null;
+				}
+				return NumericAnalysisController.this.computeDeferredRow(index, groupIndex, parallelStats);
+			} finally {
+				storeLock.readLock().unlock();
+			}
+		}
+		
+		/**
+		 * Computes the deferred stats of several rows, these are computed
+		 * concurrently when parallel stats are enabled and there are enough
+		 * values
+		 * 
+		 * @param properties a {@link java.util.List} of the property of each
+		 * row
+		 * @param groups a {@link java.util.List} of the group of each row,
+		 * null entries for all values of the property
+		 * 
+		 * @return a {@link com.about80minutes.palantir.helper.na.RankStats}[]
+		 * with an entry per row, or null if the store has changed
+		 */
+		public RankStats[] computeAll(List<String> properties, List<String> groups) {
+			storeLock.readLock().lock();
+			try {
+				if(generation != statsGeneration) {
+					return null;
+				}
+				final List<Integer> positions = Lists.newArrayList();
+				final List<Integer> indexes = Lists.newArrayList();
+				final List<Integer> groupIndexes = Lists.newArrayList();
+				long valueCount = 0;
+				for(int i = 0;i < properties.size();i++) {
+					int index = NumericAnalysisController.this.findProperty(properties.get(i));
+					if(index < 0) {
+						continue;
+					}
+					Integer groupIndex = null;
+					if(groups.get(i) != null) {
+						groupIndex = NumericAnalysisController.this.findGroup(index, groups.get(i));
+						if(groupIndex == null) {
+							continue;
+						}
+					}
+					positions.add(i);
+					indexes.add(index);
+					groupIndexes.add(groupIndex);
+					valueCount += propertyStore.getColumn(index).size();
+				}
+				
+				List<RankStats> rows = null;
+				if(parallelStats && valueCount > parallelThreshold) {
+					//the read lock held by this thread keeps the store unchanged
+					List<Callable<RankStats>> tasks = Lists.newArrayList();
+					for(int i = 0;i < indexes.size();i++) {
+						final int index = indexes.get(i);
+						final Integer groupIndex = groupIndexes.get(i);
+						tasks.add(new Callable<RankStats>() {
+							public RankStats call() {
+								return NumericAnalysisController.this.computeDeferredRow(index, groupIndex, true);
+							}
+						});
+					}
+					try {
+						rows = ParallelStats.invokeAll(tasks);
+					} catch (ExecutionException e) {
+						LOGGER.error("Error computing stats in parallel", e);
+					} catch (InterruptedException e) {
+						LOGGER.error("Error computing stats in parallel", e);
+					}
+				}
+				if(rows == null) {
+					rows = Lists.newArrayList();
+					for(int i = 0;i < indexes.size();i++) {
+						rows.add(NumericAnalysisController.this.computeDeferredRow(indexes.get(i), groupIndexes.get(i), false));
+					}
+				}
+				
+				RankStats[] computed = new RankStats[properties.size()];
+				for(int i = 0;i < positions.size();i++) {
+					computed[positions.get(i)] = rows.get(i);
+				}
+				return computed;
+			} finally {
+				storeLock.readLock().unlock();
+			}
 		}
-		this.setChanged();
-		this.notifyObservers(valueTable);
 	}
 	
 	/**
@@ -133,14 +1420,17 @@ public class NumericAnalysisController extends Observable {
 		}
 
 		/**
-		 * Null implementation, not reacting to updates being applied
-		 * currently
+		 * Reacts to objects being updated within the Palantir application,
+		 * cached values of the updated objects are dropped
 		 * 
 		 * @param event a {@link com.palantir.api.workspace.selection.SelectionAgentEvent}
 		 * to react to
 		 */
 		public void handleUpdateEvent(SelectionAgentEvent event) {
-			// ignore
+			Collection<Locator> updatedObjects = Lists.newArrayList(event.getItemGroup().getObjectLocatorsDefaultFilter());
+			if (!updatedObjects.isEmpty()) {
+				NumericAnalysisController.this.invalidate(SelectionDelta.toSortedIds(Identifiables.getIdList(updatedObjects)));
+			}
 		}
 
 		/**
@@ -150,44 +1440,69 @@ public class NumericAnalysisController extends Observable {
 		 * to react to
 		 */
 		public void handleSelectionEvent(SelectionAgentEvent event) {
-
-			final Collection<Locator> objectsToLoad = Lists.newArrayList(event.getItemGroup().getObjectLocatorsDefaultFilter());
-
-			if (!objectsToLoad.isEmpty()) {
-				final Collection<Long> selectionIDs = Identifiables.getIdList(objectsToLoad);
-
-				//anonymous class to deal with selection in the background
-				palantirContext.getMonitoredExecutorService().execute(new SwingWorker<Collection<HObject>, Void>() {
-
-					/**
-					 * Perform some actions in the background, this loads
-					 * the selected objects as HObjects
-					 * 
-					 * @return a {@link java.util.Collection} of {@link com.palantir.api.horizon.v1.object.HObject}
-					 * objects.
-					 */
-					@Override
-					protected Collection<HObject> doInBackground() throws Exception {
-						List<HObject> hobs = new ArrayList<HObject>(palantirContext.getHorizonConnection().loadHObjects(selectionIDs));							
-						return hobs;
-					}
-
-					/**
-					 *Perform some actions when the background execution is complete
-					 */
-					protected void done() {
-						try {
-							NumericAnalysisController.this.processHObjects(get());
-						} catch (InterruptedException e) {									
-							LOGGER.error("Error handling selection",  e);
-						} catch (ExecutionException e) {
-							LOGGER.error("Error handling selection",  e);
+			final long receivedNanos = System.nanoTime();
+			//the locators are copied by the selection job, off the event thread
+			final Collection<Locator> objectsToLoad = event.getItemGroup().getObjectLocatorsDefaultFilter();
+			final Collection<Locator> ignored = ignoredSelection;
+			ignoredSelection = null;
+			final long eventNumber = ++selectionEvents;
+			//only compared when the sizes match, so at most the objects the helper selected
+			if(ignored == null || ignored.size() != objectsToLoad.size()) {
+				this.schedule(objectsToLoad, receivedNanos);
+				return;
+			}
+			//anonymous class to compare the selection with the ignored one in the background
+			palantirContext.getMonitoredExecutorService().execute(new SwingWorker<Boolean, Void>() {
+				
+				/**
+				 * Compares the IDs of the selected and ignored objects
+				 * 
+				 * @return a {@link java.lang.Boolean}, true if the same
+				 * objects are selected
+				 */
+				@Override
+				protected Boolean doInBackground() throws Exception {
+					return Boolean.valueOf(Sets.newHashSet(Identifiables.getIdList(ignored)).equals(
+							Sets.newHashSet(Identifiables.getIdList(objectsToLoad))));
+				}
+				
+				/**
+				 * Schedules the selection unless it is the helper's own or a
+				 * later selection event has been received
+				 */
+				@Override
+				protected void done() {
+					try {
+						if(get().booleanValue()) {
+							return; //the helper's own selection of objects from the analysed selection
+						}
+						if(eventNumber == selectionEvents) {
+							NASelectionAgent.this.schedule(objectsToLoad, receivedNanos);
 						}
+					} catch (InterruptedException e) {
+						LOGGER.error("Error handling selection", e);
+					} catch (ExecutionException e) {
+						LOGGER.error("Error handling selection", e);
 					}
-				});
-			} else {
-				NumericAnalysisController.this.processHObjects(null);
-			}
+				}
+			});
+		}
+		
+		/**
+		 * Schedules a selection to be loaded, a burst of selection events is
+		 * coalesced so only the last is loaded
+		 * 
+		 * @param objectsToLoad a {@link java.util.Collection} of the selected
+		 * objects' {@link com.palantir.services.Locator}s
+		 * @param receivedNanos a long containing the time the selection event
+		 * was received, from {@link java.lang.System#nanoTime()}
+		 */
+		private void schedule(final Collection<Locator> objectsToLoad, final long receivedNanos) {
+			scheduler.schedule(new Runnable() {
+				public void run() {
+					NumericAnalysisController.this.select(objectsToLoad, receivedNanos);
+				}
+			});
 		}
 	}
 }
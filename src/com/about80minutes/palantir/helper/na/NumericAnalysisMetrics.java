@@ -0,0 +1,423 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Timer;
+import java.util.TimerTask;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+import org.apache.log4j.Logger;
+
+import com.google.common.collect.Maps;
+
+/**
+ * Timers and counters for each phase of handling a selection, from waiting
+ * to start through loading, extraction and stats to painting the table. The
+ * metrics can be registered as a JMX MBean and summarised to the log
+ * periodically.
+ *
+ * Each phase keeps its total count and time along with a window of its most
+ * recent latencies, which percentiles are computed from.
+ */
+public class NumericAnalysisMetrics implements NumericAnalysisMetricsMBean {
+	private static final Logger LOGGER = Logger.getLogger(NumericAnalysisMetrics.class);
+
+	public static final String QUEUE_WAIT = "queueWait";
+	public static final String LOAD = "load";
+	public static final String EXTRACT = "extract";
+	public static final String MERGE = "merge";
+	public static final String STATS = "stats";
+	public static final String RANK_STATS = "rankStats";
+	public static final String REPAINT = "repaint";
+
+	public static final String[] PHASES = new String[]{QUEUE_WAIT,LOAD,EXTRACT,MERGE,STATS,RANK_STATS,REPAINT};
+
+	public static final int DEFAULT_SAMPLES = 1024;
+	public static final long DEFAULT_LOG_INTERVAL_MILLIS = 60000L;
+
+	private static final String OBJECT_NAME = "com.about80minutes.palantir.helper.na:type=NumericAnalysis,id=%d";
+	private static final double NANOS_PER_MILLI = 1000000d;
+
+	private final Map<String, PhaseTimer> timers = Maps.newLinkedHashMap();
+	private final AtomicLong objectsLoaded = new AtomicLong();
+	private final AtomicLong valuesExtracted = new AtomicLong();
+	private final AtomicLong selections = new AtomicLong();
+	private volatile int properties = 0;
+	private volatile long bytesRetained = 0;
+
+	private ObjectName objectName = null;
+	private Timer logTimer = null;
+	private long loggedCount = 0;
+
+	/**
+	 * Constructor, keeps the default number of recent latencies per phase
+	 */
+	public NumericAnalysisMetrics() {
+		this(DEFAULT_SAMPLES);
+	}
+
+	/**
+	 * Constructor for the metrics
+	 *
+	 * @param samples an int containing the number of recent latencies kept
+	 * per phase for percentiles
+	 */
+	public NumericAnalysisMetrics(int samples) {
+		for(String phase : PHASES) {
+			timers.put(phase, new PhaseTimer(samples));
+		}
+	}
+
+	/**
+	 * Records a phase which started at the given time and has just finished
+	 *
+	 * @param phase a {@link java.lang.String} containing one of {@link #PHASES}
+	 * @param startNanos a long containing the start time from {@link java.lang.System#nanoTime()}
+	 */
+	public void record(String phase, long startNanos) {
+		this.recordNanos(phase, System.nanoTime() - startNanos);
+	}
+
+	/**
+	 * Records a run of a phase
+	 *
+	 * @param phase a {@link java.lang.String} containing one of {@link #PHASES}
+	 * @param nanos a long containing how long the phase took
+	 */
+	public void recordNanos(String phase, long nanos) {
+		this.getTimer(phase).record(nanos);
+	}
+
+	/**
+	 * Adds to the number of objects loaded
+	 *
+	 * @param count a long containing the number of objects
+	 */
+	public void addObjectsLoaded(long count) {
+		objectsLoaded.addAndGet(count);
+	}
+
+	/**
+	 * Adds to the number of values extracted
+	 *
+	 * @param count a long containing the number of values
+	 */
+	public void addValuesExtracted(long count) {
+		valuesExtracted.addAndGet(count);
+	}
+
+	/**
+	 * Records the size of the latest stats
+	 *
+	 * @param properties an int containing the number of properties
+	 * @param bytesRetained a long containing the bytes of heap retained
+	 */
+	public void statsComputed(int properties, long bytesRetained) {
+		this.selections.incrementAndGet();
+		this.properties = properties;
+		this.bytesRetained = bytesRetained;
+	}
+
+	/**
+	 * Implementation of declared method, gets the number of objects loaded
+	 *
+	 * @return a long containing the number of objects
+	 */
+	public long getObjectsLoaded() {
+		return objectsLoaded.get();
+	}
+
+	/**
+	 * Implementation of declared method, gets the number of values extracted
+	 *
+	 * @return a long containing the number of values
+	 */
+	public long getValuesExtracted() {
+		return valuesExtracted.get();
+	}
+
+	/**
+	 * Implementation of declared method, gets the number of selections
+	 *
+	 * @return a long containing the number of selections
+	 */
+	public long getSelections() {
+		return selections.get();
+	}
+
+	/**
+	 * Implementation of declared method, gets the number of properties
+	 *
+	 * @return an int containing the number of properties
+	 */
+	public int getProperties() {
+		return properties;
+	}
+
+	/**
+	 * Implementation of declared method, gets the bytes of heap retained
+	 *
+	 * @return a long containing the number of bytes
+	 */
+	public long getBytesRetained() {
+		return bytesRetained;
+	}
+
+	/**
+	 * Implementation of declared method, summarises every phase
+	 *
+	 * @return a {@link java.lang.String}[] containing a summary per phase
+	 */
+	public String[] getPhaseSummaries() {
+		String[] summaries = new String[PHASES.length];
+		for(int i = 0;i < PHASES.length;i++) {
+			summaries[i] = this.getTimer(PHASES[i]).summarise(PHASES[i]);
+		}
+		return summaries;
+	}
+
+	/**
+	 * Implementation of declared method, gets the number of runs of a phase
+	 *
+	 * @param phase a {@link java.lang.String} containing the phase name
+	 *
+	 * @return a long containing the count
+	 */
+	public long getPhaseCount(String phase) {
+		return this.getTimer(phase).getCount();
+	}
+
+	/**
+	 * Implementation of declared method, gets a recent latency percentile
+	 *
+	 * @param phase a {@link java.lang.String} containing the phase name
+	 * @param percentile a double between 0 and 100
+	 *
+	 * @return a double containing the latency in milliseconds
+	 */
+	public double getLatencyPercentileMillis(String phase, double percentile) {
+		return this.getTimer(phase).getPercentileNanos(percentile) / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Implementation of declared method, discards everything recorded
+	 */
+	public void reset() {
+		for(PhaseTimer timer : timers.values()) {
+			timer.reset();
+		}
+		objectsLoaded.set(0);
+		valuesExtracted.set(0);
+		selections.set(0);
+	}
+
+	/**
+	 * Builds a single summary of every counter and phase
+	 *
+	 * @return a {@link java.lang.String} containing the summary
+	 */
+	public String getSummary() {
+		StringBuilder builder = new StringBuilder();
+		builder.append(String.format("selections=%d objectsLoaded=%d valuesExtracted=%d properties=%d bytesRetained=%d",
+				this.getSelections(), this.getObjectsLoaded(), this.getValuesExtracted(), this.getProperties(), this.getBytesRetained()));
+		for(String summary : this.getPhaseSummaries()) {
+			builder.append("; ").append(summary);
+		}
+		return builder.toString();
+	}
+
+	/**
+	 * Registers the metrics with the platform MBean server so they can be
+	 * read with jconsole, failures are logged rather than thrown
+	 */
+	public synchronized void register() {
+		if(objectName != null) {
+			return;
+		}
+		try {
+			ObjectName name = new ObjectName(String.format(OBJECT_NAME, System.identityHashCode(this)));
+			ManagementFactory.getPlatformMBeanServer().registerMBean(this, name);
+			objectName = name;
+		} catch (JMException e) {
+			LOGGER.error("Error registering numeric analysis metrics", e);
+		}
+	}
+
+	/**
+	 * Removes the metrics from the platform MBean server
+	 */
+	public synchronized void unregister() {
+		if(objectName == null) {
+			return;
+		}
+		try {
+			MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+			if(server.isRegistered(objectName)) {
+				server.unregisterMBean(objectName);
+			}
+		} catch (JMException e) {
+			LOGGER.error("Error unregistering numeric analysis metrics", e);
+		}
+		objectName = null;
+	}
+
+	/**
+	 * Gets the name the metrics are registered under
+	 *
+	 * @return the {@link javax.management.ObjectName} or null if not registered
+	 */
+	public synchronized ObjectName getObjectName() {
+		return objectName;
+	}
+
+	/**
+	 * Starts logging a summary at the given interval, nothing is logged for
+	 * an interval in which no phase ran
+	 *
+	 * @param intervalMillis a long containing the interval in milliseconds
+	 */
+	public synchronized void startLogging(long intervalMillis) {
+		this.stopLogging();
+		logTimer = new Timer("NumericAnalysisMetrics", true);
+		logTimer.scheduleAtFixedRate(new TimerTask() {
+			public void run() {
+				NumericAnalysisMetrics.this.logSummary();
+			}
+		}, intervalMillis, intervalMillis);
+	}
+
+	/**
+	 * Stops logging summaries
+	 */
+	public synchronized void stopLogging() {
+		if(logTimer != null) {
+			logTimer.cancel();
+			logTimer = null;
+		}
+	}
+
+	/**
+	 * Logs a summary if any phase has run since the last summary
+	 */
+	private void logSummary() {
+		long count = 0;
+		for(PhaseTimer timer : timers.values()) {
+			count += timer.getCount();
+		}
+		synchronized(this) {
+			if(count == loggedCount) {
+				return;
+			}
+			loggedCount = count;
+		}
+		LOGGER.info(this.getSummary());
+	}
+
+	/**
+	 * Looks up the timer of a phase
+	 *
+	 * @param phase a {@link java.lang.String} containing the phase name
+	 *
+	 * @return the {@link PhaseTimer} of the phase
+	 */
+	private PhaseTimer getTimer(String phase) {
+		PhaseTimer timer = timers.get(phase);
+		if(timer == null) {
+			throw new IllegalArgumentException(String.format("Unknown phase: %s, expected one of %s", phase, Arrays.toString(PHASES)));
+		}
+		return timer;
+	}
+
+	/**
+	 * Count, total and recent latencies of a single phase
+	 */
+	static class PhaseTimer {
+
+		private long[] samples = null;
+		private int sampleCount = 0;
+		private int next = 0;
+		private long count = 0;
+		private long totalNanos = 0;
+		private long maxNanos = 0;
+
+		/**
+		 * Constructor for the timer
+		 *
+		 * @param samples an int containing the number of recent latencies to keep
+		 */
+		PhaseTimer(int samples) {
+			this.samples = new long[Math.max(samples, 1)];
+		}
+
+		/**
+		 * Records a latency, the oldest recent latency is replaced once the
+		 * window is full
+		 *
+		 * @param nanos a long containing the latency
+		 */
+		synchronized void record(long nanos) {
+			samples[next] = nanos;
+			next = (next + 1) % samples.length;
+			sampleCount = Math.min(sampleCount + 1, samples.length);
+			count++;
+			totalNanos += nanos;
+			maxNanos = Math.max(maxNanos, nanos);
+		}
+
+		/**
+		 * Gets the number of latencies recorded
+		 *
+		 * @return a long containing the count
+		 */
+		synchronized long getCount() {
+			return count;
+		}
+
+		/**
+		 * Gets a percentile of the recent latencies
+		 *
+		 * @param percentile a double between 0 and 100
+		 *
+		 * @return a long containing the latency, 0 if none were recorded
+		 */
+		synchronized long getPercentileNanos(double percentile) {
+			if(sampleCount == 0) {
+				return 0;
+			}
+			long[] sorted = Arrays.copyOf(samples, sampleCount);
+			Arrays.sort(sorted);
+			int rank = (int) Math.ceil(Math.min(Math.max(percentile, 0d), 100d) / 100d * sampleCount) - 1;
+			return sorted[Math.max(rank, 0)];
+		}
+
+		/**
+		 * Discards everything recorded
+		 */
+		synchronized void reset() {
+			sampleCount = 0;
+			next = 0;
+			count = 0;
+			totalNanos = 0;
+			maxNanos = 0;
+		}
+
+		/**
+		 * Summarises the timer in a single line
+		 *
+		 * @param phase a {@link java.lang.String} containing the phase name
+		 *
+		 * @return a {@link java.lang.String} containing the summary
+		 */
+		synchronized String summarise(String phase) {
+			double mean = (count == 0) ? 0d : totalNanos / (double) count / NANOS_PER_MILLI;
+			return String.format("%s count=%d mean=%.2fms p50=%.2fms p95=%.2fms p99=%.2fms max=%.2fms", phase, count, mean,
+					this.getPercentileNanos(50d) / NANOS_PER_MILLI, this.getPercentileNanos(95d) / NANOS_PER_MILLI,
+					this.getPercentileNanos(99d) / NANOS_PER_MILLI, maxNanos / NANOS_PER_MILLI);
+		}
+	}
+}
@@ -0,0 +1,75 @@
+package com.about80minutes.palantir.helper.na;
+
+/**
+ * Management interface of {@link com.about80minutes.palantir.helper.na.NumericAnalysisMetrics},
+ * this is what is shown by jconsole for each open helper
+ */
+public interface NumericAnalysisMetricsMBean {
+
+	/**
+	 * Gets the number of objects loaded from Horizon
+	 *
+	 * @return a long containing the number of objects
+	 */
+	long getObjectsLoaded();
+
+	/**
+	 * Gets the number of property values extracted from loaded objects
+	 *
+	 * @return a long containing the number of values
+	 */
+	long getValuesExtracted();
+
+	/**
+	 * Gets the number of selections whose stats have been computed
+	 *
+	 * @return a long containing the number of selections
+	 */
+	long getSelections();
+
+	/**
+	 * Gets the number of properties in the latest stats
+	 *
+	 * @return an int containing the number of properties
+	 */
+	int getProperties();
+
+	/**
+	 * Gets the bytes of heap retained by the value store and value cache as
+	 * of the latest stats
+	 *
+	 * @return a long containing the number of bytes
+	 */
+	long getBytesRetained();
+
+	/**
+	 * Gets a line per phase with its count and recent latency percentiles
+	 *
+	 * @return a {@link java.lang.String}[] containing the summaries
+	 */
+	String[] getPhaseSummaries();
+
+	/**
+	 * Gets the number of times a phase has run
+	 *
+	 * @param phase a {@link java.lang.String} containing the phase name
+	 *
+	 * @return a long containing the count
+	 */
+	long getPhaseCount(String phase);
+
+	/**
+	 * Gets a percentile of the recent latencies of a phase
+	 *
+	 * @param phase a {@link java.lang.String} containing the phase name
+	 * @param percentile a double between 0 and 100
+	 *
+	 * @return a double containing the latency in milliseconds
+	 */
+	double getLatencyPercentileMillis(String phase, double percentile);
+
+	/**
+	 * Discards every count and latency recorded so far
+	 */
+	void reset();
+}
@@ -2,39 +2,66 @@ package com.about80minutes.palantir.helper.na;
 
 import java.awt.BorderLayout;
 import java.awt.Color;
+import java.awt.Graphics;
 import java.awt.Image;
 import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.awt.event.MouseAdapter;
+import java.awt.event.MouseEvent;
 import java.io.File;
-import java.io.FileNotFoundException;
-import java.io.FileOutputStream;
+import java.io.IOException;
 import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.util.Collection;
+import java.util.List;
 import java.util.Observable;
 import java.util.Observer;
+import java.util.concurrent.ExecutionException;
 
 import javax.imageio.ImageIO;
 import javax.swing.AbstractAction;
+import javax.swing.Action;
 import javax.swing.Icon;
 import javax.swing.ImageIcon;
 import javax.swing.JButton;
+import javax.swing.JComboBox;
 import javax.swing.JComponent;
+import javax.swing.JOptionPane;
 import javax.swing.JPanel;
+import javax.swing.JPopupMenu;
+import javax.swing.JLabel;
 import javax.swing.JScrollPane;
+import javax.swing.JSpinner;
 import javax.swing.JTable;
 import javax.swing.ListSelectionModel;
+import javax.swing.SpinnerNumberModel;
+import javax.swing.SwingConstants;
+import javax.swing.SwingWorker;
+import javax.swing.event.ChangeEvent;
+import javax.swing.event.ChangeListener;
+import javax.swing.event.ListSelectionEvent;
+import javax.swing.event.ListSelectionListener;
+import javax.swing.event.TableModelEvent;
+import javax.swing.event.TableModelListener;
+import javax.swing.table.DefaultTableCellRenderer;
+import javax.swing.table.TableRowSorter;
 
 import jxl.common.Logger;
 import net.miginfocom.swing.MigLayout;
 
-import org.apache.commons.io.IOUtils;
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
 
+import com.about80minutes.util.CalendarBuckets;
 import com.about80minutes.util.FileChooserUtil;
-import com.google.common.collect.Table;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.TopValues;
 import com.palantir.api.workspace.ApplicationContext;
 import com.palantir.api.workspace.ApplicationInterface;
 import com.palantir.api.workspace.HelperFactory;
 import com.palantir.api.workspace.HelperInterface;
 import com.palantir.api.workspace.PalantirFrame;
 import com.palantir.api.workspace.PalantirWorkspaceContext;
+import com.palantir.services.Locator;
 
 /**
  * This contains the UI code of the numeric analysis helper
@@ -44,6 +71,18 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 
 	private static final String RESOURCES_OWNER_ICON = "/kcalc.png";
 
+	//what an export action writes
+	private static final int EXPORT_TABLE = 0;
+	private static final int EXPORT_VALUES = 1;
+	private static final int EXPORT_COLUMNS = 2;
+
+	private static final String TYPE_ONLY = "(object type only)";
+	private static final String CORRELATION = "Correlation";
+	private static final String COVARIANCE = "Covariance";
+	//bucket units in the order of the CalendarBuckets constants
+	private static final String[] BUCKET_UNITS = new String[]{"Day", "Week", "Month"};
+	private static final int MAX_WINDOW = 366;
+
 	private HelperFactory factory;
 
 	private JPanel panel = null;
@@ -52,6 +91,13 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 	private NATableModel tableModel = null;
 
 	private ExportAction exportAction = null;
+	private ExportAction exportValuesAction = null;
+	private ExportAction exportColumnsAction = null;
+	private GroupByAction groupByAction = null;
+	private CorrelationAction correlationAction = null;
+	private TimeBucketAction timeBucketAction = null;
+	private JButton selectButton = null;
+	private ApplicationInterface applicationInterface = null;
 
 	private Icon icon = null;
 	private Image image = null;
@@ -75,18 +121,102 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 		panel = new JPanel(new BorderLayout());
 		
 		tableModel = new NATableModel();
-		table = new JTable(tableModel);
+		final NumericAnalysisMetrics metrics = controller.getMetrics();
+		table = new JTable(tableModel) {
+			@Override
+			protected void paintComponent(Graphics graphics) {
+				long start = System.nanoTime();
+				super.paintComponent(graphics);
+				metrics.record(NumericAnalysisMetrics.REPAINT, start);
+			}
+		};
 		
 		table.setSelectionMode(ListSelectionModel.SINGLE_SELECTION);
-		table.setAutoCreateRowSorter(true);
+		NumericCellRenderer renderer = new NumericCellRenderer();
+		table.setDefaultRenderer(Integer.class, renderer);
+		table.setDefaultRenderer(Float.class, renderer);
+		table.setDefaultRenderer(TopValues.class, renderer);
+		table.setDefaultRenderer(String.class, new PropertyCellRenderer());
+		//double clicking a property shows or hides its groups
+		table.addMouseListener(new MouseAdapter() {
+			@Override
+			public void mouseClicked(MouseEvent event) {
+				int row = table.rowAtPoint(event.getPoint());
+				if(event.getClickCount() == 2 && row >= 0) {
+					int modelRow = table.convertRowIndexToModel(row);
+					if(tableModel.hasGroups(modelRow)) {
+						tableModel.toggleGroups(modelRow);
+					}
+				}
+			}
+		});
+		//numeric columns sort on their values rather than the displayed text
+		final TableRowSorter<NATableModel> sorter = new TableRowSorter<NATableModel>(tableModel);
+		for(int i = 0;i < tableModel.getColumnCount();i++) {
+			if(tableModel.getColumnClass(i) == TopValues.class) {
+				sorter.setComparator(i, NATableModel.MODE_COMPARATOR);
+			}
+		}
+		table.setRowSorter(sorter);
+		//group rows are drawn under the row above, so the table stays in the
+		//model order while any are shown
+		tableModel.addTableModelListener(new TableModelListener() {
+			public void tableChanged(TableModelEvent event) {
+				boolean sortable = !tableModel.isShowingGroups();
+				for(int i = 0;i < tableModel.getColumnCount();i++) {
+					sorter.setSortable(i, sortable);
+				}
+				if(!sortable && !sorter.getSortKeys().isEmpty()) {
+					sorter.setSortKeys(null);
+				}
+			}
+		});
 
 		panel.add(new JScrollPane(table), BorderLayout.CENTER);
 		
-		exportAction = new ExportAction("Export");
+		exportAction = new ExportAction("Export", EXPORT_TABLE);
 		JButton exportButton = new JButton(exportAction);
+		exportValuesAction = new ExportAction("Export Values", EXPORT_VALUES);
+		JButton exportValuesButton = new JButton(exportValuesAction);
+		exportColumnsAction = new ExportAction("Export Binary", EXPORT_COLUMNS);
+		JButton exportColumnsButton = new JButton(exportColumnsAction);
+		groupByAction = new GroupByAction("Group By");
+		JButton groupByButton = new JButton(groupByAction);
+		correlationAction = new CorrelationAction("Correlation");
+		JButton correlationButton = new JButton(correlationAction);
+		timeBucketAction = new TimeBucketAction("Time Buckets");
+		JButton timeBucketButton = new JButton(timeBucketAction);
+		//selects objects of the chosen row on the graph
+		final JPopupMenu selectMenu = new JPopupMenu();
+		selectMenu.add(new SelectAction("Min", NumericAnalysisController.SELECT_MIN));
+		selectMenu.add(new SelectAction("Max", NumericAnalysisController.SELECT_MAX));
+		Action modeAction = new SelectAction("Mode", NumericAnalysisController.SELECT_MODE);
+		modeAction.putValue(Action.SHORT_DESCRIPTION, "Selects every value sharing the highest count, or only those "
+				+ "among the most frequent values estimated for a property with too many distinct values to count");
+		selectMenu.add(modeAction);
+		selectMenu.add(new SelectAction("Outliers (IQR)", NumericAnalysisController.SELECT_IQR_OUTLIERS));
+		selectMenu.add(new SelectAction("Outliers (z-score)", NumericAnalysisController.SELECT_Z_SCORE_OUTLIERS));
+		selectButton = new JButton("Select");
+		selectButton.setEnabled(false);
+		selectButton.addActionListener(new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				selectMenu.show(selectButton, 0, selectButton.getHeight());
+			}
+		});
+		table.getSelectionModel().addListSelectionListener(new ListSelectionListener() {
+			public void valueChanged(ListSelectionEvent event) {
+				selectButton.setEnabled(table.getSelectedRow() >= 0);
+			}
+		});
 		
 		JPanel southBox = new JPanel(new MigLayout("insets 5 5 5 5"));
 		southBox.add(exportButton);
+		southBox.add(exportValuesButton);
+		southBox.add(exportColumnsButton);
+		southBox.add(groupByButton);
+		southBox.add(correlationButton);
+		southBox.add(timeBucketButton);
+		southBox.add(selectButton);
 		southBox.setBackground(new Color(120, 120, 120)); //add as separate panel to 
 		
 		panel.add(southBox, BorderLayout.SOUTH);
@@ -203,7 +333,9 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 	 * can be used by this method. 
 	 */
 	public void dispose(ApplicationInterface ai) {
+		applicationInterface = null;
 		ai.getSelectionAgent().getSelectionAgentSupport().removeSelectionAgentListener(controller.getNASelectionAgent());
+		controller.dispose();
 	}
 
 	/**
@@ -212,6 +344,7 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 	 * @param ai a {@link com.palantir.api.workspace.ApplicationInterface}
 	 */
 	public void initialize(ApplicationInterface ai) {
+		applicationInterface = ai;
 		ai.getSelectionAgent().getSelectionAgentSupport().addSelectionAgentListener(controller.getNASelectionAgent());
 	}
 	
@@ -224,24 +357,382 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 	 * @param updateData an {@link java.lang.Object} which contains some data
 	 * for the update 
 	 */
-	@SuppressWarnings("unchecked")
 	public void update(Observable obsevable, Object updateData) {
-		tableModel.setTableData((Table<String, String, String>)updateData);
+		tableModel.setTableData((StatsUpdate) updateData);
 	}
 
 	/**
-	 * Action for exporting some data from the helper
+	 * Action for choosing the property which, along with the object type,
+	 * breaks the stats down into groups
+	 */
+	@SuppressWarnings("serial")
+	private class GroupByAction extends AbstractAction {
+		
+		/**
+		 * Constructor for this action
+		 * 
+		 * @param title a {@link java.lang.String} to use as the action title
+		 */
+		public GroupByAction(String title) {
+			super(title);
+		}
+
+		/**
+		 * Completes the actions required by this action
+		 * 
+		 * @param an {@link java.awt.event.ActionEvent} to react to 
+		 */
+		public void actionPerformed(ActionEvent event) {
+			//any of the properties shown may be grouped on
+			List<String> options = Lists.newArrayList();
+			options.add(TYPE_ONLY);
+			StatsUpdate stats = tableModel.getTableData();
+			for(int row = 0;row < stats.size();row++) {
+				if(stats.getGroup(row) == null) {
+					options.add(stats.getProperty(row));
+				}
+			}
+			String current = controller.getGroupProperty();
+			Object selected = JOptionPane.showInputDialog(getDisplayComponent(), "Break each property down by object type and:",
+					"Group By", JOptionPane.PLAIN_MESSAGE, null, options.toArray(), (current == null) ? TYPE_ONLY : current);
+			if(selected == null) {
+				return;
+			}
+			controller.setGroupProperty(TYPE_ONLY.equals(selected) ? null : (String) selected);
+		}
+	}
+
+	/**
+	 * Action for selecting the objects behind a stat of the chosen row on the
+	 * graph, such as the object holding the max. The objects are found in
+	 * the background and the stats stay those of the analysed selection.
+	 */
+	@SuppressWarnings("serial")
+	private class SelectAction extends AbstractAction {
+		
+		private int target = NumericAnalysisController.SELECT_MIN;
+		
+		/**
+		 * Constructor for this action
+		 * 
+		 * @param title a {@link java.lang.String} to use as the action title
+		 * @param target an int, one of the SELECT constants of
+		 * {@link com.about80minutes.palantir.helper.na.NumericAnalysisController}
+		 */
+		public SelectAction(String title, int target) {
+			super(title);
+			this.target = target;
+		}
+
+		/**
+		 * Completes the actions required by this action
+		 * 
+		 * @param an {@link java.awt.event.ActionEvent} to react to 
+		 */
+		public void actionPerformed(ActionEvent event) {
+			int viewRow = table.getSelectedRow();
+			if(viewRow < 0 || applicationInterface == null) {
+				return;
+			}
+			//the row is read here on the event thread, the objects are then
+			//found in the background
+			int row = table.convertRowIndexToModel(viewRow);
+			final String property = tableModel.getProperty(row);
+			final String group = tableModel.getGroup(row);
+			final RankStats rankStats = tableModel.getRankStats(row);
+			final Collection<Locator> selection = controller.getSelectedObjects();
+			new SwingWorker<List<Locator>, Void>() {
+				@Override
+				protected List<Locator> doInBackground() throws Exception {
+					long[] ids = controller.findObjects(property, group, target, rankStats);
+					return NumericAnalysisController.getLocators(selection, ids);
+				}
+
+				@Override
+				protected void done() {
+					try {
+						List<Locator> objects = get();
+						if(objects.isEmpty() || applicationInterface == null) {
+							return;
+						}
+						controller.ignoreSelection(objects);
+						applicationInterface.getSelectionAgent().setSelectedObjects(objects);
+					} catch (InterruptedException e) {
+						LOGGER.error("Error selecting objects", e);
+					} catch (ExecutionException e) {
+						LOGGER.error("Error selecting objects", e);
+					}
+				}
+			}.execute();
+		}
+	}
+
+	/**
+	 * Action for showing the correlations between the properties of the
+	 * selection, the correlations are computed in the background and shown
+	 * in a dialog which can switch to covariances
+	 */
+	@SuppressWarnings("serial")
+	private class CorrelationAction extends AbstractAction {
+		
+		/**
+		 * Constructor for this action
+		 * 
+		 * @param title a {@link java.lang.String} to use as the action title
+		 */
+		public CorrelationAction(String title) {
+			super(title);
+		}
+
+		/**
+		 * Completes the actions required by this action
+		 * 
+		 * @param an {@link java.awt.event.ActionEvent} to react to 
+		 */
+		public void actionPerformed(ActionEvent event) {
+			this.setEnabled(false);
+			new SwingWorker<CorrelationMatrix, Void>() {
+				@Override
+				protected CorrelationMatrix doInBackground() throws Exception {
+					return controller.computeCorrelations();
+				}
+
+				@Override
+				protected void done() {
+					CorrelationAction.this.setEnabled(true);
+					try {
+						CorrelationAction.this.showMatrix(get());
+					} catch (InterruptedException e) {
+						LOGGER.error("Error computing correlations", e);
+					} catch (ExecutionException e) {
+						LOGGER.error("Error computing correlations", e);
+					}
+				}
+			}.execute();
+		}
+
+		/**
+		 * Shows a matrix in a dialog, each cell's tooltip gives the number
+		 * of objects the pair was computed from
+		 * 
+		 * @param matrix the {@link com.about80minutes.palantir.helper.na.CorrelationMatrix}
+		 * to show
+		 */
+		private void showMatrix(final CorrelationMatrix matrix) {
+			final CorrelationTableModel model = new CorrelationTableModel(matrix);
+			final JTable matrixTable = new JTable(model) {
+				@Override
+				public String getToolTipText(MouseEvent event) {
+					int row = this.rowAtPoint(event.getPoint());
+					int column = this.convertColumnIndexToModel(this.columnAtPoint(event.getPoint()));
+					if(row < 0 || column < 1) {
+						return null;
+					}
+					return String.format("%s and %s, %s objects", matrix.getProperty(row), matrix.getProperty(column - 1),
+							NumericFunctions.formatNumber(Integer.valueOf((int) matrix.getCount(row, column - 1))));
+				}
+			};
+			matrixTable.setAutoResizeMode(JTable.AUTO_RESIZE_OFF);
+			DefaultTableCellRenderer renderer = new DefaultTableCellRenderer();
+			renderer.setHorizontalAlignment(SwingConstants.RIGHT);
+			for(int i = 1;i < model.getColumnCount();i++) {
+				matrixTable.getColumnModel().getColumn(i).setCellRenderer(renderer);
+			}
+			final JComboBox<String> measure = new JComboBox<String>(new String[]{CORRELATION, COVARIANCE});
+			measure.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					model.setShowCovariance(COVARIANCE.equals(measure.getSelectedItem()));
+				}
+			});
+			JPanel matrixPanel = new JPanel(new BorderLayout());
+			matrixPanel.add(measure, BorderLayout.NORTH);
+			matrixPanel.add(new JScrollPane(matrixTable), BorderLayout.CENTER);
+			JOptionPane.showMessageDialog(getDisplayComponent(), matrixPanel, "Correlation", JOptionPane.PLAIN_MESSAGE);
+		}
+	}
+
+	/**
+	 * Action for breaking the properties of the selection down into calendar
+	 * buckets of a date property. The date properties are listed and the
+	 * buckets computed in the background, the buckets are shown in a dialog
+	 * which can change the sliding window and export the table.
+	 */
+	@SuppressWarnings("serial")
+	private class TimeBucketAction extends AbstractAction {
+		
+		/**
+		 * Constructor for this action
+		 * 
+		 * @param title a {@link java.lang.String} to use as the action title
+		 */
+		public TimeBucketAction(String title) {
+			super(title);
+		}
+
+		/**
+		 * Completes the actions required by this action
+		 * 
+		 * @param an {@link java.awt.event.ActionEvent} to react to 
+		 */
+		public void actionPerformed(ActionEvent event) {
+			this.setEnabled(false);
+			new SwingWorker<List<String>, Void>() {
+				@Override
+				protected List<String> doInBackground() throws Exception {
+					return controller.getDateProperties();
+				}
+
+				@Override
+				protected void done() {
+					try {
+						TimeBucketAction.this.chooseBuckets(get());
+					} catch (InterruptedException e) {
+						TimeBucketAction.this.setEnabled(true);
+						LOGGER.error("Error listing date properties", e);
+					} catch (ExecutionException e) {
+						TimeBucketAction.this.setEnabled(true);
+						LOGGER.error("Error listing date properties", e);
+					}
+				}
+			}.execute();
+		}
+
+		/**
+		 * Asks which date property and bucket length to use, then computes
+		 * the buckets in the background
+		 * 
+		 * @param dateProperties a {@link java.util.List} of the date
+		 * properties of the selection
+		 */
+		private void chooseBuckets(List<String> dateProperties) {
+			if(dateProperties.isEmpty()) {
+				this.setEnabled(true);
+				JOptionPane.showMessageDialog(getDisplayComponent(), "No selected object has a date property",
+						"Time Buckets", JOptionPane.INFORMATION_MESSAGE);
+				return;
+			}
+			JComboBox<String> dates = new JComboBox<String>(dateProperties.toArray(new String[dateProperties.size()]));
+			JComboBox<String> units = new JComboBox<String>(BUCKET_UNITS);
+			units.setSelectedIndex(CalendarBuckets.MONTH);
+			JPanel optionsPanel = new JPanel(new MigLayout("insets 0, wrap 2"));
+			optionsPanel.add(new JLabel("Date property:"));
+			optionsPanel.add(dates, "growx");
+			optionsPanel.add(new JLabel("Bucket by:"));
+			optionsPanel.add(units, "growx");
+			int option = JOptionPane.showConfirmDialog(getDisplayComponent(), optionsPanel, "Time Buckets",
+					JOptionPane.OK_CANCEL_OPTION, JOptionPane.PLAIN_MESSAGE);
+			if(option != JOptionPane.OK_OPTION) {
+				this.setEnabled(true);
+				return;
+			}
+			final String dateProperty = (String) dates.getSelectedItem();
+			final int unit = units.getSelectedIndex();
+			new SwingWorker<TimeBucketReport, Void>() {
+				@Override
+				protected TimeBucketReport doInBackground() throws Exception {
+					return controller.computeTimeBuckets(dateProperty, unit);
+				}
+
+				@Override
+				protected void done() {
+					TimeBucketAction.this.setEnabled(true);
+					try {
+						TimeBucketAction.this.showReport(get());
+					} catch (InterruptedException e) {
+						LOGGER.error("Error computing time buckets", e);
+					} catch (ExecutionException e) {
+						LOGGER.error("Error computing time buckets", e);
+						JOptionPane.showMessageDialog(getDisplayComponent(),
+								String.format("Error computing time buckets: %s", e.getCause().getMessage()),
+								"Time Buckets", JOptionPane.ERROR_MESSAGE);
+					}
+				}
+			}.execute();
+		}
+
+		/**
+		 * Shows the buckets in a dialog, with a spinner for the number of
+		 * buckets in the sliding window and a button to export the table
+		 * 
+		 * @param report the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+		 * to show
+		 */
+		private void showReport(TimeBucketReport report) {
+			final TimeBucketTableModel model = new TimeBucketTableModel(report);
+			final JTable bucketTable = new JTable(model);
+			alignNumbers(bucketTable);
+			final JSpinner window = new JSpinner(new SpinnerNumberModel(TimeBucketTableModel.DEFAULT_WINDOW, 1, MAX_WINDOW, 1));
+			window.addChangeListener(new ChangeListener() {
+				public void stateChanged(ChangeEvent event) {
+					model.setWindow(((Number) window.getValue()).intValue());
+					//the columns are recreated with the new window in their names
+					alignNumbers(bucketTable);
+				}
+			});
+			JButton exportButton = new JButton("Export");
+			exportButton.addActionListener(new ActionListener() {
+				public void actionPerformed(ActionEvent event) {
+					File file = FileChooserUtil.showDialog(bucketTable, "Select File",
+							"Select",
+							"Select a file",
+							's',
+							null);
+					if(file == null) {
+						return;
+					}
+					new ExportWorker(bucketTable, file) {
+						@Override
+						protected void write(OutputStream stream) throws IOException {
+							model.toCSV(stream, this);
+						}
+					}.execute();
+				}
+			});
+			JPanel controls = new JPanel(new MigLayout("insets 0"));
+			controls.add(new JLabel("Window (buckets):"));
+			controls.add(window);
+			controls.add(exportButton);
+			JPanel reportPanel = new JPanel(new BorderLayout());
+			reportPanel.add(controls, BorderLayout.NORTH);
+			reportPanel.add(new JScrollPane(bucketTable), BorderLayout.CENTER);
+			JOptionPane.showMessageDialog(getDisplayComponent(), reportPanel, String.format("Time Buckets by %s", report.getDateProperty()),
+					JOptionPane.PLAIN_MESSAGE);
+		}
+
+		/**
+		 * Right aligns the numeric columns of the bucket table
+		 * 
+		 * @param bucketTable the {@link javax.swing.JTable} of buckets
+		 */
+		private void alignNumbers(JTable bucketTable) {
+			DefaultTableCellRenderer renderer = new DefaultTableCellRenderer();
+			renderer.setHorizontalAlignment(SwingConstants.RIGHT);
+			for(int i = TimeBucketTableModel.COUNT;i < bucketTable.getColumnCount();i++) {
+				bucketTable.getColumnModel().getColumn(i).setCellRenderer(renderer);
+			}
+		}
+	}
+
+	/**
+	 * Action for exporting some data from the helper, the export is written in
+	 * the background
 	 */
 	@SuppressWarnings("serial")
 	private class ExportAction extends AbstractAction {
 		
+		private int content = EXPORT_TABLE;
+		
 		/**
 		 * Constructor for this action
 		 * 
 		 * @param title a {@link java.lang.String} to use as the action title
+		 * @param content an int, one of EXPORT_TABLE for the table of stats,
+		 * EXPORT_VALUES for every selected value as CSV or EXPORT_COLUMNS for
+		 * every selected value in the binary columnar format
 		 */
-		public ExportAction(String title) {
+		public ExportAction(String title, int content) {
 			super(title);
+			this.content = content;
 		}
 
 		/**
@@ -255,19 +746,34 @@ public class NumericAnalysisView implements HelperInterface, Observer  {
 					"Select a file",
 					's',
 					null);
-			if(file != null) {
-				OutputStream output = null;
-				try {
-					output = new FileOutputStream(file);
-					tableModel.toCSV(output);
-				} catch (FileNotFoundException e) {
-					LOGGER.error(String.format("file: %s not found",file.getName()), e);
-					//report error
-				} finally {
-					if(output != null) {
-						IOUtils.closeQuietly(output);
+			if(file == null) {
+				return;
+			}
+			if(content == EXPORT_COLUMNS) {
+				new ChannelExportWorker(getDisplayComponent(), file) {
+					@Override
+					protected void write(FileChannel channel) throws IOException {
+						controller.exportColumns(channel, this);
 					}
-				}
+				}.execute();
+			} else if(content == EXPORT_VALUES) {
+				new ExportWorker(getDisplayComponent(), file) {
+					@Override
+					protected void write(OutputStream stream) throws IOException {
+						controller.exportValues(stream, this);
+					}
+				}.execute();
+			} else {
+				//the table is read here on the event thread, the copies are
+				//then written in the background
+				final StatsUpdate stats = tableModel.getTableData();
+				final RankStats[] rankStats = tableModel.getRankStats();
+				new ExportWorker(getDisplayComponent(), file) {
+					@Override
+					protected void write(OutputStream stream) throws IOException {
+						NATableModel.toCSV(stats, rankStats, stream, this);
+					}
+				}.execute();
 			}
 		}
 	}
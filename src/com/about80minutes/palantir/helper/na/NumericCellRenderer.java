@@ -0,0 +1,64 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.awt.Component;
+
+import javax.swing.JTable;
+import javax.swing.SwingConstants;
+import javax.swing.table.DefaultTableCellRenderer;
+
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.TopValues;
+
+/**
+ * Renders the raw stats held by {@link com.about80minutes.palantir.helper.na.NATableModel},
+ * numbers are formatted as they are painted rather than when the stats are
+ * computed, estimates are marked and deferred cells show a placeholder.
+ */
+@SuppressWarnings("serial")
+public class NumericCellRenderer extends DefaultTableCellRenderer {
+
+	/**
+	 * Constructor, numbers are right aligned
+	 */
+	public NumericCellRenderer() {
+		this.setHorizontalAlignment(SwingConstants.RIGHT);
+	}
+
+	/**
+	 * Returns the component used to paint a cell
+	 *
+	 * @param table the {@link javax.swing.JTable} being painted
+	 * @param value an {@link java.lang.Object} containing the cell value
+	 * @param isSelected true if the cell is selected
+	 * @param hasFocus true if the cell has focus
+	 * @param row an int containing the view row
+	 * @param column an int containing the view column
+	 *
+	 * @return the {@link java.awt.Component} to paint with
+	 */
+	@Override
+	public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+			boolean hasFocus, int row, int column) {
+		super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+		NATableModel model = (NATableModel) table.getModel();
+		int modelRow = table.convertRowIndexToModel(row);
+		int modelColumn = table.convertColumnIndexToModel(column);
+
+		String text = "";
+		if(value == null) {
+			if(model.isDeferred(modelColumn)) {
+				text = NATableModel.PENDING_VALUE;
+			}
+		} else if(value instanceof Integer) {
+			text = NumericFunctions.formatNumber((Integer) value);
+		} else if(value instanceof TopValues) {
+			text = NumericFunctions.formatTopValues((TopValues) value);
+		} else if(model.isApproximate(modelRow, modelColumn)) {
+			text = NumericFunctions.formatApproximateNumber((Float) value);
+		} else {
+			text = NumericFunctions.formatNumber((Float) value);
+		}
+		this.setText(text);
+		return this;
+	}
+}
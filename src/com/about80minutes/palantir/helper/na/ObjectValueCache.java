@@ -0,0 +1,205 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.WeakHashMap;
+
+import com.palantir.api.workspace.PalantirWorkspaceContext;
+
+/**
+ * Least recently used cache of the numeric values extracted from objects,
+ * keyed on object ID. The cache is bounded by an estimate of the heap used by
+ * its entries rather than by entry count, once the budget is exceeded the
+ * least recently used entries are evicted.
+ *
+ * One cache, and the {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+ * its entries refer to, is shared by every helper in a workspace.
+ */
+public class ObjectValueCache {
+
+	public static final long DEFAULT_BUDGET_BYTES = 64L * 1024L * 1024L;
+	//system property overriding the budget of each workspace's cache
+	public static final String BUDGET_PROPERTY = "nahelper.cacheBudgetBytes";
+
+	private static final Map<PalantirWorkspaceContext, ObjectValueCache> WORKSPACE_CACHES = new WeakHashMap<PalantirWorkspaceContext, ObjectValueCache>();
+
+	private PropertyDictionary dictionary = new PropertyDictionary();
+	private PropertyDictionary typeDictionary = new PropertyDictionary();
+	private PropertyDictionary dateDictionary = new PropertyDictionary();
+	private LinkedHashMap<Long, ObjectValues> entries = new LinkedHashMap<Long, ObjectValues>(1024, 0.75f, true);
+	private long budgetBytes = DEFAULT_BUDGET_BYTES;
+	private long usedBytes = 0;
+	private long hits = 0;
+	private long misses = 0;
+
+	/**
+	 * Gets the cache for the given workspace, creating it if required. A new
+	 * cache takes its budget from the {@link #BUDGET_PROPERTY} system
+	 * property, or {@link #DEFAULT_BUDGET_BYTES} if that is not set
+	 *
+	 * @param palantirContext the {@link com.palantir.api.workspace.PalantirWorkspaceContext}
+	 * the cache belongs to
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.ObjectValueCache}
+	 * for the workspace
+	 */
+	public static ObjectValueCache forWorkspace(PalantirWorkspaceContext palantirContext) {
+		synchronized(WORKSPACE_CACHES) {
+			ObjectValueCache cache = WORKSPACE_CACHES.get(palantirContext);
+			if(cache == null) {
+				cache = new ObjectValueCache();
+				cache.setBudgetBytes(Long.getLong(BUDGET_PROPERTY, DEFAULT_BUDGET_BYTES).longValue());
+				WORKSPACE_CACHES.put(palantirContext, cache);
+			}
+			return cache;
+		}
+	}
+
+	/**
+	 * Gets the dictionary used for the property indexes of cached entries
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 */
+	public PropertyDictionary getDictionary() {
+		return dictionary;
+	}
+
+	/**
+	 * Gets the dictionary used for the object type indexes of cached entries
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * of object type display names
+	 */
+	public PropertyDictionary getTypeDictionary() {
+		return typeDictionary;
+	}
+
+	/**
+	 * Gets the dictionary used for the date property indexes of cached
+	 * entries
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * of date property display names
+	 */
+	public PropertyDictionary getDateDictionary() {
+		return dateDictionary;
+	}
+
+	/**
+	 * Looks up the values of an object, marking the entry as recently used
+	 *
+	 * @param objectId a long containing the object ID
+	 *
+	 * @return the cached {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * or null if the object is not cached
+	 */
+	public synchronized ObjectValues get(long objectId) {
+		ObjectValues values = entries.get(Long.valueOf(objectId));
+		if(values == null) {
+			misses++;
+		} else {
+			hits++;
+		}
+		return values;
+	}
+
+	/**
+	 * Adds the values of an object to the cache, evicting the least recently
+	 * used entries if the budget is exceeded
+	 *
+	 * @param objectId a long containing the object ID
+	 * @param values the {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * extracted from the object
+	 */
+	public synchronized void put(long objectId, ObjectValues values) {
+		ObjectValues previous = entries.put(Long.valueOf(objectId), values);
+		if(previous != null) {
+			usedBytes -= previous.estimateBytes();
+		}
+		usedBytes += values.estimateBytes();
+		this.evict();
+	}
+
+	/**
+	 * Removes the given objects from the cache, used when they have changed
+	 *
+	 * @param objectIds an {@link java.lang.Iterable} of {@link java.lang.Long}
+	 * object IDs
+	 */
+	public synchronized void invalidate(Iterable<Long> objectIds) {
+		for(Long objectId : objectIds) {
+			ObjectValues previous = entries.remove(objectId);
+			if(previous != null) {
+				usedBytes -= previous.estimateBytes();
+			}
+		}
+	}
+
+	/**
+	 * Removes every entry from the cache
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		usedBytes = 0;
+	}
+
+	/**
+	 * Sets the heap budget of the cache, evicting entries if the cache is
+	 * already over the new budget
+	 *
+	 * @param budgetBytes a long containing the budget in bytes
+	 */
+	public synchronized void setBudgetBytes(long budgetBytes) {
+		this.budgetBytes = budgetBytes;
+		this.evict();
+	}
+
+	/**
+	 * Gets the estimated heap used by the cached entries
+	 *
+	 * @return a long containing the estimate in bytes
+	 */
+	public synchronized long getUsedBytes() {
+		return usedBytes;
+	}
+
+	/**
+	 * Gets the number of cached objects
+	 *
+	 * @return an int containing the number of entries
+	 */
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	/**
+	 * Gets the number of lookups that found a cached entry
+	 *
+	 * @return a long containing the hit count
+	 */
+	public synchronized long getHits() {
+		return hits;
+	}
+
+	/**
+	 * Gets the number of lookups that did not find a cached entry
+	 *
+	 * @return a long containing the miss count
+	 */
+	public synchronized long getMisses() {
+		return misses;
+	}
+
+	/**
+	 * Evicts least recently used entries until the cache is within budget
+	 */
+	private void evict() {
+		Iterator<Entry<Long, ObjectValues>> iterator = entries.entrySet().iterator();
+		while(usedBytes > budgetBytes && iterator.hasNext()) {
+			usedBytes -= iterator.next().getValue().estimateBytes();
+			iterator.remove();
+		}
+	}
+}
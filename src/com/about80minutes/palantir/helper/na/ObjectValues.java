@@ -0,0 +1,245 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.Arrays;
+
+/**
+ * The numeric property values extracted from a single object, held as a pair
+ * of parallel primitive arrays of {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+ * indexes and values, along with the dictionary index of the object's type.
+ * The values of date properties are held in a second pair of arrays as days
+ * since 1970-01-01, indexed by a separate dictionary of date properties.
+ * Instances are immutable once built.
+ */
+public class ObjectValues {
+
+	public static final int NO_TYPE = -1;
+	//declared before EMPTY, which is built with it
+	private static final int[] NO_DATES = new int[0];
+	public static final ObjectValues EMPTY = new ObjectValues(new int[0], new float[0]);
+
+	//approximate overhead of the instance, its arrays and a cache entry
+	private static final int ENTRY_OVERHEAD_BYTES = 112;
+
+	private int type = NO_TYPE;
+	private int[] properties = null;
+	private float[] values = null;
+	private int[] dateProperties = NO_DATES;
+	private int[] dates = NO_DATES;
+
+	/**
+	 * Constructor for values of an object whose type is not known, wraps the
+	 * given arrays which must not be modified after this call
+	 *
+	 * @param properties an int[] containing the property index of each value
+	 * @param values a float[] containing the values
+	 */
+	public ObjectValues(int[] properties, float[] values) {
+		this(NO_TYPE, properties, values);
+	}
+
+	/**
+	 * Constructor, wraps the given arrays which must not be modified after
+	 * this call
+	 *
+	 * @param type an int containing the type index of the object, or
+	 * {@link #NO_TYPE}
+	 * @param properties an int[] containing the property index of each value
+	 * @param values a float[] containing the values
+	 */
+	public ObjectValues(int type, int[] properties, float[] values) {
+		this(type, properties, values, NO_DATES, NO_DATES);
+	}
+
+	/**
+	 * Constructor for values including dates, wraps the given arrays which
+	 * must not be modified after this call
+	 *
+	 * @param type an int containing the type index of the object, or
+	 * {@link #NO_TYPE}
+	 * @param properties an int[] containing the property index of each value
+	 * @param values a float[] containing the values
+	 * @param dateProperties an int[] containing the date property index of
+	 * each date
+	 * @param dates an int[] containing the dates as days since 1970-01-01
+	 */
+	public ObjectValues(int type, int[] properties, float[] values, int[] dateProperties, int[] dates) {
+		this.type = type;
+		this.properties = properties;
+		this.values = values;
+		this.dateProperties = dateProperties;
+		this.dates = dates;
+	}
+
+	/**
+	 * Gets the type of the object
+	 *
+	 * @return an int containing the type index of the object, or
+	 * {@link #NO_TYPE}
+	 */
+	public int getType() {
+		return type;
+	}
+
+	/**
+	 * Finds the first value of a property
+	 *
+	 * @param property an int containing the property index
+	 *
+	 * @return the position of the value, or -1 if the object has no value for
+	 * the property
+	 */
+	public int indexOf(int property) {
+		for(int i = 0;i < properties.length;i++) {
+			if(properties[i] == property) {
+				return i;
+			}
+		}
+		return -1;
+	}
+
+	/**
+	 * Gets the number of values held
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Gets the property index of the value at the given position
+	 *
+	 * @param i an int containing the position
+	 *
+	 * @return an int containing the property index
+	 */
+	public int getProperty(int i) {
+		return properties[i];
+	}
+
+	/**
+	 * Gets the value at the given position
+	 *
+	 * @param i an int containing the position
+	 *
+	 * @return a float containing the value
+	 */
+	public float getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Gets the number of dates held
+	 *
+	 * @return an int containing the number of dates
+	 */
+	public int getDateCount() {
+		return dates.length;
+	}
+
+	/**
+	 * Gets the date property index of the date at the given position
+	 *
+	 * @param i an int containing the position
+	 *
+	 * @return an int containing the date property index
+	 */
+	public int getDateProperty(int i) {
+		return dateProperties[i];
+	}
+
+	/**
+	 * Gets the date at the given position
+	 *
+	 * @param i an int containing the position
+	 *
+	 * @return an int containing the days since 1970-01-01
+	 */
+	public int getDate(int i) {
+		return dates[i];
+	}
+
+	/**
+	 * Estimates the heap used by this instance when cached
+	 *
+	 * @return a long containing the estimated number of bytes
+	 */
+	public long estimateBytes() {
+		return ENTRY_OVERHEAD_BYTES + 8L * (values.length + dates.length);
+	}
+
+	/**
+	 * Reusable builder for {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 */
+	public static class Builder {
+
+		private int type = NO_TYPE;
+		private int[] properties = new int[8];
+		private float[] values = new float[8];
+		private int size = 0;
+		private int[] dateProperties = new int[4];
+		private int[] dates = new int[4];
+		private int dateCount = 0;
+
+		/**
+		 * Sets the type of the object being built
+		 *
+		 * @param type an int containing the type index
+		 */
+		public void setType(int type) {
+			this.type = type;
+		}
+
+		/**
+		 * Adds a value to the object being built
+		 *
+		 * @param property an int containing the property index
+		 * @param value a float containing the value
+		 */
+		public void add(int property, float value) {
+			if(size == values.length) {
+				properties = Arrays.copyOf(properties, size * 2);
+				values = Arrays.copyOf(values, size * 2);
+			}
+			properties[size] = property;
+			values[size] = value;
+			size++;
+		}
+
+		/**
+		 * Adds a date to the object being built
+		 *
+		 * @param property an int containing the date property index
+		 * @param date an int containing the days since 1970-01-01
+		 */
+		public void addDate(int property, int date) {
+			if(dateCount == dates.length) {
+				dateProperties = Arrays.copyOf(dateProperties, dateCount * 2);
+				dates = Arrays.copyOf(dates, dateCount * 2);
+			}
+			dateProperties[dateCount] = property;
+			dates[dateCount] = date;
+			dateCount++;
+		}
+
+		/**
+		 * Creates the values added so far and resets the builder for the next
+		 * object
+		 *
+		 * @return an {@link com.about80minutes.palantir.helper.na.ObjectValues}
+		 */
+		public ObjectValues build() {
+			ObjectValues built = EMPTY;
+			if(dateCount > 0) {
+				built = new ObjectValues(type, Arrays.copyOf(properties, size), Arrays.copyOf(values, size),
+						Arrays.copyOf(dateProperties, dateCount), Arrays.copyOf(dates, dateCount));
+			} else if(size > 0) {
+				built = new ObjectValues(type, Arrays.copyOf(properties, size), Arrays.copyOf(values, size));
+			}
+			type = NO_TYPE;
+			size = 0;
+			dateCount = 0;
+			return built;
+		}
+	}
+}
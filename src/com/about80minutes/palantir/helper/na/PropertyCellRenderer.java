@@ -0,0 +1,49 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.awt.Component;
+
+import javax.swing.JTable;
+import javax.swing.table.DefaultTableCellRenderer;
+
+/**
+ * Renders the property column of {@link com.about80minutes.palantir.helper.na.NATableModel},
+ * properties which have been broken down into groups are marked as expandable
+ * and group rows are indented under their property.
+ */
+@SuppressWarnings("serial")
+public class PropertyCellRenderer extends DefaultTableCellRenderer {
+
+	private static final String COLLAPSED_PREFIX = "+ ";
+	private static final String EXPANDED_PREFIX = "- ";
+	private static final String GROUP_INDENT = "      ";
+
+	/**
+	 * Returns the component used to paint a cell
+	 *
+	 * @param table the {@link javax.swing.JTable} being painted
+	 * @param value an {@link java.lang.Object} containing the cell value
+	 * @param isSelected true if the cell is selected
+	 * @param hasFocus true if the cell has focus
+	 * @param row an int containing the view row
+	 * @param column an int containing the view column
+	 *
+	 * @return the {@link java.awt.Component} to paint with
+	 */
+	@Override
+	public Component getTableCellRendererComponent(JTable table, Object value, boolean isSelected,
+			boolean hasFocus, int row, int column) {
+		super.getTableCellRendererComponent(table, value, isSelected, hasFocus, row, column);
+		NATableModel model = (NATableModel) table.getModel();
+		int modelRow = table.convertRowIndexToModel(row);
+
+		String text = String.valueOf(value);
+		if(model.isGroupRow(modelRow)) {
+			//the property is shown on the row above
+			text = GROUP_INDENT + model.getGroup(modelRow);
+		} else if(model.hasGroups(modelRow)) {
+			text = (model.isExpanded(modelRow) ? EXPANDED_PREFIX : COLLAPSED_PREFIX) + text;
+		}
+		this.setText(text);
+		return this;
+	}
+}
@@ -0,0 +1,70 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.List;
+import java.util.Map;
+
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+
+/**
+ * Maps property display names to compact int indexes so that values can be
+ * stored against an int rather than a {@link java.lang.String}. Indexes are
+ * never reused, so a dictionary can be shared by everything that holds
+ * values for the same workspace.
+ */
+public class PropertyDictionary {
+
+	private Map<String, Integer> propertyIndex = Maps.newHashMap();
+	private List<String> propertyNames = Lists.newArrayList();
+
+	/**
+	 * Looks up the index of a property, registering the property if it has
+	 * not been seen before
+	 *
+	 * @param property a {@link java.lang.String} containing the property name
+	 *
+	 * @return an int containing the index of the property
+	 */
+	public synchronized int indexOf(String property) {
+		Integer index = propertyIndex.get(property);
+		if(index == null) {
+			index = Integer.valueOf(propertyNames.size());
+			propertyIndex.put(property, index);
+			propertyNames.add(property);
+		}
+		return index.intValue();
+	}
+
+	/**
+	 * Looks up the index of a property without registering it
+	 *
+	 * @param property a {@link java.lang.String} containing the property name
+	 *
+	 * @return an int containing the index of the property, -1 if the property
+	 * has not been seen
+	 */
+	public synchronized int find(String property) {
+		Integer index = propertyIndex.get(property);
+		return (index == null) ? -1 : index.intValue();
+	}
+
+	/**
+	 * Gets the name of the property at the given index
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public synchronized String getName(int index) {
+		return propertyNames.get(index);
+	}
+
+	/**
+	 * Gets the number of properties registered with the dictionary
+	 *
+	 * @return an int containing the number of properties
+	 */
+	public synchronized int size() {
+		return propertyNames.size();
+	}
+}
@@ -0,0 +1,197 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.Calendar;
+import java.util.Date;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentMap;
+
+import com.about80minutes.util.CalendarBuckets;
+import com.about80minutes.util.NumericFunctions;
+import com.google.common.collect.Maps;
+import com.palantir.api.horizon.v1.extractor.HValueExtractor;
+import com.palantir.api.horizon.v1.extractor.HValueExtractors;
+import com.palantir.api.horizon.v1.object.HObject;
+import com.palantir.api.horizon.v1.object.HPropertyBaseType;
+import com.palantir.api.horizon.v1.object.HPropertyType;
+import com.palantir.api.workspace.PalantirWorkspaceContext;
+
+/**
+ * Extracts the numeric property values of objects. The value extractor,
+ * ontology display name and dictionary index of each property type are looked
+ * up once per property type URI and reused for every later object, and values
+ * are read as numbers rather than parsed back out of their display strings.
+ * Date properties are extracted alongside as the day they fall on in the
+ * default time zone, indexed in a dictionary of their own.
+ */
+public class PropertyExtractorCache {
+
+	private PalantirWorkspaceContext palantirContext = null;
+	private PropertyDictionary dictionary = null;
+	private PropertyDictionary typeDictionary = null;
+	private PropertyDictionary dateDictionary = null;
+	private ConcurrentMap<String, CompiledProperty> compiled = Maps.newConcurrentMap();
+	private ConcurrentMap<String, Integer> types = Maps.newConcurrentMap();
+
+	/**
+	 * Constructor for the cache
+	 *
+	 * @param palantirContext a {@link com.palantir.api.workspace.PalantirWorkspaceContext}
+	 * whose ontology supplies property display names
+	 * @param dictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index property display names in
+	 * @param typeDictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index object type display names in
+	 * @param dateDictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index date property display names in
+	 */
+	public PropertyExtractorCache(PalantirWorkspaceContext palantirContext, PropertyDictionary dictionary,
+			PropertyDictionary typeDictionary, PropertyDictionary dateDictionary) {
+		this.palantirContext = palantirContext;
+		this.dictionary = dictionary;
+		this.typeDictionary = typeDictionary;
+		this.dateDictionary = dateDictionary;
+	}
+
+	/**
+	 * Extracts the numeric and date property values of an object, component
+	 * properties are not currently handled
+	 *
+	 * @param item a {@link com.palantir.api.horizon.v1.object.HObject} to
+	 * extract values from
+	 * @param valueBuilder an {@link com.about80minutes.palantir.helper.na.ObjectValues.Builder}
+	 * to reuse
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * of the object, indexed by property display name
+	 */
+	public ObjectValues extractValues(HObject item, ObjectValues.Builder valueBuilder) {
+		valueBuilder.setType(this.getType(item.getTypeUri()));
+		for (HPropertyType<?> htype : item.getPropertyTypes()) {
+			if(htype.getPropertyBaseType() == HPropertyBaseType.NUMBER) {
+				CompiledProperty property = this.getCompiled(htype, dictionary);
+				for (Object value : property.extractor.getValues(item)) {
+					if(value != null) {
+						valueBuilder.add(property.index, toFloat(value));
+					}
+				}
+			} else if(htype.getPropertyBaseType() == HPropertyBaseType.DATE) {
+				CompiledProperty property = this.getCompiled(htype, dateDictionary);
+				for (Object value : property.extractor.getValues(item)) {
+					int day = (value == null) ? CalendarBuckets.NO_DAY : toEpochDay(value);
+					if(day != CalendarBuckets.NO_DAY) {
+						valueBuilder.addDate(property.index, day);
+					}
+				}
+			}
+		}
+		return valueBuilder.build();
+	}
+
+	/**
+	 * Drops every compiled property type, for use if the ontology changes
+	 */
+	public void clear() {
+		compiled.clear();
+		types.clear();
+	}
+
+	/**
+	 * Gets the dictionary index of an object type, looking its display name
+	 * up on first use
+	 *
+	 * @param typeUri a {@link java.lang.String} containing the URI of the
+	 * object type
+	 *
+	 * @return an int containing the type index
+	 */
+	private int getType(String typeUri) {
+		Integer type = types.get(typeUri);
+		if(type == null) {
+			String typeName = palantirContext.getOntology().getObjectTypeByUri(typeUri).getDisplayName();
+			type = typeDictionary.indexOf(typeName);
+			types.putIfAbsent(typeUri, type);
+		}
+		return type;
+	}
+
+	/**
+	 * Gets the compiled form of a property type, compiling it on first use
+	 *
+	 * @param htype the {@link com.palantir.api.horizon.v1.object.HPropertyType}
+	 * to look up
+	 * @param propertyDictionary the {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to index the type's display name in on first use
+	 *
+	 * @return the {@link CompiledProperty} for the type
+	 */
+	private CompiledProperty getCompiled(HPropertyType<?> htype, PropertyDictionary propertyDictionary) {
+		CompiledProperty property = compiled.get(htype.getUri());
+		if(property == null) {
+			//two threads may compile the same type, both results are equivalent
+			HValueExtractor<Object> extractor = HValueExtractors.newPropertyValueExtractor(htype);
+			String propName = palantirContext.getOntology().getPropertyTypeByUri(htype.getUri()).getDisplayName();
+			property = new CompiledProperty(extractor, propertyDictionary.indexOf(propName));
+			compiled.putIfAbsent(htype.getUri(), property);
+		}
+		return property;
+	}
+
+	/**
+	 * Converts an extracted value to a float, numbers are converted directly
+	 * and anything else is parsed from its string form
+	 *
+	 * @param value an {@link java.lang.Object} extracted from a number property
+	 *
+	 * @return a float containing the value
+	 */
+	static float toFloat(Object value) {
+		if(value instanceof Number) {
+			return ((Number) value).floatValue();
+		}
+		return NumericFunctions.parseNumber(value.toString());
+	}
+
+	/**
+	 * Converts an extracted value to the day it falls on in the default time
+	 * zone, numbers are taken as milliseconds since 1970-01-01 UTC
+	 *
+	 * @param value an {@link java.lang.Object} extracted from a date property
+	 *
+	 * @return an int containing the days since 1970-01-01, or
+	 * {@link com.about80minutes.util.CalendarBuckets#NO_DAY} if the value is
+	 * not a date
+	 */
+	static int toEpochDay(Object value) {
+		long millis = 0;
+		if(value instanceof Date) {
+			millis = ((Date) value).getTime();
+		} else if(value instanceof Calendar) {
+			millis = ((Calendar) value).getTimeInMillis();
+		} else if(value instanceof Number) {
+			millis = ((Number) value).longValue();
+		} else {
+			return CalendarBuckets.NO_DAY;
+		}
+		return CalendarBuckets.toEpochDay(millis, TimeZone.getDefault());
+	}
+
+	/**
+	 * The extractor and dictionary index of a single property type
+	 */
+	private static class CompiledProperty {
+		private final HValueExtractor<Object> extractor;
+		private final int index;
+
+		/**
+		 * Constructor for the compiled property
+		 *
+		 * @param extractor an {@link com.palantir.api.horizon.v1.extractor.HValueExtractor}
+		 * for the property type
+		 * @param index an int containing the dictionary index of the property
+		 */
+		private CompiledProperty(HValueExtractor<Object> extractor, int index) {
+			this.extractor = extractor;
+			this.index = index;
+		}
+	}
+}
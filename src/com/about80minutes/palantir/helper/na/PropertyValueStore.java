@@ -0,0 +1,917 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import org.apache.log4j.Logger;
+
+import com.about80minutes.util.EventThreadGuard;
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.FloatIntCounter;
+import com.about80minutes.util.HeavyHitters;
+import com.about80minutes.util.IntColumn;
+import com.about80minutes.util.LongColumn;
+import com.about80minutes.util.StatsAccumulator;
+import com.about80minutes.util.TopValues;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.Sets;
+
+/**
+ * Column store for the numeric property values of a selection. Property names
+ * are held once in a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+ * and mapped to a compact index, each index owns a primitive
+ * {@link com.about80minutes.util.FloatColumn} of values with a parallel
+ * {@link com.about80minutes.util.LongColumn} of the IDs of the objects the
+ * values came from.
+ *
+ * The moment stats and value counts of each property are maintained as values
+ * are added and removed, so small changes to a selection do not require the
+ * whole selection to be reprocessed. Once a group holds more distinct values
+ * than {@link #DEFAULT_MAX_EXACT_DISTINCT} its exact counts are replaced by a
+ * bounded {@link com.about80minutes.util.HeavyHitters} sketch, as a column of
+ * mostly unique values would otherwise need a count per value.
+ *
+ * Each value may be added to a group, such as the type of the object it came
+ * from. The group of each value is held in a parallel {@link com.about80minutes.util.IntColumn}
+ * and the stats and counts are kept per group in a hash map, so every group is
+ * aggregated in the same pass that adds the values. The stats of a whole
+ * property are merged from its groups when asked for.
+ *
+ * The dates of each object are held apart from the numeric values, in an
+ * {@link com.about80minutes.util.IntColumn} of days since 1970-01-01 and a
+ * parallel {@link com.about80minutes.util.LongColumn} of object IDs per date
+ * property, so numeric values can be bucketed by the date of their object.
+ *
+ * Once the columns, counts and dates use more of the heap than the configured
+ * budget the largest value and date columns are spilled to memory mapped
+ * temporary files, a store which may have spilled must be cleared when
+ * finished with so the files are deleted.
+ *
+ * Adding and removing values scans whole columns, so a store must not be
+ * changed on the event dispatch thread.
+ */
+public class PropertyValueStore {
+	private static final Logger LOGGER = Logger.getLogger(PropertyValueStore.class);
+
+	public static final int NO_GROUP = -1;
+	public static final int DEFAULT_MAX_EXACT_DISTINCT = 65536;
+
+	private PropertyDictionary dictionary = null;
+	private List<FloatColumn> columns = Lists.newArrayList();
+	private List<LongColumn> objectIds = Lists.newArrayList();
+	private List<IntColumn> groupIds = Lists.newArrayList();
+	private List<Map<Integer, StatsAccumulator>> stats = Lists.newArrayList();
+	private List<Map<Integer, FloatIntCounter>> counters = Lists.newArrayList();
+	//groups with too many distinct values to count exactly
+	private List<Map<Integer, HeavyHitters>> heavyHitters = Lists.newArrayList();
+	private List<IntColumn> dates = Lists.newArrayList();
+	private List<LongColumn> dateObjectIds = Lists.newArrayList();
+	private long heapBudgetBytes = Long.MAX_VALUE;
+	private int maxExactDistinct = DEFAULT_MAX_EXACT_DISTINCT;
+	private File spillDirectory = null;
+
+	/**
+	 * Constructor, creates a store whose property indexes come from the given
+	 * dictionary
+	 *
+	 * @param dictionary a {@link com.about80minutes.palantir.helper.na.PropertyDictionary}
+	 * to look property names up in
+	 */
+	public PropertyValueStore(PropertyDictionary dictionary) {
+		this.dictionary = dictionary;
+	}
+
+	/**
+	 * Adds a value for the given property, creating a column for the property
+	 * if one does not already exist
+	 *
+	 * @param property a {@link java.lang.String} containing the property name
+	 * @param objectId a long containing the ID of the object holding the value
+	 * @param value a float containing the value to add
+	 */
+	public void add(String property, long objectId, float value) {
+		this.add(this.indexOf(property), objectId, value);
+	}
+
+	/**
+	 * Adds every value extracted from an object
+	 *
+	 * @param objectId a long containing the ID of the object
+	 * @param values the {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * extracted from the object
+	 */
+	public void addObject(long objectId, ObjectValues values) {
+		this.addObject(objectId, values, NO_GROUP);
+	}
+
+	/**
+	 * Adds every value extracted from an object to the given group
+	 *
+	 * @param objectId a long containing the ID of the object
+	 * @param values the {@link com.about80minutes.palantir.helper.na.ObjectValues}
+	 * extracted from the object
+	 * @param group an int containing the group of the object, or
+	 * {@link #NO_GROUP}
+	 */
+	public void addObject(long objectId, ObjectValues values, int group) {
+		for(int i = 0;i < values.size();i++) {
+			this.add(values.getProperty(i), objectId, values.getValue(i), group);
+		}
+		for(int i = 0;i < values.getDateCount();i++) {
+			this.addDate(values.getDateProperty(i), objectId, values.getDate(i));
+		}
+	}
+
+	/**
+	 * Adds a date for the date property with the given index
+	 *
+	 * @param index an int containing the date property index
+	 * @param objectId a long containing the ID of the object holding the date
+	 * @param date an int containing the days since 1970-01-01
+	 */
+	public void addDate(int index, long objectId, int date) {
+		this.ensureDateColumn(index);
+		dates.get(index).add(date);
+		dateObjectIds.get(index).add(objectId);
+	}
+
+	/**
+	 * Adds a value for the property with the given dictionary index
+	 *
+	 * @param index an int containing the property index
+	 * @param objectId a long containing the ID of the object holding the value
+	 * @param value a float containing the value to add
+	 */
+	public void add(int index, long objectId, float value) {
+		this.add(index, objectId, value, NO_GROUP);
+	}
+
+	/**
+	 * Adds a value in a group for the property with the given dictionary
+	 * index
+	 *
+	 * @param index an int containing the property index
+	 * @param objectId a long containing the ID of the object holding the value
+	 * @param value a float containing the value to add
+	 * @param group an int containing the group of the value, or
+	 * {@link #NO_GROUP}
+	 */
+	public void add(int index, long objectId, float value, int group) {
+		this.ensureColumn(index);
+		columns.get(index).add(value);
+		objectIds.get(index).add(objectId);
+		groupIds.get(index).add(group);
+		Integer key = Integer.valueOf(group);
+		StatsAccumulator groupStats = stats.get(index).get(key);
+		if(groupStats == null) {
+			groupStats = new StatsAccumulator();
+			stats.get(index).put(key, groupStats);
+			counters.get(index).put(key, new FloatIntCounter());
+		}
+		groupStats.add(value);
+		FloatIntCounter counter = counters.get(index).get(key);
+		if(counter == null) {
+			heavyHitters.get(index).get(key).add(value);
+		} else if(counter.add(value) == 1 && counter.size() > maxExactDistinct) {
+			this.approximateCounts(index, key);
+		}
+	}
+
+	/**
+	 * Adds every value held by another store which must share this store's
+	 * dictionary. Columns are appended and the stats and counts merged, so
+	 * the other store's values are not revisited one at a time.
+	 *
+	 * @param other a {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * to copy values from
+	 */
+	public void addAll(PropertyValueStore other) {
+		EventThreadGuard.assertOffEventThread("Merging property values");
+		for(int index = 0;index < other.columns.size();index++) {
+			if(other.columns.get(index).isEmpty()) {
+				continue;
+			}
+			this.ensureColumn(index);
+			columns.get(index).addAll(other.columns.get(index));
+			objectIds.get(index).addAll(other.objectIds.get(index));
+			groupIds.get(index).addAll(other.groupIds.get(index));
+			for(Entry<Integer, StatsAccumulator> entry : other.stats.get(index).entrySet()) {
+				StatsAccumulator groupStats = stats.get(index).get(entry.getKey());
+				if(groupStats == null) {
+					groupStats = new StatsAccumulator();
+					stats.get(index).put(entry.getKey(), groupStats);
+					counters.get(index).put(entry.getKey(), new FloatIntCounter());
+				}
+				groupStats.merge(entry.getValue());
+				this.mergeCounts(index, entry.getKey(), other);
+			}
+		}
+		for(int index = 0;index < other.dates.size();index++) {
+			this.ensureDateColumn(index);
+			dates.get(index).addAll(other.dates.get(index));
+			dateObjectIds.get(index).addAll(other.dateObjectIds.get(index));
+		}
+		this.enforceHeapBudget();
+	}
+
+	/**
+	 * Merges the counts of a group of another store into this store, whose
+	 * columns must already hold the other store's values
+	 *
+	 * @param index an int containing the property index
+	 * @param key an {@link java.lang.Integer} containing the group
+	 * @param other the {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * the values came from
+	 */
+	private void mergeCounts(int index, Integer key, PropertyValueStore other) {
+		FloatIntCounter counter = counters.get(index).get(key);
+		FloatIntCounter otherCounter = other.counters.get(index).get(key);
+		if(counter == null) {
+			HeavyHitters groupHitters = heavyHitters.get(index).get(key);
+			if(otherCounter == null) {
+				groupHitters.merge(other.heavyHitters.get(index).get(key));
+			} else {
+				addGroupValues(groupHitters, other.columns.get(index), other.groupIds.get(index), key.intValue());
+			}
+		} else if(otherCounter == null || counter.size() + otherCounter.size() > maxExactDistinct) {
+			//the merged counts may not fit, so the group is counted approximately
+			this.approximateCounts(index, key);
+		} else {
+			counter.addAll(otherCounter);
+		}
+	}
+
+	/**
+	 * Replaces the exact counts of a group with a
+	 * {@link com.about80minutes.util.HeavyHitters} sketch of the group's
+	 * values, as the group holds too many distinct values to count
+	 *
+	 * @param index an int containing the property index
+	 * @param key an {@link java.lang.Integer} containing the group
+	 */
+	private void approximateCounts(int index, Integer key) {
+		HeavyHitters groupHitters = new HeavyHitters();
+		addGroupValues(groupHitters, columns.get(index), groupIds.get(index), key.intValue());
+		counters.get(index).remove(key);
+		heavyHitters.get(index).put(key, groupHitters);
+	}
+
+	/**
+	 * Adds every value of a group to a sketch
+	 *
+	 * @param groupHitters the {@link com.about80minutes.util.HeavyHitters} to
+	 * add the values to
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param groups an {@link com.about80minutes.util.IntColumn} containing the
+	 * group of each value
+	 * @param group an int containing the group
+	 */
+	private static void addGroupValues(HeavyHitters groupHitters, FloatColumn vals, IntColumn groups, int group) {
+		for(int i = 0;i < vals.size();i++) {
+			if(groups.get(i) == group) {
+				groupHitters.add(vals.get(i));
+			}
+		}
+	}
+
+	/**
+	 * Removes every value belonging to the given objects, updating the stats
+	 * of each property as values are removed. The sketches of groups counted
+	 * approximately cannot have values taken away, so they are rebuilt from
+	 * the kept values in the same pass.
+	 *
+	 * @param sortedIds a long[] containing the IDs of the objects to remove in
+	 * ascending order
+	 */
+	public void removeObjects(long[] sortedIds) {
+		if(sortedIds.length == 0) {
+			return;
+		}
+		EventThreadGuard.assertOffEventThread("Removing property values");
+		for(int index = 0;index < columns.size();index++) {
+			FloatColumn vals = columns.get(index);
+			LongColumn ids = objectIds.get(index);
+			IntColumn groups = groupIds.get(index);
+			Map<Integer, StatsAccumulator> propertyStats = stats.get(index);
+			Map<Integer, FloatIntCounter> propertyCounters = counters.get(index);
+			Map<Integer, HeavyHitters> propertyHitters = heavyHitters.get(index);
+			Map<Integer, StatsAccumulator> keptBounds = Maps.newHashMap();
+			for(Integer key : propertyHitters.keySet()) {
+				propertyHitters.put(key, new HeavyHitters());
+				keptBounds.put(key, new StatsAccumulator());
+			}
+			Set<Integer> boundRemoved = Sets.newHashSet();
+
+			//compact the kept values to the front of the columns
+			int kept = 0;
+			for(int i = 0;i < vals.size();i++) {
+				long id = ids.get(i);
+				float value = vals.get(i);
+				int group = groups.get(i);
+				if(Arrays.binarySearch(sortedIds, id) >= 0) {
+					Integer key = Integer.valueOf(group);
+					StatsAccumulator groupStats = propertyStats.get(key);
+					FloatIntCounter counter = propertyCounters.get(key);
+					//without exact counts a bound may still be held by a kept value
+					if((counter == null || counter.add(value, -1) == 0)
+							&& (value == groupStats.getMin() || value == groupStats.getMax())) {
+						boundRemoved.add(key);
+					}
+					groupStats.remove(value);
+				} else {
+					if(!propertyHitters.isEmpty()) {
+						Integer key = Integer.valueOf(group);
+						HeavyHitters groupHitters = propertyHitters.get(key);
+						if(groupHitters != null) {
+							groupHitters.add(value);
+							keptBounds.get(key).add(value);
+						}
+					}
+					vals.set(kept, value);
+					ids.set(kept, id);
+					groups.set(kept, group);
+					kept++;
+				}
+			}
+			vals.truncate(kept);
+			ids.truncate(kept);
+			groups.truncate(kept);
+
+			for(Integer key : Lists.newArrayList(propertyStats.keySet())) {
+				StatsAccumulator groupStats = propertyStats.get(key);
+				if(groupStats.getCount() == 0) {
+					//groups with no values left are dropped rather than shown empty
+					propertyStats.remove(key);
+					propertyCounters.remove(key);
+					propertyHitters.remove(key);
+				} else if(boundRemoved.contains(key)) {
+					if(propertyCounters.containsKey(key)) {
+						this.recomputeBounds(groupStats, propertyCounters.get(key));
+					} else {
+						groupStats.setBounds(keptBounds.get(key).getMin(), keptBounds.get(key).getMax());
+					}
+				}
+			}
+		}
+		for(int index = 0;index < dates.size();index++) {
+			IntColumn days = dates.get(index);
+			LongColumn ids = dateObjectIds.get(index);
+			int kept = 0;
+			for(int i = 0;i < days.size();i++) {
+				long id = ids.get(i);
+				if(Arrays.binarySearch(sortedIds, id) < 0) {
+					days.set(kept, days.get(i));
+					ids.set(kept, id);
+					kept++;
+				}
+			}
+			days.truncate(kept);
+			ids.truncate(kept);
+		}
+	}
+
+	/**
+	 * Recalculates the min and max of a property from the distinct values of
+	 * its counter rather than rescanning every value
+	 *
+	 * @param propertyStats the {@link com.about80minutes.util.StatsAccumulator}
+	 * to correct
+	 * @param counter the {@link com.about80minutes.util.FloatIntCounter} of the
+	 * property's values
+	 */
+	private void recomputeBounds(StatsAccumulator propertyStats, FloatIntCounter counter) {
+		float min = Float.NaN;
+		float max = Float.NaN;
+		for(int slot = 0;slot < counter.capacity();slot++) {
+			if(counter.isOccupied(slot)) {
+				float value = counter.keyAt(slot);
+				if(Float.isNaN(min) || value < min) {
+					min = value;
+				}
+				if(Float.isNaN(max) || value > max) {
+					max = value;
+				}
+			}
+		}
+		propertyStats.setBounds(min, max);
+	}
+
+	/**
+	 * Looks up the dictionary index of a property, registering the property if
+	 * it has not been seen before
+	 *
+	 * @param property a {@link java.lang.String} containing the property name
+	 *
+	 * @return an int containing the index of the property
+	 */
+	public int indexOf(String property) {
+		return dictionary.indexOf(property);
+	}
+
+	/**
+	 * Creates empty columns up to and including the given index
+	 *
+	 * @param index an int containing the property index
+	 */
+	private void ensureColumn(int index) {
+		while(columns.size() <= index) {
+			columns.add(new FloatColumn());
+			objectIds.add(new LongColumn());
+			groupIds.add(new IntColumn());
+			stats.add(Maps.<Integer, StatsAccumulator>newHashMap());
+			counters.add(Maps.<Integer, FloatIntCounter>newHashMap());
+			heavyHitters.add(Maps.<Integer, HeavyHitters>newHashMap());
+		}
+	}
+
+	/**
+	 * Creates empty date columns up to and including the given index
+	 *
+	 * @param index an int containing the date property index
+	 */
+	private void ensureDateColumn(int index) {
+		while(dates.size() <= index) {
+			dates.add(new IntColumn());
+			dateObjectIds.add(new LongColumn());
+		}
+	}
+
+	/**
+	 * Gets the number of property indexes the store holds columns for, this
+	 * includes properties with no values, which should be skipped
+	 *
+	 * @return an int containing the number of properties
+	 */
+	public int getPropertyCount() {
+		return columns.size();
+	}
+
+	/**
+	 * Gets the name of the property at the given index
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public String getPropertyName(int index) {
+		return dictionary.getName(index);
+	}
+
+	/**
+	 * Gets the values of the property at the given index
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} of values
+	 */
+	public FloatColumn getColumn(int index) {
+		return columns.get(index);
+	}
+
+	/**
+	 * Gets the values of the named property
+	 *
+	 * @param property a {@link java.lang.String} containing the property name
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} of values or null
+	 * if the property is not held in the store
+	 */
+	public FloatColumn getColumn(String property) {
+		int index = dictionary.find(property);
+		return (index < 0 || index >= columns.size()) ? null : columns.get(index);
+	}
+
+	/**
+	 * Gets the IDs of the objects each value of the property came from, in
+	 * the same order as the values
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link com.about80minutes.util.LongColumn} of object IDs
+	 */
+	public LongColumn getObjectIds(int index) {
+		return objectIds.get(index);
+	}
+
+	/**
+	 * Gets the number of date property indexes the store holds columns for,
+	 * this includes date properties with no dates, which should be skipped
+	 *
+	 * @return an int containing the number of date properties
+	 */
+	public int getDatePropertyCount() {
+		return dates.size();
+	}
+
+	/**
+	 * Gets the dates of the date property at the given index
+	 *
+	 * @param index an int containing the date property index
+	 *
+	 * @return an {@link com.about80minutes.util.IntColumn} of days since
+	 * 1970-01-01
+	 */
+	public IntColumn getDateColumn(int index) {
+		return dates.get(index);
+	}
+
+	/**
+	 * Gets the IDs of the objects each date of the date property came from,
+	 * in the same order as the dates
+	 *
+	 * @param index an int containing the date property index
+	 *
+	 * @return a {@link com.about80minutes.util.LongColumn} of object IDs
+	 */
+	public LongColumn getDateObjectIds(int index) {
+		return dateObjectIds.get(index);
+	}
+
+	/**
+	 * Gets the groups of the property at the given index which hold values
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link java.util.Set} of groups, which may include
+	 * {@link #NO_GROUP}
+	 */
+	public Set<Integer> getGroups(int index) {
+		return Collections.unmodifiableSet(stats.get(index).keySet());
+	}
+
+	/**
+	 * Gets the moment stats of the property at the given index, these are
+	 * merged from the stats of each group so the values are not revisited.
+	 * When there is a single group its stats are returned and should not be
+	 * modified.
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link com.about80minutes.util.StatsAccumulator} for the
+	 * property
+	 */
+	public StatsAccumulator getStats(int index) {
+		Map<Integer, StatsAccumulator> propertyStats = stats.get(index);
+		if(propertyStats.size() == 1) {
+			return propertyStats.values().iterator().next();
+		}
+		StatsAccumulator merged = new StatsAccumulator();
+		for(StatsAccumulator groupStats : propertyStats.values()) {
+			merged.merge(groupStats);
+		}
+		return merged;
+	}
+
+	/**
+	 * Gets the moment stats of a single group of the property at the given
+	 * index
+	 *
+	 * @param index an int containing the property index
+	 * @param group an int containing the group
+	 *
+	 * @return a {@link com.about80minutes.util.StatsAccumulator} for the
+	 * group, or null if the group holds no values of the property
+	 */
+	public StatsAccumulator getStats(int index, int group) {
+		return stats.get(index).get(Integer.valueOf(group));
+	}
+
+	/**
+	 * Gets the value counts of the property at the given index, merged from
+	 * the counts of each group. When there is a single group its counts are
+	 * returned and should not be modified.
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a {@link com.about80minutes.util.FloatIntCounter} for the
+	 * property, or null if any group is counted approximately
+	 */
+	public FloatIntCounter getCounter(int index) {
+		if(!heavyHitters.get(index).isEmpty()) {
+			return null;
+		}
+		Map<Integer, FloatIntCounter> propertyCounters = counters.get(index);
+		if(propertyCounters.size() == 1) {
+			return propertyCounters.values().iterator().next();
+		}
+		FloatIntCounter merged = new FloatIntCounter();
+		for(FloatIntCounter counter : propertyCounters.values()) {
+			merged.addAll(counter);
+		}
+		return merged;
+	}
+
+	/**
+	 * Gets the value counts of a single group of the property at the given
+	 * index
+	 *
+	 * @param index an int containing the property index
+	 * @param group an int containing the group
+	 *
+	 * @return a {@link com.about80minutes.util.FloatIntCounter} for the
+	 * group, or null if the group holds no values of the property or is
+	 * counted approximately
+	 */
+	public FloatIntCounter getCounter(int index, int group) {
+		return counters.get(index).get(Integer.valueOf(group));
+	}
+
+	/**
+	 * Gets the most frequent values of a property, or of one of its groups.
+	 * These are exact unless a group holds too many distinct values to count,
+	 * in which case they are estimated by a
+	 * {@link com.about80minutes.util.HeavyHitters} sketch.
+	 *
+	 * @param index an int containing the property index
+	 * @param group an {@link java.lang.Integer} containing the group, or null
+	 * for every value of the property
+	 * @param k an int containing the number of values to return
+	 * @param minCount an int containing the count a value must have
+	 *
+	 * @return the {@link com.about80minutes.util.TopValues} of the property
+	 */
+	public TopValues getTop(int index, Integer group, int k, int minCount) {
+		if(group != null) {
+			FloatIntCounter counter = counters.get(index).get(group);
+			if(counter != null) {
+				return counter.getTop(k, minCount);
+			}
+			HeavyHitters groupHitters = heavyHitters.get(index).get(group);
+			return (groupHitters == null) ? TopValues.NONE : groupHitters.getTop(k, minCount);
+		}
+		if(heavyHitters.get(index).isEmpty()) {
+			return this.getCounter(index).getTop(k, minCount);
+		}
+		//counts of exact and approximate groups cannot be merged, so the
+		//whole column is sketched
+		EventThreadGuard.assertOffEventThread("Counting property values");
+		HeavyHitters propertyHitters = new HeavyHitters();
+		FloatColumn vals = columns.get(index);
+		for(int i = 0;i < vals.size();i++) {
+			propertyHitters.add(vals.get(i));
+		}
+		return propertyHitters.getTop(k, minCount);
+	}
+
+	/**
+	 * Gets every value sharing the highest count of a property, or of one of
+	 * its groups. These are taken from the exact counts, so no tie is missed,
+	 * unless a group holds too many distinct values to count, in which case
+	 * only the ties among the most frequent values estimated by a
+	 * {@link com.about80minutes.util.HeavyHitters} sketch are found.
+	 *
+	 * @param index an int containing the property index
+	 * @param group an {@link java.lang.Integer} containing the group, or null
+	 * for every value of the property
+	 * @param minCount an int containing the count the modes must have
+	 *
+	 * @return a float[] containing the modes in ascending order, empty if no
+	 * value has the minimum count
+	 */
+	public float[] getModes(int index, Integer group, int minCount) {
+		FloatIntCounter counter = null;
+		if(group == null) {
+			counter = this.getCounter(index);
+		} else if(!heavyHitters.get(index).containsKey(group)) {
+			counter = counters.get(index).get(group);
+			if(counter == null) {
+				return new float[0];
+			}
+		}
+		if(counter == null) {
+			return this.getTop(index, group, TopValues.DEFAULT_K, minCount).getModes();
+		}
+		return (counter.getMaxCount() < minCount) ? new float[0] : counter.getModes();
+	}
+
+	/**
+	 * Gets the groups of each value of the property at the given index, in
+	 * the same order as the values
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return an {@link com.about80minutes.util.IntColumn} of groups
+	 */
+	public IntColumn getGroupIds(int index) {
+		return groupIds.get(index);
+	}
+
+	/**
+	 * Copies the values of a single group of the property at the given index
+	 *
+	 * @param index an int containing the property index
+	 * @param group an int containing the group
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} holding the values
+	 * of the group
+	 */
+	public FloatColumn getGroupColumn(int index, int group) {
+		EventThreadGuard.assertOffEventThread("Copying group values");
+		FloatColumn vals = columns.get(index);
+		IntColumn groups = groupIds.get(index);
+		StatsAccumulator groupStats = this.getStats(index, group);
+		FloatColumn groupVals = new FloatColumn((groupStats == null) ? 0 : (int) groupStats.getCount());
+		for(int i = 0;i < vals.size();i++) {
+			if(groups.get(i) == group) {
+				groupVals.add(vals.get(i));
+			}
+		}
+		return groupVals;
+	}
+
+	/**
+	 * Finds the objects holding a value of a property, or of one of its
+	 * groups, within any of the given ranges. The value column is scanned
+	 * alongside its object IDs so no value is boxed.
+	 *
+	 * @param index an int containing the property index
+	 * @param group an {@link java.lang.Integer} containing the group, or null
+	 * for every value of the property
+	 * @param lowers a float[] containing the lowest value of each range
+	 * @param uppers a float[] containing the highest value of each range
+	 *
+	 * @return a long[] containing the IDs of the objects in ascending order
+	 */
+	public long[] findObjects(int index, Integer group, float[] lowers, float[] uppers) {
+		EventThreadGuard.assertOffEventThread("Finding objects by value");
+		FloatColumn vals = columns.get(index);
+		LongColumn ids = objectIds.get(index);
+		IntColumn groups = groupIds.get(index);
+		LongColumn found = new LongColumn();
+		for(int i = 0;i < vals.size();i++) {
+			if(group != null && groups.get(i) != group.intValue()) {
+				continue;
+			}
+			float value = vals.get(i);
+			for(int range = 0;range < lowers.length;range++) {
+				if(value >= lowers[range] && value <= uppers[range]) {
+					found.add(ids.get(i));
+					break;
+				}
+			}
+		}
+		//an object may hold several values in range
+		return SelectionDelta.toSortedIds(found.toArray());
+	}
+
+	/**
+	 * Sets the number of bytes of heap the columns may use before they are
+	 * spilled to disk
+	 *
+	 * @param heapBudgetBytes a long containing the budget in bytes, use
+	 * {@link java.lang.Long#MAX_VALUE} to never spill
+	 */
+	public void setHeapBudgetBytes(long heapBudgetBytes) {
+		this.heapBudgetBytes = heapBudgetBytes;
+	}
+
+	/**
+	 * Sets the number of distinct values a group may hold before its exact
+	 * counts are replaced by a sketch, this applies to values added later
+	 *
+	 * @param maxExactDistinct an int containing the number of distinct values
+	 */
+	public void setMaxExactDistinct(int maxExactDistinct) {
+		this.maxExactDistinct = maxExactDistinct;
+	}
+
+	/**
+	 * Sets the directory spilled columns are written to
+	 *
+	 * @param spillDirectory a {@link java.io.File} containing the directory,
+	 * or null to use the default temporary directory
+	 */
+	public void setSpillDirectory(File spillDirectory) {
+		this.spillDirectory = spillDirectory;
+	}
+
+	/**
+	 * Gets the number of bytes of heap used by the store, this includes the
+	 * value and date columns and the counts of each group
+	 *
+	 * @return a long containing the heap used in bytes
+	 */
+	public long getHeapBytes() {
+		long heapBytes = 0;
+		for(int index = 0;index < columns.size();index++) {
+			heapBytes += this.getHeapBytes(index) + this.getCountBytes(index);
+		}
+		for(int index = 0;index < dates.size();index++) {
+			heapBytes += this.getDateHeapBytes(index);
+		}
+		return heapBytes;
+	}
+
+	/**
+	 * Gets the number of bytes of heap used by the columns of a property
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a long containing the heap used in bytes
+	 */
+	private long getHeapBytes(int index) {
+		return columns.get(index).getHeapBytes() + objectIds.get(index).getHeapBytes() + groupIds.get(index).getHeapBytes();
+	}
+
+	/**
+	 * Gets the number of bytes of heap used by the counts of each group of a
+	 * property, which stay on the heap
+	 *
+	 * @param index an int containing the property index
+	 *
+	 * @return a long containing the heap used in bytes
+	 */
+	private long getCountBytes(int index) {
+		long countBytes = 0;
+		for(FloatIntCounter counter : counters.get(index).values()) {
+			countBytes += counter.getHeapBytes();
+		}
+		for(HeavyHitters groupHitters : heavyHitters.get(index).values()) {
+			countBytes += groupHitters.getHeapBytes();
+		}
+		return countBytes;
+	}
+
+	/**
+	 * Gets the number of bytes of heap used by the columns of a date property
+	 *
+	 * @param index an int containing the date property index
+	 *
+	 * @return a long containing the heap used in bytes
+	 */
+	private long getDateHeapBytes(int index) {
+		return dates.get(index).getHeapBytes() + dateObjectIds.get(index).getHeapBytes();
+	}
+
+	/**
+	 * Spills the largest value or date columns to disk until the heap used
+	 * by the store is within its budget. This is called after values are
+	 * merged in, callers adding values one at a time should call it
+	 * periodically. The counts are not spilled but are bounded by the number
+	 * of distinct values counted exactly. If a column cannot be spilled it is
+	 * left on the heap.
+	 */
+	public void enforceHeapBudget() {
+		long heapBytes = this.getHeapBytes();
+		while(heapBytes > heapBudgetBytes) {
+			//date columns follow the value columns
+			int largest = -1;
+			long largestBytes = 0;
+			for(int index = 0;index < columns.size() + dates.size();index++) {
+				long columnBytes = (index < columns.size()) ? this.getHeapBytes(index) : this.getDateHeapBytes(index - columns.size());
+				if(columnBytes > largestBytes) {
+					largest = index;
+					largestBytes = columnBytes;
+				}
+			}
+			if(largest < 0) {
+				return;
+			}
+			try {
+				if(largest < columns.size()) {
+					columns.get(largest).spill(spillDirectory);
+					objectIds.get(largest).spill(spillDirectory);
+					groupIds.get(largest).spill(spillDirectory);
+				} else {
+					dates.get(largest - columns.size()).spill(spillDirectory);
+					dateObjectIds.get(largest - columns.size()).spill(spillDirectory);
+				}
+			} catch (IOException e) {
+				LOGGER.error("Error spilling property values to disk", e);
+				return;
+			}
+			heapBytes -= largestBytes;
+		}
+	}
+
+	/**
+	 * Removes all values from the store, the dictionary is left as it is and
+	 * any files that columns were spilled to are deleted
+	 */
+	public void clear() {
+		for(int index = 0;index < columns.size();index++) {
+			columns.get(index).release();
+			objectIds.get(index).release();
+			groupIds.get(index).release();
+		}
+		for(int index = 0;index < dates.size();index++) {
+			dates.get(index).release();
+			dateObjectIds.get(index).release();
+		}
+		columns.clear();
+		objectIds.clear();
+		groupIds.clear();
+		stats.clear();
+		counters.clear();
+		heavyHitters.clear();
+		dates.clear();
+		dateObjectIds.clear();
+	}
+}
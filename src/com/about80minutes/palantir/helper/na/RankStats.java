@@ -0,0 +1,111 @@
+package com.about80minutes.palantir.helper.na;
+
+import com.about80minutes.util.QuantileSummary;
+import com.about80minutes.util.TopValues;
+
+/**
+ * The rank based stats and modes of a single property. These are the stats
+ * which need the values sorted or counted, so they are computed on demand
+ * rather than with the rest of a property's stats.
+ */
+public class RankStats {
+
+	private final float median;
+	private final float lowerQuartile;
+	private final float upperQuartile;
+	private final float percentile5;
+	private final float percentile95;
+	private final TopValues modes;
+	private final boolean approximate;
+
+	/**
+	 * Constructor, reads the stats from a summary of the property values
+	 *
+	 * @param order a {@link com.about80minutes.util.QuantileSummary} of the
+	 * property values
+	 * @param modes the {@link com.about80minutes.util.TopValues} of the
+	 * property, the most frequent values with their counts
+	 */
+	public RankStats(QuantileSummary order, TopValues modes) {
+		this.median = order.getMedian();
+		this.lowerQuartile = order.getLowerQuartile();
+		this.upperQuartile = order.getUpperQuartile();
+		this.percentile5 = order.getPercentile(5d);
+		this.percentile95 = order.getPercentile(95d);
+		this.modes = modes;
+		this.approximate = order.isApproximate();
+	}
+
+	/**
+	 * Gets the median
+	 *
+	 * @return a float containing the median
+	 */
+	public float getMedian() {
+		return median;
+	}
+
+	/**
+	 * Gets the lower quartile
+	 *
+	 * @return a float containing the lower quartile
+	 */
+	public float getLowerQuartile() {
+		return lowerQuartile;
+	}
+
+	/**
+	 * Gets the upper quartile
+	 *
+	 * @return a float containing the upper quartile
+	 */
+	public float getUpperQuartile() {
+		return upperQuartile;
+	}
+
+	/**
+	 * Gets the interquartile range
+	 *
+	 * @return a float containing the difference between the quartiles
+	 */
+	public float getInterquartileRange() {
+		return upperQuartile - lowerQuartile;
+	}
+
+	/**
+	 * Gets the 5th percentile
+	 *
+	 * @return a float containing the 5th percentile
+	 */
+	public float getPercentile5() {
+		return percentile5;
+	}
+
+	/**
+	 * Gets the 95th percentile
+	 *
+	 * @return a float containing the 95th percentile
+	 */
+	public float getPercentile95() {
+		return percentile95;
+	}
+
+	/**
+	 * Gets the most frequent values with their counts
+	 *
+	 * @return the {@link com.about80minutes.util.TopValues}, empty if no
+	 * value repeats enough to be a mode
+	 */
+	public TopValues getModes() {
+		return modes;
+	}
+
+	/**
+	 * Whether the rank based stats are estimates
+	 *
+	 * @return true if the stats were read from a sketch
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+}
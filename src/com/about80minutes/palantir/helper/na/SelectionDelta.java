@@ -0,0 +1,114 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * The difference between two selections of object IDs, worked out over sorted
+ * primitive arrays so that large selections can be compared without boxing.
+ */
+public class SelectionDelta {
+
+	private long[] selected = null;
+	private long[] added = null;
+	private long[] removed = null;
+
+	/**
+	 * Constructor, works out the objects added and removed between two
+	 * selections
+	 *
+	 * @param previous a long[] containing the previously selected IDs in
+	 * ascending order
+	 * @param selected a long[] containing the newly selected IDs in ascending
+	 * order
+	 */
+	public SelectionDelta(long[] previous, long[] selected) {
+		this.selected = selected;
+		this.added = difference(selected, previous);
+		this.removed = difference(previous, selected);
+	}
+
+	/**
+	 * Gets the IDs in the new selection
+	 *
+	 * @return a long[] of IDs in ascending order
+	 */
+	public long[] getSelected() {
+		return selected;
+	}
+
+	/**
+	 * Gets the IDs in the new selection that were not in the previous one
+	 *
+	 * @return a long[] of IDs in ascending order
+	 */
+	public long[] getAdded() {
+		return added;
+	}
+
+	/**
+	 * Gets the IDs in the previous selection that are not in the new one
+	 *
+	 * @return a long[] of IDs in ascending order
+	 */
+	public long[] getRemoved() {
+		return removed;
+	}
+
+	/**
+	 * Converts a collection of IDs into a sorted array without duplicates
+	 *
+	 * @param ids a {@link java.util.Collection} of {@link java.lang.Long} IDs
+	 *
+	 * @return a long[] of IDs in ascending order
+	 */
+	public static long[] toSortedIds(Collection<Long> ids) {
+		long[] sorted = new long[ids.size()];
+		int i = 0;
+		for(Long id : ids) {
+			sorted[i++] = id.longValue();
+		}
+		return toSortedIds(sorted);
+	}
+
+	/**
+	 * Sorts an array of IDs and removes any duplicates
+	 *
+	 * @param ids a long[] of IDs, this is sorted by the call
+	 *
+	 * @return a long[] of the unique IDs in ascending order
+	 */
+	public static long[] toSortedIds(long[] ids) {
+		Arrays.sort(ids);
+		int unique = 0;
+		for(int i = 0;i < ids.length;i++) {
+			if(unique == 0 || ids[i] != ids[unique - 1]) {
+				ids[unique++] = ids[i];
+			}
+		}
+		return Arrays.copyOf(ids, unique);
+	}
+
+	/**
+	 * Works out the IDs in one sorted array that are not in another
+	 *
+	 * @param from a long[] of IDs in ascending order
+	 * @param without a long[] of IDs in ascending order
+	 *
+	 * @return a long[] of the IDs in from but not in without
+	 */
+	private static long[] difference(long[] from, long[] without) {
+		long[] result = new long[from.length];
+		int count = 0;
+		int j = 0;
+		for(int i = 0;i < from.length;i++) {
+			while(j < without.length && without[j] < from[i]) {
+				j++;
+			}
+			if(j == without.length || without[j] != from[i]) {
+				result[count++] = from[i];
+			}
+		}
+		return Arrays.copyOf(result, count);
+	}
+}
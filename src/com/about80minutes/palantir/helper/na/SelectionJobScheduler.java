@@ -0,0 +1,129 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.concurrent.Executor;
+
+import javax.swing.SwingWorker;
+import javax.swing.Timer;
+
+/**
+ * Schedules the work done in response to selection events so that only the
+ * latest selection is processed. Events arriving within the debounce window
+ * of each other are coalesced into one job, starting a job cancels any job
+ * still running, and every job is tagged with a generation so that results of
+ * a superseded job can be recognised and dropped.
+ *
+ * Methods of this class are expected to be called on the event dispatch
+ * thread, as selection events are, apart from {@link #isCurrent(long)} which
+ * background jobs may call to check they have not been superseded.
+ */
+public class SelectionJobScheduler {
+
+	public static final int DEFAULT_DEBOUNCE_MILLIS = 150;
+
+	private Executor executor = null;
+	private Timer debounceTimer = null;
+	private Runnable pendingJob = null;
+	private SwingWorker<?, ?> runningJob = null;
+	private volatile long generation = 0;
+
+	/**
+	 * Constructor for the scheduler
+	 *
+	 * @param executor an {@link java.util.concurrent.Executor} to run
+	 * background jobs on
+	 * @param debounceMillis an int containing the time to wait for further
+	 * events before running a job, 0 runs jobs immediately
+	 */
+	public SelectionJobScheduler(Executor executor, int debounceMillis) {
+		this.executor = executor;
+		this.debounceTimer = new Timer(debounceMillis, new ActionListener() {
+			public void actionPerformed(ActionEvent event) {
+				SelectionJobScheduler.this.runPendingJob();
+			}
+		});
+		this.debounceTimer.setRepeats(false);
+	}
+
+	/**
+	 * Schedules a job to run once no further job has been scheduled for the
+	 * debounce window, replacing any job already waiting
+	 *
+	 * @param job a {@link java.lang.Runnable} to run on the event thread
+	 */
+	public void schedule(Runnable job) {
+		pendingJob = job;
+		if(debounceTimer.getInitialDelay() <= 0) {
+			this.runPendingJob();
+		} else {
+			debounceTimer.restart();
+		}
+	}
+
+	/**
+	 * Starts a new generation of work, cancelling any background job still
+	 * running. Anything holding an earlier generation is superseded.
+	 *
+	 * @return a long containing the new generation
+	 */
+	public long begin() {
+		if(runningJob != null) {
+			runningJob.cancel(true);
+			runningJob = null;
+		}
+		return ++generation;
+	}
+
+	/**
+	 * Runs a background job for the current generation
+	 *
+	 * @param job a {@link javax.swing.SwingWorker} to run on the executor
+	 */
+	public void execute(SwingWorker<?, ?> job) {
+		runningJob = job;
+		executor.execute(job);
+	}
+
+	/**
+	 * Whether the given generation is the latest, this may be called from
+	 * any thread
+	 *
+	 * @param jobGeneration a long containing a generation returned by
+	 * {@link #begin()}
+	 *
+	 * @return true if no later generation has begun
+	 */
+	public boolean isCurrent(long jobGeneration) {
+		return jobGeneration == generation;
+	}
+
+	/**
+	 * Sets the debounce window for jobs scheduled after this call
+	 *
+	 * @param debounceMillis an int containing the window in milliseconds
+	 */
+	public void setDebounceMillis(int debounceMillis) {
+		debounceTimer.setInitialDelay(debounceMillis);
+	}
+
+	/**
+	 * Drops any waiting job and cancels any running job
+	 */
+	public void cancel() {
+		debounceTimer.stop();
+		pendingJob = null;
+		this.begin();
+	}
+
+	/**
+	 * Runs the job waiting to be run, if there is one
+	 */
+	private void runPendingJob() {
+		Runnable job = pendingJob;
+		pendingJob = null;
+		if(job != null) {
+			job.run();
+		}
+	}
+}
@@ -0,0 +1,187 @@
+package com.about80minutes.palantir.helper.na;
+
+import com.about80minutes.util.StatsAccumulator;
+
+/**
+ * The stats passed from the controller to its observers. The stats which are
+ * cheap to compute are held as raw values in primitive arrays with one entry
+ * per row, along with the source of the stats which are deferred.
+ *
+ * Each property has a row of stats for all of its values, which may be
+ * followed by a row for each group its values were broken down into.
+ */
+public class StatsUpdate {
+
+	private final String[] properties;
+	private final String[] groups;
+	private final int[] counts;
+	private final float[] mins;
+	private final float[] maxes;
+	private final float[] means;
+	private final float[] sums;
+	private final float[] stdDeviations;
+	private final NATableModel.DeferredCells deferredCells;
+
+	/**
+	 * Constructor for the update
+	 *
+	 * @param size an int containing the number of rows
+	 * @param deferredCells a {@link com.about80minutes.palantir.helper.na.NATableModel.DeferredCells}
+	 * to compute the deferred stats with, or null if there are none
+	 */
+	public StatsUpdate(int size, NATableModel.DeferredCells deferredCells) {
+		this.properties = new String[size];
+		this.groups = new String[size];
+		this.counts = new int[size];
+		this.mins = new float[size];
+		this.maxes = new float[size];
+		this.means = new float[size];
+		this.sums = new float[size];
+		this.stdDeviations = new float[size];
+		this.deferredCells = deferredCells;
+	}
+
+	/**
+	 * Sets the stats of a property, the update should not be changed once it
+	 * has been passed to observers
+	 *
+	 * @param row an int containing the position of the property
+	 * @param property a {@link java.lang.String} containing the property name
+	 * @param stats a {@link com.about80minutes.util.StatsAccumulator} to copy
+	 * the stats from
+	 */
+	public void setRow(int row, String property, StatsAccumulator stats) {
+		this.setRow(row, property, null, stats);
+	}
+
+	/**
+	 * Sets the stats of a group of a property, the update should not be
+	 * changed once it has been passed to observers
+	 *
+	 * @param row an int containing the position of the group, this should
+	 * follow the row of the property
+	 * @param property a {@link java.lang.String} containing the property name
+	 * @param group a {@link java.lang.String} containing the group name, or
+	 * null for the row of all values of the property
+	 * @param stats a {@link com.about80minutes.util.StatsAccumulator} to copy
+	 * the stats from
+	 */
+	public void setRow(int row, String property, String group, StatsAccumulator stats) {
+		properties[row] = property;
+		groups[row] = group;
+		counts[row] = (int) stats.getCount();
+		mins[row] = stats.getMin();
+		maxes[row] = stats.getMax();
+		means[row] = stats.getMean();
+		sums[row] = stats.getSum();
+		stdDeviations[row] = (float) stats.getStdDeviation();
+	}
+
+	/**
+	 * Gets the number of rows
+	 *
+	 * @return an int containing the number of rows
+	 */
+	public int size() {
+		return properties.length;
+	}
+
+	/**
+	 * Gets the name of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public String getProperty(int row) {
+		return properties[row];
+	}
+
+	/**
+	 * Gets the group of a row
+	 *
+	 * @param row an int containing the position of the row
+	 *
+	 * @return a {@link java.lang.String} containing the group name, or null
+	 * if the row holds all values of the property
+	 */
+	public String getGroup(int row) {
+		return groups[row];
+	}
+
+	/**
+	 * Gets the number of values of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return an int containing the count
+	 */
+	public int getCount(int row) {
+		return counts[row];
+	}
+
+	/**
+	 * Gets the minimum value of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a float containing the minimum
+	 */
+	public float getMin(int row) {
+		return mins[row];
+	}
+
+	/**
+	 * Gets the maximum value of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a float containing the maximum
+	 */
+	public float getMax(int row) {
+		return maxes[row];
+	}
+
+	/**
+	 * Gets the mean of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a float containing the mean
+	 */
+	public float getMean(int row) {
+		return means[row];
+	}
+
+	/**
+	 * Gets the sum of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a float containing the sum
+	 */
+	public float getSum(int row) {
+		return sums[row];
+	}
+
+	/**
+	 * Gets the standard deviation of a property
+	 *
+	 * @param row an int containing the position of the property
+	 *
+	 * @return a float containing the standard deviation
+	 */
+	public float getStdDeviation(int row) {
+		return stdDeviations[row];
+	}
+
+	/**
+	 * Gets the source of the deferred stats
+	 *
+	 * @return a {@link com.about80minutes.palantir.helper.na.NATableModel.DeferredCells}
+	 * or null if there are none
+	 */
+	public NATableModel.DeferredCells getDeferredCells() {
+		return deferredCells;
+	}
+}
@@ -0,0 +1,143 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.util.List;
+
+import com.about80minutes.util.CalendarBuckets;
+import com.about80minutes.util.TimeBuckets;
+
+/**
+ * The count, sum and mean of each numeric property of a selection broken
+ * down into calendar buckets by the date of its object, passed from the
+ * controller to the view. The buckets of every property span the same
+ * range, from the bucket of the earliest date to that of the latest, unless
+ * the range was limited and dates beyond it folded into its first or last
+ * bucket.
+ */
+public class TimeBucketReport {
+
+	private final String dateProperty;
+	private final int unit;
+	private final String[] properties;
+	private final TimeBuckets[] buckets;
+	private final boolean foldedBefore;
+	private final boolean foldedAfter;
+
+	/**
+	 * Constructor for the report
+	 *
+	 * @param dateProperty a {@link java.lang.String} containing the name of
+	 * the date property values were bucketed by
+	 * @param unit an int, one of {@link com.about80minutes.util.CalendarBuckets#DAY},
+	 * {@link com.about80minutes.util.CalendarBuckets#WEEK} or
+	 * {@link com.about80minutes.util.CalendarBuckets#MONTH}
+	 * @param properties a {@link java.util.List} containing the name of each
+	 * numeric property
+	 * @param buckets a {@link java.util.List} containing the
+	 * {@link com.about80minutes.util.TimeBuckets} of each property, which
+	 * must not be changed after this call
+	 */
+	public TimeBucketReport(String dateProperty, int unit, List<String> properties, List<TimeBuckets> buckets) {
+		this(dateProperty, unit, properties, buckets, false, false);
+	}
+
+	/**
+	 * Constructor for a report whose range of buckets was limited
+	 *
+	 * @param dateProperty a {@link java.lang.String} containing the name of
+	 * the date property values were bucketed by
+	 * @param unit an int, one of {@link com.about80minutes.util.CalendarBuckets#DAY},
+	 * {@link com.about80minutes.util.CalendarBuckets#WEEK} or
+	 * {@link com.about80minutes.util.CalendarBuckets#MONTH}
+	 * @param properties a {@link java.util.List} containing the name of each
+	 * numeric property
+	 * @param buckets a {@link java.util.List} containing the
+	 * {@link com.about80minutes.util.TimeBuckets} of each property, which
+	 * must not be changed after this call
+	 * @param foldedBefore a boolean, true if the first bucket also holds
+	 * values of earlier dates
+	 * @param foldedAfter a boolean, true if the last bucket also holds
+	 * values of later dates
+	 */
+	public TimeBucketReport(String dateProperty, int unit, List<String> properties, List<TimeBuckets> buckets,
+			boolean foldedBefore, boolean foldedAfter) {
+		this.dateProperty = dateProperty;
+		this.unit = unit;
+		this.properties = properties.toArray(new String[properties.size()]);
+		this.buckets = buckets.toArray(new TimeBuckets[buckets.size()]);
+		this.foldedBefore = foldedBefore;
+		this.foldedAfter = foldedAfter;
+	}
+
+	/**
+	 * Gets the name of the date property values were bucketed by
+	 *
+	 * @return a {@link java.lang.String} containing the date property name
+	 */
+	public String getDateProperty() {
+		return dateProperty;
+	}
+
+	/**
+	 * Gets the length of the buckets
+	 *
+	 * @return an int, one of {@link com.about80minutes.util.CalendarBuckets#DAY},
+	 * {@link com.about80minutes.util.CalendarBuckets#WEEK} or
+	 * {@link com.about80minutes.util.CalendarBuckets#MONTH}
+	 */
+	public int getUnit() {
+		return unit;
+	}
+
+	/**
+	 * Gets the number of properties
+	 *
+	 * @return an int containing the number of properties
+	 */
+	public int size() {
+		return properties.length;
+	}
+
+	/**
+	 * Gets the name of a property
+	 *
+	 * @param i an int containing the position of the property
+	 *
+	 * @return a {@link java.lang.String} containing the property name
+	 */
+	public String getProperty(int i) {
+		return properties[i];
+	}
+
+	/**
+	 * Gets the buckets of a property
+	 *
+	 * @param i an int containing the position of the property
+	 *
+	 * @return the {@link com.about80minutes.util.TimeBuckets} of the property
+	 */
+	public TimeBuckets getBuckets(int i) {
+		return buckets[i];
+	}
+
+	/**
+	 * Formats the label of a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 *
+	 * @return a {@link java.lang.String} containing the first day of the
+	 * bucket, or its month for monthly buckets, marked if earlier or later
+	 * dates were folded into it
+	 */
+	public String formatBucket(int bucket) {
+		String label = CalendarBuckets.format(bucket, unit);
+		if(buckets.length > 0) {
+			if(foldedBefore && bucket == buckets[0].getFirstBucket()) {
+				return String.format("%s and before", label);
+			}
+			if(foldedAfter && bucket == buckets[0].getFirstBucket() + buckets[0].size() - 1) {
+				return String.format("%s and after", label);
+			}
+		}
+		return label;
+	}
+}
@@ -0,0 +1,221 @@
+package com.about80minutes.palantir.helper.na;
+
+import java.io.OutputStream;
+
+import javax.swing.table.AbstractTableModel;
+
+import org.apache.commons.csv.CSVPrinter;
+
+import com.about80minutes.util.EventThreadGuard;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.TimeBuckets;
+
+/**
+ * Model of the time bucket table, a row per property and bucket holding
+ * values with the count, sum and mean of the bucket and the sum and mean of
+ * a sliding window of buckets ending at it. Rows are in property order then
+ * date order, empty buckets are left out but still count towards windows.
+ */
+@SuppressWarnings("serial")
+public class TimeBucketTableModel extends AbstractTableModel {
+
+	public static final int DEFAULT_WINDOW = 3;
+
+	public static final int BUCKET = 0;
+	public static final int PROPERTY = 1;
+	public static final int COUNT = 2;
+	public static final int SUM = 3;
+	public static final int MEAN = 4;
+	public static final int WINDOW_SUM = 5;
+	public static final int WINDOW_MEAN = 6;
+	private static final int COLUMN_COUNT = 7;
+
+	private TimeBucketReport report = null;
+	private int[] rowProperties = null;
+	private int[] rowBuckets = null;
+	//read by exports off the event thread
+	private volatile int window = DEFAULT_WINDOW;
+
+	/**
+	 * Constructor for the model
+	 *
+	 * @param report the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+	 * to display
+	 */
+	public TimeBucketTableModel(TimeBucketReport report) {
+		this.report = report;
+		int rows = 0;
+		for(int i = 0;i < report.size();i++) {
+			TimeBuckets buckets = report.getBuckets(i);
+			for(int bucket = buckets.getFirstBucket();bucket < buckets.getFirstBucket() + buckets.size();bucket++) {
+				if(buckets.getCount(bucket) > 0) {
+					rows++;
+				}
+			}
+		}
+		this.rowProperties = new int[rows];
+		this.rowBuckets = new int[rows];
+		int row = 0;
+		for(int i = 0;i < report.size();i++) {
+			TimeBuckets buckets = report.getBuckets(i);
+			for(int bucket = buckets.getFirstBucket();bucket < buckets.getFirstBucket() + buckets.size();bucket++) {
+				if(buckets.getCount(bucket) > 0) {
+					rowProperties[row] = i;
+					rowBuckets[row] = bucket;
+					row++;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Sets the number of buckets in the sliding window
+	 *
+	 * @param window an int containing the number of buckets, at least 1
+	 */
+	public void setWindow(int window) {
+		this.window = Math.max(window, 1);
+		//the window is shown in the column names
+		this.fireTableStructureChanged();
+	}
+
+	/**
+	 * Gets the number of buckets in the sliding window
+	 *
+	 * @return an int containing the number of buckets
+	 */
+	public int getWindow() {
+		return window;
+	}
+
+	/**
+	 * Gets the report being displayed
+	 *
+	 * @return the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+	 */
+	public TimeBucketReport getReport() {
+		return report;
+	}
+
+	/**
+	 * Returns the number of rows, one per property and non-empty bucket
+	 *
+	 * @return an int containing the number of rows
+	 */
+	public int getRowCount() {
+		return rowBuckets.length;
+	}
+
+	/**
+	 * Returns the number of columns
+	 *
+	 * @return an int containing the number of columns
+	 */
+	public int getColumnCount() {
+		return COLUMN_COUNT;
+	}
+
+	/**
+	 * Returns the name of a column
+	 *
+	 * @param column an int containing the column
+	 *
+	 * @return a {@link java.lang.String} containing the column name
+	 */
+	@Override
+	public String getColumnName(int column) {
+		return getColumnNames(report, window)[column];
+	}
+
+	/**
+	 * Returns the formatted value of a cell
+	 *
+	 * @param row an int containing the row
+	 * @param column an int containing the column
+	 *
+	 * @return an {@link java.lang.Object} containing the cell text
+	 */
+	public Object getValueAt(int row, int column) {
+		return getCell(report, rowProperties[row], rowBuckets[row], column, window);
+	}
+
+	/**
+	 * Prints the table to the given output stream. This only reads the
+	 * report so it may be called off the event thread. This method does not
+	 * close the stream after processing
+	 *
+	 * @param stream a {@link java.io.OutputStream} to write the data to
+	 * @param monitor an {@link com.about80minutes.palantir.helper.na.ExportMonitor}
+	 * to report progress to, or null
+	 */
+	public void toCSV(OutputStream stream, ExportMonitor monitor) {
+		EventThreadGuard.assertOffEventThread("Exporting time buckets");
+		int width = window;
+		CSVPrinter printer = new CSVPrinter(stream);
+		printer.println(getColumnNames(report, width));
+		String[] tmpRow = new String[COLUMN_COUNT];
+		for(int row = 0;row < rowBuckets.length;row++) {
+			if(monitor != null) {
+				if(monitor.isCancelled()) {
+					return;
+				}
+				monitor.progress(row, rowBuckets.length);
+			}
+			for(int column = 0;column < COLUMN_COUNT;column++) {
+				tmpRow[column] = getCell(report, rowProperties[row], rowBuckets[row], column, width);
+			}
+			printer.println(tmpRow);
+		}
+		if(monitor != null) {
+			monitor.progress(rowBuckets.length, rowBuckets.length);
+		}
+	}
+
+	/**
+	 * Gets the column names for a window width
+	 *
+	 * @param report the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+	 * being displayed
+	 * @param width an int containing the number of buckets in the window
+	 *
+	 * @return a {@link java.lang.String}[] containing the column names
+	 */
+	private static String[] getColumnNames(TimeBucketReport report, int width) {
+		return new String[]{report.getDateProperty(), NATableModel.PROPERTY_COLUMN, "Count", "Sum", "Mean",
+				String.format("Sum (last %d)", width), String.format("Mean (last %d)", width)};
+	}
+
+	/**
+	 * Formats a cell of a property and bucket
+	 *
+	 * @param report the {@link com.about80minutes.palantir.helper.na.TimeBucketReport}
+	 * being displayed
+	 * @param property an int containing the position of the property
+	 * @param bucket an int containing the bucket number
+	 * @param column an int containing the column
+	 * @param width an int containing the number of buckets in the window
+	 *
+	 * @return a {@link java.lang.String} containing the cell text
+	 */
+	private static String getCell(TimeBucketReport report, int property, int bucket, int column, int width) {
+		TimeBuckets buckets = report.getBuckets(property);
+		switch(column) {
+			case BUCKET:
+				return report.formatBucket(bucket);
+			case PROPERTY:
+				return report.getProperty(property);
+			case COUNT:
+				return NumericFunctions.formatNumber(Integer.valueOf((int) buckets.getCount(bucket)));
+			case SUM:
+				return NumericFunctions.formatNumber(Float.valueOf((float) buckets.getSum(bucket)));
+			case MEAN:
+				return NumericFunctions.formatNumber(Float.valueOf((float) buckets.getMean(bucket)));
+			case WINDOW_SUM:
+				return NumericFunctions.formatNumber(Float.valueOf((float) buckets.getWindowSum(bucket, width)));
+			case WINDOW_MEAN:
+				return NumericFunctions.formatNumber(Float.valueOf((float) buckets.getWindowMean(bucket, width)));
+			default:
+				return "";
+		}
+	}
+}
@@ -0,0 +1,147 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * The values of one variable laid out against a shared, sorted set of row
+ * IDs, such as the IDs of the selected objects. A row either holds a single
+ * value or none, which rows hold a value is kept as a bit set with the
+ * number of values before each word of the set, and the values are held in
+ * row order. Rows of several aligned columns can then be walked together
+ * without any lookups, pairing values which came from the same row.
+ *
+ * Building an aligned column costs a bit per row plus a float per value,
+ * rather than a copy of every variable for every row.
+ */
+public class AlignedColumn {
+
+	private final int rows;
+	private final long[] present;
+	private final int[] ranks;
+	private final float[] values;
+
+	/**
+	 * Constructor, wraps the given arrays which must not be modified after
+	 * this call
+	 *
+	 * @param rows an int containing the number of rows
+	 * @param present a long[] containing a bit for each row holding a value
+	 * @param ranks an int[] containing the number of values before each word
+	 * of the bit set
+	 * @param values a float[] containing the values in row order
+	 */
+	private AlignedColumn(int rows, long[] present, int[] ranks, float[] values) {
+		this.rows = rows;
+		this.present = present;
+		this.ranks = ranks;
+		this.values = values;
+	}
+
+	/**
+	 * Aligns a column of values with the IDs they came from against a set of
+	 * row IDs. Where an ID has several values only the first is kept, values
+	 * whose ID is not a row are dropped.
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param ids a {@link com.about80minutes.util.LongColumn} containing the
+	 * ID each value came from
+	 * @param rowIds a long[] containing the row IDs in ascending order
+	 *
+	 * @return the {@link com.about80minutes.util.AlignedColumn} of the values
+	 */
+	public static AlignedColumn align(FloatColumn vals, LongColumn ids, long[] rowIds) {
+		long[] present = new long[(rowIds.length + 63) >>> 6];
+		int[] rowOf = new int[vals.size()];
+		int count = 0;
+		int row = -1;
+		for(int i = 0;i < rowOf.length;i++) {
+			long id = ids.get(i);
+			//values are mostly added in ID order, so try the next row first
+			if(row + 1 < rowIds.length && rowIds[row + 1] == id) {
+				row++;
+			} else {
+				row = Arrays.binarySearch(rowIds, id);
+			}
+			if(row < 0 || (present[row >>> 6] & (1L << row)) != 0) {
+				rowOf[i] = -1;
+				row = -1;
+				continue;
+			}
+			present[row >>> 6] |= 1L << row;
+			rowOf[i] = row;
+			count++;
+		}
+
+		int[] ranks = new int[present.length];
+		int rank = 0;
+		for(int word = 0;word < present.length;word++) {
+			ranks[word] = rank;
+			rank += Long.bitCount(present[word]);
+		}
+		AlignedColumn aligned = new AlignedColumn(rowIds.length, present, ranks, new float[count]);
+		for(int i = 0;i < rowOf.length;i++) {
+			if(rowOf[i] >= 0) {
+				aligned.values[aligned.rank(rowOf[i])] = vals.get(i);
+			}
+		}
+		return aligned;
+	}
+
+	/**
+	 * Gets the number of rows the values are aligned against
+	 *
+	 * @return an int containing the number of rows
+	 */
+	public int getRows() {
+		return rows;
+	}
+
+	/**
+	 * Gets the number of rows holding a value
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Whether a row holds a value
+	 *
+	 * @param row an int containing the row
+	 *
+	 * @return true if the row holds a value
+	 */
+	public boolean isPresent(int row) {
+		return (present[row >>> 6] & (1L << row)) != 0;
+	}
+
+	/**
+	 * Gets the number of values held by the rows before a row, which is the
+	 * position of the row's value if it holds one
+	 *
+	 * @param row an int containing the row
+	 *
+	 * @return an int containing the rank of the row
+	 */
+	public int rank(int row) {
+		int word = row >>> 6;
+		if(word >= present.length) {
+			return values.length;
+		}
+		//bits of the word below the row
+		long below = present[word] & ((1L << row) - 1);
+		return ranks[word] + Long.bitCount(below);
+	}
+
+	/**
+	 * Gets a value
+	 *
+	 * @param rank an int containing the rank of the row holding the value
+	 *
+	 * @return a float containing the value
+	 */
+	public float getValue(int rank) {
+		return values[rank];
+	}
+}
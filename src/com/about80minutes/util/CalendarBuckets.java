@@ -0,0 +1,248 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+import java.util.TimeZone;
+
+/**
+ * Utility class, this contains static methods for placing dates into day,
+ * week or month buckets. Dates are held as whole days since 1970-01-01 in a
+ * given time zone, which fit in an int and convert to a bucket number with
+ * integer arithmetic alone, so a million dates can be bucketed without a
+ * {@link java.util.Calendar} per date.
+ *
+ * Buckets are numbered consecutively, so the buckets between two dates can
+ * be held in a primitive array indexed by bucket number less the first.
+ * Weeks start on a Monday. Months follow the proleptic Gregorian calendar.
+ */
+public final class CalendarBuckets {
+
+	public static final int DAY = 0;
+	public static final int WEEK = 1;
+	public static final int MONTH = 2;
+
+	public static final int NO_DAY = Integer.MIN_VALUE;
+
+	private static final long MILLIS_PER_DAY = 24L * 60L * 60L * 1000L;
+	//1970-01-01 was a Thursday, three days after the Monday starting its week
+	private static final int EPOCH_WEEKDAY_OFFSET = 3;
+
+	/**
+	 * Private constructor, this class only has static methods
+	 */
+	private CalendarBuckets() {
+		// do nothing
+	}
+
+	/**
+	 * Converts an instant into the day it falls on in a time zone
+	 *
+	 * @param millis a long containing the milliseconds since 1970-01-01 UTC
+	 * @param zone a {@link java.util.TimeZone} to take the day in
+	 *
+	 * @return an int containing the days since 1970-01-01
+	 */
+	public static int toEpochDay(long millis, TimeZone zone) {
+		return (int) floorDiv(millis + zone.getOffset(millis), MILLIS_PER_DAY);
+	}
+
+	/**
+	 * Gets the bucket a day falls into
+	 *
+	 * @param epochDay an int containing the days since 1970-01-01
+	 * @param unit an int, one of {@link #DAY}, {@link #WEEK} or {@link #MONTH}
+	 *
+	 * @return an int containing the bucket number
+	 */
+	public static int bucketOf(int epochDay, int unit) {
+		switch(unit) {
+			case DAY:
+				return epochDay;
+			case WEEK:
+				return (int) floorDiv((long) epochDay + EPOCH_WEEKDAY_OFFSET, 7L);
+			case MONTH:
+				int[] date = civilFromDays(epochDay);
+				return date[0] * 12 + date[1] - 1;
+			default:
+				throw new IllegalArgumentException(String.format("Unknown bucket unit %d", unit));
+		}
+	}
+
+	/**
+	 * Gets the bucket of each of a sorted set of row IDs, such as the IDs of
+	 * the selected objects, from a column of dates with the IDs they came
+	 * from. Where an ID has several dates the first is used.
+	 *
+	 * @param days an {@link com.about80minutes.util.IntColumn} of days since
+	 * 1970-01-01
+	 * @param ids a {@link com.about80minutes.util.LongColumn} containing the
+	 * ID each day came from
+	 * @param rowIds a long[] containing the row IDs in ascending order
+	 * @param unit an int, one of {@link #DAY}, {@link #WEEK} or {@link #MONTH}
+	 *
+	 * @return an int[] containing the bucket of each row, {@link #NO_DAY}
+	 * for rows without a date
+	 */
+	public static int[] bucketRows(IntColumn days, LongColumn ids, long[] rowIds, int unit) {
+		int[] rowBuckets = new int[rowIds.length];
+		Arrays.fill(rowBuckets, NO_DAY);
+		int row = -1;
+		for(int i = 0;i < days.size();i++) {
+			long id = ids.get(i);
+			//dates are mostly added in ID order, so try the next row first
+			if(row + 1 < rowIds.length && rowIds[row + 1] == id) {
+				row++;
+			} else {
+				row = Arrays.binarySearch(rowIds, id);
+			}
+			if(row < 0) {
+				row = -1;
+			} else if(rowBuckets[row] == NO_DAY) {
+				rowBuckets[row] = bucketOf(days.get(i), unit);
+			}
+		}
+		return rowBuckets;
+	}
+
+	/**
+	 * Limits the buckets of a set of rows to a range of at most the given
+	 * number of buckets. The range is centred on the median bucket of the
+	 * rows, so a few stray dates far from the rest do not move it, and rows
+	 * before or after it are moved into its first or last bucket.
+	 *
+	 * @param rowBuckets an int[] containing the bucket of each row, or
+	 * {@link #NO_DAY}, as returned by
+	 * {@link #bucketRows(IntColumn, LongColumn, long[], int)}, which is
+	 * changed in place
+	 * @param maxBuckets an int containing the number of buckets to keep, at
+	 * least 1
+	 *
+	 * @return an int[] containing the first and last bucket of the range, or
+	 * null if no row has a bucket
+	 */
+	public static int[] clampRows(int[] rowBuckets, int maxBuckets) {
+		int dated = 0;
+		for(int bucket : rowBuckets) {
+			if(bucket != NO_DAY) {
+				dated++;
+			}
+		}
+		if(dated == 0) {
+			return null;
+		}
+		int[] sorted = new int[dated];
+		int i = 0;
+		for(int bucket : rowBuckets) {
+			if(bucket != NO_DAY) {
+				sorted[i++] = bucket;
+			}
+		}
+		Arrays.sort(sorted);
+		int first = sorted[0];
+		int last = sorted[dated - 1];
+		if((long) last - first < maxBuckets) {
+			return new int[]{first, last};
+		}
+		long start = Math.min((long) sorted[dated / 2] - maxBuckets / 2, (long) last - maxBuckets + 1);
+		first = (int) Math.max(start, first);
+		last = first + maxBuckets - 1;
+		for(int row = 0;row < rowBuckets.length;row++) {
+			if(rowBuckets[row] != NO_DAY) {
+				rowBuckets[row] = Math.max(first, Math.min(last, rowBuckets[row]));
+			}
+		}
+		return new int[]{first, last};
+	}
+
+	/**
+	 * Gets the first day of a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 * @param unit an int, one of {@link #DAY}, {@link #WEEK} or {@link #MONTH}
+	 *
+	 * @return an int containing the days since 1970-01-01
+	 */
+	public static int startOf(int bucket, int unit) {
+		switch(unit) {
+			case DAY:
+				return bucket;
+			case WEEK:
+				return bucket * 7 - EPOCH_WEEKDAY_OFFSET;
+			case MONTH:
+				int year = (int) floorDiv(bucket, 12L);
+				return daysFromCivil(year, bucket - year * 12 + 1, 1);
+			default:
+				throw new IllegalArgumentException(String.format("Unknown bucket unit %d", unit));
+		}
+	}
+
+	/**
+	 * Formats a bucket as its first day, e.g. 2013-04-22, or as its month,
+	 * e.g. 2013-04, so that labels sort in date order
+	 *
+	 * @param bucket an int containing the bucket number
+	 * @param unit an int, one of {@link #DAY}, {@link #WEEK} or {@link #MONTH}
+	 *
+	 * @return the formatted {@link java.lang.String}
+	 */
+	public static String format(int bucket, int unit) {
+		int[] date = civilFromDays(startOf(bucket, unit));
+		if(unit == MONTH) {
+			return String.format("%04d-%02d", date[0], date[1]);
+		}
+		return String.format("%04d-%02d-%02d", date[0], date[1], date[2]);
+	}
+
+	/**
+	 * Converts a day into its year, month and day of month
+	 *
+	 * @param epochDay an int containing the days since 1970-01-01
+	 *
+	 * @return an int[] containing the year, the month from 1 to 12 and the
+	 * day of the month
+	 */
+	private static int[] civilFromDays(int epochDay) {
+		//counted in 400 year eras starting on 0000-03-01, so leap days end each year
+		long days = epochDay + 719468L;
+		long era = floorDiv(days, 146097L);
+		long dayOfEra = days - era * 146097L;
+		long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+		long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+		long monthPart = (5 * dayOfYear + 2) / 153;
+		int day = (int) (dayOfYear - (153 * monthPart + 2) / 5 + 1);
+		int month = (int) (monthPart < 10 ? monthPart + 3 : monthPart - 9);
+		int year = (int) (yearOfEra + era * 400 + (month <= 2 ? 1 : 0));
+		return new int[]{year, month, day};
+	}
+
+	/**
+	 * Converts a year, month and day of month into a day
+	 *
+	 * @param year an int containing the year
+	 * @param month an int containing the month from 1 to 12
+	 * @param day an int containing the day of the month
+	 *
+	 * @return an int containing the days since 1970-01-01
+	 */
+	private static int daysFromCivil(int year, int month, int day) {
+		long y = (month <= 2) ? year - 1 : year;
+		long era = floorDiv(y, 400L);
+		long yearOfEra = y - era * 400;
+		long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+		long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+		return (int) (era * 146097L + dayOfEra - 719468L);
+	}
+
+	/**
+	 * Divides rounding towards negative infinity, so days before 1970 fall
+	 * into the right bucket
+	 *
+	 * @param dividend a long to divide
+	 * @param divisor a long to divide by, which must be positive
+	 *
+	 * @return a long containing the quotient
+	 */
+	private static long floorDiv(long dividend, long divisor) {
+		long quotient = dividend / divisor;
+		return (dividend % divisor < 0) ? quotient - 1 : quotient;
+	}
+}
@@ -0,0 +1,267 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * Accumulates the pairwise co-moments of a fixed number of variables in a
+ * single pass, from which the covariance and Pearson correlation of every
+ * pair can be read. Each observation may hold any subset of the variables,
+ * a pair is only accumulated from observations holding both of its
+ * variables, so the count and means of each pair are its own.
+ *
+ * As with {@link com.about80minutes.util.StatsAccumulator} the means and
+ * co-moments are held about the mean rather than as raw sums, and two
+ * accumulators can be merged, so partial results computed over separate
+ * chunks of observations can be combined. The co-moments of each pair, including each
+ * variable with itself, are held in flat arrays of the upper triangle.
+ *
+ * Updating every pair of every observation is the bulk of the work, so
+ * observations are first summed relative to a recent value of each
+ * variable, which needs no division, and the sums are folded into the
+ * co-moments every few thousand observations. Shifting the values keeps the
+ * sums of so few observations accurate. An accumulator is not thread safe.
+ */
+public class CoMoments {
+
+	private static final int FOLD_INTERVAL = 4096;
+
+	private final int dimensions;
+	private final long[] counts;
+	private final double[] meansX;
+	private final double[] meansY;
+	private final double[] m2X;
+	private final double[] m2Y;
+	private final double[] cXY;
+	//sums of the observations not yet folded in, relative to the shifts
+	private final double[] shifts;
+	private final boolean[] shifted;
+	private final int[] pendingCounts;
+	private final double[] sumsX;
+	private final double[] sumsY;
+	private final double[] sumsXX;
+	private final double[] sumsYY;
+	private final double[] sumsXY;
+	private int pending = 0;
+
+	/**
+	 * Constructor for the accumulator
+	 *
+	 * @param dimensions an int containing the number of variables
+	 */
+	public CoMoments(int dimensions) {
+		this.dimensions = dimensions;
+		int pairs = dimensions * (dimensions + 1) / 2;
+		this.counts = new long[pairs];
+		this.meansX = new double[pairs];
+		this.meansY = new double[pairs];
+		this.m2X = new double[pairs];
+		this.m2Y = new double[pairs];
+		this.cXY = new double[pairs];
+		this.shifts = new double[dimensions];
+		this.shifted = new boolean[dimensions];
+		this.pendingCounts = new int[pairs];
+		this.sumsX = new double[pairs];
+		this.sumsY = new double[pairs];
+		this.sumsXX = new double[pairs];
+		this.sumsYY = new double[pairs];
+		this.sumsXY = new double[pairs];
+	}
+
+	/**
+	 * Adds an observation, every pair of the variables it holds is updated
+	 *
+	 * @param variables an int[] containing the variables held by the
+	 * observation in ascending order
+	 * @param values a float[] containing the value of each variable held
+	 * @param size an int containing the number of variables held
+	 */
+	public void add(int[] variables, float[] values, int size) {
+		for(int a = 0;a < size;a++) {
+			int i = variables[a];
+			if(!shifted[i]) {
+				shifts[i] = values[a];
+				shifted[i] = true;
+			}
+		}
+		for(int a = 0;a < size;a++) {
+			double x = values[a] - shifts[variables[a]];
+			//the pair of variables[a] and j is at rowStart + j
+			int rowStart = this.pairIndex(variables[a], variables[a]) - variables[a];
+			for(int b = a;b < size;b++) {
+				int pair = rowStart + variables[b];
+				double y = values[b] - shifts[variables[b]];
+				pendingCounts[pair]++;
+				sumsX[pair] += x;
+				sumsY[pair] += y;
+				sumsXX[pair] += x * x;
+				sumsYY[pair] += y * y;
+				sumsXY[pair] += x * y;
+			}
+		}
+		if(++pending == FOLD_INTERVAL) {
+			this.fold();
+		}
+	}
+
+	/**
+	 * Merges the observations seen by another accumulator of the same
+	 * variables into this one
+	 *
+	 * @param other a {@link com.about80minutes.util.CoMoments} to merge
+	 */
+	public void merge(CoMoments other) {
+		if(other.dimensions != dimensions) {
+			throw new IllegalArgumentException(String.format("Cannot merge %d variables into %d", other.dimensions, dimensions));
+		}
+		this.fold();
+		other.fold();
+		for(int pair = 0;pair < counts.length;pair++) {
+			this.merge(pair, other.counts[pair], other.meansX[pair], other.meansY[pair], other.m2X[pair], other.m2Y[pair], other.cXY[pair]);
+		}
+	}
+
+	/**
+	 * Folds the sums of the observations added since the last fold into the
+	 * co-moments
+	 */
+	private void fold() {
+		if(pending == 0) {
+			return;
+		}
+		int rowStart = 0;
+		for(int i = 0;i < dimensions;i++) {
+			for(int j = i;j < dimensions;j++) {
+				int pair = rowStart + j - i;
+				int n = pendingCounts[pair];
+				if(n == 0) {
+					continue;
+				}
+				double meanX = sumsX[pair] / n;
+				double meanY = sumsY[pair] / n;
+				this.merge(pair, n, shifts[i] + meanX, shifts[j] + meanY,
+						Math.max(sumsXX[pair] - sumsX[pair] * meanX, 0d),
+						Math.max(sumsYY[pair] - sumsY[pair] * meanY, 0d),
+						sumsXY[pair] - sumsX[pair] * meanY);
+				pendingCounts[pair] = 0;
+				sumsX[pair] = 0d;
+				sumsY[pair] = 0d;
+				sumsXX[pair] = 0d;
+				sumsYY[pair] = 0d;
+				sumsXY[pair] = 0d;
+			}
+			rowStart += dimensions - i;
+		}
+		//the next observations are shifted by values near them
+		Arrays.fill(shifted, false);
+		pending = 0;
+	}
+
+	/**
+	 * Merges the co-moments of a set of observations into those of a pair
+	 *
+	 * @param pair an int containing the position of the pair
+	 * @param otherCount a long containing the number of observations
+	 * @param otherMeanX a double containing the mean of the first variable
+	 * @param otherMeanY a double containing the mean of the second variable
+	 * @param otherM2X a double containing the sum of squared differences
+	 * from the mean of the first variable
+	 * @param otherM2Y a double containing the sum of squared differences
+	 * from the mean of the second variable
+	 * @param otherCXY a double containing the sum of the products of the
+	 * differences from the means
+	 */
+	private void merge(int pair, long otherCount, double otherMeanX, double otherMeanY,
+			double otherM2X, double otherM2Y, double otherCXY) {
+		if(otherCount == 0) {
+			return;
+		}
+		long count = counts[pair];
+		long total = count + otherCount;
+		double deltaX = otherMeanX - meansX[pair];
+		double deltaY = otherMeanY - meansY[pair];
+		double weight = (double) count * otherCount / total;
+		meansX[pair] += deltaX * otherCount / total;
+		meansY[pair] += deltaY * otherCount / total;
+		m2X[pair] += otherM2X + deltaX * deltaX * weight;
+		m2Y[pair] += otherM2Y + deltaY * deltaY * weight;
+		cXY[pair] += otherCXY + deltaX * deltaY * weight;
+		counts[pair] = total;
+	}
+
+	/**
+	 * Gets the number of variables
+	 *
+	 * @return an int containing the number of variables
+	 */
+	public int getDimensions() {
+		return dimensions;
+	}
+
+	/**
+	 * Gets the number of observations holding both variables of a pair
+	 *
+	 * @param i an int containing the first variable
+	 * @param j an int containing the second variable
+	 *
+	 * @return a long containing the count
+	 */
+	public long getCount(int i, int j) {
+		this.fold();
+		return counts[this.pairIndex(i, j)];
+	}
+
+	/**
+	 * Gets the population covariance of a pair, the covariance of a variable
+	 * with itself is its variance
+	 *
+	 * @param i an int containing the first variable
+	 * @param j an int containing the second variable
+	 *
+	 * @return a double containing the covariance, NaN if no observation holds
+	 * both variables
+	 */
+	public double getCovariance(int i, int j) {
+		this.fold();
+		int pair = this.pairIndex(i, j);
+		return (counts[pair] == 0) ? Double.NaN : cXY[pair] / counts[pair];
+	}
+
+	/**
+	 * Gets the Pearson correlation of a pair
+	 *
+	 * @param i an int containing the first variable
+	 * @param j an int containing the second variable
+	 *
+	 * @return a double containing the correlation between -1 and 1, NaN if
+	 * fewer than two observations hold both variables or either does not
+	 * vary across them
+	 */
+	public double getCorrelation(int i, int j) {
+		this.fold();
+		int pair = this.pairIndex(i, j);
+		double denominator = Math.sqrt(m2X[pair] * m2Y[pair]);
+		if(counts[pair] < 2 || !(denominator > 0d)) {
+			return Double.NaN;
+		}
+		//rounding may take a perfect correlation just past 1
+		return Math.max(-1d, Math.min(1d, cXY[pair] / denominator));
+	}
+
+	/**
+	 * Gets the position of a pair in the upper triangle arrays
+	 *
+	 * @param i an int containing the first variable
+	 * @param j an int containing the second variable
+	 *
+	 * @return an int containing the position
+	 */
+	private int pairIndex(int i, int j) {
+		if(i > j) {
+			int swap = i;
+			i = j;
+			j = swap;
+		}
+		//rows before i hold dimensions, dimensions - 1, ... pairs
+		return i * dimensions - i * (i - 1) / 2 + (j - i);
+	}
+}
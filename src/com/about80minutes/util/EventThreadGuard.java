@@ -0,0 +1,57 @@
+package com.about80minutes.util;
+
+import javax.swing.SwingUtilities;
+
+/**
+ * Guards work which grows with the number of values, such as scanning or
+ * copying a column, against being run on the Swing event dispatch thread
+ * where it would stop the UI repainting.
+ *
+ * The guard is enabled when assertions are enabled for this class, as they
+ * are for the unit tests, and can also be enabled explicitly. When disabled
+ * it costs a single field read.
+ */
+public final class EventThreadGuard {
+
+	private static volatile boolean enabled = EventThreadGuard.class.desiredAssertionStatus();
+
+	/**
+	 * Private constructor, this class only has static methods
+	 */
+	private EventThreadGuard() {
+		// do nothing
+	}
+
+	/**
+	 * Sets whether the guard checks the calling thread
+	 *
+	 * @param guardEnabled a boolean, true to fail work run on the event thread
+	 */
+	public static void setEnabled(boolean guardEnabled) {
+		enabled = guardEnabled;
+	}
+
+	/**
+	 * Whether the guard checks the calling thread
+	 *
+	 * @return true if work run on the event thread fails
+	 */
+	public static boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * Checks that the calling thread is not the event dispatch thread
+	 *
+	 * @param work a {@link java.lang.String} describing the work about to be
+	 * done, used in the failure message
+	 *
+	 * @throws AssertionError if the guard is enabled and this is called on
+	 * the event dispatch thread
+	 */
+	public static void assertOffEventThread(String work) {
+		if(enabled && SwingUtilities.isEventDispatchThread()) {
+			throw new AssertionError(String.format("%s must not run on the event dispatch thread", work));
+		}
+	}
+}
@@ -0,0 +1,226 @@
+package com.about80minutes.util;
+
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Growable column of primitive float values. This is used in preference to a
+ * {@link java.util.Collection} of {@link java.lang.Float} so that each value
+ * costs 4 bytes rather than a boxed object plus a list slot. Growing and
+ * spilling are done by {@link com.about80minutes.util.PrimitiveColumn}.
+ */
+public class FloatColumn extends PrimitiveColumn {
+
+	private static final int VALUE_BYTES = 4;
+
+	private float[] values = null;
+	private FloatBuffer mapped = null;
+
+	/**
+	 * Constructor, creates an empty column with a default capacity
+	 */
+	public FloatColumn() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor, creates an empty column with the given initial capacity
+	 *
+	 * @param capacity an int containing the number of values to allocate for
+	 */
+	public FloatColumn(int capacity) {
+		super(VALUE_BYTES);
+		values = new float[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Creates a column containing the values of the given collection
+	 *
+	 * @param vals a {@link java.util.Collection} of {@link java.lang.Float} to
+	 * copy into the column
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} holding the values
+	 */
+	public static FloatColumn valueOf(Collection<Float> vals) {
+		FloatColumn column = new FloatColumn(vals.size());
+		for(Float val : vals) {
+			column.add(val.floatValue());
+		}
+		return column;
+	}
+
+	/**
+	 * Appends a value to the end of the column, growing the backing array if
+	 * required
+	 *
+	 * @param value a float containing the value to add
+	 */
+	public void add(float value) {
+		if(size == this.capacity()) {
+			this.grow(size + 1);
+		}
+		this.write(size++, value);
+	}
+
+	/**
+	 * Appends every value of another column to the end of this column
+	 *
+	 * @param other a {@link com.about80minutes.util.FloatColumn} to copy values from
+	 */
+	public void addAll(FloatColumn other) {
+		if(size + other.size > this.capacity()) {
+			this.grow(size + other.size);
+		}
+		if(mapped == null && other.mapped == null) {
+			System.arraycopy(other.values, 0, values, size, other.size);
+		} else if(other.mapped == null) {
+			FloatBuffer view = mapped.duplicate();
+			view.position(size);
+			view.put(other.values, 0, other.size);
+		} else {
+			for(int i = 0;i < other.size;i++) {
+				this.write(size + i, other.read(i));
+			}
+		}
+		size += other.size;
+	}
+
+	/**
+	 * Gets the value at the given position
+	 *
+	 * @param index an int containing the position of the value
+	 *
+	 * @return a float containing the value
+	 */
+	public float get(int index) {
+		this.checkIndex(index);
+		return this.read(index);
+	}
+
+	/**
+	 * Copies a run of values into a buffer, a single bulk copy whether the
+	 * column is held on the heap or has been spilled
+	 *
+	 * @param from an int containing the position of the first value to copy
+	 * @param length an int containing the number of values to copy
+	 * @param dst a {@link java.nio.FloatBuffer} to copy the values into, its
+	 * position is advanced past them
+	 */
+	public void get(int from, int length, FloatBuffer dst) {
+		this.checkRange(from, length);
+		if(mapped == null) {
+			dst.put(values, from, length);
+		} else {
+			FloatBuffer view = mapped.duplicate();
+			view.position(from);
+			view.limit(from + length);
+			dst.put(view);
+		}
+	}
+
+	/**
+	 * Replaces the value at the given position
+	 *
+	 * @param index an int containing the position of the value
+	 * @param value a float containing the new value
+	 */
+	public void set(int index, float value) {
+		this.checkIndex(index);
+		this.write(index, value);
+	}
+
+	/**
+	 * Copies the values of the column into a new array
+	 *
+	 * @return a float[] containing a copy of the column values
+	 */
+	public float[] toArray() {
+		if(mapped != null) {
+			float[] copy = new float[size];
+			FloatBuffer view = mapped.duplicate();
+			view.position(0);
+			view.get(copy);
+			return copy;
+		}
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getHeapCapacity() {
+		return values.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getMappedCapacity() {
+		return mapped.capacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void resize(int newCapacity) {
+		values = Arrays.copyOf(values, newCapacity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void moveToMapped(ByteBuffer bytes) {
+		FloatBuffer buffer = bytes.asFloatBuffer();
+		buffer.put(values, 0, size);
+		mapped = buffer;
+		values = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void remap(ByteBuffer bytes) {
+		mapped = bytes.asFloatBuffer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void moveToHeap(int capacity) {
+		mapped = null;
+		values = new float[capacity];
+	}
+
+	/**
+	 * Reads a value without checking it is within the column
+	 *
+	 * @param index an int containing the position of the value
+	 *
+	 * @return a float containing the value
+	 */
+	private float read(int index) {
+		return (mapped == null) ? values[index] : mapped.get(index);
+	}
+
+	/**
+	 * Writes a value without checking it is within the column
+	 *
+	 * @param index an int containing the position of the value
+	 * @param value a float containing the value
+	 */
+	private void write(int index, float value) {
+		if(mapped == null) {
+			values[index] = value;
+		} else {
+			mapped.put(index, value);
+		}
+	}
+}
@@ -0,0 +1,334 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Open addressing hash table counting occurrences of float values. Keys are
+ * held as their raw int bits so counting does not allocate per value, the
+ * table can be cleared and reused between calls.
+ *
+ * Keys are normalised before being stored: every NaN is counted as the
+ * canonical {@link java.lang.Float#NaN} and -0.0 is counted as 0.0, as the two
+ * zeros compare equal and are displayed identically.
+ */
+public class FloatIntCounter {
+
+	//a non-canonical NaN, normalised keys can never take this value
+	private static final int EMPTY = 0xFFFFFFFF;
+	private static final int DEFAULT_CAPACITY = 64;
+
+	private int[] keys = null;
+	private int[] counts = null;
+	private int mask = 0;
+	private int size = 0;
+
+	/**
+	 * Constructor, creates an empty counter with a default capacity
+	 */
+	public FloatIntCounter() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor, creates an empty counter sized for the given number of
+	 * distinct values
+	 *
+	 * @param expected an int containing the expected number of distinct values
+	 */
+	public FloatIntCounter(int expected) {
+		this.allocate(tableSizeFor(expected));
+	}
+
+	/**
+	 * Increments the count of the given value by one
+	 *
+	 * @param value a float containing the value to count
+	 *
+	 * @return an int containing the new count of the value
+	 */
+	public int add(float value) {
+		return this.add(value, 1);
+	}
+
+	/**
+	 * Adjusts the count of the given value by the given amount, a negative
+	 * amount may be used to remove occurrences
+	 *
+	 * @param value a float containing the value to count
+	 * @param delta an int containing the amount to adjust the count by
+	 *
+	 * @return an int containing the new count of the value
+	 */
+	public int add(float value, int delta) {
+		int key = normalise(value);
+		int slot = hash(key) & mask;
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				counts[slot] += delta;
+				return counts[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[slot] = key;
+		counts[slot] = delta;
+		size++;
+		if(size * 2 > keys.length) {
+			this.rehash(keys.length * 2);
+		}
+		return delta;
+	}
+
+	/**
+	 * Adds the counts held by another counter to this one
+	 *
+	 * @param other a {@link com.about80minutes.util.FloatIntCounter} to merge
+	 */
+	public void addAll(FloatIntCounter other) {
+		for(int slot = 0;slot < other.keys.length;slot++) {
+			if(other.keys[slot] != EMPTY && other.counts[slot] != 0) {
+				this.add(Float.intBitsToFloat(other.keys[slot]), other.counts[slot]);
+			}
+		}
+	}
+
+	/**
+	 * Gets the count of the given value
+	 *
+	 * @param value a float containing the value to look up
+	 *
+	 * @return an int containing the count, 0 if the value has not been seen
+	 */
+	public int get(float value) {
+		int key = normalise(value);
+		int slot = hash(key) & mask;
+		while(keys[slot] != EMPTY) {
+			if(keys[slot] == key) {
+				return counts[slot];
+			}
+			slot = (slot + 1) & mask;
+		}
+		return 0;
+	}
+
+	/**
+	 * Gets the number of distinct values held by the counter. Values whose
+	 * count has been reduced to zero are included until the counter is
+	 * cleared.
+	 *
+	 * @return an int containing the number of distinct values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of bytes of Java heap used by the counter's table
+	 *
+	 * @return a long containing the size of the key and count arrays
+	 */
+	public long getHeapBytes() {
+		return (long) keys.length * 8;
+	}
+
+	/**
+	 * Removes all values from the counter, the table is retained for reuse
+	 */
+	public void clear() {
+		Arrays.fill(keys, EMPTY);
+		Arrays.fill(counts, 0);
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of slots in the table, used with {@link #isOccupied(int)},
+	 * {@link #keyAt(int)} and {@link #countAt(int)} to iterate over the
+	 * counted values without allocation
+	 *
+	 * @return an int containing the number of slots
+	 */
+	public int capacity() {
+		return keys.length;
+	}
+
+	/**
+	 * Whether the given slot holds a value with a positive count
+	 *
+	 * @param slot an int containing the slot number
+	 *
+	 * @return true if the slot holds a counted value
+	 */
+	public boolean isOccupied(int slot) {
+		return keys[slot] != EMPTY && counts[slot] > 0;
+	}
+
+	/**
+	 * Gets the value held in the given slot
+	 *
+	 * @param slot an int containing the slot number
+	 *
+	 * @return a float containing the value
+	 */
+	public float keyAt(int slot) {
+		return Float.intBitsToFloat(keys[slot]);
+	}
+
+	/**
+	 * Gets the count held in the given slot
+	 *
+	 * @param slot an int containing the slot number
+	 *
+	 * @return an int containing the count
+	 */
+	public int countAt(int slot) {
+		return counts[slot];
+	}
+
+	/**
+	 * Gets the highest count held by the counter
+	 *
+	 * @return an int containing the highest count, 0 if the counter is empty
+	 */
+	public int getMaxCount() {
+		int max = 0;
+		for(int slot = 0;slot < keys.length;slot++) {
+			if(keys[slot] != EMPTY && counts[slot] > max) {
+				max = counts[slot];
+			}
+		}
+		return max;
+	}
+
+	/**
+	 * Adds every value with the highest count to the given collection in
+	 * ascending order
+	 *
+	 * @param modes a {@link java.util.Collection} of {@link java.lang.Float}
+	 * to add the modes to
+	 */
+	public void getModes(Collection<Float> modes) {
+		for(float mode : this.getModes()) {
+			modes.add(mode);
+		}
+	}
+
+	/**
+	 * Gets every value with the highest count
+	 *
+	 * @return a float[] containing the modes in ascending order, empty if the
+	 * counter is empty
+	 */
+	public float[] getModes() {
+		int max = this.getMaxCount();
+		if(max == 0) {
+			return new float[0];
+		}
+		int modeCount = 0;
+		for(int slot = 0;slot < keys.length;slot++) {
+			if(keys[slot] != EMPTY && counts[slot] == max) {
+				modeCount++;
+			}
+		}
+		float[] tmpModes = new float[modeCount];
+		int i = 0;
+		for(int slot = 0;slot < keys.length;slot++) {
+			if(keys[slot] != EMPTY && counts[slot] == max) {
+				tmpModes[i++] = Float.intBitsToFloat(keys[slot]);
+			}
+		}
+		Arrays.sort(tmpModes);
+		return tmpModes;
+	}
+
+	/**
+	 * Gets the most frequent values without collecting every value sharing
+	 * the highest count
+	 *
+	 * @param k an int containing the number of values to return
+	 * @param minCount an int containing the count below which a value is not
+	 * returned
+	 *
+	 * @return the {@link com.about80minutes.util.TopValues}, empty if no value
+	 * occurs often enough
+	 */
+	public TopValues getTop(int k, int minCount) {
+		TopValues.Builder builder = new TopValues.Builder(k, minCount);
+		for(int slot = 0;slot < keys.length;slot++) {
+			if(keys[slot] != EMPTY) {
+				builder.offer(Float.intBitsToFloat(keys[slot]), counts[slot]);
+			}
+		}
+		return builder.build(false);
+	}
+
+	/**
+	 * Grows the table to the given size re-inserting existing values
+	 *
+	 * @param newCapacity an int containing the new table size, a power of two
+	 */
+	private void rehash(int newCapacity) {
+		int[] oldKeys = keys;
+		int[] oldCounts = counts;
+		this.allocate(newCapacity);
+		for(int i = 0;i < oldKeys.length;i++) {
+			if(oldKeys[i] != EMPTY) {
+				int slot = hash(oldKeys[i]) & mask;
+				while(keys[slot] != EMPTY) {
+					slot = (slot + 1) & mask;
+				}
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+	}
+
+	/**
+	 * Allocates an empty table of the given size
+	 *
+	 * @param capacity an int containing the table size, a power of two
+	 */
+	private void allocate(int capacity) {
+		keys = new int[capacity];
+		counts = new int[capacity];
+		Arrays.fill(keys, EMPTY);
+		mask = capacity - 1;
+	}
+
+	/**
+	 * Converts a float into the key used by the table
+	 *
+	 * @param value a float to convert
+	 *
+	 * @return an int containing the key
+	 */
+	private static int normalise(float value) {
+		if(value == 0f) {
+			return 0; //fold -0.0 into 0.0
+		}
+		return Float.floatToIntBits(value); //collapses all NaNs to one value
+	}
+
+	/**
+	 * Spreads the bits of a key so that nearby floats do not cluster
+	 *
+	 * @param key an int containing the key
+	 *
+	 * @return an int containing the hash
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Works out the table size needed for the given number of values
+	 *
+	 * @param expected an int containing the expected number of values
+	 *
+	 * @return an int containing a power of two table size
+	 */
+	private static int tableSizeFor(int expected) {
+		int capacity = Integer.highestOneBit(Math.max(expected, 2) * 2 - 1) << 1;
+		return Math.max(capacity, 4);
+	}
+}
@@ -0,0 +1,310 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * Space-Saving sketch of the most frequent float values. At most a fixed
+ * number of values are monitored, when a new value arrives and every slot is
+ * taken it replaces the least frequent monitored value and inherits its count
+ * as an error. Memory is bounded by the capacity however many distinct values
+ * are added.
+ *
+ * Every value occurring more than n / capacity times is monitored, and the
+ * count of each monitored value overestimates its true count by at most its
+ * error. Monitored values are kept in a min heap on their counts, with an
+ * open addressing index from value to heap position, so each value is added
+ * in O(log capacity).
+ *
+ * Keys are normalised as they are by {@link com.about80minutes.util.FloatIntCounter}.
+ */
+public class HeavyHitters {
+
+	public static final int DEFAULT_CAPACITY = 128;
+
+	//a non-canonical NaN, normalised keys can never take this value
+	private static final int EMPTY = 0xFFFFFFFF;
+
+	private final int capacity;
+	//min heap of monitored values on their counts
+	private final int[] heapKeys;
+	private final int[] heapCounts;
+	private final int[] heapErrors;
+	//index from key to heap position, at most half full
+	private final int[] tableKeys;
+	private final int[] tablePositions;
+	private final int mask;
+	private int size = 0;
+	private boolean evicted = false;
+
+	/**
+	 * Constructor, creates a sketch monitoring the default number of values
+	 */
+	public HeavyHitters() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor for the sketch
+	 *
+	 * @param capacity an int containing the number of values monitored
+	 */
+	public HeavyHitters(int capacity) {
+		this.capacity = Math.max(capacity, 1);
+		this.heapKeys = new int[this.capacity];
+		this.heapCounts = new int[this.capacity];
+		this.heapErrors = new int[this.capacity];
+		int tableSize = Integer.highestOneBit(this.capacity * 2 - 1) << 1;
+		this.tableKeys = new int[tableSize];
+		this.tablePositions = new int[tableSize];
+		this.mask = tableSize - 1;
+		Arrays.fill(tableKeys, EMPTY);
+	}
+
+	/**
+	 * Adds a value to the sketch
+	 *
+	 * @param value a float containing the value
+	 */
+	public void add(float value) {
+		this.add(normalise(value), 1, 0);
+	}
+
+	/**
+	 * Merges another sketch into this one, the counts and errors of values
+	 * monitored by both are summed. Values monitored by only one sketch may
+	 * have been evicted from the other, so the merged counts are estimates.
+	 *
+	 * @param other a {@link com.about80minutes.util.HeavyHitters} to merge
+	 */
+	public void merge(HeavyHitters other) {
+		for(int i = 0;i < other.size;i++) {
+			this.add(other.heapKeys[i], other.heapCounts[i], other.heapErrors[i]);
+		}
+		evicted |= other.evicted;
+	}
+
+	/**
+	 * Gets the most frequent values, a value is only included if its count
+	 * less its error, the count it is guaranteed to have, reaches the
+	 * minimum
+	 *
+	 * @param k an int containing the number of values to return
+	 * @param minCount an int containing the count a value must be guaranteed
+	 * to have
+	 *
+	 * @return the {@link com.about80minutes.util.TopValues}, estimated once
+	 * any value has been evicted
+	 */
+	public TopValues getTop(int k, int minCount) {
+		TopValues.Builder builder = new TopValues.Builder(k, minCount);
+		for(int i = 0;i < size;i++) {
+			if(heapCounts[i] - heapErrors[i] >= minCount) {
+				builder.offer(Float.intBitsToFloat(heapKeys[i]), heapCounts[i]);
+			}
+		}
+		return builder.build(evicted);
+	}
+
+	/**
+	 * Gets the number of values monitored
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Gets the number of bytes of Java heap used by the sketch, which is
+	 * fixed by its capacity
+	 *
+	 * @return a long containing the size of the sketch's arrays
+	 */
+	public long getHeapBytes() {
+		return ((long) heapKeys.length * 3 + (long) tableKeys.length * 2) * 4;
+	}
+
+	/**
+	 * Adds occurrences of a key
+	 *
+	 * @param key an int containing the normalised key
+	 * @param count an int containing the number of occurrences
+	 * @param error an int containing the overestimate already in the count
+	 */
+	private void add(int key, int count, int error) {
+		int position = this.find(key);
+		if(position >= 0) {
+			heapCounts[position] += count;
+			heapErrors[position] += error;
+			this.siftDown(position);
+		} else if(size < capacity) {
+			position = size++;
+			heapKeys[position] = key;
+			heapCounts[position] = count;
+			heapErrors[position] = error;
+			this.put(key, position);
+			this.siftUp(position);
+		} else {
+			//the least frequent value is replaced and its count kept as error
+			int min = heapCounts[0];
+			this.remove(heapKeys[0]);
+			heapKeys[0] = key;
+			heapCounts[0] = min + count;
+			heapErrors[0] = min + error;
+			this.put(key, 0);
+			this.siftDown(0);
+			evicted = true;
+		}
+	}
+
+	/**
+	 * Moves a heap entry towards the root while it is less frequent than its
+	 * parent
+	 *
+	 * @param position an int containing the heap position
+	 */
+	private void siftUp(int position) {
+		while(position > 0) {
+			int parent = (position - 1) / 2;
+			if(heapCounts[parent] <= heapCounts[position]) {
+				return;
+			}
+			this.swap(position, parent);
+			position = parent;
+		}
+	}
+
+	/**
+	 * Moves a heap entry away from the root while it is more frequent than
+	 * either child
+	 *
+	 * @param position an int containing the heap position
+	 */
+	private void siftDown(int position) {
+		while(true) {
+			int smallest = position;
+			int left = position * 2 + 1;
+			int right = left + 1;
+			if(left < size && heapCounts[left] < heapCounts[smallest]) {
+				smallest = left;
+			}
+			if(right < size && heapCounts[right] < heapCounts[smallest]) {
+				smallest = right;
+			}
+			if(smallest == position) {
+				return;
+			}
+			this.swap(position, smallest);
+			position = smallest;
+		}
+	}
+
+	/**
+	 * Swaps two heap entries, updating the index
+	 *
+	 * @param a an int containing a heap position
+	 * @param b an int containing a heap position
+	 */
+	private void swap(int a, int b) {
+		int key = heapKeys[a];
+		int count = heapCounts[a];
+		int error = heapErrors[a];
+		heapKeys[a] = heapKeys[b];
+		heapCounts[a] = heapCounts[b];
+		heapErrors[a] = heapErrors[b];
+		heapKeys[b] = key;
+		heapCounts[b] = count;
+		heapErrors[b] = error;
+		tablePositions[this.slotOf(heapKeys[a])] = a;
+		tablePositions[this.slotOf(heapKeys[b])] = b;
+	}
+
+	/**
+	 * Looks up the heap position of a key
+	 *
+	 * @param key an int containing the key
+	 *
+	 * @return an int containing the heap position, or -1 if the key is not
+	 * monitored
+	 */
+	private int find(int key) {
+		int slot = this.slotOf(key);
+		return (tableKeys[slot] == key) ? tablePositions[slot] : -1;
+	}
+
+	/**
+	 * Finds the slot of the index holding a key, or the empty slot where it
+	 * would be inserted
+	 *
+	 * @param key an int containing the key
+	 *
+	 * @return an int containing the slot
+	 */
+	private int slotOf(int key) {
+		int slot = hash(key) & mask;
+		while(tableKeys[slot] != EMPTY && tableKeys[slot] != key) {
+			slot = (slot + 1) & mask;
+		}
+		return slot;
+	}
+
+	/**
+	 * Adds a key to the index
+	 *
+	 * @param key an int containing the key, which must not be in the index
+	 * @param position an int containing the heap position of the key
+	 */
+	private void put(int key, int position) {
+		int slot = this.slotOf(key);
+		tableKeys[slot] = key;
+		tablePositions[slot] = position;
+	}
+
+	/**
+	 * Removes a key from the index, later entries of the probe sequence are
+	 * shifted back so that lookups need no tombstones
+	 *
+	 * @param key an int containing the key, which must be in the index
+	 */
+	private void remove(int key) {
+		int slot = this.slotOf(key);
+		int next = (slot + 1) & mask;
+		while(tableKeys[next] != EMPTY) {
+			int ideal = hash(tableKeys[next]) & mask;
+			//the entry may move into the gap if the gap is on its probe sequence
+			if(((next - ideal) & mask) >= ((next - slot) & mask)) {
+				tableKeys[slot] = tableKeys[next];
+				tablePositions[slot] = tablePositions[next];
+				slot = next;
+			}
+			next = (next + 1) & mask;
+		}
+		tableKeys[slot] = EMPTY;
+	}
+
+	/**
+	 * Converts a float into the key used by the sketch
+	 *
+	 * @param value a float to convert
+	 *
+	 * @return an int containing the key
+	 */
+	private static int normalise(float value) {
+		if(value == 0f) {
+			return 0; //fold -0.0 into 0.0
+		}
+		return Float.floatToIntBits(value); //collapses all NaNs to one value
+	}
+
+	/**
+	 * Spreads the bits of a key so that nearby floats do not cluster
+	 *
+	 * @param key an int containing the key
+	 *
+	 * @return an int containing the hash
+	 */
+	private static int hash(int key) {
+		int h = key * 0x9E3779B9;
+		return h ^ (h >>> 16);
+	}
+}
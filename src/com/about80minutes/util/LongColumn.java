@@ -0,0 +1,226 @@
+package com.about80minutes.util;
+
+import java.nio.ByteBuffer;
+import java.nio.LongBuffer;
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Growable column of primitive long values. This is used in preference to a
+ * {@link java.util.Collection} of {@link java.lang.Long} so that each value
+ * costs 8 bytes rather than a boxed object plus a list slot. Growing and
+ * spilling are done by {@link com.about80minutes.util.PrimitiveColumn}.
+ */
+public class LongColumn extends PrimitiveColumn {
+
+	private static final int VALUE_BYTES = 8;
+
+	private long[] values = null;
+	private LongBuffer mapped = null;
+
+	/**
+	 * Constructor, creates an empty column with a default capacity
+	 */
+	public LongColumn() {
+		this(DEFAULT_CAPACITY);
+	}
+
+	/**
+	 * Constructor, creates an empty column with the given initial capacity
+	 *
+	 * @param capacity an int containing the number of values to allocate for
+	 */
+	public LongColumn(int capacity) {
+		super(VALUE_BYTES);
+		values = new long[Math.max(capacity, 1)];
+	}
+
+	/**
+	 * Creates a column containing the values of the given collection
+	 *
+	 * @param vals a {@link java.util.Collection} of {@link java.lang.Long} to
+	 * copy into the column
+	 *
+	 * @return a {@link com.about80minutes.util.LongColumn} holding the values
+	 */
+	public static LongColumn valueOf(Collection<Long> vals) {
+		LongColumn column = new LongColumn(vals.size());
+		for(Long val : vals) {
+			column.add(val.longValue());
+		}
+		return column;
+	}
+
+	/**
+	 * Appends a value to the end of the column, growing the backing array if
+	 * required
+	 *
+	 * @param value a long containing the value to add
+	 */
+	public void add(long value) {
+		if(size == this.capacity()) {
+			this.grow(size + 1);
+		}
+		this.write(size++, value);
+	}
+
+	/**
+	 * Appends every value of another column to the end of this column
+	 *
+	 * @param other a {@link com.about80minutes.util.LongColumn} to copy values from
+	 */
+	public void addAll(LongColumn other) {
+		if(size + other.size > this.capacity()) {
+			this.grow(size + other.size);
+		}
+		if(mapped == null && other.mapped == null) {
+			System.arraycopy(other.values, 0, values, size, other.size);
+		} else if(other.mapped == null) {
+			LongBuffer view = mapped.duplicate();
+			view.position(size);
+			view.put(other.values, 0, other.size);
+		} else {
+			for(int i = 0;i < other.size;i++) {
+				this.write(size + i, other.read(i));
+			}
+		}
+		size += other.size;
+	}
+
+	/**
+	 * Gets the value at the given position
+	 *
+	 * @param index an int containing the position of the value
+	 *
+	 * @return a long containing the value
+	 */
+	public long get(int index) {
+		this.checkIndex(index);
+		return this.read(index);
+	}
+
+	/**
+	 * Copies a run of values into a buffer, a single bulk copy whether the
+	 * column is held on the heap or has been spilled
+	 *
+	 * @param from an int containing the position of the first value to copy
+	 * @param length an int containing the number of values to copy
+	 * @param dst a {@link java.nio.LongBuffer} to copy the values into, its
+	 * position is advanced past them
+	 */
+	public void get(int from, int length, LongBuffer dst) {
+		this.checkRange(from, length);
+		if(mapped == null) {
+			dst.put(values, from, length);
+		} else {
+			LongBuffer view = mapped.duplicate();
+			view.position(from);
+			view.limit(from + length);
+			dst.put(view);
+		}
+	}
+
+	/**
+	 * Replaces the value at the given position
+	 *
+	 * @param index an int containing the position of the value
+	 * @param value a long containing the new value
+	 */
+	public void set(int index, long value) {
+		this.checkIndex(index);
+		this.write(index, value);
+	}
+
+	/**
+	 * Copies the values of the column into a new array
+	 *
+	 * @return a long[] containing a copy of the column values
+	 */
+	public long[] toArray() {
+		if(mapped != null) {
+			long[] copy = new long[size];
+			LongBuffer view = mapped.duplicate();
+			view.position(0);
+			view.get(copy);
+			return copy;
+		}
+		return Arrays.copyOf(values, size);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getHeapCapacity() {
+		return values.length;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected int getMappedCapacity() {
+		return mapped.capacity();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void resize(int newCapacity) {
+		values = Arrays.copyOf(values, newCapacity);
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void moveToMapped(ByteBuffer bytes) {
+		LongBuffer buffer = bytes.asLongBuffer();
+		buffer.put(values, 0, size);
+		mapped = buffer;
+		values = null;
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void remap(ByteBuffer bytes) {
+		mapped = bytes.asLongBuffer();
+	}
+
+	/**
+	 * {@inheritDoc}
+	 */
+	@Override
+	protected void moveToHeap(int capacity) {
+		mapped = null;
+		values = new long[capacity];
+	}
+
+	/**
+	 * Reads a value without checking it is within the column
+	 *
+	 * @param index an int containing the position of the value
+	 *
+	 * @return a long containing the value
+	 */
+	private long read(int index) {
+		return (mapped == null) ? values[index] : mapped.get(index);
+	}
+
+	/**
+	 * Writes a value without checking it is within the column
+	 *
+	 * @param index an int containing the position of the value
+	 * @param value a long containing the value
+	 */
+	private void write(int index, long value) {
+		if(mapped == null) {
+			values[index] = value;
+		} else {
+			mapped.put(index, value);
+		}
+	}
+}
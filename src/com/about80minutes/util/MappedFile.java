@@ -0,0 +1,110 @@
+package com.about80minutes.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Temporary file mapped into memory, used to hold column values outside of the
+ * Java heap. The mapping can be grown as values are added, the file is deleted
+ * when closed.
+ *
+ * Unless a directory is given files are created in a spill directory of
+ * their own, which is swept by a single shutdown hook in case a file could
+ * not be deleted, e.g. while still mapped. Files are not registered with
+ * {@link java.io.File#deleteOnExit()}, which would hold the path of every
+ * file ever spilled until the JVM exits.
+ */
+public class MappedFile {
+
+	private static File spillDirectory = null;
+
+	private File file = null;
+	private RandomAccessFile randomAccessFile = null;
+	private ByteBuffer buffer = null;
+
+	/**
+	 * Constructor, creates an empty temporary file
+	 *
+	 * @param directory a {@link java.io.File} containing the directory to
+	 * create the file in, or null to use the spill directory
+	 * @param prefix a {@link java.lang.String} containing the file name prefix
+	 *
+	 * @throws IOException if the file cannot be created
+	 */
+	public MappedFile(File directory, String prefix) throws IOException {
+		this.file = File.createTempFile(prefix, ".tmp", (directory == null) ? getSpillDirectory() : directory);
+		this.randomAccessFile = new RandomAccessFile(file, "rw");
+	}
+
+	/**
+	 * Maps the first bytes of the file into memory, extending the file if it
+	 * is shorter. Values written through an earlier mapping are visible
+	 * through the new one.
+	 *
+	 * @param bytes a long containing the number of bytes to map, at most
+	 * {@link java.lang.Integer#MAX_VALUE}
+	 *
+	 * @return a {@link java.nio.ByteBuffer} in native byte order
+	 *
+	 * @throws IOException if the file cannot be mapped
+	 */
+	public ByteBuffer map(long bytes) throws IOException {
+		if(bytes > Integer.MAX_VALUE) {
+			throw new IOException(String.format("Cannot map %d bytes of %s", bytes, file));
+		}
+		buffer = randomAccessFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, bytes);
+		buffer.order(ByteOrder.nativeOrder());
+		return buffer;
+	}
+
+	/**
+	 * Gets the file backing the mapping
+	 *
+	 * @return a {@link java.io.File} containing the temporary file
+	 */
+	public File getFile() {
+		return file;
+	}
+
+	/**
+	 * Closes and deletes the file. The mapping itself is released when it is
+	 * garbage collected, if the file cannot be deleted before then it is left
+	 * to be swept from the spill directory on exit.
+	 */
+	public void close() {
+		buffer = null;
+		IOUtils.closeQuietly(randomAccessFile);
+		file.delete();
+	}
+
+	/**
+	 * Gets the directory spill files are created in by default, creating it
+	 * and registering the shutdown hook which deletes it the first time
+	 *
+	 * @return a {@link java.io.File} containing the directory
+	 *
+	 * @throws IOException if the directory cannot be created
+	 */
+	public static synchronized File getSpillDirectory() throws IOException {
+		if(spillDirectory == null) {
+			final File directory = File.createTempFile("nahelper-spill", "");
+			if(!directory.delete() || !directory.mkdir()) {
+				throw new IOException(String.format("Unable to create spill directory %s", directory));
+			}
+			Runtime.getRuntime().addShutdownHook(new Thread(new Runnable() {
+				public void run() {
+					FileUtils.deleteQuietly(directory);
+				}
+			}, "NAHelper spill cleanup"));
+			spillDirectory = directory;
+		}
+		return spillDirectory;
+	}
+}
@@ -2,16 +2,12 @@ package com.about80minutes.util;
 
 import java.text.DecimalFormat;
 import java.text.NumberFormat;
-import java.util.ArrayList;
 import java.util.Collection;
-import java.util.Collections;
 import java.util.List;
 import java.util.Locale;
-import java.util.Map;
-import java.util.Map.Entry;
+import java.util.regex.Pattern;
 
 import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
-import org.apache.hadoop.thirdparty.guava.common.collect.Maps;
 
 /**
  * Utility class, this contains a number of static methods for computing
@@ -19,6 +15,35 @@ import org.apache.hadoop.thirdparty.guava.common.collect.Maps;
  */
 public class NumericFunctions {
 	
+	public static final String APPROXIMATE_PREFIX = "~";
+	public static final String NO_MODE = "No mode";
+	
+	private static final Pattern GROUPING_SEPARATOR = Pattern.compile(",");
+	//plain decimals only, Float.parseFloat would also take NaN, Infinity and
+	//Java literals such as 2f or 0x1p3
+	private static final Pattern DECIMAL = Pattern.compile("[+-]?(\\d+\\.?\\d*|\\.\\d+)([eE][+-]?\\d+)?");
+	
+	//formats are expensive to create and not thread safe, so each thread
+	//keeps its own
+	private static final ThreadLocal<DecimalFormat> DECIMAL_FORMAT = new ThreadLocal<DecimalFormat>() {
+		@Override
+		protected DecimalFormat initialValue() {
+			DecimalFormat nf = (DecimalFormat) DecimalFormat.getInstance(Locale.UK);
+			nf.setDecimalSeparatorAlwaysShown(true);
+			nf.setGroupingSize(3);
+			nf.setMaximumFractionDigits(2);
+			nf.setMinimumFractionDigits(2);
+			nf.setMinimumIntegerDigits(1);
+			return nf;
+		}
+	};
+	private static final ThreadLocal<NumberFormat> INTEGER_FORMAT = new ThreadLocal<NumberFormat>() {
+		@Override
+		protected NumberFormat initialValue() {
+			return NumberFormat.getInstance(Locale.UK);
+		}
+	};
+	
 	/**
 	 * Method for formatting a number so that it is comma separated and includes
 	 * trailing decimal values e.g. 123,456.78
@@ -28,14 +53,19 @@ public class NumericFunctions {
 	 * @return the formatted {@link java.lang.String}
 	 */
 	public static String formatNumber(Float value) {
-		DecimalFormat nf = (DecimalFormat) DecimalFormat.getInstance(Locale.UK);
-		nf.setDecimalSeparatorAlwaysShown(true);
-		nf.setGroupingSize(3);
-		nf.setMaximumFractionDigits(2);
-		nf.setMinimumFractionDigits(2);
-		nf.setMinimumIntegerDigits(1);
-		
-		return nf.format(value);
+		return DECIMAL_FORMAT.get().format(value);
+	}
+	
+	/**
+	 * Method for formatting an estimated number, this is formatted as
+	 * {@link #formatNumber(Float)} with a leading marker e.g. ~123,456.78
+	 * 
+	 * @param value a {@link java.lang.Float} containing the value to format
+	 * 
+	 * @return the formatted {@link java.lang.String}
+	 */
+	public static String formatApproximateNumber(Float value) {
+		return APPROXIMATE_PREFIX + NumericFunctions.formatNumber(value);
 	}
 	
 	/**
@@ -47,8 +77,81 @@ public class NumericFunctions {
 	 * @return the formatted {@link java.lang.String}
 	 */
 	public static String formatNumber(Integer value) {
-		NumberFormat nf = NumberFormat.getInstance(Locale.UK);
-		return nf.format(value);
+		return INTEGER_FORMAT.get().format(value);
+	}
+	
+	/**
+	 * Parses a number which may contain grouping separators e.g. 123,456.78,
+	 * only plain decimals with an optional exponent are accepted
+	 * 
+	 * @param value a {@link java.lang.String} containing the number
+	 * 
+	 * @return a float containing the value, which is infinite if the number
+	 * is too large for a float
+	 * 
+	 * @throws NumberFormatException if the value is not a decimal number
+	 */
+	public static float parseNumber(String value) {
+		String digits = GROUPING_SEPARATOR.matcher(value).replaceAll("");
+		if(!DECIMAL.matcher(digits).matches()) {
+			throw new NumberFormatException(String.format("Not a decimal number: %s", value));
+		}
+		return Float.parseFloat(digits);
+	}
+	
+	/**
+	 * Format a list of numbers so that the following format is produced
+	 * 
+	 * [1.00, 2.00, 3.00, ..., n]
+	 * 
+	 * @param values a float[] containing the numbers to be formatted
+	 * 
+	 * @return the formatted {@link java.lang.String}
+	 */
+	public static String formatNumberList(float[] values) {
+		StringBuilder builder = new StringBuilder();
+		builder.append("[");
+		for(int i = 0;i < values.length;i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			builder.append(NumericFunctions.formatNumber(values[i]));
+		}
+		builder.append("]");
+		return builder.toString();
+	}
+	
+	/**
+	 * Format the most frequent values with their counts so that the following
+	 * format is produced, counts are prefixed with ~ when estimated
+	 * 
+	 * [1.00 (5), 2.00 (3), ..., n (c)]
+	 * 
+	 * @param top the {@link com.about80minutes.util.TopValues} to be formatted
+	 * 
+	 * @return the formatted {@link java.lang.String}, or {@link #NO_MODE} if
+	 * no value repeats enough
+	 */
+	public static String formatTopValues(TopValues top) {
+		if(top.isEmpty()) {
+			return NO_MODE;
+		}
+		StringBuilder builder = new StringBuilder();
+		builder.append("[");
+		for(int i = 0;i < top.size();i++) {
+			if(i > 0) {
+				builder.append(", ");
+			}
+			builder.append(NumericFunctions.formatNumber(top.getValue(i)));
+			builder.append(" (");
+			if(top.isApproximate()) {
+				builder.append(APPROXIMATE_PREFIX);
+			}
+			builder.append(NumericFunctions.formatNumber(top.getCount(i)));
+			builder.append(")");
+		}
+		builder.append("]");
+		return builder.toString();
 	}
 	
 	/**
@@ -84,11 +187,7 @@ public class NumericFunctions {
 	 * @return a {@link java.lang.Float} containing the sum value
 	 */
 	public static Float getSum(Collection<Float> vals) {
-		Float sum = Float.valueOf(0f);
-		for (Float val : vals) {
-			sum += val;
-		}
-		return sum;
+		return getStats(vals).getSum();
 	}
 
 	/**
@@ -100,12 +199,7 @@ public class NumericFunctions {
 	 * @return a {@link java.lang.Float} containing the mean value
 	 */
 	public static Float getMean(Collection<Float> vals) {
-		Float total = Float.valueOf(0f);
-		Integer count = vals.size();
-		for (Float f : vals) {
-			total += f;
-		}
-		return total/count;
+		return getStats(vals).getMean();
 	}
 
 	/**
@@ -117,11 +211,7 @@ public class NumericFunctions {
 	 * @return a {@link java.lang.Float} containing the median value
 	 */
 	public static Float getMedian(Collection<Float> vals){
-		List<Float> valsList = new ArrayList<Float>();
-		valsList.addAll(vals);
-		Collections.sort(valsList);
-		int medianPos = valsList.size() / 2;
-		return valsList.get(medianPos);
+		return getMedian(FloatColumn.valueOf(vals));
 	}
 
 	/**
@@ -133,21 +223,7 @@ public class NumericFunctions {
 	 * @return a {@link java.lang.Float} containing the standard deviation value
 	 */
 	public static Float getStdDeviation(Collection<Float> vals) {
-		Float stdDev = Float.valueOf(0f);
-		Float avg = getMean(vals);
-		int count = vals.size();
-		
-		if (count > 0) {
-			double varianceSum = 0;
-			double variance = 0;
-			for(Float f : vals) {
-				variance = f - avg;
-				varianceSum += variance * variance;
-			}
-			double tmpStdDev = Math.sqrt(varianceSum/count);
-			stdDev = Double.valueOf(tmpStdDev).floatValue();
-		}
-		return stdDev;
+		return (float) getStats(vals).getStdDeviation();
 	}
 	
 	/**
@@ -160,33 +236,7 @@ public class NumericFunctions {
 	 * containing the modes for the data set
 	 */
 	public static Collection<Float> getModes(Collection<Float> vals) {
-		List<Float> mode = Lists.newArrayList();
-		Map<Float, Integer> valueMap = Maps.newHashMap();
-		//firstly count occurrences of values
-		for(Float val : vals) {
-			Integer count = valueMap.get(val);
-			if(count == null) {
-				count = Integer.valueOf(1);
-			} else {
-				count++;
-			}
-			valueMap.put(val, count);
-		}
-		
-		Integer currentHighest = 0;
-		//secondly work out the highest counts
-		for(Entry<Float, Integer> entry : valueMap.entrySet()) {
-			if(entry.getValue().compareTo(currentHighest) == 0) {
-				mode.add(entry.getKey());
-			} else if(entry.getValue().compareTo(currentHighest) == 1) {
-				mode.clear();
-				mode.add(entry.getKey());
-				currentHighest = entry.getValue(); 
-			} else {
-				//do nothing
-			}
-		}
-		return mode;
+		return getModes(FloatColumn.valueOf(vals));
 	}
 	
 	/**
@@ -198,6 +248,176 @@ public class NumericFunctions {
 	 * @return a {@link java.lang.Float} containing the range value
 	 */
 	public static Float getRange(Collection<Float> vals) {
-		return Collections.max(vals) - Collections.min(vals);
+		return getStats(vals).getRange();
+	}
+
+	/**
+	 * Calculate the count, min, max, sum, mean and variance of a collection of
+	 * Floats in a single pass
+	 *
+	 * @param vals a {@link java.util.Collection} of {@link java.lang.Float} to
+	 * compute stats against
+	 * 
+	 * @return a {@link com.about80minutes.util.StatsAccumulator} holding the
+	 * computed stats
+	 */
+	public static StatsAccumulator getStats(Collection<Float> vals) {
+		StatsAccumulator stats = new StatsAccumulator();
+		for(Float val : vals) {
+			stats.add(val.floatValue());
+		}
+		return stats;
+	}
+
+	/**
+	 * Calculate the Sum of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the sum value
+	 */
+	public static Float getSum(FloatColumn vals) {
+		return getStats(vals).getSum();
+	}
+
+	/**
+	 * Calculate the mean (average) of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the mean value
+	 */
+	public static Float getMean(FloatColumn vals) {
+		return getStats(vals).getMean();
+	}
+
+	/**
+	 * Calculate the median of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the median value
+	 */
+	public static Float getMedian(FloatColumn vals) {
+		return getPercentile(vals, 50d);
+	}
+
+	/**
+	 * Calculate a percentile of a column of floats. This selects the single
+	 * rank required rather than sorting, where several ranks are needed use
+	 * {@link com.about80minutes.util.OrderStatistics} instead.
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * @param percentile a double between 0 and 100
+	 * 
+	 * @return a {@link java.lang.Float} containing the percentile value
+	 */
+	public static Float getPercentile(FloatColumn vals, double percentile) {
+		float[] tmpVals = vals.toArray();
+		return OrderStatistics.select(tmpVals, tmpVals.length, OrderStatistics.rankOf(percentile / 100d, tmpVals.length));
+	}
+
+	/**
+	 * Calculate the Standard Deviation of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the standard deviation value
+	 */
+	public static Float getStdDeviation(FloatColumn vals) {
+		return (float) getStats(vals).getStdDeviation();
+	}
+
+	/**
+	 * Calculate the mode for a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.util.Collection} of {@link java.lang.Float}
+	 * containing the modes for the data set
+	 */
+	public static Collection<Float> getModes(FloatColumn vals) {
+		return getModes(vals, new FloatIntCounter(vals.size()));
+	}
+
+	/**
+	 * Calculate the mode for a column of floats using the given counter. The
+	 * counter is cleared before use so that it can be reused across calls
+	 * without allocating per value.
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * @param counter a {@link com.about80minutes.util.FloatIntCounter} to
+	 * count occurrences with
+	 * 
+	 * @return a {@link java.util.Collection} of {@link java.lang.Float}
+	 * containing the modes for the data set in ascending order
+	 */
+	public static Collection<Float> getModes(FloatColumn vals, FloatIntCounter counter) {
+		List<Float> mode = Lists.newArrayList();
+		counter.clear();
+		for(int i = 0;i < vals.size();i++) {
+			counter.add(vals.get(i));
+		}
+		counter.getModes(mode);
+		return mode;
+	}
+
+	/**
+	 * Calculate the minimum of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the minimum value
+	 */
+	public static Float getMin(FloatColumn vals) {
+		return getStats(vals).getMin();
+	}
+
+	/**
+	 * Calculate the maximum of a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the maximum value
+	 */
+	public static Float getMax(FloatColumn vals) {
+		return getStats(vals).getMax();
+	}
+
+	/**
+	 * Calculate the range for a column of floats
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link java.lang.Float} containing the range value
+	 */
+	public static Float getRange(FloatColumn vals) {
+		return getStats(vals).getRange();
+	}
+
+	/**
+	 * Calculate the count, min, max, sum, mean and variance of a column of
+	 * floats in a single pass
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 * 
+	 * @return a {@link com.about80minutes.util.StatsAccumulator} holding the
+	 * computed stats
+	 */
+	public static StatsAccumulator getStats(FloatColumn vals) {
+		StatsAccumulator stats = new StatsAccumulator();
+		stats.addAll(vals);
+		return stats;
 	}
 }
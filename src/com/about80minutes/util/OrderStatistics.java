@@ -0,0 +1,215 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * Rank based statistics over a set of values. The values are copied into a
+ * primitive array and sorted once, every median, quartile and percentile is
+ * then read from the sorted view. Where only a single rank is needed the
+ * static {@link #select(float[], int, int)} method avoids the full sort.
+ *
+ * Ranks are taken as the value at position floor(q * n) of the sorted data,
+ * so the median of an even sized set is the upper of the two middle values.
+ */
+public class OrderStatistics implements QuantileSummary {
+
+	private float[] sorted = null;
+
+	/**
+	 * Constructor, builds the sorted view of the given column
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to compute
+	 * stats against
+	 */
+	public OrderStatistics(FloatColumn vals) {
+		this.sorted = vals.toArray();
+		Arrays.sort(this.sorted);
+	}
+
+	/**
+	 * Gets the number of values in the sorted view
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int getCount() {
+		return sorted.length;
+	}
+
+	/**
+	 * Gets the value at the given rank of the sorted view
+	 *
+	 * @param rank an int containing the zero based rank
+	 *
+	 * @return a float containing the value
+	 */
+	public float getValueAtRank(int rank) {
+		return sorted[rank];
+	}
+
+	/**
+	 * Gets the value at the given quantile
+	 *
+	 * @param quantile a double between 0 and 1
+	 *
+	 * @return a float containing the quantile value, NaN if there are no values
+	 */
+	public float getQuantile(double quantile) {
+		if(sorted.length == 0) {
+			return Float.NaN;
+		}
+		return sorted[rankOf(quantile, sorted.length)];
+	}
+
+	/**
+	 * Gets the value at the given percentile
+	 *
+	 * @param percentile a double between 0 and 100
+	 *
+	 * @return a float containing the percentile value
+	 */
+	public float getPercentile(double percentile) {
+		return this.getQuantile(percentile / 100d);
+	}
+
+	/**
+	 * Gets the median value
+	 *
+	 * @return a float containing the median value
+	 */
+	public float getMedian() {
+		return this.getQuantile(0.5d);
+	}
+
+	/**
+	 * Gets the lower quartile (25th percentile)
+	 *
+	 * @return a float containing the lower quartile value
+	 */
+	public float getLowerQuartile() {
+		return this.getQuantile(0.25d);
+	}
+
+	/**
+	 * Gets the upper quartile (75th percentile)
+	 *
+	 * @return a float containing the upper quartile value
+	 */
+	public float getUpperQuartile() {
+		return this.getQuantile(0.75d);
+	}
+
+	/**
+	 * Gets the interquartile range
+	 *
+	 * @return a float containing the difference between the upper and lower
+	 * quartiles
+	 */
+	public float getInterquartileRange() {
+		return this.getUpperQuartile() - this.getLowerQuartile();
+	}
+
+	/**
+	 * Order statistics are computed over every value so are always exact
+	 *
+	 * @return false
+	 */
+	public boolean isApproximate() {
+		return false;
+	}
+
+	/**
+	 * Converts a quantile into a rank in a sorted set of the given size
+	 *
+	 * @param quantile a double between 0 and 1
+	 * @param count an int containing the number of values
+	 *
+	 * @return an int containing the zero based rank
+	 */
+	public static int rankOf(double quantile, int count) {
+		int rank = (int) (quantile * count);
+		return Math.max(0, Math.min(count - 1, rank));
+	}
+
+	/**
+	 * Finds the value that would be at the given rank if the first count
+	 * values of the array were sorted. The array is partially reordered by
+	 * this call. NaN values are ordered last, as they are by
+	 * {@link java.util.Arrays#sort(float[])}.
+	 *
+	 * @param values a float[] containing the values, this is modified
+	 * @param count an int containing the number of values to consider
+	 * @param rank an int containing the zero based rank to find
+	 *
+	 * @return a float containing the value at the given rank
+	 */
+	public static float select(float[] values, int count, int rank) {
+		//move NaNs to the end so the partitioning can use plain comparisons
+		int end = count;
+		for(int i = count - 1;i >= 0;i--) {
+			if(Float.isNaN(values[i])) {
+				values[i] = values[--end];
+				values[end] = Float.NaN;
+			}
+		}
+		if(rank >= end) {
+			return Float.NaN;
+		}
+
+		int lo = 0;
+		int hi = end - 1;
+		//fall back to a sort if the partitioning degrades (introselect)
+		int depth = 2 * (32 - Integer.numberOfLeadingZeros(end));
+		while(hi > lo) {
+			if(depth-- == 0) {
+				Arrays.sort(values, lo, hi + 1);
+				break;
+			}
+			int mid = (lo + hi) >>> 1;
+			//median of three pivot, leaves lo <= mid <= hi
+			if(values[mid] < values[lo]) {
+				swap(values, mid, lo);
+			}
+			if(values[hi] < values[lo]) {
+				swap(values, hi, lo);
+			}
+			if(values[hi] < values[mid]) {
+				swap(values, hi, mid);
+			}
+			float pivot = values[mid];
+			int i = lo;
+			int j = hi;
+			while(i <= j) {
+				while(values[i] < pivot) {
+					i++;
+				}
+				while(values[j] > pivot) {
+					j--;
+				}
+				if(i <= j) {
+					swap(values, i++, j--);
+				}
+			}
+			if(rank <= j) {
+				hi = j;
+			} else if(rank >= i) {
+				lo = i;
+			} else {
+				break;
+			}
+		}
+		return values[rank];
+	}
+
+	/**
+	 * Swaps two values in an array
+	 *
+	 * @param values a float[] containing the values
+	 * @param a an int containing the first position
+	 * @param b an int containing the second position
+	 */
+	private static void swap(float[] values, int a, int b) {
+		float tmp = values[a];
+		values[a] = values[b];
+		values[b] = tmp;
+	}
+}
@@ -0,0 +1,391 @@
+package com.about80minutes.util;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.Future;
+import java.util.concurrent.RecursiveTask;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+
+/**
+ * Utility class, this contains static methods for computing statistics in
+ * parallel on a shared fork/join pool. Columns longer than the serial
+ * threshold are split into chunks whose partial results are merged, columns
+ * at or below the threshold are processed on the calling thread so that small
+ * selections do not pay for task overhead.
+ */
+public class ParallelStats {
+
+	public static final int DEFAULT_SERIAL_THRESHOLD = 65536;
+
+	private static final ForkJoinPool POOL = new ForkJoinPool();
+
+	/**
+	 * Computes the moment stats of a column, chunks of the column are
+	 * accumulated in parallel and merged
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param threshold an int containing the largest chunk processed serially
+	 *
+	 * @return a {@link com.about80minutes.util.StatsAccumulator} holding the
+	 * stats of the values
+	 */
+	public static StatsAccumulator getStats(FloatColumn vals, int threshold) {
+		return invoke(new StatsTask(vals, 0, vals.size(), threshold));
+	}
+
+	/**
+	 * Counts the occurrences of each value of a column, chunks of the column
+	 * are counted in parallel and merged
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param threshold an int containing the largest chunk processed serially
+	 *
+	 * @return a {@link com.about80minutes.util.FloatIntCounter} holding the
+	 * counts of the values
+	 */
+	public static FloatIntCounter getCounts(FloatColumn vals, int threshold) {
+		return invoke(new CountTask(vals, 0, vals.size(), threshold));
+	}
+
+	/**
+	 * Builds a quantile sketch of a column, chunks of the column are sketched
+	 * in parallel and merged
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param k an int containing the sketch size parameter
+	 * @param threshold an int containing the largest chunk processed serially
+	 *
+	 * @return a {@link com.about80minutes.util.QuantileSketch} of the values
+	 */
+	public static QuantileSketch getSketch(FloatColumn vals, int k, int threshold) {
+		return invoke(new SketchTask(vals, 0, vals.size(), k, threshold));
+	}
+
+	/**
+	 * Accumulates the pairwise co-moments of aligned columns, chunks of rows
+	 * are accumulated in parallel and merged. Only values in the same row are
+	 * paired, each row is gathered from the columns as it is reached so no
+	 * copy of the rows is made.
+	 *
+	 * @param columns a {@link java.util.List} of {@link com.about80minutes.util.AlignedColumn}s
+	 * aligned against the same rows, each column is a variable
+	 * @param threshold an int containing the largest number of values in a
+	 * chunk processed serially
+	 *
+	 * @return a {@link com.about80minutes.util.CoMoments} holding the
+	 * co-moments of every pair of columns
+	 */
+	public static CoMoments getCoMoments(List<AlignedColumn> columns, int threshold) {
+		int rows = columns.isEmpty() ? 0 : columns.get(0).getRows();
+		//every row costs a pass over the columns, so chunks hold fewer rows
+		int rowThreshold = Math.max(threshold / Math.max(columns.size(), 1), 1);
+		CoMomentsTask task = new CoMomentsTask(columns, 0, rows, rowThreshold);
+		if(rows <= rowThreshold) {
+			return task.computeRange();
+		}
+		if(ForkJoinTask.inForkJoinPool()) {
+			return task.invoke();
+		}
+		return POOL.invoke(task);
+	}
+
+	/**
+	 * Runs independent tasks concurrently on the pool and waits for them all
+	 * to complete
+	 *
+	 * @param tasks a {@link java.util.Collection} of {@link java.util.concurrent.Callable}s
+	 * to run
+	 *
+	 * @return a {@link java.util.List} of the results in the order of the tasks
+	 *
+	 * @throws ExecutionException if any task fails
+	 * @throws InterruptedException if interrupted while waiting
+	 */
+	public static <T> List<T> invokeAll(Collection<? extends Callable<T>> tasks) throws ExecutionException, InterruptedException {
+		List<T> results = Lists.newArrayListWithCapacity(tasks.size());
+		for(Future<T> future : POOL.invokeAll(tasks)) {
+			results.add(future.get());
+		}
+		return results;
+	}
+
+	/**
+	 * Runs a single task on the pool without waiting for it, used where the
+	 * caller produces work as it goes and bounds how much is outstanding
+	 *
+	 * @param task a {@link java.util.concurrent.Callable} to run
+	 *
+	 * @return a {@link java.util.concurrent.Future} of the result
+	 */
+	public static <T> Future<T> submit(Callable<T> task) {
+		return POOL.submit(task);
+	}
+
+	/**
+	 * Runs a chunk task, small columns are run on the calling thread
+	 *
+	 * @param task the {@link ChunkTask} to run
+	 *
+	 * @return the result of the task
+	 */
+	private static <T> T invoke(ChunkTask<T> task) {
+		if(task.isSerial()) {
+			return task.computeRange();
+		}
+		if(ForkJoinTask.inForkJoinPool()) {
+			return task.invoke(); //already on a pool thread, e.g. within invokeAll
+		}
+		return POOL.invoke(task);
+	}
+
+	/**
+	 * Task computing a partial result over a range of a column, ranges longer
+	 * than the threshold are split in half and the halves merged
+	 */
+	private abstract static class ChunkTask<T> extends RecursiveTask<T> {
+		private static final long serialVersionUID = 1L;
+
+		protected final FloatColumn vals;
+		protected final int from;
+		protected final int to;
+		protected final int threshold;
+
+		/**
+		 * Constructor for the task
+		 *
+		 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+		 * @param from an int containing the first position of the range
+		 * @param to an int containing the position after the range
+		 * @param threshold an int containing the largest range computed
+		 * without splitting
+		 */
+		protected ChunkTask(FloatColumn vals, int from, int to, int threshold) {
+			this.vals = vals;
+			this.from = from;
+			this.to = to;
+			this.threshold = Math.max(threshold, 1);
+		}
+
+		/**
+		 * Whether the range is small enough to be computed without splitting
+		 *
+		 * @return true if the range is at or below the threshold
+		 */
+		protected boolean isSerial() {
+			return to - from <= threshold;
+		}
+
+		@Override
+		protected T compute() {
+			if(this.isSerial()) {
+				return this.computeRange();
+			}
+			int mid = (from + to) >>> 1;
+			ChunkTask<T> left = this.split(from, mid);
+			ChunkTask<T> right = this.split(mid, to);
+			left.fork();
+			T rightResult = right.compute();
+			return this.merge(left.join(), rightResult);
+		}
+
+		/**
+		 * Computes the result over the whole range
+		 *
+		 * @return the result for the range
+		 */
+		protected abstract T computeRange();
+
+		/**
+		 * Creates a task of the same kind over part of the range
+		 *
+		 * @param subFrom an int containing the first position of the part
+		 * @param subTo an int containing the position after the part
+		 *
+		 * @return the {@link ChunkTask} for the part
+		 */
+		protected abstract ChunkTask<T> split(int subFrom, int subTo);
+
+		/**
+		 * Merges the results of two adjacent parts
+		 *
+		 * @param left the result of the earlier part
+		 * @param right the result of the later part
+		 *
+		 * @return the merged result
+		 */
+		protected abstract T merge(T left, T right);
+	}
+
+	/**
+	 * Accumulates the moment stats of a range
+	 */
+	private static class StatsTask extends ChunkTask<StatsAccumulator> {
+		private static final long serialVersionUID = 1L;
+
+		StatsTask(FloatColumn vals, int from, int to, int threshold) {
+			super(vals, from, to, threshold);
+		}
+
+		@Override
+		protected StatsAccumulator computeRange() {
+			StatsAccumulator stats = new StatsAccumulator();
+			for(int i = from;i < to;i++) {
+				stats.add(vals.get(i));
+			}
+			return stats;
+		}
+
+		@Override
+		protected ChunkTask<StatsAccumulator> split(int subFrom, int subTo) {
+			return new StatsTask(vals, subFrom, subTo, threshold);
+		}
+
+		@Override
+		protected StatsAccumulator merge(StatsAccumulator left, StatsAccumulator right) {
+			left.merge(right);
+			return left;
+		}
+	}
+
+	/**
+	 * Counts the values of a range
+	 */
+	private static class CountTask extends ChunkTask<FloatIntCounter> {
+		private static final long serialVersionUID = 1L;
+
+		CountTask(FloatColumn vals, int from, int to, int threshold) {
+			super(vals, from, to, threshold);
+		}
+
+		@Override
+		protected FloatIntCounter computeRange() {
+			FloatIntCounter counter = new FloatIntCounter();
+			for(int i = from;i < to;i++) {
+				counter.add(vals.get(i));
+			}
+			return counter;
+		}
+
+		@Override
+		protected ChunkTask<FloatIntCounter> split(int subFrom, int subTo) {
+			return new CountTask(vals, subFrom, subTo, threshold);
+		}
+
+		@Override
+		protected FloatIntCounter merge(FloatIntCounter left, FloatIntCounter right) {
+			//fold the smaller table into the larger
+			if(left.size() < right.size()) {
+				right.addAll(left);
+				return right;
+			}
+			left.addAll(right);
+			return left;
+		}
+	}
+
+	/**
+	 * Sketches the values of a range
+	 */
+	private static class SketchTask extends ChunkTask<QuantileSketch> {
+		private static final long serialVersionUID = 1L;
+
+		private final int k;
+
+		SketchTask(FloatColumn vals, int from, int to, int k, int threshold) {
+			super(vals, from, to, threshold);
+			this.k = k;
+		}
+
+		@Override
+		protected QuantileSketch computeRange() {
+			QuantileSketch sketch = new QuantileSketch(k);
+			for(int i = from;i < to;i++) {
+				sketch.add(vals.get(i));
+			}
+			return sketch;
+		}
+
+		@Override
+		protected ChunkTask<QuantileSketch> split(int subFrom, int subTo) {
+			return new SketchTask(vals, subFrom, subTo, k, threshold);
+		}
+
+		@Override
+		protected QuantileSketch merge(QuantileSketch left, QuantileSketch right) {
+			left.merge(right);
+			return left;
+		}
+	}
+
+	/**
+	 * Accumulates the co-moments of a range of rows of aligned columns,
+	 * ranges longer than the threshold are split in half and the halves
+	 * merged
+	 */
+	private static class CoMomentsTask extends RecursiveTask<CoMoments> {
+		private static final long serialVersionUID = 1L;
+
+		private final List<AlignedColumn> columns;
+		private final int from;
+		private final int to;
+		private final int threshold;
+
+		CoMomentsTask(List<AlignedColumn> columns, int from, int to, int threshold) {
+			this.columns = columns;
+			this.from = from;
+			this.to = to;
+			this.threshold = threshold;
+		}
+
+		@Override
+		protected CoMoments compute() {
+			if(to - from <= threshold) {
+				return this.computeRange();
+			}
+			int mid = (from + to) >>> 1;
+			CoMomentsTask left = new CoMomentsTask(columns, from, mid, threshold);
+			CoMomentsTask right = new CoMomentsTask(columns, mid, to, threshold);
+			left.fork();
+			CoMoments rightResult = right.compute();
+			CoMoments leftResult = left.join();
+			leftResult.merge(rightResult);
+			return leftResult;
+		}
+
+		/**
+		 * Accumulates the rows of the range, the values of each row are
+		 * gathered from the columns holding it
+		 *
+		 * @return the {@link com.about80minutes.util.CoMoments} of the range
+		 */
+		protected CoMoments computeRange() {
+			int dimensions = columns.size();
+			CoMoments moments = new CoMoments(dimensions);
+			AlignedColumn[] aligned = columns.toArray(new AlignedColumn[dimensions]);
+			int[] positions = new int[dimensions];
+			for(int c = 0;c < dimensions;c++) {
+				positions[c] = aligned[c].rank(from);
+			}
+			int[] variables = new int[dimensions];
+			float[] values = new float[dimensions];
+			for(int row = from;row < to;row++) {
+				int size = 0;
+				for(int c = 0;c < dimensions;c++) {
+					if(aligned[c].isPresent(row)) {
+						variables[size] = c;
+						values[size++] = aligned[c].getValue(positions[c]++);
+					}
+				}
+				if(size > 0) {
+					moments.add(variables, values, size);
+				}
+			}
+			return moments;
+		}
+	}
+}
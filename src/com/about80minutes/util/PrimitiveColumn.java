@@ -0,0 +1,237 @@
+package com.about80minutes.util;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Base of the growable columns of primitive values. This holds the size of
+ * the column and the file it has been spilled to, and does the growing,
+ * spilling, remapping and releasing shared by every column. Subclasses hold
+ * the typed array or buffer of values and read and write them.
+ *
+ * A column may be spilled to a memory mapped temporary file, after which its
+ * values are held outside of the Java heap. A spilled column behaves as
+ * before but must be released once finished with so that the file is deleted.
+ */
+public abstract class PrimitiveColumn {
+
+	protected static final int DEFAULT_CAPACITY = 16;
+
+	private final int valueBytes;
+	private MappedFile mappedFile = null;
+	protected int size = 0;
+
+	/**
+	 * Constructor for the column
+	 *
+	 * @param valueBytes an int containing the number of bytes each value takes
+	 */
+	protected PrimitiveColumn(int valueBytes) {
+		this.valueBytes = valueBytes;
+	}
+
+	/**
+	 * Discards every value from the given position onwards
+	 *
+	 * @param newSize an int containing the number of values to keep
+	 */
+	public void truncate(int newSize) {
+		if(newSize < size) {
+			size = Math.max(newSize, 0);
+		}
+	}
+
+	/**
+	 * Gets the number of values held in the column
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int size() {
+		return size;
+	}
+
+	/**
+	 * Whether the column holds any values
+	 *
+	 * @return true if the column is empty, false otherwise
+	 */
+	public boolean isEmpty() {
+		return size == 0;
+	}
+
+	/**
+	 * Removes all values from the column, the backing array is retained for
+	 * reuse
+	 */
+	public void clear() {
+		size = 0;
+	}
+
+	/**
+	 * Releases any spare capacity held by the column, a spilled column is left
+	 * as it is
+	 */
+	public void trimToSize() {
+		if(mappedFile == null && size < this.getHeapCapacity()) {
+			this.resize(Math.max(size, 1));
+		}
+	}
+
+	/**
+	 * Moves the values of the column out of the Java heap into a memory mapped
+	 * temporary file, this does nothing if the column is already spilled
+	 *
+	 * @param directory a {@link java.io.File} containing the directory to
+	 * create the file in, or null to use the default temporary directory
+	 *
+	 * @throws IOException if the file cannot be created or mapped
+	 */
+	public void spill(File directory) throws IOException {
+		if(mappedFile != null) {
+			return;
+		}
+		MappedFile file = new MappedFile(directory, "column");
+		try {
+			this.moveToMapped(file.map((long) Math.max(this.getHeapCapacity(), 1) * valueBytes));
+			mappedFile = file;
+		} finally {
+			if(mappedFile == null) {
+				file.close();
+			}
+		}
+	}
+
+	/**
+	 * Whether the values of the column are held in a memory mapped file
+	 *
+	 * @return true if the column has been spilled
+	 */
+	public boolean isSpilled() {
+		return mappedFile != null;
+	}
+
+	/**
+	 * Gets the number of bytes of Java heap used for the column's values
+	 *
+	 * @return a long containing the size of the backing array, 0 if spilled
+	 */
+	public long getHeapBytes() {
+		return (mappedFile == null) ? (long) this.getHeapCapacity() * valueBytes : 0;
+	}
+
+	/**
+	 * Removes all values from the column and deletes any file it was spilled
+	 * to, the column returns to holding its values on the heap
+	 */
+	public void release() {
+		if(mappedFile != null) {
+			mappedFile.close();
+			mappedFile = null;
+			this.moveToHeap(DEFAULT_CAPACITY);
+		}
+		size = 0;
+	}
+
+	/**
+	 * Gets the number of values the column can hold without growing
+	 *
+	 * @return an int containing the capacity
+	 */
+	protected int capacity() {
+		return (mappedFile == null) ? this.getHeapCapacity() : this.getMappedCapacity();
+	}
+
+	/**
+	 * Grows the column to hold at least the given number of values, a spilled
+	 * column is remapped over a longer file
+	 *
+	 * @param minCapacity an int containing the number of values required
+	 */
+	protected void grow(int minCapacity) {
+		int current = this.capacity();
+		int newCapacity = Math.max(minCapacity, current + (current >> 1) + 1);
+		if(mappedFile == null) {
+			this.resize(newCapacity);
+			return;
+		}
+		newCapacity = Math.min(newCapacity, Integer.MAX_VALUE / valueBytes);
+		if(newCapacity < minCapacity) {
+			throw new IllegalStateException(String.format("Column of %d values is too large to map", minCapacity));
+		}
+		try {
+			this.remap(mappedFile.map((long) newCapacity * valueBytes));
+		} catch (IOException e) {
+			throw new IllegalStateException("Unable to grow spilled column", e);
+		}
+	}
+
+	/**
+	 * Checks a position is within the column
+	 *
+	 * @param index an int containing the position of a value
+	 */
+	protected void checkIndex(int index) {
+		if(index >= size) {
+			throw new IndexOutOfBoundsException(String.format("Index: %d, Size: %d", index, size));
+		}
+	}
+
+	/**
+	 * Checks a run of values is within the column
+	 *
+	 * @param from an int containing the position of the first value
+	 * @param length an int containing the number of values
+	 */
+	protected void checkRange(int from, int length) {
+		if(from < 0 || length < 0 || from + length > size) {
+			throw new IndexOutOfBoundsException(String.format("From: %d, Length: %d, Size: %d", from, length, size));
+		}
+	}
+
+	/**
+	 * Gets the length of the backing array of a column held on the heap
+	 *
+	 * @return an int containing the number of values the array can hold
+	 */
+	protected abstract int getHeapCapacity();
+
+	/**
+	 * Gets the capacity of the buffer of a spilled column
+	 *
+	 * @return an int containing the number of values the buffer can hold
+	 */
+	protected abstract int getMappedCapacity();
+
+	/**
+	 * Copies the backing array of a column held on the heap into a new
+	 * array of the given length
+	 *
+	 * @param newCapacity an int containing the length of the new array
+	 */
+	protected abstract void resize(int newCapacity);
+
+	/**
+	 * Copies the values from the backing array into a newly mapped file and
+	 * drops the array
+	 *
+	 * @param bytes a {@link java.nio.ByteBuffer} mapped over the file
+	 */
+	protected abstract void moveToMapped(ByteBuffer bytes);
+
+	/**
+	 * Replaces the buffer of a spilled column after its file has been
+	 * mapped again at a longer length
+	 *
+	 * @param bytes a {@link java.nio.ByteBuffer} mapped over the file
+	 */
+	protected abstract void remap(ByteBuffer bytes);
+
+	/**
+	 * Drops the buffer of a released column and allocates an empty backing
+	 * array
+	 *
+	 * @param capacity an int containing the length of the new array
+	 */
+	protected abstract void moveToHeap(int capacity);
+}
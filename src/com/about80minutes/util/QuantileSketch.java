@@ -0,0 +1,349 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * Streaming, mergeable quantile sketch based on the KLL algorithm. Values are
+ * held in a stack of compactors, when a compactor fills it is sorted and every
+ * other value is promoted to the level above with double the weight. Memory is
+ * bounded by roughly 3k values regardless of how many values are added and
+ * the rank error is in the order of 1.7 / k of the value count.
+ *
+ * NaN values are ignored by the sketch.
+ */
+public class QuantileSketch implements QuantileSummary {
+
+	public static final int DEFAULT_K = 200;
+	private static final int MIN_LEVEL_CAPACITY = 8;
+
+	private int k = DEFAULT_K;
+	private float[][] levels = new float[1][];
+	private int[] levelSizes = new int[1];
+	private int retained = 0;
+	private long count = 0;
+	private float min = Float.NaN;
+	private float max = Float.NaN;
+	private long seed = 0x5DEECE66DL;
+
+	private float[] cachedValues = null;
+	private long[] cachedWeights = null;
+
+	/**
+	 * Constructor, creates a sketch with the default accuracy
+	 */
+	public QuantileSketch() {
+		this(DEFAULT_K);
+	}
+
+	/**
+	 * Constructor, creates a sketch with the given accuracy. Larger values of
+	 * k give more accurate results at the cost of more memory.
+	 *
+	 * @param k an int controlling the size of the sketch, at least 8
+	 */
+	public QuantileSketch(int k) {
+		if(k < MIN_LEVEL_CAPACITY) {
+			throw new IllegalArgumentException(String.format("k must be at least %d", MIN_LEVEL_CAPACITY));
+		}
+		this.k = k;
+		levels[0] = new float[k];
+	}
+
+	/**
+	 * Creates a sketch over the values of a column in a single pass
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} to sketch
+	 * @param k an int controlling the size of the sketch
+	 *
+	 * @return a {@link com.about80minutes.util.QuantileSketch} of the values
+	 */
+	public static QuantileSketch valueOf(FloatColumn vals, int k) {
+		QuantileSketch sketch = new QuantileSketch(k);
+		for(int i = 0;i < vals.size();i++) {
+			sketch.add(vals.get(i));
+		}
+		return sketch;
+	}
+
+	/**
+	 * Adds a value to the sketch
+	 *
+	 * @param value a float containing the value to add
+	 */
+	public void add(float value) {
+		if(Float.isNaN(value)) {
+			return;
+		}
+		if(count == 0 || value < min) {
+			min = value;
+		}
+		if(count == 0 || value > max) {
+			max = value;
+		}
+		this.append(0, value);
+		count++;
+		cachedValues = null;
+		if(retained >= this.totalCapacity()) {
+			this.compress();
+		}
+	}
+
+	/**
+	 * Merges the values seen by another sketch into this one
+	 *
+	 * @param other a {@link com.about80minutes.util.QuantileSketch} to merge
+	 */
+	public void merge(QuantileSketch other) {
+		for(int level = 0;level < other.levels.length;level++) {
+			for(int i = 0;i < other.levelSizes[level];i++) {
+				this.append(level, other.levels[level][i]);
+			}
+		}
+		if(other.count > 0) {
+			min = (count == 0) ? other.min : Math.min(min, other.min);
+			max = (count == 0) ? other.max : Math.max(max, other.max);
+		}
+		count += other.count;
+		cachedValues = null;
+		this.compress();
+	}
+
+	/**
+	 * Gets the number of values added to the sketch
+	 *
+	 * @return a long containing the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the number of values retained by the sketch
+	 *
+	 * @return an int containing the number of retained values
+	 */
+	public int getRetainedCount() {
+		return retained;
+	}
+
+	/**
+	 * Gets an estimate of the value at the given quantile
+	 *
+	 * @param quantile a double between 0 and 1
+	 *
+	 * @return a float containing the estimated value, NaN if there are no values
+	 */
+	public float getQuantile(double quantile) {
+		if(count == 0) {
+			return Float.NaN;
+		}
+		long rank = Math.max(0L, Math.min(count - 1, (long) (quantile * count)));
+		//the extremes are tracked exactly
+		if(rank == 0) {
+			return min;
+		} else if(rank == count - 1) {
+			return max;
+		}
+		this.buildSortedView();
+		long cumulative = 0;
+		for(int i = 0;i < cachedValues.length;i++) {
+			cumulative += cachedWeights[i];
+			if(cumulative > rank) {
+				return cachedValues[i];
+			}
+		}
+		return cachedValues[cachedValues.length - 1];
+	}
+
+	/**
+	 * Gets an estimate of the value at the given percentile
+	 *
+	 * @param percentile a double between 0 and 100
+	 *
+	 * @return a float containing the estimated value
+	 */
+	public float getPercentile(double percentile) {
+		return this.getQuantile(percentile / 100d);
+	}
+
+	/**
+	 * Gets an estimate of the median value
+	 *
+	 * @return a float containing the estimated median
+	 */
+	public float getMedian() {
+		return this.getQuantile(0.5d);
+	}
+
+	/**
+	 * Gets an estimate of the lower quartile (25th percentile)
+	 *
+	 * @return a float containing the estimated lower quartile
+	 */
+	public float getLowerQuartile() {
+		return this.getQuantile(0.25d);
+	}
+
+	/**
+	 * Gets an estimate of the upper quartile (75th percentile)
+	 *
+	 * @return a float containing the estimated upper quartile
+	 */
+	public float getUpperQuartile() {
+		return this.getQuantile(0.75d);
+	}
+
+	/**
+	 * Gets an estimate of the interquartile range
+	 *
+	 * @return a float containing the estimated interquartile range
+	 */
+	public float getInterquartileRange() {
+		return this.getUpperQuartile() - this.getLowerQuartile();
+	}
+
+	/**
+	 * Sketched values are estimates
+	 *
+	 * @return true
+	 */
+	public boolean isApproximate() {
+		return true;
+	}
+
+	/**
+	 * Appends a value to a level, adding the level and growing its buffer as
+	 * required
+	 *
+	 * @param level an int containing the level to append to
+	 * @param value a float containing the value
+	 */
+	private void append(int level, float value) {
+		if(level >= levels.length) {
+			levels = Arrays.copyOf(levels, level + 1);
+			levelSizes = Arrays.copyOf(levelSizes, level + 1);
+		}
+		float[] buffer = levels[level];
+		if(buffer == null) {
+			buffer = new float[this.levelCapacity(level)];
+			levels[level] = buffer;
+		} else if(levelSizes[level] == buffer.length) {
+			buffer = Arrays.copyOf(buffer, buffer.length * 2);
+			levels[level] = buffer;
+		}
+		buffer[levelSizes[level]++] = value;
+		retained++;
+	}
+
+	/**
+	 * Compacts the lowest full level until the sketch is back within its total
+	 * capacity. Compacting a level sorts it and promotes either the odd or
+	 * even positioned values to the level above, chosen at random so that the
+	 * rank error is unbiased.
+	 */
+	private void compress() {
+		while(retained >= this.totalCapacity()) {
+			int level = 0;
+			while(level < levels.length - 1 && levelSizes[level] < this.levelCapacity(level)) {
+				level++;
+			}
+			float[] buffer = levels[level];
+			int size = levelSizes[level];
+			Arrays.sort(buffer, 0, size);
+			//an odd value out stays at this level
+			int start = size & 1;
+			int offset = this.nextBit();
+			for(int i = start + offset;i < size;i += 2) {
+				this.append(level + 1, buffer[i]);
+			}
+			levelSizes[level] = start;
+			retained -= size - start;
+		}
+	}
+
+	/**
+	 * Works out the number of values the sketch may hold before compacting
+	 *
+	 * @return an int containing the sum of the level capacities
+	 */
+	private int totalCapacity() {
+		int capacity = 0;
+		for(int level = 0;level < levels.length;level++) {
+			capacity += this.levelCapacity(level);
+		}
+		return capacity;
+	}
+
+	/**
+	 * Works out the capacity of a level, capacities shrink geometrically
+	 * towards the bottom of the stack so that the top levels hold the most
+	 * values
+	 *
+	 * @param level an int containing the level
+	 *
+	 * @return an int containing the capacity
+	 */
+	private int levelCapacity(int level) {
+		int depth = levels.length - level - 1;
+		return Math.max(MIN_LEVEL_CAPACITY, (int) Math.ceil(k * Math.pow(2d / 3d, depth)));
+	}
+
+	/**
+	 * Builds a sorted array of retained values with their weights, this is
+	 * cached until the sketch is next modified
+	 */
+	private void buildSortedView() {
+		if(cachedValues != null) {
+			return;
+		}
+		long[] packed = new long[retained];
+		int i = 0;
+		for(int level = 0;level < levels.length;level++) {
+			for(int j = 0;j < levelSizes[level];j++) {
+				//sortable key in the high bits, level in the low bits
+				packed[i++] = ((long) sortableBits(levels[level][j]) << 8) | level;
+			}
+		}
+		Arrays.sort(packed);
+		cachedValues = new float[retained];
+		cachedWeights = new long[retained];
+		for(i = 0;i < retained;i++) {
+			cachedValues[i] = fromSortableBits((int) (packed[i] >> 8));
+			cachedWeights[i] = 1L << (packed[i] & 0xFF);
+		}
+	}
+
+	/**
+	 * Returns a pseudo random bit, a simple LCG is enough here and keeps the
+	 * sketch free of shared state
+	 *
+	 * @return an int of either 0 or 1
+	 */
+	private int nextBit() {
+		seed = (seed * 0x5DEECE66DL + 0xBL) & ((1L << 48) - 1);
+		return (int) (seed >>> 47);
+	}
+
+	/**
+	 * Converts a float into an int that sorts in the same order as the float
+	 *
+	 * @param value a float to convert
+	 *
+	 * @return an int with the same ordering as the value
+	 */
+	private static int sortableBits(float value) {
+		int bits = Float.floatToIntBits(value);
+		return bits ^ ((bits >> 31) & 0x7FFFFFFF);
+	}
+
+	/**
+	 * Reverses {@link #sortableBits(float)}
+	 *
+	 * @param bits an int produced by sortableBits
+	 *
+	 * @return the original float
+	 */
+	private static float fromSortableBits(int bits) {
+		return Float.intBitsToFloat(bits ^ ((bits >> 31) & 0x7FFFFFFF));
+	}
+}
@@ -0,0 +1,63 @@
+package com.about80minutes.util;
+
+/**
+ * Rank based statistics over a set of values, implemented exactly by
+ * {@link com.about80minutes.util.OrderStatistics} and approximately by
+ * {@link com.about80minutes.util.QuantileSketch}.
+ */
+public interface QuantileSummary {
+
+	/**
+	 * Gets the value at the given quantile
+	 *
+	 * @param quantile a double between 0 and 1
+	 *
+	 * @return a float containing the quantile value, NaN if there are no values
+	 */
+	float getQuantile(double quantile);
+
+	/**
+	 * Gets the value at the given percentile
+	 *
+	 * @param percentile a double between 0 and 100
+	 *
+	 * @return a float containing the percentile value
+	 */
+	float getPercentile(double percentile);
+
+	/**
+	 * Gets the median value
+	 *
+	 * @return a float containing the median value
+	 */
+	float getMedian();
+
+	/**
+	 * Gets the lower quartile (25th percentile)
+	 *
+	 * @return a float containing the lower quartile value
+	 */
+	float getLowerQuartile();
+
+	/**
+	 * Gets the upper quartile (75th percentile)
+	 *
+	 * @return a float containing the upper quartile value
+	 */
+	float getUpperQuartile();
+
+	/**
+	 * Gets the interquartile range
+	 *
+	 * @return a float containing the difference between the upper and lower
+	 * quartiles
+	 */
+	float getInterquartileRange();
+
+	/**
+	 * Whether the values returned are estimates rather than exact ranks
+	 *
+	 * @return true if the values are approximate
+	 */
+	boolean isApproximate();
+}
@@ -0,0 +1,201 @@
+package com.about80minutes.util;
+
+/**
+ * Accumulates the count, min, max, sum, mean and variance of a set of values
+ * in a single pass. The mean and variance are maintained using Welford's
+ * method and two accumulators can be merged, so partial results computed over
+ * separate chunks of data can be combined. The mean reported is the Welford
+ * mean rather than the sum divided by the count. The sum is accumulated in
+ * double precision and only rounded to a float when read, so removing
+ * values one at a time does not leave the rounding error of large values
+ * behind.
+ */
+public class StatsAccumulator {
+
+	private long count = 0;
+	private float min = Float.NaN;
+	private float max = Float.NaN;
+	private double sum = 0d;
+	private double mean = 0d;
+	private double m2 = 0d;
+
+	/**
+	 * Adds a value to the accumulator
+	 *
+	 * @param value a float containing the value to add
+	 */
+	public void add(float value) {
+		if(count == 0) {
+			min = value;
+			max = value;
+		} else {
+			if(value < min) {
+				min = value;
+			}
+			if(value > max) {
+				max = value;
+			}
+		}
+		count++;
+		sum += value;
+		double delta = value - mean;
+		mean += delta / count;
+		m2 += delta * (value - mean);
+	}
+
+	/**
+	 * Removes a value previously added to the accumulator. The count, sum,
+	 * mean and variance are updated in place, the min and max are left as
+	 * they are and should be corrected with {@link #setBounds(float, float)}
+	 * if the removed value was the last occurrence of either.
+	 *
+	 * @param value a float containing the value to remove
+	 */
+	public void remove(float value) {
+		if(count <= 1) {
+			this.clear();
+			return;
+		}
+		count--;
+		sum -= value;
+		double delta = value - mean;
+		mean -= delta / count;
+		m2 -= delta * (value - mean);
+	}
+
+	/**
+	 * Replaces the min and max of the accumulator, used after removing values
+	 *
+	 * @param min a float containing the new minimum
+	 * @param max a float containing the new maximum
+	 */
+	public void setBounds(float min, float max) {
+		this.min = min;
+		this.max = max;
+	}
+
+	/**
+	 * Adds all values of a column to the accumulator
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values to
+	 * add
+	 */
+	public void addAll(FloatColumn vals) {
+		for(int i = 0;i < vals.size();i++) {
+			this.add(vals.get(i));
+		}
+	}
+
+	/**
+	 * Merges the values seen by another accumulator into this one
+	 *
+	 * @param other a {@link com.about80minutes.util.StatsAccumulator} to merge
+	 */
+	public void merge(StatsAccumulator other) {
+		if(other.count == 0) {
+			return;
+		}
+		if(count == 0) {
+			count = other.count;
+			min = other.min;
+			max = other.max;
+			sum = other.sum;
+			mean = other.mean;
+			m2 = other.m2;
+			return;
+		}
+		long total = count + other.count;
+		double delta = other.mean - mean;
+		mean += delta * other.count / total;
+		m2 += other.m2 + delta * delta * ((double) count * other.count / total);
+		sum += other.sum;
+		min = Math.min(min, other.min);
+		max = Math.max(max, other.max);
+		count = total;
+	}
+
+	/**
+	 * Resets the accumulator so that it can be reused
+	 */
+	public void clear() {
+		count = 0;
+		min = Float.NaN;
+		max = Float.NaN;
+		sum = 0d;
+		mean = 0d;
+		m2 = 0d;
+	}
+
+	/**
+	 * Gets the number of values seen
+	 *
+	 * @return a long containing the count
+	 */
+	public long getCount() {
+		return count;
+	}
+
+	/**
+	 * Gets the smallest value seen
+	 *
+	 * @return a float containing the minimum, NaN if no values have been seen
+	 */
+	public float getMin() {
+		return min;
+	}
+
+	/**
+	 * Gets the largest value seen
+	 *
+	 * @return a float containing the maximum, NaN if no values have been seen
+	 */
+	public float getMax() {
+		return max;
+	}
+
+	/**
+	 * Gets the difference between the largest and smallest values seen
+	 *
+	 * @return a float containing the range
+	 */
+	public float getRange() {
+		return max - min;
+	}
+
+	/**
+	 * Gets the sum of the values seen
+	 *
+	 * @return a float containing the sum
+	 */
+	public float getSum() {
+		return (float) sum;
+	}
+
+	/**
+	 * Gets the mean of the values seen, this is the running Welford mean so
+	 * it does not depend on how the values were split into merged chunks
+	 *
+	 * @return a float containing the mean, NaN if no values have been seen
+	 */
+	public float getMean() {
+		return (count == 0) ? Float.NaN : (float) mean;
+	}
+
+	/**
+	 * Gets the population variance of the values seen
+	 *
+	 * @return a double containing the variance
+	 */
+	public double getVariance() {
+		return (count == 0) ? 0d : Math.max(m2, 0d) / count;
+	}
+
+	/**
+	 * Gets the population standard deviation of the values seen
+	 *
+	 * @return a double containing the standard deviation
+	 */
+	public double getStdDeviation() {
+		return Math.sqrt(this.getVariance());
+	}
+}
@@ -0,0 +1,207 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * The count and sum of a set of values broken down into consecutive time
+ * buckets, as numbered by {@link com.about80minutes.util.CalendarBuckets}.
+ * Each bucket is a slot of primitive arrays indexed by bucket number less
+ * the first bucket, so adding a value costs two array updates.
+ *
+ * Totals over a sliding window of buckets are read from prefix sums, which
+ * are built the first time a window is asked for, so every window of every
+ * width is answered in constant time. An instance is not thread safe while
+ * values are being added.
+ */
+public class TimeBuckets {
+
+	private final int firstBucket;
+	private final long[] counts;
+	private final double[] sums;
+	//running totals of the buckets before each position, built on demand by
+	//whichever thread first reads a window, sums are published before counts
+	private volatile long[] countPrefixes = null;
+	private volatile double[] sumPrefixes = null;
+
+	/**
+	 * Constructor, creates empty buckets
+	 *
+	 * @param firstBucket an int containing the number of the first bucket
+	 * @param bucketCount an int containing the number of buckets
+	 */
+	public TimeBuckets(int firstBucket, int bucketCount) {
+		this.firstBucket = firstBucket;
+		this.counts = new long[bucketCount];
+		this.sums = new double[bucketCount];
+	}
+
+	/**
+	 * Adds a value to a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 * @param value a float containing the value
+	 */
+	public void add(int bucket, float value) {
+		int position = bucket - firstBucket;
+		counts[position]++;
+		sums[position] += value;
+		countPrefixes = null;
+		sumPrefixes = null;
+	}
+
+	/**
+	 * Adds a column of values to the buckets of the rows they came from, in
+	 * a single pass. Every value of a row is added, values whose ID is not a
+	 * row or whose row has no bucket are skipped.
+	 *
+	 * @param vals a {@link com.about80minutes.util.FloatColumn} of values
+	 * @param ids a {@link com.about80minutes.util.LongColumn} containing the
+	 * ID each value came from
+	 * @param rowIds a long[] containing the row IDs in ascending order
+	 * @param rowBuckets an int[] containing the bucket of each row, or
+	 * {@link com.about80minutes.util.CalendarBuckets#NO_DAY}, as returned by
+	 * {@link com.about80minutes.util.CalendarBuckets#bucketRows(IntColumn, LongColumn, long[], int)}
+	 */
+	public void addAll(FloatColumn vals, LongColumn ids, long[] rowIds, int[] rowBuckets) {
+		int row = -1;
+		for(int i = 0;i < vals.size();i++) {
+			long id = ids.get(i);
+			//values are mostly added in ID order, so try this row then the next first
+			if(row < 0 || rowIds[row] != id) {
+				if(row + 1 < rowIds.length && rowIds[row + 1] == id) {
+					row++;
+				} else {
+					row = Arrays.binarySearch(rowIds, id);
+				}
+			}
+			if(row < 0) {
+				row = -1;
+				continue;
+			}
+			int bucket = rowBuckets[row];
+			if(bucket != CalendarBuckets.NO_DAY) {
+				int position = bucket - firstBucket;
+				counts[position]++;
+				sums[position] += vals.get(i);
+			}
+		}
+		countPrefixes = null;
+		sumPrefixes = null;
+	}
+
+	/**
+	 * Gets the number of the first bucket
+	 *
+	 * @return an int containing the bucket number
+	 */
+	public int getFirstBucket() {
+		return firstBucket;
+	}
+
+	/**
+	 * Gets the number of buckets
+	 *
+	 * @return an int containing the number of buckets
+	 */
+	public int size() {
+		return counts.length;
+	}
+
+	/**
+	 * Gets the number of values in a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 *
+	 * @return a long containing the count
+	 */
+	public long getCount(int bucket) {
+		return counts[bucket - firstBucket];
+	}
+
+	/**
+	 * Gets the sum of the values in a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 *
+	 * @return a double containing the sum
+	 */
+	public double getSum(int bucket) {
+		return sums[bucket - firstBucket];
+	}
+
+	/**
+	 * Gets the mean of the values in a bucket
+	 *
+	 * @param bucket an int containing the bucket number
+	 *
+	 * @return a double containing the mean, NaN if the bucket is empty
+	 */
+	public double getMean(int bucket) {
+		int position = bucket - firstBucket;
+		return (counts[position] == 0) ? Double.NaN : sums[position] / counts[position];
+	}
+
+	/**
+	 * Gets the number of values in a window of buckets ending at a bucket,
+	 * the window is cut short at the first bucket
+	 *
+	 * @param bucket an int containing the number of the last bucket of the
+	 * window
+	 * @param width an int containing the number of buckets in the window
+	 *
+	 * @return a long containing the count
+	 */
+	public long getWindowCount(int bucket, int width) {
+		this.buildPrefixes();
+		int end = bucket - firstBucket + 1;
+		return countPrefixes[end] - countPrefixes[Math.max(end - width, 0)];
+	}
+
+	/**
+	 * Gets the sum of the values in a window of buckets ending at a bucket,
+	 * the window is cut short at the first bucket
+	 *
+	 * @param bucket an int containing the number of the last bucket of the
+	 * window
+	 * @param width an int containing the number of buckets in the window
+	 *
+	 * @return a double containing the sum
+	 */
+	public double getWindowSum(int bucket, int width) {
+		this.buildPrefixes();
+		int end = bucket - firstBucket + 1;
+		return sumPrefixes[end] - sumPrefixes[Math.max(end - width, 0)];
+	}
+
+	/**
+	 * Gets the mean of the values in a window of buckets ending at a bucket
+	 *
+	 * @param bucket an int containing the number of the last bucket of the
+	 * window
+	 * @param width an int containing the number of buckets in the window
+	 *
+	 * @return a double containing the mean, NaN if the window is empty
+	 */
+	public double getWindowMean(int bucket, int width) {
+		long count = this.getWindowCount(bucket, width);
+		return (count == 0) ? Double.NaN : this.getWindowSum(bucket, width) / count;
+	}
+
+	/**
+	 * Builds the running totals of the buckets if values have been added
+	 * since they were last built
+	 */
+	private void buildPrefixes() {
+		if(countPrefixes != null) {
+			return;
+		}
+		long[] countTotals = new long[counts.length + 1];
+		double[] sumTotals = new double[sums.length + 1];
+		for(int i = 0;i < counts.length;i++) {
+			countTotals[i + 1] = countTotals[i] + counts[i];
+			sumTotals[i + 1] = sumTotals[i] + sums[i];
+		}
+		sumPrefixes = sumTotals;
+		countPrefixes = countTotals;
+	}
+}
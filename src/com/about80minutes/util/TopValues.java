@@ -0,0 +1,183 @@
+package com.about80minutes.util;
+
+import java.util.Arrays;
+
+/**
+ * The most frequent values of a set of numbers with their counts, most
+ * frequent first. This replaces a list of every value sharing the highest
+ * count, which for mostly unique values is every value.
+ *
+ * Only values occurring at least a minimum number of times are held, so an
+ * empty instance means no value repeats enough to be a mode. Instances are
+ * immutable once built.
+ */
+public class TopValues {
+
+	public static final int DEFAULT_K = 3;
+	public static final int DEFAULT_MIN_COUNT = 2;
+	public static final TopValues NONE = new TopValues(new float[0], new int[0], false);
+
+	private final float[] values;
+	private final int[] counts;
+	private final boolean approximate;
+
+	/**
+	 * Constructor, wraps the given arrays which must not be modified after
+	 * this call
+	 *
+	 * @param values a float[] containing the values, most frequent first
+	 * @param counts an int[] containing the count of each value
+	 * @param approximate a boolean, true if the counts are estimates
+	 */
+	public TopValues(float[] values, int[] counts, boolean approximate) {
+		this.values = values;
+		this.counts = counts;
+		this.approximate = approximate;
+	}
+
+	/**
+	 * Gets the number of values held
+	 *
+	 * @return an int containing the number of values
+	 */
+	public int size() {
+		return values.length;
+	}
+
+	/**
+	 * Whether no value repeats enough to be held
+	 *
+	 * @return true if there is no mode
+	 */
+	public boolean isEmpty() {
+		return values.length == 0;
+	}
+
+	/**
+	 * Gets a value
+	 *
+	 * @param i an int containing the position, 0 is the most frequent
+	 *
+	 * @return a float containing the value
+	 */
+	public float getValue(int i) {
+		return values[i];
+	}
+
+	/**
+	 * Gets the count of a value
+	 *
+	 * @param i an int containing the position, 0 is the most frequent
+	 *
+	 * @return an int containing the count, an upper bound if the counts are
+	 * estimates
+	 */
+	public int getCount(int i) {
+		return counts[i];
+	}
+
+	/**
+	 * Gets every value sharing the highest count
+	 *
+	 * @return a float[] containing the modes in ascending order, empty if
+	 * there is no mode
+	 */
+	public float[] getModes() {
+		int modeCount = 0;
+		while(modeCount < counts.length && counts[modeCount] == counts[0]) {
+			modeCount++;
+		}
+		return Arrays.copyOf(values, modeCount); //ties are already in ascending order
+	}
+
+	/**
+	 * Whether the counts are estimates
+	 *
+	 * @return true if the counts were read from a sketch
+	 */
+	public boolean isApproximate() {
+		return approximate;
+	}
+
+	/**
+	 * Keeps the most frequent of the values offered to it, ties are broken
+	 * by the smaller value. This holds at most k values so offering every
+	 * distinct value of a large set does not allocate.
+	 */
+	public static class Builder {
+
+		private final int minCount;
+		private final float[] values;
+		private final int[] counts;
+		private int size = 0;
+
+		/**
+		 * Constructor for the builder
+		 *
+		 * @param k an int containing the number of values to keep
+		 * @param minCount an int containing the count below which a value is
+		 * not kept
+		 */
+		public Builder(int k, int minCount) {
+			this.minCount = minCount;
+			this.values = new float[k];
+			this.counts = new int[k];
+		}
+
+		/**
+		 * Offers a value, it is kept if it is among the k most frequent so
+		 * far
+		 *
+		 * @param value a float containing the value
+		 * @param count an int containing the count of the value
+		 */
+		public void offer(float value, int count) {
+			if(count < minCount || values.length == 0) {
+				return;
+			}
+			int position = size;
+			while(position > 0 && isBefore(value, count, values[position - 1], counts[position - 1])) {
+				position--;
+			}
+			if(position >= values.length) {
+				return;
+			}
+			//shift the less frequent values down, dropping the last if full
+			int last = Math.min(size, values.length - 1);
+			System.arraycopy(values, position, values, position + 1, last - position);
+			System.arraycopy(counts, position, counts, position + 1, last - position);
+			values[position] = value;
+			counts[position] = count;
+			size = Math.min(size + 1, values.length);
+		}
+
+		/**
+		 * Builds the values kept so far
+		 *
+		 * @param approximate a boolean, true if the counts are estimates
+		 *
+		 * @return the {@link com.about80minutes.util.TopValues}
+		 */
+		public TopValues build(boolean approximate) {
+			if(size == 0) {
+				return NONE;
+			}
+			return new TopValues(Arrays.copyOf(values, size), Arrays.copyOf(counts, size), approximate);
+		}
+
+		/**
+		 * Whether one value should be listed before another
+		 *
+		 * @param value a float containing the first value
+		 * @param count an int containing the count of the first value
+		 * @param otherValue a float containing the second value
+		 * @param otherCount an int containing the count of the second value
+		 *
+		 * @return true if the first value is more frequent, or as frequent
+		 * and smaller
+		 */
+		private static boolean isBefore(float value, int count, float otherValue, int otherCount) {
+			return count > otherCount || (count == otherCount && Float.compare(value, otherValue) < 0);
+		}
+	}
+}
@@ -0,0 +1,106 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.io.StringReader;
+import java.util.List;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.junit.Test;
+
+import com.about80minutes.util.NumericFunctions;
+
+/**
+ * Test class for {@link com.about80minutes.palantir.helper.na.BatchAnalysis}
+ */
+public class BatchAnalysisTest {
+
+	private static final String CSV = "Name,Amount,\"Weight, kg\"\n"
+			+ "a,1,10\n"
+			+ "\"b, c\",2,\n"
+			+ "d,n/a,\"1,000\"\n"
+			+ "e,2,20\n"
+			+ "f,4,30\n";
+
+	/**
+	 * Tests that chunks parsed in parallel give the same table as the helper
+	 */
+	@Test
+	public void chunkedCSV() throws Exception {
+		BatchAnalysis analysis = new BatchAnalysis();
+		analysis.setChunkLines(2);
+		analysis.setMaxInFlight(2);
+		analysis.addCSV(new StringReader(CSV));
+		analysis.addCSV(new StringReader("Amount\n3\n"));
+
+		StatsUpdate stats = analysis.getStats();
+		assertEquals(2, stats.size()); //the Name column holds no numbers
+		assertEquals("Amount", stats.getProperty(0));
+		assertEquals(5, stats.getCount(0));
+		assertEquals(12f, stats.getSum(0), 0f);
+		assertEquals("Weight, kg", stats.getProperty(1));
+		assertEquals(1060f, stats.getSum(1), 0f);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		analysis.writeCSV(output);
+		String[] lines = output.toString("UTF-8").split("\\r?\\n");
+		assertEquals(3, lines.length);
+		assertTrue(lines[1].startsWith("Amount,5,1.00,4.00,2.40,2.00,[2.00 (2)],12.00,3.00,"));
+	}
+
+	/**
+	 * Tests that cells which Float.parseFloat would accept but which are not
+	 * plain decimals, or are too large for a float, are skipped in every chunk
+	 */
+	@Test
+	public void nonFiniteCells() throws Exception {
+		String csv = "Value\n1\nNaN\n3\nInfinity\n-Infinity\n2f\n1d\n1e40\n5\n";
+		for(int chunkLines = 1;chunkLines <= 4;chunkLines++) {
+			BatchAnalysis analysis = new BatchAnalysis();
+			analysis.setChunkLines(chunkLines);
+			analysis.addCSV(new StringReader(csv));
+
+			StatsUpdate stats = analysis.getStats();
+			assertEquals(1, stats.size());
+			assertEquals(3, stats.getCount(0));
+			assertEquals(1f, stats.getMin(0), 0f);
+			assertEquals(5f, stats.getMax(0), 0f);
+			assertEquals(3f, stats.getMean(0), 0.0001f);
+			assertEquals(9f, stats.getSum(0), 0f);
+		}
+	}
+
+	/**
+	 * Tests that a column past the approximate threshold is estimated
+	 */
+	@Test
+	public void approximate() throws Exception {
+		StringBuilder csv = new StringBuilder("Value\n");
+		for(int i = 1;i <= 1000;i++) {
+			csv.append(i).append('\n');
+		}
+		BatchAnalysis analysis = new BatchAnalysis();
+		analysis.setChunkLines(100);
+		analysis.setApproximateThreshold(250);
+		analysis.addCSV(new StringReader(csv.toString()));
+
+		RankStats[] rankStats = analysis.getRankStats();
+		assertTrue(rankStats[0].isApproximate());
+		assertEquals(500f, rankStats[0].getMedian(), 50f);
+		assertEquals(NumericFunctions.formatNumber(500500f), NumericFunctions.formatNumber(analysis.getStats().getSum(0)));
+	}
+
+	/**
+	 * Tests splitting of quoted fields
+	 */
+	@Test
+	public void splitCSV() {
+		List<String> fields = Lists.newArrayList();
+		BatchAnalysis.splitCSV("1,\"a, \"\"b\"\"\",,3", fields);
+		assertEquals(4, fields.size());
+		assertEquals("a, \"b\"", fields.get(1));
+		assertEquals("", fields.get(2));
+	}
+}
@@ -0,0 +1,85 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.Channels;
+import java.util.Arrays;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link com.about80minutes.palantir.helper.na.ColumnarFormat}
+ */
+public class ColumnarFormatTest {
+
+	/**
+	 * Tests that an export reads back with its values, IDs and stats intact
+	 */
+	@Test
+	public void roundTrip() throws Exception {
+		PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		store.add("Amount", 1L, 1.125f);
+		store.add("Amount", 2L, 2.5f);
+		store.add("Amount", 3L, -0.0001f);
+		store.add("Weight", 4L, 10f);
+		byte[] export = write(store, "Amount", "Weight");
+
+		ByteBuffer header = ByteBuffer.wrap(export).order(ByteOrder.LITTLE_ENDIAN);
+		assertEquals(ColumnarFormat.MAGIC, header.getInt());
+
+		PropertyValueStore read = ColumnarFormat.read(ByteBuffer.wrap(export), new PropertyDictionary());
+		int index = read.indexOf("Amount");
+		assertEquals(3, read.getColumn(index).size());
+		assertEquals(-0.0001f, read.getColumn(index).get(2), 0f); //full precision rather than two places
+		assertEquals(3L, read.getObjectIds(index).get(2));
+		assertEquals(store.getStats(store.indexOf("Amount")).getSum(), read.getStats(index).getSum(), 0f);
+		assertEquals(10f, read.getColumn("Weight").get(0), 0f);
+	}
+
+	/**
+	 * Tests that a truncated export is rejected
+	 */
+	@Test
+	public void truncated() throws Exception {
+		PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		store.add("Amount", 1L, 1f);
+		byte[] export = write(store, "Amount");
+		try {
+			ColumnarFormat.read(ByteBuffer.wrap(export, 0, export.length - 1), new PropertyDictionary());
+			fail("Expected truncated export to be rejected");
+		} catch (IOException e) {
+			//expected
+		}
+	}
+
+	/**
+	 * Writes the given properties of a store as an export
+	 *
+	 * @param store the {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+	 * to write
+	 * @param properties the names of the properties to write
+	 *
+	 * @return a byte[] containing the export
+	 */
+	private static byte[] write(PropertyValueStore store, String... properties) throws IOException {
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		ColumnarFormat.Writer writer = new ColumnarFormat.Writer(Channels.newChannel(output));
+		int[] counts = new int[properties.length];
+		for(int i = 0;i < properties.length;i++) {
+			counts[i] = store.getColumn(properties[i]).size();
+		}
+		writer.writeHeader(Arrays.asList(properties), counts);
+		for(String property : properties) {
+			int index = store.indexOf(property);
+			writer.writeIds(store.getObjectIds(index), 0, store.getColumn(index).size());
+			writer.writeValues(store.getColumn(index), 0, store.getColumn(index).size());
+		}
+		writer.flush();
+		return output.toByteArray();
+	}
+}
@@ -0,0 +1,159 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.OrderStatistics;
+import com.about80minutes.util.TopValues;
+
+/**
+ * Test class for the typed and deferred cells of {@link com.about80minutes.palantir.helper.na.NATableModel}
+ */
+public class NATableModelTest {
+
+	/**
+	 * Tests that cells hold raw numbers so that they sort numerically
+	 */
+	@Test
+	public void numericCells() {
+		StatsUpdate update = new StatsUpdate(2, null);
+		update.setRow(0, "Amount", NumericFunctions.getStats(column(9f)));
+		update.setRow(1, "Weight", NumericFunctions.getStats(column(10f)));
+		NATableModel model = new NATableModel();
+		model.setTableData(update);
+
+		assertEquals(Float.class, model.getColumnClass(4));
+		assertEquals(Integer.valueOf(1), model.getValueAt(0, 1));
+		Float nine = (Float) model.getValueAt(0, 4);
+		Float ten = (Float) model.getValueAt(1, 4);
+		assertTrue(nine.compareTo(ten) < 0); //"10.00" sorts before "9.00" as text
+		assertTrue(NATableModel.MODE_COMPARATOR.compare(new TopValues(new float[]{9f}, new int[]{2}, false),
+				new TopValues(new float[]{10f, 11f}, new int[]{2, 2}, false)) < 0);
+		assertTrue(NATableModel.MODE_COMPARATOR.compare(TopValues.NONE, new TopValues(new float[]{9f}, new int[]{2}, false)) < 0);
+	}
+
+	/**
+	 * Tests that deferred cells are null until computed and are computed for
+	 * export
+	 */
+	@Test
+	public void deferredCells() throws Exception {
+		final FloatColumn values = column(1f, 2f, 2f);
+		StatsUpdate update = new StatsUpdate(1, new NATableModel.DeferredCells() {
+			public RankStats compute(String property, String group) {
+				return new RankStats(new OrderStatistics(values), new TopValues(new float[]{2f}, new int[]{2}, false));
+			}
+			public RankStats[] computeAll(List<String> properties, List<String> groups) {
+				RankStats[] rows = new RankStats[properties.size()];
+				for(int i = 0;i < rows.length;i++) {
+					rows[i] = this.compute(properties.get(i), groups.get(i));
+				}
+				return rows;
+			}
+		});
+		update.setRow(0, "Amount", NumericFunctions.getStats(values));
+		NATableModel model = new NATableModel();
+		model.setTableData(update);
+
+		assertEquals(Integer.valueOf(3), model.getValueAt(0, 1));
+		assertTrue(model.isDeferred(5));
+		assertNull(model.getValueAt(0, 5));
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		model.toCSV(output);
+		String[] lines = output.toString("UTF-8").split("\\r?\\n");
+		assertEquals(2, lines.length);
+		assertTrue(lines[1].startsWith("Amount,3,1.00,2.00,1.67,2.00,[2.00 (2)],5.00,1.00,"));
+	}
+
+	/**
+	 * Tests that group rows are hidden until their property is expanded and
+	 * are always exported
+	 */
+	@Test
+	public void groupRows() throws Exception {
+		StatsUpdate update = new StatsUpdate(4, null);
+		update.setRow(0, "Amount", NumericFunctions.getStats(column(1f, 2f)));
+		update.setRow(1, "Amount", "Person", NumericFunctions.getStats(column(1f)));
+		update.setRow(2, "Amount", "Place", NumericFunctions.getStats(column(2f)));
+		update.setRow(3, "Weight", NumericFunctions.getStats(column(10f)));
+		NATableModel model = new NATableModel();
+		model.setTableData(update);
+
+		assertEquals(2, model.getRowCount());
+		assertTrue(model.hasGroups(0));
+		assertFalse(model.hasGroups(1));
+		assertEquals("Weight", model.getValueAt(1, 0));
+
+		assertFalse(model.isShowingGroups());
+		model.toggleGroups(0);
+		assertEquals(4, model.getRowCount());
+		assertTrue(model.isShowingGroups());
+		assertTrue(model.isGroupRow(1));
+		assertEquals("Amount" + NATableModel.GROUP_SEPARATOR + "Place", model.getValueAt(2, 0));
+		assertEquals(Float.valueOf(2f), model.getValueAt(2, 4));
+
+		model.setTableData(update); //stays expanded
+		assertEquals(4, model.getRowCount());
+		model.toggleGroups(0);
+		assertEquals(2, model.getRowCount());
+		assertFalse(model.isShowingGroups());
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		model.toCSV(output);
+		String[] lines = output.toString("UTF-8").split("\\r?\\n");
+		assertEquals(5, lines.length);
+		assertTrue(lines[2].startsWith("Amount / Person,1,"));
+	}
+
+	/**
+	 * Tests that an export reports its progress and stops once cancelled
+	 */
+	@Test
+	public void toCSVMonitor() throws Exception {
+		StatsUpdate update = new StatsUpdate(2, null);
+		update.setRow(0, "Amount", NumericFunctions.getStats(column(9f)));
+		update.setRow(1, "Weight", NumericFunctions.getStats(column(10f)));
+		final long[] progress = new long[]{-1, -1};
+		ExportMonitor monitor = new ExportMonitor() {
+			public void progress(long done, long total) {
+				progress[0] = done;
+				progress[1] = total;
+			}
+			public boolean isCancelled() {
+				return progress[0] >= 0; //cancelled once the first row is written
+			}
+		};
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		NATableModel.toCSV(update, new RankStats[2], output, monitor);
+		String[] lines = output.toString("UTF-8").split("\\r?\\n");
+		assertEquals(2, lines.length); //header and the first row only
+		assertTrue(lines[1].startsWith("Amount,1,"));
+		assertEquals(2L, progress[1]);
+	}
+
+	/**
+	 * Creates a column holding the given values
+	 *
+	 * @param values the float values to hold
+	 *
+	 * @return a {@link com.about80minutes.util.FloatColumn} of the values
+	 */
+	private static FloatColumn column(float... values) {
+		FloatColumn column = new FloatColumn();
+		for(float value : values) {
+			column.add(value);
+		}
+		return column;
+	}
+}
@@ -0,0 +1,57 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.lang.management.ManagementFactory;
+
+import javax.management.ObjectName;
+
+import org.junit.Test;
+
+/**
+ * Test class for {@link com.about80minutes.palantir.helper.na.NumericAnalysisMetrics}
+ */
+public class NumericAnalysisMetricsTest {
+
+	/**
+	 * Tests that percentiles are taken from the most recent latencies
+	 */
+	@Test
+	public void percentiles() {
+		NumericAnalysisMetrics metrics = new NumericAnalysisMetrics(100);
+		metrics.recordNanos(NumericAnalysisMetrics.LOAD, 1000000000L); //pushed out of the window
+		for(int i = 1;i <= 100;i++) {
+			metrics.recordNanos(NumericAnalysisMetrics.LOAD, i * 1000000L);
+		}
+		assertEquals(101L, metrics.getPhaseCount(NumericAnalysisMetrics.LOAD));
+		assertEquals(50d, metrics.getLatencyPercentileMillis(NumericAnalysisMetrics.LOAD, 50d), 0d);
+		assertEquals(95d, metrics.getLatencyPercentileMillis(NumericAnalysisMetrics.LOAD, 95d), 0d);
+		assertEquals(100d, metrics.getLatencyPercentileMillis(NumericAnalysisMetrics.LOAD, 100d), 0d);
+		assertEquals(0d, metrics.getLatencyPercentileMillis(NumericAnalysisMetrics.STATS, 50d), 0d);
+		assertTrue(metrics.getSummary().contains("load count=101"));
+
+		metrics.reset();
+		assertEquals(0L, metrics.getPhaseCount(NumericAnalysisMetrics.LOAD));
+	}
+
+	/**
+	 * Tests that the metrics can be read through the platform MBean server
+	 */
+	@Test
+	public void register() throws Exception {
+		NumericAnalysisMetrics metrics = new NumericAnalysisMetrics();
+		metrics.addObjectsLoaded(7);
+		metrics.register();
+		ObjectName name = metrics.getObjectName();
+		try {
+			assertEquals(Long.valueOf(7), ManagementFactory.getPlatformMBeanServer().getAttribute(name, "ObjectsLoaded"));
+		} finally {
+			metrics.unregister();
+		}
+		assertNull(metrics.getObjectName());
+		assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+	}
+}
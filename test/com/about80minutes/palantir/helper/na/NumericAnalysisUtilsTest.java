@@ -1,14 +1,35 @@
 package com.about80minutes.palantir.helper.na;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
+import java.io.File;
 import java.util.List;
+import java.util.TimeZone;
 
 import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
 import org.junit.BeforeClass;
 import org.junit.Test;
 
+import com.about80minutes.util.AlignedColumn;
+import com.about80minutes.util.CalendarBuckets;
+import com.about80minutes.util.CoMoments;
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.FloatIntCounter;
+import com.about80minutes.util.HeavyHitters;
+import com.about80minutes.util.IntColumn;
+import com.about80minutes.util.LongColumn;
+import com.about80minutes.util.MappedFile;
 import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.OrderStatistics;
+import com.about80minutes.util.ParallelStats;
+import com.about80minutes.util.QuantileSketch;
+import com.about80minutes.util.StatsAccumulator;
+import com.about80minutes.util.TimeBuckets;
+import com.about80minutes.util.TopValues;
 
 /**
  * Test class for the numeric analysis functions
@@ -16,6 +37,7 @@ import com.about80minutes.util.NumericFunctions;
 public class NumericAnalysisUtilsTest {
 	
 	private static List<Float> VALUE_LIST = null;
+	private static FloatColumn VALUE_COLUMN = null;
 
 	/**
 	 * Initialisation method, sets up the test data set
@@ -33,6 +55,8 @@ public class NumericAnalysisUtilsTest {
 		VALUE_LIST.add(3.0f);
 		VALUE_LIST.add(8.4f);
 		VALUE_LIST.add(-4f);
+		
+		VALUE_COLUMN = FloatColumn.valueOf(VALUE_LIST);
 	}
 	
 	/**
@@ -68,7 +92,8 @@ public class NumericAnalysisUtilsTest {
 	@Test
 	public void getSum() {
 		Float expected = Float.valueOf(27.78f);
-		assertEquals(expected, NumericFunctions.getSum(VALUE_LIST));
+		//summed in double, so the total may differ from a float running sum by an ulp
+		assertEquals(expected.floatValue(), NumericFunctions.getSum(VALUE_LIST).floatValue(), 0.0001f);
 	}
 	
 	/**
@@ -77,7 +102,8 @@ public class NumericAnalysisUtilsTest {
 	@Test
 	public void getMean() {
 		Float expected = Float.valueOf(2.778f);
-		assertEquals(expected, NumericFunctions.getMean(VALUE_LIST));
+		//the Welford mean may differ from the float sum over the count by an ulp
+		assertEquals(expected.floatValue(), NumericFunctions.getMean(VALUE_LIST).floatValue(), 0.0001f);
 	}
 	
 	/**
@@ -117,4 +143,436 @@ public class NumericAnalysisUtilsTest {
 		Float expected = Float.valueOf(12.4f);
 		assertEquals(expected, NumericFunctions.getRange(VALUE_LIST));
 	}
+	
+	/**
+	 * Tests the getSum(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getSum_FloatColumn() {
+		assertEquals(NumericFunctions.getSum(VALUE_LIST), NumericFunctions.getSum(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests the getMean(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getMean_FloatColumn() {
+		assertEquals(NumericFunctions.getMean(VALUE_LIST), NumericFunctions.getMean(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests the getMedian(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getMedian_FloatColumn() {
+		assertEquals(NumericFunctions.getMedian(VALUE_LIST), NumericFunctions.getMedian(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests the getStdDeviation(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getStdDeviation_FloatColumn() {
+		assertEquals(NumericFunctions.getStdDeviation(VALUE_LIST), NumericFunctions.getStdDeviation(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests the getModes(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getModes_FloatColumn() {
+		assertEquals(NumericFunctions.getModes(VALUE_LIST), NumericFunctions.getModes(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests the getRange(FloatColumn) method of {@link com.about80minutes.util.NumericFunctions}
+	 */
+	@Test
+	public void getRange_FloatColumn() {
+		assertEquals(NumericFunctions.getRange(VALUE_LIST), NumericFunctions.getRange(VALUE_COLUMN));
+	}
+	
+	/**
+	 * Tests that removing large values from a
+	 * {@link com.about80minutes.util.StatsAccumulator} leaves the sum and
+	 * mean of the remaining values rather than rounding error
+	 */
+	@Test
+	public void getStats_remove() {
+		StatsAccumulator stats = new StatsAccumulator();
+		stats.add(1e8f);
+		stats.add(1f);
+		stats.remove(1e8f);
+		assertEquals(1f, stats.getSum(), 0f);
+		assertEquals(1f, stats.getMean(), 0f);
+		assertEquals(0d, stats.getVariance(), 1e-6d);
+		
+		//deselecting in many small steps
+		for(int i = 0;i < 1000;i++) {
+			stats.add(1e7f + i);
+		}
+		for(int i = 0;i < 1000;i++) {
+			stats.remove(1e7f + i);
+		}
+		stats.add(3f);
+		assertEquals(4f, stats.getSum(), 0f);
+		assertEquals(2f, stats.getMean(), 1e-6f);
+	}
+	
+	/**
+	 * Tests that merging {@link com.about80minutes.util.StatsAccumulator}s
+	 * gives the same results as a single pass over all values
+	 */
+	@Test
+	public void getStats_merge() {
+		StatsAccumulator expected = NumericFunctions.getStats(VALUE_LIST);
+		StatsAccumulator merged = NumericFunctions.getStats(VALUE_LIST.subList(0, 4));
+		merged.merge(NumericFunctions.getStats(VALUE_LIST.subList(4, VALUE_LIST.size())));
+		assertEquals(expected.getCount(), merged.getCount());
+		assertEquals(expected.getMin(), merged.getMin(), 0f);
+		assertEquals(expected.getMax(), merged.getMax(), 0f);
+		assertEquals(expected.getMean(), merged.getMean(), 0.0001f);
+		assertEquals(expected.getStdDeviation(), merged.getStdDeviation(), 0.0001d);
+	}
+	
+	/**
+	 * Tests the rank based stats of {@link com.about80minutes.util.OrderStatistics}
+	 */
+	@Test
+	public void orderStatistics() {
+		OrderStatistics order = new OrderStatistics(VALUE_COLUMN);
+		assertEquals(NumericFunctions.getMedian(VALUE_LIST).floatValue(), order.getMedian(), 0f);
+		assertEquals(1.05f, order.getLowerQuartile(), 0f);
+		assertEquals(4.00f, order.getUpperQuartile(), 0f);
+		assertEquals(2.95f, order.getInterquartileRange(), 0.0001f);
+		assertEquals(-4f, order.getPercentile(0d), 0f);
+		assertEquals(8.4f, order.getPercentile(100d), 0f);
+	}
+	
+	/**
+	 * Tests that the select method of {@link com.about80minutes.util.OrderStatistics}
+	 * agrees with a full sort for every rank
+	 */
+	@Test
+	public void orderStatistics_select() {
+		OrderStatistics order = new OrderStatistics(VALUE_COLUMN);
+		for(int rank = 0;rank < VALUE_COLUMN.size();rank++) {
+			float[] tmpVals = VALUE_COLUMN.toArray();
+			assertEquals(order.getValueAtRank(rank), OrderStatistics.select(tmpVals, tmpVals.length, rank), 0f);
+		}
+	}
+	
+	/**
+	 * Tests the counting of {@link com.about80minutes.util.FloatIntCounter},
+	 * including the handling of -0.0, NaN and reuse after clearing
+	 */
+	@Test
+	public void floatIntCounter() {
+		FloatIntCounter counter = new FloatIntCounter(2);
+		for(int i = 0;i < 1000;i++) {
+			counter.add(i % 100);
+		}
+		counter.add(-0.0f);
+		counter.add(Float.NaN);
+		counter.add(Float.intBitsToFloat(0x7fc00001));
+		assertEquals(100, counter.size() - 1);
+		assertEquals(11, counter.get(0.0f));
+		assertEquals(2, counter.get(Float.NaN));
+		assertEquals(10, counter.get(99f));
+		
+		List<Float> expected = Lists.newArrayList();
+		expected.add(0f);
+		List<Float> modes = Lists.newArrayList();
+		counter.getModes(modes);
+		assertEquals(expected, modes);
+		
+		counter.clear();
+		assertEquals(0, counter.size());
+		assertEquals(0, counter.get(99f));
+		assertEquals(NumericFunctions.getModes(VALUE_LIST), NumericFunctions.getModes(VALUE_COLUMN, counter));
+	}
+	
+	/**
+	 * Tests that the estimates of {@link com.about80minutes.util.QuantileSketch}
+	 * stay within the expected rank error, including after a merge
+	 */
+	@Test
+	public void quantileSketch() {
+		FloatColumn column = new FloatColumn();
+		QuantileSketch first = new QuantileSketch();
+		QuantileSketch second = new QuantileSketch();
+		for(int i = 0;i < 100000;i++) {
+			float value = (i * 7919) % 100000;
+			column.add(value);
+			if(i % 2 == 0) {
+				first.add(value);
+			} else {
+				second.add(value);
+			}
+		}
+		first.merge(second);
+		QuantileSketch single = QuantileSketch.valueOf(column, QuantileSketch.DEFAULT_K);
+		
+		assertEquals(100000, first.getCount());
+		assertTrue(first.getRetainedCount() < 1000);
+		assertEquals(0f, single.getQuantile(0d), 0f);
+		assertEquals(99999f, single.getQuantile(1d), 0f);
+		for(double q = 0.05d;q < 1d;q += 0.05d) {
+			//values are 0..99999 so the value is also the rank
+			assertEquals(q * 100000, single.getQuantile(q), 1000f);
+			assertEquals(q * 100000, first.getQuantile(q), 1000f);
+		}
+	}
+	
+	/**
+	 * Tests that a column spilled to a mapped file keeps its values, can still
+	 * grow and gives the same stats as the column on the heap
+	 */
+	@Test
+	public void floatColumn_spill() throws Exception {
+		FloatColumn spilled = new FloatColumn(4);
+		spilled.addAll(VALUE_COLUMN);
+		spilled.spill(null);
+		assertTrue(spilled.isSpilled());
+		assertEquals(0L, spilled.getHeapBytes());
+		
+		spilled.addAll(VALUE_COLUMN);
+		for(int i = 0;i < VALUE_COLUMN.size();i++) {
+			spilled.add(VALUE_COLUMN.get(i));
+		}
+		FloatColumn expected = new FloatColumn();
+		for(int i = 0;i < 3;i++) {
+			expected.addAll(VALUE_COLUMN);
+		}
+		assertEquals(expected.size(), spilled.size());
+		assertEquals(expected.get(expected.size() - 1), spilled.get(spilled.size() - 1), 0f);
+		assertEquals(NumericFunctions.getSum(expected), NumericFunctions.getSum(spilled), 0f);
+		assertEquals(NumericFunctions.getMedian(expected), NumericFunctions.getMedian(spilled), 0f);
+		
+		spilled.release();
+		assertTrue(!spilled.isSpilled());
+		assertTrue(spilled.isEmpty());
+	}
+
+	/**
+	 * Tests that a mapped file is created in the spill directory and deleted
+	 * when closed
+	 */
+	@Test
+	public void mappedFile_close() throws Exception {
+		MappedFile mapped = new MappedFile(null, "test");
+		File file = mapped.getFile();
+		assertEquals(MappedFile.getSpillDirectory(), file.getParentFile());
+		mapped.map(16L).putInt(0, 1);
+		assertTrue(file.exists());
+		mapped.close();
+		assertFalse(file.exists());
+	}
+	
+	/**
+	 * Tests that stats computed from chunks in parallel match those computed
+	 * serially
+	 */
+	@Test
+	public void parallelStats() {
+		FloatColumn column = new FloatColumn();
+		for(int i = 0;i < 10000;i++) {
+			column.add((i * 31) % 997);
+		}
+		StatsAccumulator expected = NumericFunctions.getStats(column);
+		StatsAccumulator stats = ParallelStats.getStats(column, 100);
+		FloatIntCounter counts = ParallelStats.getCounts(column, 100);
+		QuantileSketch sketch = ParallelStats.getSketch(column, QuantileSketch.DEFAULT_K, 100);
+		
+		assertEquals(expected.getCount(), stats.getCount());
+		assertEquals(expected.getMin(), stats.getMin(), 0f);
+		assertEquals(expected.getMax(), stats.getMax(), 0f);
+		assertEquals(expected.getMean(), stats.getMean(), 0.01f);
+		assertEquals(expected.getStdDeviation(), stats.getStdDeviation(), 0.01d);
+		assertEquals(997, counts.size());
+		assertEquals(11, counts.get(0f));
+		assertEquals(10000, sketch.getCount());
+		assertEquals(NumericFunctions.getMedian(column), sketch.getMedian(), 20f);
+	}
+	
+	/**
+	 * Tests that the heavy hitter sketch finds frequent values among many
+	 * unique ones and reports no mode when nothing repeats
+	 */
+	@Test
+	public void heavyHitters() {
+		HeavyHitters heavyHitters = new HeavyHitters(64); //guarantees values seen over 10000 / 64 times
+		HeavyHitters unique = new HeavyHitters(16);
+		FloatIntCounter counter = new FloatIntCounter();
+		for(int i = 0;i < 10000;i++) {
+			float value = (i % 10 == 0) ? 7f : (i % 25 == 0) ? 3f : i + 0.5f;
+			heavyHitters.add(value);
+			counter.add(value);
+			unique.add(i);
+		}
+		TopValues top = heavyHitters.getTop(2, TopValues.DEFAULT_MIN_COUNT);
+		assertEquals(64, heavyHitters.size());
+		assertTrue(top.isApproximate());
+		assertEquals(2, top.size());
+		assertEquals(7f, top.getValue(0), 0f);
+		assertTrue(top.getCount(0) >= 1000);
+		assertEquals(3f, top.getValue(1), 0f);
+
+		TopValues exact = counter.getTop(TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT);
+		assertEquals(2, exact.size()); //nothing else repeats
+		assertEquals(1000, exact.getCount(0));
+		assertEquals(200, exact.getCount(1));
+		assertEquals(1, exact.getModes().length);
+
+		assertTrue(unique.getTop(TopValues.DEFAULT_K, TopValues.DEFAULT_MIN_COUNT).isEmpty());
+		assertEquals(NumericFunctions.NO_MODE, NumericFunctions.formatTopValues(TopValues.NONE));
+		assertEquals("[7.00 (1,000), 3.00 (200)]", NumericFunctions.formatTopValues(exact));
+	}
+	
+	/**
+	 * Tests that correlations only pair values from the same object, whatever
+	 * order the values were added in, and that co-moments accumulated over
+	 * chunks in parallel match those accumulated serially
+	 */
+	@Test
+	public void coMoments() {
+		long[] rowIds = new long[1000];
+		FloatColumn xs = new FloatColumn();
+		LongColumn xIds = new LongColumn();
+		FloatColumn ys = new FloatColumn();
+		LongColumn yIds = new LongColumn();
+		FloatColumn zs = new FloatColumn();
+		LongColumn zIds = new LongColumn();
+		for(int i = 0;i < rowIds.length;i++) {
+			rowIds[i] = i * 10L;
+			xs.add(999 - i);
+			xIds.add((999 - i) * 10L); //added in descending ID order
+			if(i % 2 == 0) {
+				ys.add(2 * i + 1); //a linear function of x for half the objects
+				yIds.add(i * 10L);
+			}
+			zs.add(i % 7);
+			zIds.add(i * 10L);
+		}
+		zs.add(1000f); //a second value of an object, ignored
+		zIds.add(50L);
+		zs.add(1000f); //not a selected object, ignored
+		zIds.add(5L);
+		
+		List<AlignedColumn> columns = Lists.newArrayList();
+		columns.add(AlignedColumn.align(xs, xIds, rowIds));
+		columns.add(AlignedColumn.align(ys, yIds, rowIds));
+		columns.add(AlignedColumn.align(zs, zIds, rowIds));
+		assertEquals(1000, columns.get(2).size());
+		assertEquals(5f, columns.get(2).getValue(columns.get(2).rank(5)), 0f);
+		
+		CoMoments serial = ParallelStats.getCoMoments(columns, Integer.MAX_VALUE);
+		CoMoments parallel = ParallelStats.getCoMoments(columns, 30);
+		assertEquals(500, serial.getCount(0, 1));
+		assertEquals(1000, serial.getCount(2, 0));
+		assertEquals(1d, serial.getCorrelation(0, 1), 1e-9d);
+		assertEquals((1000d * 1000d - 1d) / 12d, serial.getCovariance(0, 0), 1e-6d);
+		
+		//two pass correlation of x and z
+		double meanX = 499.5d;
+		double meanZ = 0d;
+		for(int i = 0;i < 1000;i++) {
+			meanZ += (i % 7) / 1000d;
+		}
+		double sxz = 0d;
+		double sxx = 0d;
+		double szz = 0d;
+		for(int i = 0;i < 1000;i++) {
+			sxz += (i - meanX) * (i % 7 - meanZ);
+			sxx += (i - meanX) * (i - meanX);
+			szz += (i % 7 - meanZ) * (i % 7 - meanZ);
+		}
+		assertEquals(sxz / Math.sqrt(sxx * szz), serial.getCorrelation(0, 2), 1e-9d);
+		for(int i = 0;i < 3;i++) {
+			for(int j = 0;j < 3;j++) {
+				assertEquals(serial.getCount(i, j), parallel.getCount(i, j));
+				assertEquals(serial.getCovariance(i, j), parallel.getCovariance(i, j), 1e-6d);
+				assertEquals(serial.getCorrelation(i, j), parallel.getCorrelation(i, j), 1e-9d);
+			}
+		}
+		assertTrue(Double.isNaN(new CoMoments(2).getCorrelation(0, 1)));
+	}
+	
+	/**
+	 * Tests the calendar buckets of days, including either side of 1970 and
+	 * a leap day, and the bucket sums and sliding windows of values by the
+	 * date of their row
+	 */
+	@Test
+	public void timeBuckets() {
+		//2013-04-28 is a Sunday, weeks start on the Monday before
+		int week = CalendarBuckets.bucketOf(15823, CalendarBuckets.WEEK);
+		assertEquals("2013-04-22", CalendarBuckets.format(week, CalendarBuckets.WEEK));
+		assertEquals(week + 1, CalendarBuckets.bucketOf(15824, CalendarBuckets.WEEK));
+		assertEquals(0, CalendarBuckets.bucketOf(-3, CalendarBuckets.WEEK));
+		assertEquals(-1, CalendarBuckets.bucketOf(-4, CalendarBuckets.WEEK));
+		assertEquals("2000-02-29", CalendarBuckets.format(11016, CalendarBuckets.DAY));
+		int february = CalendarBuckets.bucketOf(11016, CalendarBuckets.MONTH);
+		assertEquals("2000-02", CalendarBuckets.format(february, CalendarBuckets.MONTH));
+		assertEquals(february + 1, CalendarBuckets.bucketOf(11017, CalendarBuckets.MONTH));
+		assertEquals("1969-12", CalendarBuckets.format(CalendarBuckets.bucketOf(-1, CalendarBuckets.MONTH), CalendarBuckets.MONTH));
+		assertEquals(-1, CalendarBuckets.toEpochDay(-1L, TimeZone.getTimeZone("UTC")));
+		assertEquals(0, CalendarBuckets.toEpochDay(-1L, TimeZone.getTimeZone("GMT+01:00")));
+		
+		//2000-01-15, 2000-02-29, 2000-04-01, no date and 2000-01-31
+		long[] rowIds = new long[]{10L, 20L, 30L, 40L, 50L};
+		IntColumn days = IntColumn.valueOf(Lists.newArrayList(10971, 11016, 11048, 10987, 11048, 11016));
+		LongColumn dayIds = new LongColumn();
+		for(long id : new long[]{10L, 20L, 30L, 50L, 50L, 5L}) {
+			dayIds.add(id); //a second date of an object and a date of an unselected object are ignored
+		}
+		int[] rowBuckets = CalendarBuckets.bucketRows(days, dayIds, rowIds, CalendarBuckets.MONTH);
+		int january = february - 1;
+		assertArrayEquals(new int[]{january, february, january + 3, CalendarBuckets.NO_DAY, january}, rowBuckets);
+		
+		FloatColumn vals = new FloatColumn();
+		LongColumn ids = new LongColumn();
+		long[] valueIds = new long[]{10L, 20L, 20L, 30L, 40L, 50L, 60L};
+		for(int i = 0;i < valueIds.length;i++) {
+			vals.add(1 << i);
+			ids.add(valueIds[i]);
+		}
+		TimeBuckets buckets = new TimeBuckets(january, 4);
+		buckets.addAll(vals, ids, rowIds, rowBuckets);
+		assertEquals(2, buckets.getCount(january));
+		assertEquals(33d, buckets.getSum(january), 0d);
+		assertEquals(3d, buckets.getMean(february), 0d);
+		assertTrue(Double.isNaN(buckets.getMean(january + 2)));
+		assertEquals(8d, buckets.getSum(january + 3), 0d);
+		assertEquals(1, buckets.getWindowCount(january + 3, 2));
+		assertEquals(14d, buckets.getWindowSum(january + 3, 3), 0d);
+		assertEquals(47d, buckets.getWindowSum(january + 3, 10), 0d); //cut short at the first bucket
+		assertEquals(16.5d, buckets.getWindowMean(january, 2), 0d);
+		buckets.add(january + 2, 100f);
+		assertEquals(4, buckets.getWindowCount(january + 3, 3));
+		assertEquals(114d, buckets.getWindowSum(january + 3, 3), 0d);
+	}
+
+	/**
+	 * Tests that a range of buckets too long to hold is limited around the
+	 * median row, with stray dates either side folded into its ends
+	 */
+	@Test
+	public void timeBuckets_clamp() {
+		int[] rowBuckets = new int[]{-50000, 100, 103, CalendarBuckets.NO_DAY, 101, 102, 90000};
+		assertArrayEquals(new int[]{97, 106}, CalendarBuckets.clampRows(rowBuckets, 10));
+		assertArrayEquals(new int[]{97, 100, 103, CalendarBuckets.NO_DAY, 101, 102, 106}, rowBuckets);
+
+		rowBuckets = new int[]{5, 1000, 1001};
+		assertArrayEquals(new int[]{992, 1001}, CalendarBuckets.clampRows(rowBuckets, 10));
+		assertArrayEquals(new int[]{992, 1000, 1001}, rowBuckets);
+		assertArrayEquals(new int[]{992, 1001}, CalendarBuckets.clampRows(rowBuckets, 10));
+		assertNull(CalendarBuckets.clampRows(new int[]{CalendarBuckets.NO_DAY}, 10));
+
+		List<TimeBuckets> buckets = Lists.newArrayList();
+		buckets.add(new TimeBuckets(992, 10));
+		TimeBucketReport report = new TimeBucketReport("Date", CalendarBuckets.DAY, Lists.newArrayList("Value"), buckets, true, false);
+		assertEquals("1972-09-19 and before", report.formatBucket(992));
+		assertEquals("1972-09-28", report.formatBucket(1001));
+	}
 }
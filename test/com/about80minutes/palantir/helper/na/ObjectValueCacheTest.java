@@ -0,0 +1,58 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+import java.util.List;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.junit.Test;
+
+/**
+ * Test class for the eviction and invalidation of {@link com.about80minutes.palantir.helper.na.ObjectValueCache}
+ */
+public class ObjectValueCacheTest {
+
+	/**
+	 * Tests that the least recently used entries are evicted once the budget
+	 * is exceeded
+	 */
+	@Test
+	public void evictLeastRecentlyUsed() {
+		ObjectValueCache cache = new ObjectValueCache();
+		ObjectValues values = new ObjectValues(new int[]{0, 1}, new float[]{1f, 2f});
+		cache.setBudgetBytes(values.estimateBytes() * 3);
+
+		cache.put(1L, values);
+		cache.put(2L, values);
+		cache.put(3L, values);
+		assertNotNull(cache.get(1L)); //1 is now more recently used than 2
+		cache.put(4L, values);
+
+		assertEquals(3, cache.size());
+		assertNull(cache.get(2L));
+		assertNotNull(cache.get(1L));
+		assertNotNull(cache.get(3L));
+		assertNotNull(cache.get(4L));
+		assertEquals(values.estimateBytes() * 3, cache.getUsedBytes());
+	}
+
+	/**
+	 * Tests that invalidated entries are removed
+	 */
+	@Test
+	public void invalidate() {
+		ObjectValueCache cache = new ObjectValueCache();
+		cache.put(1L, ObjectValues.EMPTY);
+		cache.put(2L, ObjectValues.EMPTY);
+
+		List<Long> changed = Lists.newArrayList();
+		changed.add(2L);
+		cache.invalidate(changed);
+
+		assertNotNull(cache.get(1L));
+		assertNull(cache.get(2L));
+		assertEquals(ObjectValues.EMPTY.estimateBytes(), cache.getUsedBytes());
+	}
+}
@@ -0,0 +1,40 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+import org.junit.Test;
+
+import com.about80minutes.util.CalendarBuckets;
+
+/**
+ * Test class for the value conversion of {@link com.about80minutes.palantir.helper.na.PropertyExtractorCache}
+ */
+public class PropertyExtractorCacheTest {
+
+	/**
+	 * Tests that numbers are converted directly and other values are parsed
+	 */
+	@Test
+	public void toFloat() {
+		assertEquals(12.5f, PropertyExtractorCache.toFloat(Float.valueOf(12.5f)), 0f);
+		assertEquals(1234567f, PropertyExtractorCache.toFloat(Long.valueOf(1234567L)), 0f);
+		assertEquals(0.1f, PropertyExtractorCache.toFloat(Double.valueOf(0.1d)), 0f);
+		assertEquals(1234.5f, PropertyExtractorCache.toFloat("1,234.5"), 0f);
+	}
+
+	/**
+	 * Tests that dates and millisecond numbers are converted to days in the
+	 * default time zone and other values are skipped
+	 */
+	@Test
+	public void toEpochDay() {
+		long millis = 15817L * 24L * 60L * 60L * 1000L + 12L * 60L * 60L * 1000L; //midday on 2013-04-22 UTC
+		int day = CalendarBuckets.toEpochDay(millis, TimeZone.getDefault());
+		assertEquals(day, PropertyExtractorCache.toEpochDay(new Date(millis)));
+		assertEquals(day, PropertyExtractorCache.toEpochDay(Long.valueOf(millis)));
+		assertEquals(CalendarBuckets.NO_DAY, PropertyExtractorCache.toEpochDay("2013-04-22"));
+	}
+}
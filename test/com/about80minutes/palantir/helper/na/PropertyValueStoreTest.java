@@ -0,0 +1,334 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.List;
+
+import javax.swing.SwingUtilities;
+
+import org.apache.hadoop.thirdparty.guava.common.collect.Lists;
+import org.junit.Test;
+
+import com.about80minutes.util.EventThreadGuard;
+import com.about80minutes.util.FloatColumn;
+import com.about80minutes.util.NumericFunctions;
+import com.about80minutes.util.StatsAccumulator;
+
+/**
+ * Test class for the incremental maintenance of {@link com.about80minutes.palantir.helper.na.PropertyValueStore}
+ */
+public class PropertyValueStoreTest {
+
+	private static final String PROPERTY = "Amount";
+
+	/**
+	 * Tests that removing objects from the store gives the same stats as
+	 * computing them from scratch over the remaining values
+	 */
+	@Test
+	public void removeObjects() {
+		PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		FloatColumn expectedValues = new FloatColumn();
+		for(long id = 0;id < 100;id++) {
+			float value = (id * 37) % 50 - 10;
+			store.add(PROPERTY, id, value);
+			if(id % 3 != 0 && id != 50) {
+				expectedValues.add(value);
+			}
+		}
+		//remove every third object and the remaining object holding the minimum
+		long[] removed = new long[35];
+		removed[0] = 50;
+		for(int i = 1;i < removed.length;i++) {
+			removed[i] = (i - 1) * 3;
+		}
+		Arrays.sort(removed);
+		store.removeObjects(removed);
+
+		int index = store.indexOf(PROPERTY);
+		StatsAccumulator expected = NumericFunctions.getStats(expectedValues);
+		StatsAccumulator actual = store.getStats(index);
+		assertArrayEquals(expectedValues.toArray(), store.getColumn(index).toArray(), 0f);
+		assertEquals(expected.getCount(), actual.getCount());
+		assertEquals(expected.getMin(), actual.getMin(), 0f);
+		assertEquals(expected.getMax(), actual.getMax(), 0f);
+		assertEquals(expected.getSum(), actual.getSum(), 0.001f);
+		assertEquals(expected.getStdDeviation(), actual.getStdDeviation(), 0.0001d);
+
+		List<Float> modes = Lists.newArrayList();
+		store.getCounter(index).getModes(modes);
+		assertEquals(NumericFunctions.getModes(expectedValues), modes);
+	}
+
+	/**
+	 * Tests the added and removed IDs of a {@link com.about80minutes.palantir.helper.na.SelectionDelta}
+	 */
+	@Test
+	public void selectionDelta() {
+		List<Long> ids = Lists.newArrayList();
+		ids.add(5L);
+		ids.add(1L);
+		ids.add(3L);
+		ids.add(3L);
+		long[] selected = SelectionDelta.toSortedIds(ids);
+		assertArrayEquals(new long[]{1L, 3L, 5L}, selected);
+
+		SelectionDelta delta = new SelectionDelta(new long[]{1L, 2L, 3L}, selected);
+		assertArrayEquals(new long[]{5L}, delta.getAdded());
+		assertArrayEquals(new long[]{2L}, delta.getRemoved());
+	}
+	
+	/**
+	 * Tests that merging a store gives the same values and stats as adding
+	 * every value to a single store
+	 */
+	@Test
+	public void addAll() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore expected = new PropertyValueStore(dictionary);
+		PropertyValueStore merged = new PropertyValueStore(dictionary);
+		PropertyValueStore staged = new PropertyValueStore(dictionary);
+		for(long id = 0;id < 100;id++) {
+			float value = id % 7;
+			expected.add(PROPERTY, id, value);
+			(id < 40 ? merged : staged).add(PROPERTY, id, value);
+		}
+		merged.addAll(staged);
+
+		int index = dictionary.find(PROPERTY);
+		assertArrayEquals(expected.getColumn(index).toArray(), merged.getColumn(index).toArray(), 0f);
+		assertArrayEquals(expected.getObjectIds(index).toArray(), merged.getObjectIds(index).toArray());
+		assertEquals(expected.getStats(index).getCount(), merged.getStats(index).getCount());
+		assertEquals(expected.getStats(index).getStdDeviation(), merged.getStats(index).getStdDeviation(), 0.0001d);
+		assertEquals(expected.getCounter(index).get(3f), merged.getCounter(index).get(3f));
+	}
+	
+	/**
+	 * Tests that columns over the heap budget are spilled without changing
+	 * the values or stats of the store
+	 */
+	@Test
+	public void enforceHeapBudget() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		store.setHeapBudgetBytes(0L);
+		for(long id = 0;id < 100;id++) {
+			store.add(PROPERTY, id, id % 7);
+		}
+		int index = dictionary.find(PROPERTY);
+		float[] values = store.getColumn(index).toArray();
+		store.enforceHeapBudget();
+
+		assertTrue(store.getColumn(index).isSpilled());
+		//only the counts are left on the heap
+		assertEquals(store.getCounter(index).getHeapBytes(), store.getHeapBytes());
+		assertArrayEquals(values, store.getColumn(index).toArray(), 0f);
+
+		store.removeObjects(new long[]{0L, 1L});
+		assertEquals(98, store.getColumn(index).size());
+		assertEquals(2f, store.getColumn(index).get(0), 0f);
+		assertEquals(98L, store.getStats(index).getCount());
+		store.clear();
+	}
+
+	/**
+	 * Tests that date columns count towards the heap budget and are spilled
+	 * with the value columns
+	 */
+	@Test
+	public void enforceHeapBudget_dates() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		int index = store.indexOf(PROPERTY);
+		for(long id = 0;id < 100;id++) {
+			store.addObject(id, new ObjectValues(ObjectValues.NO_TYPE, new int[]{index}, new float[]{id % 7},
+					new int[]{0}, new int[]{(int) id}));
+		}
+		long countBytes = store.getCounter(index).getHeapBytes();
+		assertTrue(store.getHeapBytes() > countBytes + store.getColumn(index).getHeapBytes());
+		store.setHeapBudgetBytes(0L);
+		store.enforceHeapBudget();
+
+		assertTrue(store.getDateColumn(0).isSpilled());
+		assertTrue(store.getDateObjectIds(0).isSpilled());
+		assertEquals(countBytes, store.getHeapBytes());
+		store.removeObjects(new long[]{0L});
+		assertEquals(99, store.getDateColumn(0).size());
+		assertEquals(1, store.getDateColumn(0).get(0));
+		store.clear();
+	}
+
+	/**
+	 * Tests that a group with more distinct values than are counted exactly
+	 * falls back to a sketch which still finds the most frequent value, and
+	 * whose bounds are kept as values are removed
+	 */
+	@Test
+	public void approximateCounts() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		PropertyValueStore staged = new PropertyValueStore(dictionary);
+		store.setMaxExactDistinct(16);
+		int index = store.indexOf(PROPERTY);
+		for(long id = 0;id < 200;id++) {
+			float value = (id % 4 == 0) ? 5f : id;
+			(id < 20 ? store : staged).add(index, id, value, 1);
+		}
+		assertTrue(store.getCounter(index, 1) != null);
+		store.addAll(staged);
+
+		assertNull(store.getCounter(index, 1));
+		assertNull(store.getCounter(index));
+		assertEquals(5f, store.getTop(index, Integer.valueOf(1), 1, 2).getValue(0), 0f);
+		assertEquals(5f, store.getTop(index, null, 1, 2).getValue(0), 0f);
+		assertArrayEquals(new float[]{5f}, store.getModes(index, Integer.valueOf(1), 2), 0f);
+		assertTrue(store.getHeapBytes() > store.getColumn(index).getHeapBytes());
+
+		store.removeObjects(new long[]{199L});
+		assertEquals(198f, store.getStats(index).getMax(), 0f);
+		assertEquals(5f, store.getTop(index, Integer.valueOf(1), 1, 2).getValue(0), 0f);
+		assertEquals(199L, store.getStats(index).getCount());
+	}
+
+	/**
+	 * Tests that every value sharing the highest count is found, including
+	 * ties beyond the few most frequent values shown in the table
+	 */
+	@Test
+	public void modes() {
+		PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		int index = store.indexOf(PROPERTY);
+		for(long id = 0;id < 20;id++) {
+			store.add(index, id, id % 5, (id < 10) ? 1 : 2);
+		}
+		store.add(index, 20L, 9f, 2);
+
+		assertArrayEquals(new float[]{0f, 1f, 2f, 3f, 4f}, store.getModes(index, null, 2), 0f);
+		assertEquals(0, store.getModes(index, null, 5).length);
+		assertArrayEquals(new float[]{0f, 1f, 2f, 3f, 4f}, store.getModes(index, Integer.valueOf(2), 2), 0f);
+		assertEquals(0, store.getModes(index, Integer.valueOf(1), 3).length);
+		assertEquals(0, store.getModes(index, Integer.valueOf(3), 1).length);
+	}
+
+	/**
+	 * Tests that the stats of a property merged from its groups match the
+	 * stats of all of its values, including after a group is emptied
+	 */
+	@Test
+	public void groups() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		int index = dictionary.indexOf(PROPERTY);
+		FloatColumn allValues = new FloatColumn();
+		FloatColumn firstGroup = new FloatColumn();
+		for(long id = 0;id < 30;id++) {
+			float value = (id * 7) % 11;
+			store.add(index, id, value, (int) (id % 3));
+			allValues.add(value);
+			if(id % 3 == 1) {
+				firstGroup.add(value);
+			}
+		}
+
+		assertEquals(3, store.getGroups(index).size());
+		StatsAccumulator expected = NumericFunctions.getStats(allValues);
+		assertEquals(expected.getCount(), store.getStats(index).getCount());
+		assertEquals(expected.getMean(), store.getStats(index).getMean(), 0.0001f);
+		assertEquals(expected.getStdDeviation(), store.getStats(index).getStdDeviation(), 0.0001d);
+		assertArrayEquals(firstGroup.toArray(), store.getGroupColumn(index, 1).toArray(), 0f);
+		assertEquals(NumericFunctions.getStats(firstGroup).getSum(), store.getStats(index, 1).getSum(), 0f);
+
+		long[] removed = new long[10];
+		for(int i = 0;i < removed.length;i++) {
+			removed[i] = i * 3; //every object of group 0
+		}
+		store.removeObjects(removed);
+		assertEquals(2, store.getGroups(index).size());
+		assertEquals(20L, store.getStats(index).getCount());
+		assertNull(store.getStats(index, 0)); //emptied groups are dropped
+		assertEquals(10L, store.getStats(index, 1).getCount());
+	}
+
+	/**
+	 * Tests that the store refuses to scan its columns on the event thread
+	 */
+	@Test
+	public void eventThreadGuard() throws Exception {
+		final PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		for(long id = 0;id < 10;id++) {
+			store.add(PROPERTY, id, id);
+		}
+		final Throwable[] thrown = new Throwable[1];
+		boolean enabled = EventThreadGuard.isEnabled();
+		EventThreadGuard.setEnabled(true);
+		try {
+			SwingUtilities.invokeAndWait(new Runnable() {
+				public void run() {
+					try {
+						store.removeObjects(new long[]{1L});
+					} catch (AssertionError e) {
+						thrown[0] = e;
+					}
+				}
+			});
+			store.removeObjects(new long[]{1L}); //allowed off the event thread
+		} finally {
+			EventThreadGuard.setEnabled(enabled);
+		}
+		assertTrue(thrown[0] instanceof AssertionError);
+		assertEquals(9L, store.getStats(store.indexOf(PROPERTY)).getCount());
+	}
+	
+	/**
+	 * Tests that the objects holding values in a range are found from the
+	 * IDs kept alongside the values, within a group and without duplicates
+	 */
+	@Test
+	public void findObjects() {
+		PropertyValueStore store = new PropertyValueStore(new PropertyDictionary());
+		int index = store.indexOf(PROPERTY);
+		for(long id = 19;id >= 0;id--) {
+			store.add(index, id, id % 10, (int) (id % 2));
+		}
+		store.add(index, 4L, 9f, 0); //a second value of an object
+		
+		assertArrayEquals(new long[]{4L, 9L, 19L}, store.findObjects(index, null, new float[]{9f}, new float[]{9f}));
+		assertArrayEquals(new long[]{4L}, store.findObjects(index, Integer.valueOf(0), new float[]{9f}, new float[]{9f}));
+		assertArrayEquals(new long[]{0L, 1L, 8L, 10L, 11L, 18L},
+				store.findObjects(index, null, new float[]{Float.NEGATIVE_INFINITY, 8f}, new float[]{1f, 8f}));
+		assertEquals(0, store.findObjects(index, Integer.valueOf(1), new float[]{2f}, new float[]{2f}).length);
+	}
+	
+	/**
+	 * Tests that the dates of added objects are kept alongside their values,
+	 * are merged from another store and are removed with their objects
+	 */
+	@Test
+	public void dates() {
+		PropertyDictionary dictionary = new PropertyDictionary();
+		PropertyValueStore store = new PropertyValueStore(dictionary);
+		PropertyValueStore staged = new PropertyValueStore(dictionary);
+		int index = store.indexOf(PROPERTY);
+		for(long id = 0;id < 10;id++) {
+			ObjectValues values = new ObjectValues(ObjectValues.NO_TYPE, new int[]{index}, new float[]{id},
+					new int[]{1}, new int[]{(int) id * 7});
+			(id < 4 ? store : staged).addObject(id, values);
+		}
+		store.addObject(10L, new ObjectValues(new int[]{index}, new float[]{10f})); //an object without a date
+		store.addAll(staged);
+		assertEquals(2, store.getDatePropertyCount());
+		assertTrue(store.getDateColumn(0).isEmpty());
+		assertEquals(10, store.getDateColumn(1).size());
+		assertEquals(11, store.getColumn(index).size());
+		
+		store.removeObjects(new long[]{0L, 3L, 9L, 10L});
+		assertArrayEquals(new int[]{7, 14, 28, 35, 42, 49, 56}, store.getDateColumn(1).toArray());
+		assertArrayEquals(new long[]{1L, 2L, 4L, 5L, 6L, 7L, 8L}, store.getDateObjectIds(1).toArray());
+		store.clear();
+		assertEquals(0, store.getDatePropertyCount());
+	}
+}
@@ -0,0 +1,85 @@
+package com.about80minutes.palantir.helper.na;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import javax.swing.SwingUtilities;
+import javax.swing.SwingWorker;
+
+import org.junit.Test;
+
+/**
+ * Test class for the cancellation and generations of {@link com.about80minutes.palantir.helper.na.SelectionJobScheduler}
+ */
+public class SelectionJobSchedulerTest {
+
+	/**
+	 * Tests that beginning a new generation supersedes earlier generations
+	 * and cancels the running job
+	 */
+	@Test
+	public void beginCancelsRunningJob() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		SelectionJobScheduler scheduler = new SelectionJobScheduler(executor, 0);
+		final CountDownLatch started = new CountDownLatch(1);
+
+		long first = scheduler.begin();
+		SwingWorker<Void, Void> job = new SwingWorker<Void, Void>() {
+			@Override
+			protected Void doInBackground() throws Exception {
+				started.countDown();
+				Thread.sleep(10000);
+				return null;
+			}
+		};
+		scheduler.execute(job);
+		started.await();
+		assertTrue(scheduler.isCurrent(first));
+
+		long second = scheduler.begin();
+		assertTrue(job.isCancelled());
+		assertFalse(scheduler.isCurrent(first));
+		assertTrue(scheduler.isCurrent(second));
+		executor.shutdownNow();
+	}
+
+	/**
+	 * Tests that jobs scheduled within the debounce window are coalesced so
+	 * only the latest runs
+	 */
+	@Test
+	public void scheduleRunsLatestJob() throws Exception {
+		ExecutorService executor = Executors.newSingleThreadExecutor();
+		final SelectionJobScheduler scheduler = new SelectionJobScheduler(executor, 50);
+		final CountDownLatch ran = new CountDownLatch(1);
+		final List<String> runs = Collections.synchronizedList(new ArrayList<String>());
+
+		SwingUtilities.invokeAndWait(new Runnable() {
+			public void run() {
+				for(final String name : new String[]{"first", "second", "third"}) {
+					scheduler.schedule(new Runnable() {
+						public void run() {
+							runs.add(name);
+							ran.countDown();
+						}
+					});
+				}
+			}
+		});
+		assertTrue(ran.await(5, TimeUnit.SECONDS));
+		Thread.sleep(100);
+
+		assertEquals(1, runs.size());
+		assertEquals("third", runs.get(0));
+		executor.shutdownNow();
+	}
+}